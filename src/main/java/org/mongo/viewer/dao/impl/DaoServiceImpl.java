@@ -15,7 +15,7 @@ public class DaoServiceImpl implements DAOService {
     private static Log log = LogFactory.getLog(DaoServiceImpl.class);
     
     static SimpleCache<String, Dao<?>> daoCache = new SimpleCache<String, Dao<?>>(
-            20, 3000);
+            "daos", 20, 3000);
     private static Properties dao = PropertyLoader.loadProperties("dao");
 
     /* (non-Javadoc)
@@ -29,8 +29,11 @@ public class DaoServiceImpl implements DAOService {
         if (null == toReturn) {
 
             try {
+                long start = System.nanoTime();
                 String clazz = dao.getProperty(key);
                 toReturn = getInstance(clazz);
+                daoCache.getStats().recordLoad(System.nanoTime() - start);
+                daoCache.put(key, toReturn);
             } catch (InstantiationException e) {
                 throw new ServiceException("Cannot create dao " + key, e);
             } catch (IllegalAccessException e) {
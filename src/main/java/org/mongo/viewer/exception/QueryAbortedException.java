@@ -0,0 +1,40 @@
+/**
+ *
+ */
+package org.mongo.viewer.exception;
+
+import com.mongodb.MongoException;
+
+/**
+ * Thrown when a request's queries ran past its deadline or were cancelled.
+ * It is a {@link MongoException} so that every place that already cleans up
+ * after a failed query cleans up after an aborted one too.
+ */
+public class QueryAbortedException extends MongoException {
+
+    /**
+     *
+     */
+    private static final long serialVersionUID = 4710528342968722185L;
+
+    private final boolean timedOut;
+
+    /**
+     * @param message
+     *            the message
+     * @param timedOut
+     *            true if the deadline passed, false if cancelled
+     */
+    public QueryAbortedException(String message, boolean timedOut) {
+        super(message);
+        this.timedOut = timedOut;
+    }
+
+    /**
+     * @return true if the deadline passed, false if cancelled
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+}
@@ -0,0 +1,92 @@
+package org.mongo.viewer.main;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.mongo.viewer.util.SimpleCache;
+import org.mongo.viewer.util.SimpleCache.Policy;
+
+/**
+ * Replays key traces through a {@link SimpleCache} under each eviction policy
+ * and prints the hit ratios as TSV. A trace is a text file with one key per
+ * line, for example the query keys from a request log; every read that
+ * misses is followed by a write, as the services do. Without trace files it
+ * replays a synthetic one: dashboards repeating a few hundred queries,
+ * interrupted by bursts of one-off ad-hoc queries.
+ *
+ * Usage: CacheBenchmark [maxSize] [trace files...]
+ */
+public class CacheBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int maxSize = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        System.out.println("trace\tpolicy\tmaxSize\trequests\thitRatio");
+        if (args.length < 2) {
+            replay("synthetic", synthetic(), maxSize);
+        }
+        for (int i = 1; i < args.length; i++) {
+            replay(args[i], read(args[i]), maxSize);
+        }
+    }
+
+    private static void replay(String trace, List<String> keys, int maxSize) {
+        for (Policy policy : Policy.values()) {
+            SimpleCache<String, Boolean> cache = new SimpleCache<String, Boolean>(
+                    "benchmark-" + policy, maxSize, Integer.MAX_VALUE,
+                    Long.MAX_VALUE, null, policy);
+            for (String key : keys) {
+                if (null == cache.get(key)) {
+                    cache.put(key, Boolean.TRUE);
+                }
+            }
+            System.out.println(trace + "\t" + policy + "\t" + maxSize + "\t"
+                    + keys.size() + "\t"
+                    + String.format("%.4f", cache.getStats().getHitRatio()));
+        }
+    }
+
+    private static List<String> read(String file) throws IOException {
+        List<String> keys = new ArrayList<String>();
+        BufferedReader in = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while (null != (line = in.readLine())) {
+                line = line.trim();
+                if (line.length() > 0) {
+                    keys.add(line);
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return keys;
+    }
+
+    /**
+     * Skewed repeats of 2000 dashboard queries, with a burst of 5000 one-off
+     * queries after every 20000 requests.
+     */
+    private static List<String> synthetic() {
+        Random random = new Random(42);
+        List<String> keys = new ArrayList<String>();
+        int adHoc = 0;
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 20000; i++) {
+                // roughly Zipf: the first queries are the busiest
+                double u = random.nextDouble();
+                keys.add("dashboard-" + (int) (2000 * u * u * u));
+            }
+            for (int i = 0; i < 5000; i++) {
+                keys.add("adhoc-" + adHoc++);
+            }
+        }
+        return keys;
+    }
+
+}
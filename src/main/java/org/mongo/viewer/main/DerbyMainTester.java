@@ -1,17 +1,17 @@
 package org.mongo.viewer.main;
 
-import java.lang.reflect.InvocationTargetException;
-import java.net.UnknownHostException;
-import java.util.Iterator;
+import java.io.IOException;
 
-import org.apache.commons.beanutils.BeanUtilsBean;
-import org.jongo.Jongo;
-import org.jongo.MongoCollection;
 import org.mongo.viewer.util.LoggingUtils;
 import org.mongo.viewer.util.MongoUtil;
+import org.mongo.viewer.util.QueryUtil;
+import org.mongo.viewer.util.RawDBDecoder;
+import org.mongo.viewer.util.SysLogEventDecoder;
 import org.mongo.viewer.vo.DataBaseInfo;
+import org.mongo.viewer.vo.SysLogEvent;
 
 import com.mongodb.DB;
+import com.mongodb.DBCursor;
 
 public class DerbyMainTester {
     private static DataBaseInfo prd = new DataBaseInfo(
@@ -31,33 +31,29 @@ public class DerbyMainTester {
         try {
             LoggingUtils.initDefaultLogging();
             DB db = MongoUtil.getDB(atst);
-            Jongo jongo = new Jongo(db);
-            MongoCollection sysLog = jongo.getCollection("SYSLOG_06_2014");
-            Iterable<Object> all = sysLog
-                    .find("{ $or : [ {type:'REPLOGIN.user'}, {type:'REPLOGIN.account'}]}")
-                    .as(Object.class);
-            Iterator<Object> itr = all.iterator();
+            DBCursor cursor = db.getCollection("SYSLOG_06_2014").find(
+                    QueryUtil.parse("{ $or : [ {type:'REPLOGIN.user'}, {type:'REPLOGIN.account'}]}"),
+                    QueryUtil.projection(fields));
+            // raw BSON, decoded straight into the event
+            cursor.setDecoderFactory(RawDBDecoder.FACTORY);
             for (String field : fields) {
                 System.out.print(field + "\t");
             }
             System.out.println();
-            while (itr.hasNext()) {
-                Object result = itr.next();
-                for (String field : fields) {
-                    System.out.print(BeanUtilsBean.getInstance().getProperty(
-                            result, field)
-                            + "\t");
+            try {
+                while (cursor.hasNext()) {
+                    SysLogEvent event = SysLogEventDecoder.decode(cursor
+                            .next());
+                    for (String field : fields) {
+                        System.out.print(SysLogEventDecoder.get(event, field)
+                                + "\t");
+                    }
+                    System.out.println();
                 }
-                System.out.println();
-
+            } finally {
+                cursor.close();
             }
-        } catch (UnknownHostException e) {
-            e.printStackTrace();
-        } catch (IllegalAccessException e) {
-            e.printStackTrace();
-        } catch (InvocationTargetException e) {
-            e.printStackTrace();
-        } catch (NoSuchMethodException e) {
+        } catch (IOException e) {
             e.printStackTrace();
         }
     }
@@ -0,0 +1,46 @@
+package org.mongo.viewer.service;
+
+import java.util.Date;
+import java.util.List;
+
+import org.mongo.viewer.exception.ServiceException;
+import org.mongo.viewer.vo.DataBaseInfo;
+import org.mongo.viewer.vo.TimeBucket;
+
+import com.mongodb.DBObject;
+
+/**
+ * The Interface AggregationService. Counts SysLog events on the server
+ * instead of pulling them into the viewer.
+ */
+public interface AggregationService extends Service {
+
+    /**
+     * Counts the events in <code>[from, to)</code> matching the query, per
+     * time bucket and optionally per value of a field, across the monthly
+     * <code>SYSLOG_MM_YYYY</code> collections. Each row has a
+     * <code>time</code>, the field when grouped, and a <code>count</code>;
+     * rows are ordered by time, then by descending count.
+     *
+     * @param info
+     *            the connection info
+     * @param query
+     *            the query, may be blank
+     * @param groupBy
+     *            type, subtype, hostName or systemId; null to count per
+     *            bucket only
+     * @param bucket
+     *            the bucket width
+     * @param from
+     *            the start, inclusive
+     * @param to
+     *            the end, exclusive
+     * @return the rows
+     * @throws ServiceException
+     *             if the database cannot be reached
+     */
+    List<DBObject> countEvents(DataBaseInfo info, String query,
+            String groupBy, TimeBucket bucket, Date from, Date to)
+            throws ServiceException;
+
+}
@@ -0,0 +1,59 @@
+package org.mongo.viewer.service;
+
+import org.mongo.viewer.exception.ServiceException;
+import org.mongo.viewer.vo.CountEstimate;
+import org.mongo.viewer.vo.DataBaseInfo;
+
+/**
+ * The Interface CountEstimator. Answers "how many documents match" without
+ * counting them on every page view.
+ */
+public interface CountEstimator extends Service {
+
+    /**
+     * Estimates right away. Unfiltered counts come from the collection
+     * metadata and are exact. Filtered counts are exact when an exact count
+     * is cached, sampled when a sample is cached, and otherwise the size of
+     * the collection while a sample is taken in the background.
+     *
+     * @param info
+     *            the connection info
+     * @param collection
+     *            the collection
+     * @param query
+     *            the query, may be blank
+     * @return the estimate
+     * @throws ServiceException
+     *             if the database cannot be reached
+     */
+    CountEstimate estimate(DataBaseInfo info, String collection, String query)
+            throws ServiceException;
+
+    /**
+     * Starts an exact count in the background, or joins the one running for
+     * the same query, and returns where it stands. The result is cached.
+     *
+     * @param info
+     *            the connection info
+     * @param collection
+     *            the collection
+     * @param query
+     *            the query, may be blank
+     * @return the estimate, exact if the count is already known, with the job
+     *         otherwise
+     * @throws ServiceException
+     *             if the database cannot be reached
+     */
+    CountEstimate countExactly(DataBaseInfo info, String collection,
+            String query) throws ServiceException;
+
+    /**
+     * Cancels an exact count.
+     *
+     * @param job
+     *            the job
+     * @return true if it was running
+     */
+    boolean cancel(String job);
+
+}
@@ -0,0 +1,32 @@
+package org.mongo.viewer.service;
+
+import org.mongo.viewer.exception.ServiceException;
+import org.mongo.viewer.vo.DataBaseInfo;
+import org.mongo.viewer.vo.Facets;
+
+/**
+ * The Interface FacetCatalog. Keeps the values offered in the filter
+ * dropdowns, computed in the background once per collection rather than
+ * with a <code>distinct</code> per user.
+ */
+public interface FacetCatalog extends Service {
+
+    /**
+     * Gets the facets of a collection. When they are missing or stale they
+     * are computed in the background, and whatever is known is returned
+     * meanwhile. Facets of a closed monthly partition are computed once.
+     *
+     * @param info
+     *            the connection info
+     * @param collection
+     *            the collection
+     * @return the facets, null until first computed
+     * @throws ServiceException
+     *             if the server cannot be reached
+     * @throws IllegalArgumentException
+     *             if the collection does not exist
+     */
+    Facets getFacets(DataBaseInfo info, String collection)
+            throws ServiceException;
+
+}
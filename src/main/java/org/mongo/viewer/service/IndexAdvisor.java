@@ -0,0 +1,62 @@
+package org.mongo.viewer.service;
+
+import java.util.List;
+
+import org.mongo.viewer.exception.ServiceException;
+import org.mongo.viewer.vo.DataBaseInfo;
+import org.mongo.viewer.vo.IndexAdvice;
+
+import com.mongodb.DBObject;
+
+/**
+ * The Interface IndexAdvisor. Learns the query shapes the viewer runs and
+ * suggests the indexes that would serve them.
+ */
+public interface IndexAdvisor extends Service {
+
+    /**
+     * Counts a query towards its shape. The monthly partitions count as one
+     * collection, <code>SYSLOG_*</code>.
+     *
+     * @param info
+     *            the connection info
+     * @param collection
+     *            the collection
+     * @param query
+     *            the query
+     * @param sort
+     *            the sort, may be null
+     * @param millis
+     *            how long it took
+     */
+    void observe(DataBaseInfo info, String collection, DBObject query,
+            DBObject sort, long millis);
+
+    /**
+     * Suggests indexes for the shapes seen on a connection that the existing
+     * indexes do not fully serve, most work saved first. The monthly
+     * partitions are compared with the indexes of the current month.
+     *
+     * @param info
+     *            the connection info
+     * @return the advice
+     * @throws ServiceException
+     *             if the database cannot be reached
+     */
+    List<IndexAdvice> getAdvice(DataBaseInfo info) throws ServiceException;
+
+    /**
+     * Creates the indexes of the current month's partition, and the ones
+     * suggested for the partitions, on next month's partition, so they exist
+     * before it receives writes. Indexes are built in the background.
+     *
+     * @param info
+     *            the connection info
+     * @return the keys of the indexes created, as JSON
+     * @throws ServiceException
+     *             if the database cannot be reached
+     */
+    List<String> createNextMonthIndexes(DataBaseInfo info)
+            throws ServiceException;
+
+}
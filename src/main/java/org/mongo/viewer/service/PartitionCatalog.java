@@ -0,0 +1,47 @@
+package org.mongo.viewer.service;
+
+import java.util.Date;
+import java.util.List;
+
+import org.mongo.viewer.exception.ServiceException;
+import org.mongo.viewer.vo.DataBaseInfo;
+import org.mongo.viewer.vo.PartitionInfo;
+
+/**
+ * The Interface PartitionCatalog. Knows which monthly
+ * <code>SYSLOG_MM_YYYY</code> collections exist in a database and the
+ * timestamps they hold.
+ */
+public interface PartitionCatalog extends Service {
+
+    /**
+     * Gets the partitions of the database, oldest first. The result is served
+     * from cache and refreshed in the background.
+     *
+     * @param info
+     *            the connection info
+     * @return the partitions
+     * @throws ServiceException
+     *             if the database cannot be reached
+     */
+    List<PartitionInfo> getPartitions(DataBaseInfo info)
+            throws ServiceException;
+
+    /**
+     * Gets the partitions a query on <code>[from, to)</code> has to touch,
+     * oldest first.
+     *
+     * @param info
+     *            the connection info
+     * @param from
+     *            the start, inclusive, null for unbounded
+     * @param to
+     *            the end, exclusive, null for unbounded
+     * @return the collection names
+     * @throws ServiceException
+     *             if the database cannot be reached
+     */
+    List<String> route(DataBaseInfo info, Date from, Date to)
+            throws ServiceException;
+
+}
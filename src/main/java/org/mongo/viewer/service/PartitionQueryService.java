@@ -0,0 +1,41 @@
+package org.mongo.viewer.service;
+
+import java.util.Date;
+
+import org.mongo.viewer.exception.ServiceException;
+import org.mongo.viewer.vo.DataBaseInfo;
+import org.mongo.viewer.vo.QuerySpec;
+
+import com.mongodb.Cursor;
+
+/**
+ * The Interface PartitionQueryService. Runs a query over a time range of the
+ * monthly <code>SYSLOG_MM_YYYY</code> collections as if they were one
+ * collection.
+ */
+public interface PartitionQueryService extends Service {
+
+    /**
+     * Queries every monthly collection overlapping <code>[from, to)</code>
+     * concurrently and merges the results in <code>(timestamp, _id)</code>
+     * order. The collection of the spec is ignored, its limit applies to the
+     * merged result. The caller owns the cursor and must close it.
+     *
+     * @param info
+     *            the connection info
+     * @param spec
+     *            the query
+     * @param from
+     *            the start, inclusive
+     * @param to
+     *            the end, exclusive
+     * @param ascending
+     *            true for oldest first, false for newest first
+     * @return the merged cursor
+     * @throws ServiceException
+     *             if the database cannot be reached
+     */
+    Cursor find(DataBaseInfo info, QuerySpec spec, Date from, Date to,
+            boolean ascending) throws ServiceException;
+
+}
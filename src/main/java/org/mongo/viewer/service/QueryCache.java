@@ -0,0 +1,35 @@
+package org.mongo.viewer.service;
+
+import org.mongo.viewer.vo.QueryKey;
+
+/**
+ * The Interface QueryCache. Holds serialized query results, so that the same
+ * dashboard query opened by many operators reaches mongo once per TTL.
+ */
+public interface QueryCache extends Service {
+
+    /**
+     * Gets a cached result.
+     *
+     * @param key
+     *            the key
+     * @return the serialized result, null if absent or expired
+     */
+    byte[] get(QueryKey key);
+
+    /**
+     * Caches a result. The time to live depends on the collection of the key.
+     *
+     * @param key
+     *            the key
+     * @param result
+     *            the serialized result
+     */
+    void put(QueryKey key, byte[] result);
+
+    /**
+     * Drops every cached result.
+     */
+    void clear();
+
+}
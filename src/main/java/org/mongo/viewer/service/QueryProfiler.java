@@ -0,0 +1,52 @@
+package org.mongo.viewer.service;
+
+import java.util.List;
+
+import org.mongo.viewer.vo.DataBaseInfo;
+import org.mongo.viewer.vo.SlowQuery;
+
+import com.mongodb.DBObject;
+
+/**
+ * The Interface QueryProfiler. Keeps the most recent slow viewer queries
+ * along with their explain plans.
+ */
+public interface QueryProfiler extends Service {
+
+    /**
+     * Records a query that ran. Queries faster than the threshold are
+     * ignored; slower ones are kept and explained in the background.
+     *
+     * @param info
+     *            the connection info
+     * @param operation
+     *            what ran the query, e.g. find, page or aggregate
+     * @param collection
+     *            the collection
+     * @param query
+     *            the query
+     * @param projection
+     *            the projection, may be null
+     * @param sort
+     *            the sort, may be null
+     * @param millis
+     *            how long it took
+     */
+    void record(DataBaseInfo info, String operation, String collection,
+            DBObject query, DBObject projection, DBObject sort, long millis);
+
+    /**
+     * Gets the recorded slow queries, newest first.
+     *
+     * @return the slow queries
+     */
+    List<SlowQuery> getSlowQueries();
+
+    /**
+     * Gets the slow query threshold.
+     *
+     * @return the threshold in millis
+     */
+    long getThreshold();
+
+}
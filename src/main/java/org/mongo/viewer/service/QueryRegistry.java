@@ -0,0 +1,66 @@
+package org.mongo.viewer.service;
+
+import java.util.List;
+
+import org.mongo.viewer.vo.RunningQuery;
+
+/**
+ * The Interface QueryRegistry. Knows every request that is running queries,
+ * aborts the ones past their deadline and cancels the ones asked for.
+ */
+public interface QueryRegistry extends Service {
+
+    /**
+     * Registers a request.
+     *
+     * @param uri
+     *            the request uri
+     * @param client
+     *            the client address
+     * @param timeout
+     *            the millis it may run
+     * @return the running query
+     */
+    RunningQuery begin(String uri, String client, long timeout);
+
+    /**
+     * Registers a stream, which may run as long as it keeps making progress.
+     *
+     * @param uri
+     *            the request uri
+     * @param client
+     *            the client address
+     * @param idleTimeout
+     *            the millis it may go without progress
+     * @param timeout
+     *            the millis it may run whatever its progress, 0 or less for
+     *            no limit
+     * @return the running query
+     */
+    RunningQuery beginStream(String uri, String client, long idleTimeout,
+            long timeout);
+
+    /**
+     * Forgets a request that is done.
+     *
+     * @param running
+     *            the running query
+     */
+    void end(RunningQuery running);
+
+    /**
+     * @return the running queries, oldest first
+     */
+    List<RunningQuery> getRunning();
+
+    /**
+     * Cancels a running query: its cursors are closed and its operations
+     * killed on the server.
+     *
+     * @param id
+     *            the id
+     * @return true if it was running
+     */
+    boolean cancel(String id);
+
+}
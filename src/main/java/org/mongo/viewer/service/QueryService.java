@@ -0,0 +1,82 @@
+package org.mongo.viewer.service;
+
+import org.mongo.viewer.exception.ServiceException;
+import org.mongo.viewer.vo.DataBaseInfo;
+import org.mongo.viewer.vo.Page;
+import org.mongo.viewer.vo.PageToken;
+import org.mongo.viewer.vo.QuerySpec;
+
+import com.mongodb.DBCursor;
+
+/**
+ * The Interface QueryService. Runs viewer queries against a mongo database.
+ */
+public interface QueryService extends Service {
+
+    /**
+     * Opens a cursor for the query. The first batch is read before the cursor
+     * is returned, so that query errors surface here and the query is
+     * profiled. The caller owns the cursor and must close it.
+     *
+     * @param info
+     *            the connection info
+     * @param spec
+     *            the query
+     * @return the cursor
+     * @throws ServiceException
+     *             if the database cannot be reached
+     */
+    DBCursor find(DataBaseInfo info, QuerySpec spec) throws ServiceException;
+
+    /**
+     * Opens a cursor over the whole result in <code>(timestamp, _id)</code>
+     * order, resuming after the token, so that a long export can be picked
+     * up where it broke off. The sort of the spec is ignored. The first
+     * batch is read before the cursor is returned. The caller owns the
+     * cursor and must close it.
+     *
+     * @param info
+     *            the connection info
+     * @param spec
+     *            the query
+     * @param token
+     *            the last document already read, null to start from the
+     *            beginning
+     * @param ascending
+     *            true for oldest first, false for newest first
+     * @return the cursor
+     * @throws ServiceException
+     *             if the database cannot be reached
+     */
+    DBCursor scan(DataBaseInfo info, QuerySpec spec, PageToken token,
+            boolean ascending) throws ServiceException;
+
+    /**
+     * Reads one page in <code>(timestamp, _id)</code> order, resuming after
+     * the token. The sort of the spec is ignored, its limit is the page size.
+     *
+     * @param info
+     *            the connection info
+     * @param spec
+     *            the query
+     * @param token
+     *            the last document of the previous page, null for the first
+     *            page
+     * @param ascending
+     *            true for oldest first, false for newest first
+     * @return the page
+     * @throws ServiceException
+     *             if the database cannot be reached
+     */
+    Page page(DataBaseInfo info, QuerySpec spec, PageToken token,
+            boolean ascending) throws ServiceException;
+
+    /**
+     * Gets the cursor batch size. Callers streaming a cursor flush once per
+     * batch.
+     *
+     * @return the batch size
+     */
+    int getBatchSize();
+
+}
@@ -3,7 +3,6 @@
  */
 package org.mongo.viewer.service;
 
-import java.util.Map;
 import java.util.Properties;
 
 import org.mongo.viewer.util.PropertyLoader;
@@ -15,7 +14,12 @@ import org.mongo.viewer.util.SimpleCache;
  */
 public class ServiceLocator {
 
-    static Map<String, Service> cache = new SimpleCache<String, Service>();
+    /**
+     * Services own pools and caches, they must live as long as the
+     * application and are never aged out.
+     */
+    static SimpleCache<String, Service> cache = new SimpleCache<String, Service>(
+            "services", SimpleCache.DEFAULT_SIZE, Integer.MAX_VALUE);
     private static Properties services = PropertyLoader
             .loadProperties("services");
 
@@ -34,10 +38,18 @@ public class ServiceLocator {
      */
     public static <T> T lookup(String key, Class<T> type, boolean init) {
         Service s = cache.get(key);
-
         if (null == s) {
-            s = getService(key);
-            cache.put(key, s);
+            // only creation is serialized, so that a service is created once
+            synchronized (cache) {
+                s = cache.get(key);
+
+                if (null == s) {
+                    long start = System.nanoTime();
+                    s = getService(key);
+                    cache.getStats().recordLoad(System.nanoTime() - start);
+                    cache.put(key, s);
+                }
+            }
         }
 
         if (init) {
@@ -63,6 +75,19 @@ public class ServiceLocator {
         return lookup(key, type, true);
     }
 
+    /**
+     * Destroys every service looked up so far. Called when the web
+     * application stops.
+     */
+    public static void destroyAll() {
+        synchronized (cache) {
+            for (Service s : cache.values()) {
+                s.destroy();
+            }
+            cache.clear();
+        }
+    }
+
     /**
      * Gets the service.
      * 
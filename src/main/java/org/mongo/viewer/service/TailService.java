@@ -0,0 +1,77 @@
+package org.mongo.viewer.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.mongo.viewer.exception.ServiceException;
+import org.mongo.viewer.vo.DataBaseInfo;
+
+import com.mongodb.DBObject;
+
+/**
+ * The Interface TailService. Follows the new documents of a collection, like
+ * <code>tail -f</code>. Watchers of the same collection and filter share one
+ * upstream poll.
+ */
+public interface TailService extends Service {
+
+    /**
+     * Subscribes to the documents inserted from now on that match the query.
+     *
+     * @param info
+     *            the connection info
+     * @param collection
+     *            the collection, null for the SysLog partition of the current
+     *            month
+     * @param query
+     *            the filter, may be blank
+     * @return the subscription, to be closed by the caller
+     * @throws ServiceException
+     *             if the database cannot be reached
+     */
+    Subscription subscribe(DataBaseInfo info, String collection, String query)
+            throws ServiceException;
+
+    /**
+     * A subscriber's view of a feed. New documents are buffered up to a
+     * bound; a subscriber that falls behind by more than that is dropped
+     * rather than slowing down the feed.
+     */
+    public interface Subscription {
+
+        /**
+         * Waits for the next document.
+         *
+         * @param timeout
+         *            the longest wait
+         * @param unit
+         *            the unit of the timeout
+         * @return the document, null if none came in time or the
+         *         subscription is over
+         * @throws InterruptedException
+         *             if interrupted while waiting
+         */
+        DBObject poll(long timeout, TimeUnit unit) throws InterruptedException;
+
+        /**
+         * Tells whether the subscriber was dropped for falling behind.
+         *
+         * @return true if dropped
+         */
+        boolean isDropped();
+
+        /**
+         * Tells whether the subscription is over, because it was closed,
+         * dropped and drained, or the service stopped.
+         *
+         * @return true if no more documents will come
+         */
+        boolean isClosed();
+
+        /**
+         * Ends the subscription.
+         */
+        void close();
+
+    }
+
+}
@@ -0,0 +1,166 @@
+package org.mongo.viewer.service.impl;
+
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mongo.viewer.exception.ServiceException;
+import org.mongo.viewer.service.AggregationService;
+import org.mongo.viewer.service.PartitionCatalog;
+import org.mongo.viewer.service.QueryProfiler;
+import org.mongo.viewer.service.ServiceLocator;
+import org.mongo.viewer.util.AggregationUtil;
+import org.mongo.viewer.util.MongoUtil;
+import org.mongo.viewer.util.MongoUtil.Workload;
+import org.mongo.viewer.util.QueryContext;
+import org.mongo.viewer.util.QueryTimer;
+import org.mongo.viewer.util.QueryUtil;
+import org.mongo.viewer.vo.DataBaseInfo;
+import org.mongo.viewer.vo.TimeBucket;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.Cursor;
+import com.mongodb.DB;
+import com.mongodb.DBObject;
+import com.mongodb.ReadPreference;
+
+/**
+ * The Class AggregationServiceImpl.
+ *
+ * Runs the pipeline on every partition the range routes to and adds up the
+ * counts. Buckets are aligned on UTC while partitions are months of the
+ * viewer's time zone, so a bucket may come from two partitions.
+ */
+public class AggregationServiceImpl implements AggregationService {
+
+    private static Log log = LogFactory.getLog(AggregationServiceImpl.class);
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.mongo.viewer.service.Service#init()
+     */
+    @Override
+    public void init() {
+        // nothing to do, connections are pooled by MongoUtil
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.mongo.viewer.service.Service#destroy()
+     */
+    @Override
+    public void destroy() {
+        // nothing to do, connections are pooled by MongoUtil
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.mongo.viewer.service.AggregationService#countEvents(org.mongo.viewer
+     * .vo.DataBaseInfo, java.lang.String, java.lang.String,
+     * org.mongo.viewer.vo.TimeBucket, java.util.Date, java.util.Date)
+     */
+    @Override
+    public List<DBObject> countEvents(DataBaseInfo info, String query,
+            String groupBy, TimeBucket bucket, Date from, Date to)
+            throws ServiceException {
+        if (null == from || null == to) {
+            throw new IllegalArgumentException(
+                    "from and to are required to count events");
+        }
+        DBObject match = QueryUtil.withTimeRange(QueryUtil.parse(query), from,
+                to);
+        List<DBObject> pipeline = AggregationUtil.countPipeline(match,
+                groupBy, bucket);
+        List<String> partitions = ServiceLocator.lookup("partitionCatalog",
+                PartitionCatalog.class).route(info, from, to);
+        DB db = getDB(info);
+        ReadPreference readPreference = MongoUtil.getReadPreference(info,
+                Workload.SCAN);
+        // bucket -> group value -> count
+        Map<Date, Map<Object, Long>> counts = new TreeMap<Date, Map<Object, Long>>();
+        for (String partition : partitions) {
+            log.debug("Counting " + partition + " with " + pipeline);
+            QueryTimer timer = QueryTimer.start("aggregate", partition);
+            Cursor results;
+            try {
+                // inline, so that it runs within the request's deadline
+                results = db.getCollection(partition).aggregate(pipeline,
+                        QueryContext.aggregationOptions(), readPreference);
+            } finally {
+                // the $match decides the cost, explain it as a find
+                ServiceLocator.lookup("profiler", QueryProfiler.class)
+                        .record(info, "aggregate", partition, match, null,
+                                null, timer.stop());
+            }
+            try {
+                add(counts, results);
+            } finally {
+                results.close();
+            }
+        }
+        return toRows(counts, groupBy);
+    }
+
+    private void add(Map<Date, Map<Object, Long>> counts, Cursor results) {
+        while (results.hasNext()) {
+            DBObject result = results.next();
+            Date time = AggregationUtil.getBucket(result);
+            Map<Object, Long> bucketCounts = counts.get(time);
+            if (null == bucketCounts) {
+                bucketCounts = new HashMap<Object, Long>();
+                counts.put(time, bucketCounts);
+            }
+            Object key = AggregationUtil.getKey(result);
+            Long count = bucketCounts.get(key);
+            bucketCounts.put(key, AggregationUtil.getCount(result)
+                    + (null == count ? 0 : count));
+        }
+    }
+
+    private List<DBObject> toRows(Map<Date, Map<Object, Long>> counts,
+            String groupBy) {
+        List<DBObject> rows = new ArrayList<DBObject>();
+        for (Map.Entry<Date, Map<Object, Long>> bucket : counts.entrySet()) {
+            List<Map.Entry<Object, Long>> entries = new ArrayList<Map.Entry<Object, Long>>(
+                    bucket.getValue().entrySet());
+            Collections.sort(entries, new Comparator<Map.Entry<Object, Long>>() {
+                @Override
+                public int compare(Map.Entry<Object, Long> a,
+                        Map.Entry<Object, Long> b) {
+                    return b.getValue().compareTo(a.getValue());
+                }
+            });
+            for (Map.Entry<Object, Long> entry : entries) {
+                BasicDBObject row = new BasicDBObject(AggregationUtil.TIME,
+                        bucket.getKey());
+                if (null != groupBy) {
+                    row.append(groupBy, entry.getKey());
+                }
+                rows.add(row.append(AggregationUtil.COUNT, entry.getValue()));
+            }
+        }
+        return rows;
+    }
+
+    private DB getDB(DataBaseInfo info) throws ServiceException {
+        try {
+            return MongoUtil.getDB(info);
+        } catch (UnknownHostException e) {
+            throw new ServiceException("Cannot connect to " + info.getHost(),
+                    e);
+        }
+    }
+
+}
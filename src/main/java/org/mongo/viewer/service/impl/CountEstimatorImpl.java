@@ -0,0 +1,495 @@
+package org.mongo.viewer.service.impl;
+
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mongo.viewer.exception.ServiceException;
+import org.mongo.viewer.service.CountEstimator;
+import org.mongo.viewer.service.QueryProfiler;
+import org.mongo.viewer.service.ServiceLocator;
+import org.mongo.viewer.util.CountUtil;
+import org.mongo.viewer.util.DaemonThreadFactory;
+import org.mongo.viewer.util.MongoUtil;
+import org.mongo.viewer.util.MongoUtil.Workload;
+import org.mongo.viewer.util.PropertyLoader;
+import org.mongo.viewer.util.QueryTimer;
+import org.mongo.viewer.util.QueryUtil;
+import org.mongo.viewer.util.SimpleCache;
+import org.mongo.viewer.vo.CountEstimate;
+import org.mongo.viewer.vo.CountEstimate.Method;
+import org.mongo.viewer.vo.DataBaseInfo;
+import org.mongo.viewer.vo.QueryKey;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.CommandResult;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import com.mongodb.ReadPreference;
+
+/**
+ * The Class CountEstimatorImpl.
+ *
+ * A filtered estimate samples <code>count.sampleWindows</code> windows of
+ * <code>count.sampleSize</code> consecutive documents spread evenly over the
+ * timestamps the filter can match, that is over the whole collection or
+ * within the filter's own <code>timestamp</code> range, counts the matching
+ * ones in each window on the server, and scales the share up to the
+ * documents of that range. Ranges of at most
+ * <code>count.smallCollection</code> documents are counted exactly instead.
+ * An exact count runs as <code>count.exactChunks</code> counts over slices
+ * of the same range, which gives its progress and lets it stop between
+ * slices; cancelling it kills the slice being counted. Every count and
+ * every bound lookup gets <code>count.maxTime</code> millis on the server,
+ * and the counts are timed and profiled. Samples and exact counts are
+ * cached per normalized query for <code>count.ttl</code> seconds.
+ */
+public class CountEstimatorImpl implements CountEstimator {
+
+    private static Log log = LogFactory.getLog(CountEstimatorImpl.class);
+
+    private static Properties config = PropertyLoader.loadProperties("config");
+
+    private int threads = PropertyLoader.getInt(config, "count.threads", 2);
+
+    private int sampleWindows = PropertyLoader.getInt(config,
+            "count.sampleWindows", 4);
+
+    private int sampleSize = PropertyLoader.getInt(config, "count.sampleSize",
+            250);
+
+    private long smallCollection = PropertyLoader.getLong(config,
+            "count.smallCollection", 100000);
+
+    private int exactChunks = PropertyLoader.getInt(config,
+            "count.exactChunks", 32);
+
+    private long maxTime = PropertyLoader.getLong(config, "count.maxTime",
+            60000);
+
+    /** Samples and exact counts; updates are serialized on it. */
+    private final SimpleCache<QueryKey, CountEstimate> counts = new SimpleCache<QueryKey, CountEstimate>(
+            "counts", PropertyLoader.getInt(config, "count.maxEntries", 1000),
+            PropertyLoader.getInt(config, "count.ttl", 300));
+
+    /** The queries being sampled. */
+    private final ConcurrentMap<QueryKey, Boolean> sampling = new ConcurrentHashMap<QueryKey, Boolean>();
+
+    private final ConcurrentMap<QueryKey, Job> jobsByKey = new ConcurrentHashMap<QueryKey, Job>();
+
+    private final ConcurrentMap<String, Job> jobsById = new ConcurrentHashMap<String, Job>();
+
+    private ThreadPoolExecutor executor;
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.mongo.viewer.service.Service#init()
+     */
+    @Override
+    public synchronized void init() {
+        if (null == executor) {
+            executor = new ThreadPoolExecutor(threads, threads, 60,
+                    TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new DaemonThreadFactory("count"));
+            executor.allowCoreThreadTimeOut(true);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.mongo.viewer.service.Service#destroy()
+     */
+    @Override
+    public synchronized void destroy() {
+        if (null != executor) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        for (Job job : jobsById.values()) {
+            job.cancelled = true;
+        }
+        jobsById.clear();
+        jobsByKey.clear();
+        sampling.clear();
+        synchronized (counts) {
+            counts.clear();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.mongo.viewer.service.CountEstimator#estimate(org.mongo.viewer.vo.
+     * DataBaseInfo, java.lang.String, java.lang.String)
+     */
+    @Override
+    public CountEstimate estimate(final DataBaseInfo info, String collection,
+            String query) throws ServiceException {
+        final DBObject filter = QueryUtil.parse(query);
+        final DBCollection target = getCollection(info, collection);
+        final ReadPreference readPreference = MongoUtil.getReadPreference(
+                info, Workload.SCAN);
+        if (filter.keySet().isEmpty()) {
+            // answered from the collection metadata
+            return new CountEstimate(target.getCount(readPreference),
+                    Method.EXACT);
+        }
+        final QueryKey key = key(info, collection, filter);
+        CountEstimate cached = getCached(key);
+        if (null != cached && cached.getMethod() == Method.EXACT) {
+            return cached;
+        }
+        Job job = jobsByKey.get(key);
+        if (null != job) {
+            CountEstimate base = (null != cached) ? cached
+                    : new CountEstimate(target.getCount(readPreference),
+                            Method.UPPER_BOUND);
+            return new CountEstimate(base.getCount(), base.getMethod(), true,
+                    job.id, job.getProgress());
+        }
+        if (null != cached) {
+            return cached;
+        }
+        final long total = target.getCount(readPreference);
+        if (null == sampling.putIfAbsent(key, Boolean.TRUE)) {
+            getExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        putCached(key, sample(info, target, filter, total,
+                                readPreference));
+                    } catch (MongoException e) {
+                        log.warn("Cannot sample " + key, e);
+                    } finally {
+                        sampling.remove(key);
+                    }
+                }
+            });
+        }
+        return new CountEstimate(total, Method.UPPER_BOUND, true, null, 0);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.mongo.viewer.service.CountEstimator#countExactly(org.mongo.viewer
+     * .vo.DataBaseInfo, java.lang.String, java.lang.String)
+     */
+    @Override
+    public CountEstimate countExactly(DataBaseInfo info, String collection,
+            String query) throws ServiceException {
+        DBObject filter = QueryUtil.parse(query);
+        DBCollection target = getCollection(info, collection);
+        ReadPreference readPreference = MongoUtil.getReadPreference(info,
+                Workload.SCAN);
+        if (filter.keySet().isEmpty()) {
+            return new CountEstimate(target.getCount(readPreference),
+                    Method.EXACT);
+        }
+        QueryKey key = key(info, collection, filter);
+        CountEstimate cached = getCached(key);
+        if (null != cached && cached.getMethod() == Method.EXACT) {
+            return cached;
+        }
+        Job job = jobsByKey.get(key);
+        if (null == job) {
+            Job created = new Job(info, key, target, filter, readPreference);
+            job = jobsByKey.putIfAbsent(key, created);
+            if (null == job) {
+                job = created;
+                jobsById.put(job.id, job);
+                getExecutor().execute(job);
+            }
+        }
+        long base = (null != cached) ? cached.getCount() : target
+                .getCount(readPreference);
+        return new CountEstimate(base, null != cached ? cached.getMethod()
+                : Method.UPPER_BOUND, true, job.id, job.getProgress());
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.mongo.viewer.service.CountEstimator#cancel(java.lang.String)
+     */
+    @Override
+    public boolean cancel(String job) {
+        Job running = jobsById.remove(job);
+        if (null == running) {
+            return false;
+        }
+        running.cancelled = true;
+        running.kill();
+        jobsByKey.remove(running.key, running);
+        log.debug("Cancelled exact count " + running.key);
+        return true;
+    }
+
+    private CountEstimate sample(DataBaseInfo info, DBCollection collection,
+            DBObject filter, long total, ReadPreference readPreference) {
+        // the windows must fall where the filter can match, so a filter on
+        // the last hours is sampled over those hours and scaled up to the
+        // documents in them, not to the whole collection
+        Date[] timeRange = QueryUtil.getTimeRange(filter);
+        DBObject inRange = dated(timeRange);
+        long population = (null == timeRange) ? total : count(info,
+                collection, inRange, readPreference);
+        if (population <= smallCollection) {
+            return new CountEstimate(count(info, collection, filter,
+                    readPreference), Method.EXACT);
+        }
+        Date min = getBound(collection, inRange, 1, readPreference);
+        Date max = getBound(collection, inRange, -1, readPreference);
+        if (null == min) {
+            // nothing to spread the samples over
+            return new CountEstimate(population, Method.UPPER_BOUND);
+        }
+        Date to = (null == timeRange) ? null : timeRange[1];
+        long sampled = 0;
+        long matched = 0;
+        for (long time : CountUtil.getWindowStarts(min.getTime(),
+                max.getTime(), sampleWindows)) {
+            Date start = new Date(time);
+            DBObject tail = QueryUtil.withTimeRange(new BasicDBObject(),
+                    start, to);
+            DBCursor last = collection
+                    .find(tail,
+                            new BasicDBObject(QueryUtil.TIMESTAMP, 1).append(
+                                    QueryUtil.ID, 0))
+                    .sort(new BasicDBObject(QueryUtil.TIMESTAMP, 1))
+                    .skip(sampleSize - 1).limit(1)
+                    .maxTime(maxTime, TimeUnit.MILLISECONDS);
+            last.setReadPreference(readPreference);
+            DBObject window = tail;
+            try {
+                if (last.hasNext()) {
+                    window = new BasicDBObject(QueryUtil.TIMESTAMP,
+                            new BasicDBObject("$gte", start).append("$lte",
+                                    last.next().get(QueryUtil.TIMESTAMP)));
+                }
+            } finally {
+                last.close();
+            }
+            sampled += count(info, collection, window, readPreference);
+            matched += count(info, collection, new BasicDBObject("$and",
+                    Arrays.asList(filter, window)), readPreference);
+        }
+        long estimate = CountUtil.scale(population, matched, sampled);
+        if (estimate < 0) {
+            return new CountEstimate(population, Method.UPPER_BOUND);
+        }
+        return new CountEstimate(estimate, Method.SAMPLED);
+    }
+
+    /**
+     * The documents with a date timestamp within a range.
+     */
+    private DBObject dated(Date[] timeRange) {
+        DBObject dated = new BasicDBObject(QueryUtil.TIMESTAMP,
+                new BasicDBObject("$type", 9));
+        if (null == timeRange) {
+            return dated;
+        }
+        return QueryUtil.withTimeRange(dated, timeRange[0], timeRange[1]);
+    }
+
+    private Date getBound(DBCollection collection, DBObject dated,
+            int direction, ReadPreference readPreference) {
+        DBCursor cursor = collection
+                .find(dated,
+                        new BasicDBObject(QueryUtil.TIMESTAMP, 1).append(
+                                QueryUtil.ID, 0))
+                .sort(new BasicDBObject(QueryUtil.TIMESTAMP, direction))
+                .limit(1).maxTime(maxTime, TimeUnit.MILLISECONDS);
+        cursor.setReadPreference(readPreference);
+        try {
+            return cursor.hasNext() ? (Date) cursor.next().get(
+                    QueryUtil.TIMESTAMP) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Counts the matching documents with a count command bounded by
+     * <code>count.maxTime</code>, timed and profiled like the other queries.
+     */
+    private long count(DataBaseInfo info, DBCollection collection,
+            DBObject query, ReadPreference readPreference) {
+        QueryTimer timer = QueryTimer.start("count", collection.getName());
+        try {
+            CommandResult result = collection.getDB().command(
+                    new BasicDBObject("count", collection.getName()).append(
+                            "query", query).append("maxTimeMS", maxTime),
+                    readPreference);
+            if (!result.ok()
+                    && "ns does not exist".equals(result.getErrorMessage())) {
+                return 0;
+            }
+            result.throwOnError();
+            return ((Number) result.get("n")).longValue();
+        } finally {
+            ServiceLocator.lookup("profiler", QueryProfiler.class).record(
+                    info, "count", collection.getName(), query, null, null,
+                    timer.stop());
+        }
+    }
+
+    private QueryKey key(DataBaseInfo info, String collection, DBObject filter) {
+        return new QueryKey(info, collection, QueryUtil.normalize(filter),
+                null, null, "count");
+    }
+
+    private CountEstimate getCached(QueryKey key) {
+        return counts.get(key);
+    }
+
+    private void putCached(QueryKey key, CountEstimate estimate) {
+        synchronized (counts) {
+            CountEstimate cached = counts.get(key);
+            // never replace an exact count by a sample
+            if (null == cached || cached.getMethod() != Method.EXACT
+                    || estimate.getMethod() == Method.EXACT) {
+                counts.put(key, estimate);
+            }
+        }
+    }
+
+    private DBCollection getCollection(DataBaseInfo info, String collection)
+            throws ServiceException {
+        try {
+            return MongoUtil.getDB(info).getCollection(collection);
+        } catch (UnknownHostException e) {
+            throw new ServiceException("Cannot connect to " + info.getHost(),
+                    e);
+        }
+    }
+
+    private synchronized ThreadPoolExecutor getExecutor() {
+        init();
+        return executor;
+    }
+
+    /**
+     * An exact count, one timestamp slice at a time.
+     */
+    private class Job implements Runnable {
+        final String id = UUID.randomUUID().toString();
+        final DataBaseInfo info;
+        final QueryKey key;
+        final DBCollection collection;
+        final DBObject filter;
+        final ReadPreference readPreference;
+        volatile boolean cancelled;
+        volatile int slices = 1;
+        volatile int done;
+        /** The query of the slice being counted, null between slices. */
+        volatile DBObject counting;
+
+        Job(DataBaseInfo info, QueryKey key, DBCollection collection,
+                DBObject filter, ReadPreference readPreference) {
+            this.info = info;
+            this.key = key;
+            this.collection = collection;
+            this.filter = filter;
+            this.readPreference = readPreference;
+        }
+
+        double getProgress() {
+            return (double) done / slices;
+        }
+
+        @Override
+        public void run() {
+            try {
+                List<DBObject> ranges = getSlices();
+                slices = ranges.size();
+                long count = 0;
+                for (DBObject range : ranges) {
+                    if (cancelled) {
+                        return;
+                    }
+                    counting = range.keySet().isEmpty() ? filter
+                            : new BasicDBObject("$and", Arrays.asList(filter,
+                                    range));
+                    count += count(info, collection, counting,
+                            readPreference);
+                    counting = null;
+                    done++;
+                }
+                if (!cancelled) {
+                    putCached(key, new CountEstimate(count, Method.EXACT));
+                }
+            } catch (MongoException e) {
+                if (cancelled) {
+                    log.debug("Exact count of " + key + " stopped", e);
+                } else {
+                    log.warn("Exact count of " + key + " failed", e);
+                }
+            } finally {
+                jobsByKey.remove(key, this);
+                jobsById.remove(id, this);
+            }
+        }
+
+        /**
+         * Kills the slice being counted, if any.
+         */
+        void kill() {
+            DBObject query = counting;
+            if (null == query) {
+                return;
+            }
+            try {
+                MongoUtil.killCounts(collection.getDB(), collection.getName(),
+                        query);
+            } catch (MongoException e) {
+                log.warn("Cannot kill the exact count of " + key, e);
+            }
+        }
+
+        private List<DBObject> getSlices() {
+            List<DBObject> ranges = new ArrayList<DBObject>();
+            Date[] timeRange = QueryUtil.getTimeRange(filter);
+            DBObject dated = dated(timeRange);
+            Date min = getBound(collection, dated, 1, readPreference);
+            Date max = getBound(collection, dated, -1, readPreference);
+            if (null == min) {
+                ranges.add(null == timeRange ? new BasicDBObject() : dated);
+                return ranges;
+            }
+            long[] bounds = CountUtil.getSliceBounds(min.getTime(),
+                    max.getTime() + 1, exactChunks);
+            for (int i = 0; i < bounds.length - 1; i++) {
+                ranges.add(new BasicDBObject(QueryUtil.TIMESTAMP,
+                        new BasicDBObject("$gte", new Date(bounds[i]))
+                                .append("$lt", new Date(bounds[i + 1]))));
+            }
+            if (null == timeRange) {
+                // documents without a date timestamp are in no slice
+                ranges.add(new BasicDBObject(QueryUtil.TIMESTAMP,
+                        new BasicDBObject("$not", new BasicDBObject("$type",
+                                9))));
+            }
+            return ranges;
+        }
+    }
+
+}
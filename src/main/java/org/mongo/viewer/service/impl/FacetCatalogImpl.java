@@ -0,0 +1,226 @@
+package org.mongo.viewer.service.impl;
+
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mongo.viewer.exception.ServiceException;
+import org.mongo.viewer.service.FacetCatalog;
+import org.mongo.viewer.service.QueryProfiler;
+import org.mongo.viewer.service.ServiceLocator;
+import org.mongo.viewer.util.AggregationUtil;
+import org.mongo.viewer.util.DaemonThreadFactory;
+import org.mongo.viewer.util.MongoUtil;
+import org.mongo.viewer.util.MongoUtil.Workload;
+import org.mongo.viewer.util.PartitionUtil;
+import org.mongo.viewer.util.PropertyLoader;
+import org.mongo.viewer.util.QueryTimer;
+import org.mongo.viewer.util.QueryUtil;
+import org.mongo.viewer.util.SimpleCache;
+import org.mongo.viewer.vo.DataBaseInfo;
+import org.mongo.viewer.vo.FacetValue;
+import org.mongo.viewer.vo.Facets;
+import org.mongo.viewer.vo.QueryKey;
+
+import com.mongodb.AggregationOptions;
+import com.mongodb.BasicDBObject;
+import com.mongodb.Cursor;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import com.mongodb.ReadPreference;
+
+/**
+ * The Class FacetCatalogImpl.
+ *
+ * The fields in <code>facet.fields</code> are grouped one aggregation each,
+ * keeping the <code>facet.limit</code> most frequent values with their
+ * counts. Facets are recomputed once older than <code>facet.ttl</code>
+ * seconds, on <code>facet.threads</code> background threads and never twice
+ * at the same time. A monthly partition whose month was over when its
+ * facets were computed is never recomputed. The facets of at most
+ * <code>facet.maxEntries</code> collections are kept, least recently used
+ * first out, and only collections that exist are computed. Each
+ * aggregation gets <code>facet.maxTime</code> millis on the server and is
+ * timed and profiled.
+ */
+public class FacetCatalogImpl implements FacetCatalog {
+
+    private static Log log = LogFactory.getLog(FacetCatalogImpl.class);
+
+    private static Properties config = PropertyLoader.loadProperties("config");
+
+    private String[] fields = QueryUtil.splitFields(config.getProperty(
+            "facet.fields", "type,subtype,hostName,systemId,version,transport"));
+
+    private int limit = PropertyLoader.getInt(config, "facet.limit", 100);
+
+    private long ttl = PropertyLoader.getLong(config, "facet.ttl", 600) * 1000;
+
+    private int threads = PropertyLoader.getInt(config, "facet.threads", 1);
+
+    private long maxTime = PropertyLoader.getLong(config, "facet.maxTime",
+            60000);
+
+    /** Aged by the ttl above, a closed partition's facets never are. */
+    private final SimpleCache<QueryKey, Facets> facets = new SimpleCache<QueryKey, Facets>(
+            "facets", PropertyLoader.getInt(config, "facet.maxEntries", 200),
+            Integer.MAX_VALUE);
+
+    /** The collections being computed. */
+    private final ConcurrentMap<QueryKey, Boolean> computing = new ConcurrentHashMap<QueryKey, Boolean>();
+
+    private ThreadPoolExecutor executor;
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.mongo.viewer.service.Service#init()
+     */
+    @Override
+    public synchronized void init() {
+        if (null == executor) {
+            executor = new ThreadPoolExecutor(threads, threads, 60,
+                    TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new DaemonThreadFactory("facets"));
+            executor.allowCoreThreadTimeOut(true);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.mongo.viewer.service.Service#destroy()
+     */
+    @Override
+    public synchronized void destroy() {
+        if (null != executor) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        computing.clear();
+        facets.clear();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.mongo.viewer.service.FacetCatalog#getFacets(org.mongo.viewer.vo.
+     * DataBaseInfo, java.lang.String)
+     */
+    @Override
+    public Facets getFacets(DataBaseInfo info, final String collection)
+            throws ServiceException {
+        final QueryKey key = new QueryKey(info, collection, null, null, null,
+                "facets");
+        Facets known = facets.get(key);
+        if (null != known
+                && (known.isClosed() || System.currentTimeMillis()
+                        - known.getComputed().getTime() < ttl)) {
+            return known;
+        }
+        if (null == known && !exists(info, collection)) {
+            throw new IllegalArgumentException("Unknown collection "
+                    + collection);
+        }
+        if (null == computing.putIfAbsent(key, Boolean.TRUE)) {
+            final DataBaseInfo connection = new DataBaseInfo(info);
+            getExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        facets.put(key, compute(connection, collection));
+                    } catch (UnknownHostException e) {
+                        log.warn("Cannot connect to " + connection.getHost(), e);
+                    } catch (MongoException e) {
+                        log.warn("Cannot compute the facets of " + collection,
+                                e);
+                    } finally {
+                        computing.remove(key);
+                    }
+                }
+            });
+        }
+        return known;
+    }
+
+    private boolean exists(DataBaseInfo info, String collection)
+            throws ServiceException {
+        try {
+            return MongoUtil.getDB(info).collectionExists(collection);
+        } catch (UnknownHostException e) {
+            throw new ServiceException("Cannot connect to " + info.getHost(),
+                    e);
+        }
+    }
+
+    private Facets compute(DataBaseInfo info, String collection)
+            throws UnknownHostException {
+        Date started = new Date();
+        // decided up front, documents may still arrive while we group
+        Date end = PartitionUtil.getPartitionEnd(collection);
+        boolean closed = null != end && !started.before(end);
+        DBCollection target = MongoUtil.getDB(info).getCollection(collection);
+        ReadPreference readPreference = MongoUtil.getReadPreference(info,
+                Workload.SCAN);
+        Map<String, List<FacetValue>> values = new LinkedHashMap<String, List<FacetValue>>();
+        Set<String> truncated = new LinkedHashSet<String>();
+        AggregationOptions options = AggregationOptions.builder()
+                .outputMode(AggregationOptions.OutputMode.INLINE)
+                .maxTime(maxTime, TimeUnit.MILLISECONDS).build();
+        for (String field : fields) {
+            List<FacetValue> top = new ArrayList<FacetValue>(limit);
+            QueryTimer timer = QueryTimer.start("aggregate", collection);
+            Cursor results;
+            try {
+                results = target.aggregate(
+                        AggregationUtil.topValuesPipeline(field, limit),
+                        options, readPreference);
+            } finally {
+                // the whole collection is grouped, explain it as a find
+                ServiceLocator.lookup("profiler", QueryProfiler.class)
+                        .record(info, "aggregate", collection,
+                                new BasicDBObject(),
+                                new BasicDBObject(field, 1), null,
+                                timer.stop());
+            }
+            try {
+                while (results.hasNext()) {
+                    DBObject result = results.next();
+                    if (top.size() == limit) {
+                        truncated.add(field);
+                        break;
+                    }
+                    top.add(new FacetValue(result.get("_id"),
+                            AggregationUtil.getCount(result)));
+                }
+            } finally {
+                results.close();
+            }
+            values.put(field, top);
+        }
+        log.debug("Computed the facets of " + collection + " in "
+                + (System.currentTimeMillis() - started.getTime()) + "ms");
+        return new Facets(collection, started, closed, values, truncated);
+    }
+
+    private synchronized ThreadPoolExecutor getExecutor() {
+        init();
+        return executor;
+    }
+
+}
@@ -0,0 +1,300 @@
+package org.mongo.viewer.service.impl;
+
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mongo.viewer.exception.ServiceException;
+import org.mongo.viewer.service.IndexAdvisor;
+import org.mongo.viewer.util.IndexAdvisorUtil;
+import org.mongo.viewer.util.MongoUtil;
+import org.mongo.viewer.util.PartitionUtil;
+import org.mongo.viewer.util.PropertyLoader;
+import org.mongo.viewer.vo.DataBaseInfo;
+import org.mongo.viewer.vo.IndexAdvice;
+import org.mongo.viewer.vo.QueryShape;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.DBObject;
+import com.mongodb.util.JSON;
+
+/**
+ * The Class IndexAdvisorImpl.
+ *
+ * Keeps the count and total time of every query shape per connection and
+ * collection, up to <code>advisor.maxShapes</code> shapes per connection.
+ * Shapes seen fewer than <code>advisor.minCount</code> times are not worth an
+ * index. The work an index would save is estimated as the time spent on its
+ * shapes times the share of them the existing indexes do not serve.
+ */
+public class IndexAdvisorImpl implements IndexAdvisor {
+
+    private static Log log = LogFactory.getLog(IndexAdvisorImpl.class);
+
+    private static Properties config = PropertyLoader.loadProperties("config");
+
+    /** How the monthly partitions are named in the advice. */
+    private static final String PARTITIONS = PartitionUtil.PREFIX + "*";
+
+    private int maxShapes = PropertyLoader.getInt(config, "advisor.maxShapes",
+            500);
+
+    private long minCount = PropertyLoader.getLong(config, "advisor.minCount",
+            10);
+
+    private final ConcurrentMap<DataBaseInfo, Observations> observations = new ConcurrentHashMap<DataBaseInfo, Observations>();
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.mongo.viewer.service.Service#init()
+     */
+    @Override
+    public void init() {
+        // observations start empty
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.mongo.viewer.service.Service#destroy()
+     */
+    @Override
+    public void destroy() {
+        observations.clear();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.mongo.viewer.service.IndexAdvisor#observe(org.mongo.viewer.vo.
+     * DataBaseInfo, java.lang.String, com.mongodb.DBObject,
+     * com.mongodb.DBObject, long)
+     */
+    @Override
+    public void observe(DataBaseInfo info, String collection, DBObject query,
+            DBObject sort, long millis) {
+        QueryShape shape = IndexAdvisorUtil.shape(query, sort);
+        if (null == shape || shape.isEmpty()) {
+            return;
+        }
+        Observations seen = observations.get(info);
+        if (null == seen) {
+            Observations created = new Observations();
+            seen = observations.putIfAbsent(new DataBaseInfo(info), created);
+            if (null == seen) {
+                seen = created;
+            }
+        }
+        seen.add(PartitionUtil.isPartition(collection) ? PARTITIONS
+                : collection, shape, millis, maxShapes);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.mongo.viewer.service.IndexAdvisor#getAdvice(org.mongo.viewer.vo.
+     * DataBaseInfo)
+     */
+    @Override
+    public List<IndexAdvice> getAdvice(DataBaseInfo info)
+            throws ServiceException {
+        Observations seen = observations.get(info);
+        if (null == seen) {
+            return Collections.emptyList();
+        }
+        DB db = getDB(info);
+        List<IndexAdvice> advice = new ArrayList<IndexAdvice>();
+        for (Map.Entry<String, Map<QueryShape, Stats>> collection : seen
+                .snapshot().entrySet()) {
+            String name = collection.getKey();
+            List<DBObject> indexes = getIndexKeys(db, PARTITIONS.equals(name)
+                    ? PartitionUtil.getCollectionName(new Date()) : name);
+            // shapes served by the same index make one piece of advice
+            Map<String, Builder> byIndex = new LinkedHashMap<String, Builder>();
+            for (Map.Entry<QueryShape, Stats> entry : collection.getValue()
+                    .entrySet()) {
+                Stats stats = entry.getValue();
+                if (stats.count < minCount) {
+                    continue;
+                }
+                double coverage = IndexAdvisorUtil.coverage(entry.getKey(),
+                        indexes);
+                if (coverage >= 1) {
+                    continue;
+                }
+                String index = JSON.serialize(IndexAdvisorUtil
+                        .recommend(entry.getKey()));
+                Builder builder = byIndex.get(index);
+                if (null == builder) {
+                    builder = new Builder();
+                    byIndex.put(index, builder);
+                }
+                builder.add(entry.getKey(), stats, coverage);
+            }
+            for (Map.Entry<String, Builder> entry : byIndex.entrySet()) {
+                advice.add(entry.getValue().build(name, entry.getKey()));
+            }
+        }
+        Collections.sort(advice, new Comparator<IndexAdvice>() {
+            @Override
+            public int compare(IndexAdvice a, IndexAdvice b) {
+                return Double.compare(b.getScore(), a.getScore());
+            }
+        });
+        return advice;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.mongo.viewer.service.IndexAdvisor#createNextMonthIndexes(org.mongo
+     * .viewer.vo.DataBaseInfo)
+     */
+    @Override
+    public List<String> createNextMonthIndexes(DataBaseInfo info)
+            throws ServiceException {
+        DB db = getDB(info);
+        String current = PartitionUtil.getCollectionName(new Date());
+        String next = PartitionUtil.getCollectionName(PartitionUtil
+                .getPartitionEnd(current));
+        Map<String, DBObject> keys = new LinkedHashMap<String, DBObject>();
+        for (DBObject index : getIndexKeys(db, current)) {
+            keys.put(JSON.serialize(index), index);
+        }
+        for (IndexAdvice advice : getAdvice(info)) {
+            if (PARTITIONS.equals(advice.getCollection())) {
+                keys.put(advice.getIndex(),
+                        (DBObject) JSON.parse(advice.getIndex()));
+            }
+        }
+        List<String> created = new ArrayList<String>();
+        for (Map.Entry<String, DBObject> entry : keys.entrySet()) {
+            if (isIdIndex(entry.getValue())) {
+                continue;
+            }
+            log.info("Creating index " + entry.getKey() + " on " + next);
+            db.getCollection(next).createIndex(entry.getValue(),
+                    new BasicDBObject("background", true));
+            created.add(entry.getKey());
+        }
+        return created;
+    }
+
+    private static boolean isIdIndex(DBObject keys) {
+        return keys.keySet().size() == 1 && keys.containsField("_id");
+    }
+
+    private List<DBObject> getIndexKeys(DB db, String collection) {
+        List<DBObject> keys = new ArrayList<DBObject>();
+        if (!db.collectionExists(collection)) {
+            return keys;
+        }
+        for (DBObject index : db.getCollection(collection).getIndexInfo()) {
+            keys.add((DBObject) index.get("key"));
+        }
+        return keys;
+    }
+
+    private DB getDB(DataBaseInfo info) throws ServiceException {
+        try {
+            return MongoUtil.getDB(info);
+        } catch (UnknownHostException e) {
+            throw new ServiceException("Cannot connect to " + info.getHost(),
+                    e);
+        }
+    }
+
+    /**
+     * How often and how long a shape ran.
+     */
+    private static class Stats {
+        long count;
+        long totalMillis;
+    }
+
+    /**
+     * The shapes seen on one connection, by collection.
+     */
+    private static class Observations {
+        private final Map<String, Map<QueryShape, Stats>> collections = new HashMap<String, Map<QueryShape, Stats>>();
+        private int shapes;
+
+        synchronized void add(String collection, QueryShape shape,
+                long millis, int maxShapes) {
+            Map<QueryShape, Stats> byShape = collections.get(collection);
+            if (null == byShape) {
+                byShape = new HashMap<QueryShape, Stats>();
+                collections.put(collection, byShape);
+            }
+            Stats stats = byShape.get(shape);
+            if (null == stats) {
+                if (shapes >= maxShapes) {
+                    return;
+                }
+                stats = new Stats();
+                byShape.put(shape, stats);
+                shapes++;
+            }
+            stats.count++;
+            stats.totalMillis += millis;
+        }
+
+        synchronized Map<String, Map<QueryShape, Stats>> snapshot() {
+            Map<String, Map<QueryShape, Stats>> copy = new HashMap<String, Map<QueryShape, Stats>>();
+            for (Map.Entry<String, Map<QueryShape, Stats>> entry : collections
+                    .entrySet()) {
+                Map<QueryShape, Stats> byShape = new HashMap<QueryShape, Stats>();
+                for (Map.Entry<QueryShape, Stats> shape : entry.getValue()
+                        .entrySet()) {
+                    Stats stats = new Stats();
+                    stats.count = shape.getValue().count;
+                    stats.totalMillis = shape.getValue().totalMillis;
+                    byShape.put(shape.getKey(), stats);
+                }
+                copy.put(entry.getKey(), byShape);
+            }
+            return copy;
+        }
+    }
+
+    /**
+     * Adds up the shapes one index would serve.
+     */
+    private static class Builder {
+        final List<String> shapes = new ArrayList<String>();
+        long count;
+        long totalMillis;
+        double coverage = 1;
+        double score;
+
+        void add(QueryShape shape, Stats stats, double shapeCoverage) {
+            shapes.add(shape.toString());
+            count += stats.count;
+            totalMillis += stats.totalMillis;
+            coverage = Math.min(coverage, shapeCoverage);
+            score += stats.totalMillis * (1 - shapeCoverage);
+        }
+
+        IndexAdvice build(String collection, String index) {
+            return new IndexAdvice(collection, index, shapes, count,
+                    totalMillis, coverage, score);
+        }
+    }
+
+}
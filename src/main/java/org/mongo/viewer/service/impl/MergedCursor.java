@@ -0,0 +1,277 @@
+package org.mongo.viewer.service.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.mongo.viewer.util.QueryUtil;
+
+import com.mongodb.Cursor;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import com.mongodb.ServerAddress;
+
+/**
+ * A k-way merge of cursors that are each sorted in <code>(timestamp, _id)</code>
+ * order. Batches are fetched from every cursor on a shared pool, one batch
+ * ahead of the consumer, so the partitions are read concurrently while at most
+ * two batches per partition are held in memory. Fetch tasks are short, which
+ * keeps a bounded pool from deadlocking when there are more partitions than
+ * threads.
+ */
+class MergedCursor implements Cursor {
+
+    private final List<Source> sources;
+    private final PriorityQueue<Source> heads;
+    private final int limit;
+    private int returned = 0;
+    private boolean started = false;
+    private boolean closed = false;
+
+    /**
+     * @param cursors
+     *            the sorted cursors
+     * @param direction
+     *            the sort direction of the cursors, 1 or -1
+     * @param limit
+     *            the maximum number of documents, 0 for no limit
+     * @param batchSize
+     *            the number of documents fetched per task
+     * @param executor
+     *            the pool the fetches run on
+     */
+    MergedCursor(List<DBCursor> cursors, final int direction, int limit,
+            int batchSize, ExecutorService executor) {
+        this.limit = limit;
+        this.sources = new ArrayList<Source>(cursors.size());
+        this.heads = new PriorityQueue<Source>(Math.max(1, cursors.size()),
+                new Comparator<Source>() {
+                    @Override
+                    public int compare(Source a, Source b) {
+                        return direction
+                                * QueryUtil.compareKeyset(a.head(), b.head());
+                    }
+                });
+        for (DBCursor cursor : cursors) {
+            Source source = new Source(cursor, batchSize, executor);
+            sources.add(source);
+            // the first batches of every partition run in parallel
+            source.fetch();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.util.Iterator#hasNext()
+     */
+    @Override
+    public boolean hasNext() {
+        if (closed) {
+            return false;
+        }
+        if (!started) {
+            started = true;
+            for (Source source : sources) {
+                if (null != source.peek()) {
+                    heads.add(source);
+                }
+            }
+        }
+        if (heads.isEmpty() || (limit > 0 && returned >= limit)) {
+            close();
+            return false;
+        }
+        return true;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.util.Iterator#next()
+     */
+    @Override
+    public DBObject next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Source source = heads.poll();
+        DBObject document = source.take();
+        if (null != source.peek()) {
+            heads.add(source);
+        }
+        returned++;
+        return document;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.util.Iterator#remove()
+     */
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see com.mongodb.Cursor#close()
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        heads.clear();
+        for (Source source : sources) {
+            source.close();
+        }
+    }
+
+    /**
+     * A merged cursor has no single server side cursor.
+     *
+     * @return 0
+     */
+    @Override
+    public long getCursorId() {
+        return 0;
+    }
+
+    /**
+     * A merged cursor has no single server.
+     *
+     * @return null
+     */
+    @Override
+    public ServerAddress getServerAddress() {
+        return null;
+    }
+
+    /**
+     * One partition cursor along with its buffered batch and the fetch of the
+     * next one.
+     */
+    private static class Source implements Callable<List<DBObject>> {
+        private final DBCursor cursor;
+        private final int batchSize;
+        private final ExecutorService executor;
+        private final ArrayDeque<DBObject> buffer = new ArrayDeque<DBObject>();
+        private Future<List<DBObject>> pending;
+        private boolean exhausted = false;
+        private boolean running = false;
+        private boolean closed = false;
+
+        Source(DBCursor cursor, int batchSize, ExecutorService executor) {
+            this.cursor = cursor;
+            this.batchSize = Math.max(1, batchSize);
+            this.executor = executor;
+        }
+
+        /**
+         * Starts fetching the next batch.
+         */
+        void fetch() {
+            pending = executor.submit(this);
+        }
+
+        /**
+         * The buffered head, never blocks.
+         */
+        DBObject head() {
+            return buffer.peek();
+        }
+
+        /**
+         * The head, waiting for the next batch if the buffer is empty.
+         */
+        DBObject peek() {
+            if (buffer.isEmpty() && !exhausted) {
+                fill();
+            }
+            return buffer.peek();
+        }
+
+        DBObject take() {
+            return buffer.poll();
+        }
+
+        private void fill() {
+            List<DBObject> batch;
+            try {
+                batch = pending.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MongoException("Interrupted while reading "
+                        + cursor.getCollection().getName());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new MongoException("Cannot read "
+                        + cursor.getCollection().getName(), e.getCause());
+            }
+            pending = null;
+            buffer.addAll(batch);
+            if (batch.size() < batchSize) {
+                exhausted = true;
+            } else {
+                // read ahead while this batch is being merged
+                fetch();
+            }
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see java.util.concurrent.Callable#call()
+         */
+        @Override
+        public List<DBObject> call() {
+            synchronized (this) {
+                if (closed) {
+                    return Collections.emptyList();
+                }
+                running = true;
+            }
+            try {
+                List<DBObject> batch = new ArrayList<DBObject>(batchSize);
+                while (batch.size() < batchSize && cursor.hasNext()) {
+                    batch.add(cursor.next());
+                }
+                return batch;
+            } finally {
+                synchronized (this) {
+                    running = false;
+                    if (closed) {
+                        cursor.close();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Closes the cursor now, or when the running fetch completes.
+         */
+        synchronized void close() {
+            closed = true;
+            buffer.clear();
+            if (!running) {
+                cursor.close();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,277 @@
+package org.mongo.viewer.service.impl;
+
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mongo.viewer.exception.ServiceException;
+import org.mongo.viewer.service.PartitionCatalog;
+import org.mongo.viewer.util.DaemonThreadFactory;
+import org.mongo.viewer.util.MongoUtil;
+import org.mongo.viewer.util.MongoUtil.Workload;
+import org.mongo.viewer.util.PartitionRouter;
+import org.mongo.viewer.util.PartitionUtil;
+import org.mongo.viewer.util.PropertyLoader;
+import org.mongo.viewer.util.QueryUtil;
+import org.mongo.viewer.vo.DataBaseInfo;
+import org.mongo.viewer.vo.PartitionInfo;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import com.mongodb.ReadPreference;
+
+/**
+ * The Class PartitionCatalogImpl.
+ *
+ * The catalog of a database is loaded on first use and then refreshed every
+ * <code>partition.catalog.refresh</code> seconds by a background thread, so
+ * routing never waits on the database. The bounds of a month are computed
+ * once they are final, read after the month is over, and never again; only
+ * months whose bounds are not final and new collections are looked at on a
+ * refresh. Catalogs not used for
+ * <code>partition.catalog.maxIdle</code> seconds are dropped.
+ */
+public class PartitionCatalogImpl implements PartitionCatalog {
+
+    private static Log log = LogFactory.getLog(PartitionCatalogImpl.class);
+
+    private static Properties config = PropertyLoader.loadProperties("config");
+
+    private long refreshSeconds = PropertyLoader.getLong(config,
+            "partition.catalog.refresh", 300);
+
+    private long maxIdleSeconds = PropertyLoader.getLong(config,
+            "partition.catalog.maxIdle", 3600);
+
+    private final ConcurrentMap<DataBaseInfo, Catalog> catalogs = new ConcurrentHashMap<DataBaseInfo, Catalog>();
+
+    private ScheduledExecutorService refresher;
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.mongo.viewer.service.Service#init()
+     */
+    @Override
+    public synchronized void init() {
+        if (null == refresher) {
+            refresher = Executors
+                    .newSingleThreadScheduledExecutor(new DaemonThreadFactory(
+                            "partition-catalog"));
+            refresher.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    refreshAll();
+                }
+            }, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.mongo.viewer.service.Service#destroy()
+     */
+    @Override
+    public synchronized void destroy() {
+        if (null != refresher) {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+        catalogs.clear();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.mongo.viewer.service.PartitionCatalog#getPartitions(org.mongo.viewer
+     * .vo.DataBaseInfo)
+     */
+    @Override
+    public List<PartitionInfo> getPartitions(DataBaseInfo info)
+            throws ServiceException {
+        Catalog catalog = catalogs.get(info);
+        if (null == catalog) {
+            catalog = load(info, null);
+            Catalog existing = catalogs.putIfAbsent(new DataBaseInfo(info),
+                    catalog);
+            if (null != existing) {
+                catalog = existing;
+            }
+        }
+        catalog.lastUsed = System.currentTimeMillis();
+        return catalog.partitions;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.mongo.viewer.service.PartitionCatalog#route(org.mongo.viewer.vo.
+     * DataBaseInfo, java.util.Date, java.util.Date)
+     */
+    @Override
+    public List<String> route(DataBaseInfo info, Date from, Date to)
+            throws ServiceException {
+        List<String> partitions = PartitionRouter.route(getPartitions(info),
+                from, to, new Date());
+        log.debug("Routed [" + from + ", " + to + ") to " + partitions);
+        return partitions;
+    }
+
+    /**
+     * Refreshes every catalog in use and drops the idle ones.
+     */
+    protected void refreshAll() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<DataBaseInfo, Catalog> entry : catalogs.entrySet()) {
+            Catalog catalog = entry.getValue();
+            if (now - catalog.lastUsed > maxIdleSeconds * 1000) {
+                catalogs.remove(entry.getKey(), catalog);
+                continue;
+            }
+            try {
+                Catalog refreshed = load(entry.getKey(), catalog);
+                refreshed.lastUsed = catalog.lastUsed;
+                catalogs.replace(entry.getKey(), catalog, refreshed);
+            } catch (ServiceException e) {
+                log.warn("Cannot refresh partitions of "
+                        + entry.getKey().getHost(), e);
+            } catch (MongoException e) {
+                log.warn("Cannot refresh partitions of "
+                        + entry.getKey().getHost(), e);
+            }
+        }
+    }
+
+    /**
+     * Loads the catalog, reusing the final bounds of closed months.
+     *
+     * @param info
+     *            the connection info
+     * @param previous
+     *            the previous catalog, may be null
+     * @return the catalog
+     * @throws ServiceException
+     *             the service exception
+     */
+    private Catalog load(DataBaseInfo info, Catalog previous)
+            throws ServiceException {
+        DB db;
+        try {
+            db = MongoUtil.getDB(info);
+        } catch (UnknownHostException e) {
+            throw new ServiceException("Cannot connect to " + info.getHost(),
+                    e);
+        }
+        List<String> names = new ArrayList<String>();
+        for (String name : db.getCollectionNames()) {
+            if (PartitionUtil.isPartition(name)
+                    && null != PartitionUtil.getPartitionStart(name)) {
+                names.add(name);
+            }
+        }
+        Collections.sort(names, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                return PartitionUtil.getPartitionStart(a).compareTo(
+                        PartitionUtil.getPartitionStart(b));
+            }
+        });
+
+        ReadPreference readPreference = MongoUtil.getReadPreference(info,
+                Workload.SCAN);
+        Date now = new Date();
+        List<PartitionInfo> partitions = new ArrayList<PartitionInfo>(
+                names.size());
+        Map<String, PartitionInfo> finalized = new HashMap<String, PartitionInfo>();
+        for (String name : names) {
+            PartitionInfo partition = (null == previous) ? null
+                    : previous.finalized.get(name);
+            if (null == partition) {
+                DBCollection collection = db.getCollection(name);
+                Date end = PartitionUtil.getPartitionEnd(name);
+                // bounds read after the month is over are final
+                partition = new PartitionInfo(name,
+                        PartitionUtil.getPartitionStart(name), end, getBound(
+                                collection, 1, readPreference), getBound(
+                                collection, -1, readPreference),
+                        !now.before(end));
+                if (partition.isFinalized()) {
+                    finalized.put(name, partition);
+                }
+            } else {
+                finalized.put(name, partition);
+            }
+            partitions.add(partition);
+        }
+        log.debug("Loaded " + partitions.size() + " partitions of "
+                + info.getHost() + "/" + info.getDatabase());
+        return new Catalog(Collections.unmodifiableList(partitions), finalized);
+    }
+
+    /**
+     * Gets the oldest or newest timestamp of a collection.
+     *
+     * @param collection
+     *            the collection
+     * @param direction
+     *            1 for the oldest, -1 for the newest
+     * @param readPreference
+     *            where to read
+     * @return the timestamp, null if there is none
+     */
+    private Date getBound(DBCollection collection, int direction,
+            ReadPreference readPreference) {
+        // only real dates, a missing timestamp would sort first
+        DBObject query = new BasicDBObject(QueryUtil.TIMESTAMP,
+                new BasicDBObject("$type", 9));
+        DBObject projection = new BasicDBObject(QueryUtil.TIMESTAMP, 1)
+                .append(QueryUtil.ID, 0);
+        DBCursor cursor = collection.find(query, projection)
+                .sort(new BasicDBObject(QueryUtil.TIMESTAMP, direction))
+                .limit(1);
+        cursor.setReadPreference(readPreference);
+        try {
+            return cursor.hasNext() ? (Date) cursor.next().get(
+                    QueryUtil.TIMESTAMP) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * The partitions of one database.
+     */
+    private static class Catalog {
+        final List<PartitionInfo> partitions;
+        /** Partitions whose bounds were read after their month ended. */
+        final Map<String, PartitionInfo> finalized;
+        volatile long lastUsed = System.currentTimeMillis();
+
+        Catalog(List<PartitionInfo> partitions,
+                Map<String, PartitionInfo> finalized) {
+            this.partitions = partitions;
+            this.finalized = finalized;
+        }
+    }
+
+}
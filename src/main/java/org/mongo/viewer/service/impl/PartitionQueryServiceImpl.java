@@ -0,0 +1,158 @@
+package org.mongo.viewer.service.impl;
+
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mongo.viewer.exception.ServiceException;
+import org.mongo.viewer.service.PartitionCatalog;
+import org.mongo.viewer.service.PartitionQueryService;
+import org.mongo.viewer.service.QueryProfiler;
+import org.mongo.viewer.service.ServiceLocator;
+import org.mongo.viewer.util.DaemonThreadFactory;
+import org.mongo.viewer.util.MongoUtil;
+import org.mongo.viewer.util.MongoUtil.Workload;
+import org.mongo.viewer.util.PropertyLoader;
+import org.mongo.viewer.util.QueryContext;
+import org.mongo.viewer.util.QueryTimer;
+import org.mongo.viewer.util.QueryUtil;
+import org.mongo.viewer.util.RawDBDecoder;
+import org.mongo.viewer.vo.DataBaseInfo;
+import org.mongo.viewer.vo.QuerySpec;
+
+import com.mongodb.Cursor;
+import com.mongodb.DB;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import com.mongodb.ReadPreference;
+
+/**
+ * The Class PartitionQueryServiceImpl.
+ */
+public class PartitionQueryServiceImpl implements PartitionQueryService {
+
+    private static Log log = LogFactory.getLog(PartitionQueryServiceImpl.class);
+
+    private static Properties config = PropertyLoader.loadProperties("config");
+
+    /** The number of partitions read at the same time, across all queries. */
+    private int threads = PropertyLoader.getInt(config, "partition.threads", 8);
+
+    /** The documents fetched per partition per round trip. */
+    private int batchSize = PropertyLoader.getInt(config, "query.batchSize",
+            500);
+
+    private ThreadPoolExecutor executor;
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.mongo.viewer.service.Service#init()
+     */
+    @Override
+    public synchronized void init() {
+        if (null == executor) {
+            executor = new ThreadPoolExecutor(threads, threads, 60,
+                    TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new DaemonThreadFactory("partition-query"));
+            executor.allowCoreThreadTimeOut(true);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.mongo.viewer.service.Service#destroy()
+     */
+    @Override
+    public synchronized void destroy() {
+        if (null != executor) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.mongo.viewer.service.PartitionQueryService#find(org.mongo.viewer.
+     * vo.DataBaseInfo, org.mongo.viewer.vo.QuerySpec, java.util.Date,
+     * java.util.Date, boolean)
+     */
+    @Override
+    public Cursor find(DataBaseInfo info, QuerySpec spec, Date from, Date to,
+            boolean ascending) throws ServiceException {
+        if (null == from || null == to) {
+            throw new IllegalArgumentException(
+                    "from and to are required for a partitioned query");
+        }
+        List<String> partitions = ServiceLocator.lookup("partitionCatalog",
+                PartitionCatalog.class).route(info, from, to);
+        log.debug("Querying partitions " + partitions);
+        DB db = getDB(info);
+        DBObject query = QueryUtil.withTimeRange(
+                QueryUtil.parse(spec.getQuery()), from, to);
+        // the merge needs the keyset fields even when they were not selected
+        DBObject projection = QueryUtil.projection(spec.getFields(),
+                QueryUtil.TIMESTAMP);
+        int direction = ascending ? 1 : -1;
+        ReadPreference readPreference = MongoUtil.getReadPreference(info,
+                Workload.SCAN);
+        List<DBCursor> cursors = new ArrayList<DBCursor>(partitions.size());
+        for (String partition : partitions) {
+            DBCursor cursor = db.getCollection(partition)
+                    .find(query, projection)
+                    .sort(QueryUtil.keysetSort(direction))
+                    .batchSize(batchSize);
+            cursor.setReadPreference(readPreference);
+            cursor.setDecoderFactory(RawDBDecoder.FACTORY);
+            if (spec.getLimit() > 0) {
+                // no partition can contribute more than the whole limit
+                cursor.limit(spec.getLimit());
+            }
+            cursors.add(QueryContext.apply(cursor));
+        }
+        MergedCursor merged = new MergedCursor(cursors, direction,
+                spec.getLimit(), batchSize, getExecutor());
+        if (partitions.isEmpty()) {
+            return merged;
+        }
+        // the first batch of every partition, so that its time is profiled
+        QueryTimer timer = QueryTimer.start("fanout", partitions.get(0));
+        try {
+            merged.hasNext();
+        } catch (MongoException e) {
+            merged.close();
+            throw e;
+        } finally {
+            ServiceLocator.lookup("profiler", QueryProfiler.class).record(
+                    info, "fanout", partitions.get(0), query, projection,
+                    QueryUtil.keysetSort(direction), timer.stop());
+        }
+        return merged;
+    }
+
+    private DB getDB(DataBaseInfo info) throws ServiceException {
+        try {
+            return MongoUtil.getDB(info);
+        } catch (UnknownHostException e) {
+            throw new ServiceException("Cannot connect to " + info.getHost(),
+                    e);
+        }
+    }
+
+    private synchronized ThreadPoolExecutor getExecutor() {
+        init();
+        return executor;
+    }
+
+}
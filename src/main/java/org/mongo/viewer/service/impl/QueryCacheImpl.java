@@ -0,0 +1,134 @@
+package org.mongo.viewer.service.impl;
+
+import java.util.Date;
+import java.util.Properties;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mongo.viewer.service.QueryCache;
+import org.mongo.viewer.util.PartitionUtil;
+import org.mongo.viewer.util.PropertyLoader;
+import org.mongo.viewer.util.SimpleCache;
+import org.mongo.viewer.vo.QueryKey;
+
+/**
+ * The Class QueryCacheImpl.
+ *
+ * An LRU {@link SimpleCache} of serialized results, bounded both by entry
+ * count (<code>cache.maxEntries</code>) and by the total size of the results
+ * (<code>cache.maxBytes</code>); a result bigger than
+ * <code>cache.maxEntryShare</code> of that is not cached. Results live for
+ * <code>cache.ttl</code> seconds, or <code>cache.ttl.&lt;collection&gt;</code>
+ * when that is set. Monthly partitions whose month is over no longer change,
+ * so their results live for <code>cache.ttl.closedPartition</code> seconds.
+ * Eviction follows <code>cache.policy</code>, TinyLFU by default, so that the
+ * dashboards' repeated queries survive bursts of one-off ad-hoc ones.
+ */
+public class QueryCacheImpl implements QueryCache {
+
+    private static Log log = LogFactory.getLog(QueryCacheImpl.class);
+
+    private static Properties config = PropertyLoader.loadProperties("config");
+
+    private final long maxBytes = PropertyLoader.getLong(config,
+            "cache.maxBytes", 64 * 1024 * 1024);
+
+    private final int defaultTtl = PropertyLoader.getInt(config, "cache.ttl",
+            30);
+
+    private final int closedPartitionTtl = PropertyLoader.getInt(config,
+            "cache.ttl.closedPartition", 24 * 60 * 60);
+
+    /**
+     * Each result is put with the time to live of its collection, so the
+     * store itself never ages entries out.
+     */
+    private final SimpleCache<QueryKey, byte[]> store = new SimpleCache<QueryKey, byte[]>(
+            "queryResults", PropertyLoader.getInt(config, "cache.maxEntries",
+                    10000), Integer.MAX_VALUE, maxBytes,
+            new SimpleCache.Weigher<QueryKey, byte[]>() {
+                @Override
+                public long weigh(QueryKey key, byte[] value) {
+                    return value.length;
+                }
+            }, SimpleCache.Policy.valueOf(config.getProperty("cache.policy",
+                    "TINY_LFU")));
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.mongo.viewer.service.Service#init()
+     */
+    @Override
+    public void init() {
+        // the store is created with the instance
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.mongo.viewer.service.Service#destroy()
+     */
+    @Override
+    public void destroy() {
+        clear();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.mongo.viewer.service.QueryCache#get(org.mongo.viewer.vo.QueryKey)
+     */
+    @Override
+    public byte[] get(QueryKey key) {
+        return store.get(key);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.mongo.viewer.service.QueryCache#put(org.mongo.viewer.vo.QueryKey,
+     * byte[])
+     */
+    @Override
+    public void put(QueryKey key, byte[] bytes) {
+        int ttl = getTtl(key.getCollection());
+        if (ttl <= 0) {
+            return;
+        }
+        // too big a result is refused by the store
+        store.put(key, bytes, ttl);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.mongo.viewer.service.QueryCache#clear()
+     */
+    @Override
+    public void clear() {
+        store.clear();
+    }
+
+    /**
+     * Gets the time to live of results from a collection.
+     *
+     * @param collection
+     *            the collection
+     * @return the ttl in seconds, 0 or less to not cache
+     */
+    protected int getTtl(String collection) {
+        int ttl = PropertyLoader.getInt(config, "cache.ttl." + collection, -1);
+        if (ttl >= 0) {
+            return ttl;
+        }
+        Date end = PartitionUtil.getPartitionEnd(collection);
+        if (null != end && !new Date().before(end)) {
+            return closedPartitionTtl;
+        }
+        return defaultTtl;
+    }
+
+}
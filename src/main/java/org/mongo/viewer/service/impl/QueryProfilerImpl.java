@@ -0,0 +1,223 @@
+package org.mongo.viewer.service.impl;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mongo.viewer.service.IndexAdvisor;
+import org.mongo.viewer.service.QueryProfiler;
+import org.mongo.viewer.service.ServiceLocator;
+import org.mongo.viewer.util.DaemonThreadFactory;
+import org.mongo.viewer.util.ExplainUtil;
+import org.mongo.viewer.util.MongoUtil;
+import org.mongo.viewer.util.MongoUtil.Workload;
+import org.mongo.viewer.util.PropertyLoader;
+import org.mongo.viewer.util.QueryContext;
+import org.mongo.viewer.vo.DataBaseInfo;
+import org.mongo.viewer.vo.RunningQuery;
+import org.mongo.viewer.vo.SlowQuery;
+
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.MongoExecutionTimeoutException;
+import com.mongodb.util.JSON;
+
+/**
+ * The Class QueryProfilerImpl.
+ *
+ * Queries slower than <code>profile.threshold</code> millis go into a ring of
+ * the last <code>profile.size</code>. Each one is then explained on a single
+ * background thread, at most <code>profile.explainsPerMinute</code> times a
+ * minute and with at most <code>profile.explainQueue</code> explains waiting,
+ * since an explain runs the query again. An explain may take no longer than
+ * the query itself did, nor than <code>profile.explainTimeout</code> millis,
+ * and queries that were aborted or ran out of time are not explained at all.
+ * Explains read like scans, off the primary when possible. Every query, slow or not, is also handed to the
+ * {@link IndexAdvisor}.
+ */
+public class QueryProfilerImpl implements QueryProfiler {
+
+    private static Log log = LogFactory.getLog(QueryProfilerImpl.class);
+
+    private static Properties config = PropertyLoader.loadProperties("config");
+
+    private long threshold = PropertyLoader.getLong(config,
+            "profile.threshold", 1000);
+
+    private int explainQueue = PropertyLoader.getInt(config,
+            "profile.explainQueue", 16);
+
+    private long explainTimeout = PropertyLoader.getLong(config,
+            "profile.explainTimeout", 10000);
+
+    /** The least time between two explains. */
+    private long explainInterval = 60 * 1000L / Math.max(1,
+            PropertyLoader.getInt(config, "profile.explainsPerMinute", 6));
+
+    /** The ring, guarded by itself. */
+    private final SlowQuery[] ring = new SlowQuery[Math.max(1,
+            PropertyLoader.getInt(config, "profile.size", 100))];
+
+    private int next = 0;
+
+    private long nextExplainAt = 0;
+
+    private ThreadPoolExecutor explainer;
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.mongo.viewer.service.Service#init()
+     */
+    @Override
+    public synchronized void init() {
+        if (null == explainer) {
+            explainer = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(Math.max(1,
+                            explainQueue)), new DaemonThreadFactory(
+                            "query-explain"));
+            explainer.allowCoreThreadTimeOut(true);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.mongo.viewer.service.Service#destroy()
+     */
+    @Override
+    public synchronized void destroy() {
+        if (null != explainer) {
+            explainer.shutdownNow();
+            explainer = null;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.mongo.viewer.service.QueryProfiler#record(org.mongo.viewer.vo.
+     * DataBaseInfo, java.lang.String, java.lang.String,
+     * com.mongodb.DBObject, com.mongodb.DBObject, com.mongodb.DBObject, long)
+     */
+    @Override
+    public void record(DataBaseInfo info, String operation,
+            String collection, final DBObject query,
+            final DBObject projection, final DBObject sort, long millis) {
+        ServiceLocator.lookup("indexAdvisor", IndexAdvisor.class).observe(
+                info, collection, query, sort, millis);
+        if (millis < threshold) {
+            return;
+        }
+        final SlowQuery slow = new SlowQuery(new Date(), operation,
+                info.getDatabase(), collection, JSON.serialize(query),
+                null == projection ? null : JSON.serialize(projection),
+                null == sort ? null : JSON.serialize(sort), millis);
+        log.info("Slow " + operation + " on " + collection + " took " + millis
+                + "ms: " + slow.getQuery());
+        synchronized (ring) {
+            ring[next] = slow;
+            next = (next + 1) % ring.length;
+        }
+        RunningQuery running = QueryContext.get();
+        if (null != running
+                && (running.isAborted() || running.getRemainingMillis() <= 0)) {
+            // it would only run out of time again
+            slow.setExplainError("aborted, not explained");
+            return;
+        }
+        if (!tryAcquireExplain()) {
+            slow.setExplainError("rate limited");
+            return;
+        }
+        final DataBaseInfo connection = new DataBaseInfo(info);
+        try {
+            getExplainer().execute(new Runnable() {
+                @Override
+                public void run() {
+                    explain(connection, slow, query, projection, sort);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            slow.setExplainError("too many explains waiting");
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.mongo.viewer.service.QueryProfiler#getSlowQueries()
+     */
+    @Override
+    public List<SlowQuery> getSlowQueries() {
+        List<SlowQuery> result = new ArrayList<SlowQuery>(ring.length);
+        synchronized (ring) {
+            for (int i = 1; i <= ring.length; i++) {
+                SlowQuery slow = ring[(next - i + ring.length) % ring.length];
+                if (null == slow) {
+                    break;
+                }
+                result.add(slow);
+            }
+        }
+        return result;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.mongo.viewer.service.QueryProfiler#getThreshold()
+     */
+    @Override
+    public long getThreshold() {
+        return threshold;
+    }
+
+    private synchronized boolean tryAcquireExplain() {
+        long now = System.currentTimeMillis();
+        if (now < nextExplainAt) {
+            return false;
+        }
+        nextExplainAt = now + explainInterval;
+        return true;
+    }
+
+    private void explain(DataBaseInfo info, SlowQuery slow, DBObject query,
+            DBObject projection, DBObject sort) {
+        try {
+            DBCursor cursor = MongoUtil.getDB(info)
+                    .getCollection(slow.getCollection())
+                    .find(query, projection);
+            if (null != sort) {
+                cursor.sort(sort);
+            }
+            cursor.setReadPreference(MongoUtil.getReadPreference(info,
+                    Workload.SCAN));
+            cursor.maxTime(Math.max(1, Math.min(slow.getMillis(),
+                    explainTimeout)), TimeUnit.MILLISECONDS);
+            ExplainUtil.apply(cursor.explain(), slow);
+        } catch (MongoExecutionTimeoutException e) {
+            log.debug("Explain of " + slow.getQuery() + " on "
+                    + slow.getCollection() + " timed out");
+            slow.setExplainError("explain timed out");
+        } catch (Exception e) {
+            log.warn("Cannot explain " + slow.getQuery() + " on "
+                    + slow.getCollection(), e);
+            slow.setExplainError(String.valueOf(e.getMessage()));
+        }
+    }
+
+    private synchronized ThreadPoolExecutor getExplainer() {
+        init();
+        return explainer;
+    }
+
+}
@@ -0,0 +1,201 @@
+package org.mongo.viewer.service.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mongo.viewer.service.QueryRegistry;
+import org.mongo.viewer.util.DaemonThreadFactory;
+import org.mongo.viewer.util.MongoUtil;
+import org.mongo.viewer.util.PropertyLoader;
+import org.mongo.viewer.vo.RunningQuery;
+
+import com.mongodb.DB;
+import com.mongodb.DBCursor;
+import com.mongodb.Mongo;
+
+/**
+ * The Class QueryRegistryImpl.
+ *
+ * Every <code>query.reapInterval</code> millis the queries more than
+ * <code>query.grace</code> millis past their deadline are aborted. The
+ * server stops them on its own through <code>maxTimeMS</code>; the reaper
+ * covers the time spent outside the server and servers that ignore it.
+ * Aborting closes the tracked cursors, which fails whatever the request
+ * thread is blocked on, and kills the tagged operations still on the
+ * server.
+ */
+public class QueryRegistryImpl implements QueryRegistry {
+
+    private static Log log = LogFactory.getLog(QueryRegistryImpl.class);
+
+    private static Properties config = PropertyLoader.loadProperties("config");
+
+    private long reapInterval = PropertyLoader.getLong(config,
+            "query.reapInterval", 1000);
+
+    private long grace = PropertyLoader.getLong(config, "query.grace", 2000);
+
+    private final ConcurrentMap<String, RunningQuery> running = new ConcurrentHashMap<String, RunningQuery>();
+
+    private ScheduledThreadPoolExecutor reaper;
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.mongo.viewer.service.Service#init()
+     */
+    @Override
+    public synchronized void init() {
+        if (null == reaper) {
+            reaper = new ScheduledThreadPoolExecutor(1,
+                    new DaemonThreadFactory("query-reaper"));
+            reaper.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    reap();
+                }
+            }, reapInterval, reapInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.mongo.viewer.service.Service#destroy()
+     */
+    @Override
+    public synchronized void destroy() {
+        if (null != reaper) {
+            reaper.shutdownNow();
+            reaper = null;
+        }
+        running.clear();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.mongo.viewer.service.QueryRegistry#begin(java.lang.String,
+     * java.lang.String, long)
+     */
+    @Override
+    public RunningQuery begin(String uri, String client, long timeout) {
+        long now = System.currentTimeMillis();
+        RunningQuery query = new RunningQuery(UUID.randomUUID().toString(),
+                uri, client, new Date(now), now + timeout);
+        running.put(query.getId(), query);
+        return query;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.mongo.viewer.service.QueryRegistry#beginStream(java.lang.String,
+     * java.lang.String, long, long)
+     */
+    @Override
+    public RunningQuery beginStream(String uri, String client,
+            long idleTimeout, long timeout) {
+        long now = System.currentTimeMillis();
+        RunningQuery query = new RunningQuery(UUID.randomUUID().toString(),
+                uri, client, new Date(now), timeout > 0 ? now + timeout
+                        : Long.MAX_VALUE, idleTimeout);
+        running.put(query.getId(), query);
+        return query;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.mongo.viewer.service.QueryRegistry#end(org.mongo.viewer.vo.RunningQuery
+     * )
+     */
+    @Override
+    public void end(RunningQuery query) {
+        running.remove(query.getId(), query);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.mongo.viewer.service.QueryRegistry#getRunning()
+     */
+    @Override
+    public List<RunningQuery> getRunning() {
+        List<RunningQuery> queries = new ArrayList<RunningQuery>(
+                running.values());
+        Collections.sort(queries, new Comparator<RunningQuery>() {
+            @Override
+            public int compare(RunningQuery a, RunningQuery b) {
+                return a.getStarted().compareTo(b.getStarted());
+            }
+        });
+        return queries;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.mongo.viewer.service.QueryRegistry#cancel(java.lang.String)
+     */
+    @Override
+    public boolean cancel(String id) {
+        RunningQuery query = running.get(id);
+        if (null == query) {
+            return false;
+        }
+        abort(query, RunningQuery.CANCELLED);
+        return true;
+    }
+
+    private void reap() {
+        long now = System.currentTimeMillis();
+        for (RunningQuery query : running.values()) {
+            if (now > query.getDeadline() + grace) {
+                abort(query, RunningQuery.TIMED_OUT);
+            }
+        }
+    }
+
+    private void abort(RunningQuery query, String reason) {
+        List<DBCursor> cursors = query.abort(reason);
+        if (cursors.isEmpty()) {
+            return;
+        }
+        log.info("Aborting query " + query.getId() + " of " + query.getUri()
+                + ", " + reason);
+        // one killOp per client, all cursors of a query carry one comment
+        Map<Mongo, DB> databases = new IdentityHashMap<Mongo, DB>();
+        for (DBCursor cursor : cursors) {
+            DB db = cursor.getCollection().getDB();
+            databases.put(db.getMongo(), db);
+            try {
+                cursor.close();
+            } catch (RuntimeException e) {
+                log.debug("Cannot close a cursor of " + query.getId(), e);
+            }
+        }
+        for (DB db : databases.values()) {
+            try {
+                MongoUtil.killOps(db, query.getComment());
+            } catch (RuntimeException e) {
+                log.warn("Cannot kill the operations of " + query.getId(), e);
+            }
+        }
+    }
+
+}
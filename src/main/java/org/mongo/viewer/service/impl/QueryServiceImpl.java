@@ -0,0 +1,249 @@
+package org.mongo.viewer.service.impl;
+
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mongo.viewer.exception.ServiceException;
+import org.mongo.viewer.service.QueryProfiler;
+import org.mongo.viewer.service.QueryService;
+import org.mongo.viewer.service.ServiceLocator;
+import org.mongo.viewer.util.MongoUtil;
+import org.mongo.viewer.util.MongoUtil.Workload;
+import org.mongo.viewer.util.PropertyLoader;
+import org.mongo.viewer.util.QueryContext;
+import org.mongo.viewer.util.QueryTimer;
+import org.mongo.viewer.util.QueryUtil;
+import org.mongo.viewer.util.RawDBDecoder;
+import org.mongo.viewer.vo.DataBaseInfo;
+import org.mongo.viewer.vo.Page;
+import org.mongo.viewer.vo.PageToken;
+import org.mongo.viewer.vo.QuerySpec;
+
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+
+/**
+ * The Class QueryServiceImpl.
+ */
+public class QueryServiceImpl implements QueryService {
+
+    private static Log log = LogFactory.getLog(QueryServiceImpl.class);
+
+    private static Properties config = PropertyLoader.loadProperties("config");
+
+    /** The cursor batch size. */
+    private int batchSize = PropertyLoader.getInt(config, "query.batchSize",
+            500);
+
+    /** The default page size. */
+    private int pageSize = PropertyLoader.getInt(config, "page.size", 50);
+
+    /** The largest page a caller may ask for. */
+    private int maxPageSize = PropertyLoader.getInt(config, "page.maxSize",
+            1000);
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.mongo.viewer.service.Service#init()
+     */
+    @Override
+    public void init() {
+        // nothing to do, connections are pooled by MongoUtil
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.mongo.viewer.service.Service#destroy()
+     */
+    @Override
+    public void destroy() {
+        // nothing to do, connections are pooled by MongoUtil
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.mongo.viewer.service.QueryService#find(org.mongo.viewer.vo.DataBaseInfo
+     * , org.mongo.viewer.vo.QuerySpec)
+     */
+    @Override
+    public DBCursor find(DataBaseInfo info, QuerySpec spec)
+            throws ServiceException {
+        DBObject query = QueryUtil.parse(spec.getQuery());
+        log.debug("find on " + spec.getCollection() + " with " + query);
+        DBObject projection = QueryUtil.projection(spec.getFields());
+        DBObject sort = (null == spec.getSort()) ? null : QueryUtil.parse(spec
+                .getSort());
+        DBCursor cursor = getCollection(info, spec.getCollection()).find(
+                query, projection);
+        if (null != sort) {
+            cursor.sort(sort);
+        }
+        if (spec.getLimit() > 0) {
+            cursor.limit(spec.getLimit());
+        }
+        cursor.batchSize(batchSize);
+        cursor.setReadPreference(MongoUtil.getReadPreference(info,
+                Workload.SCAN));
+        // documents stay BSON until they are transcoded to the response
+        cursor.setDecoderFactory(RawDBDecoder.FACTORY);
+        QueryContext.apply(cursor);
+        // the first batch, so that its time is profiled
+        QueryTimer timer = QueryTimer.start("find", spec.getCollection());
+        try {
+            cursor.hasNext();
+        } catch (MongoException e) {
+            cursor.close();
+            throw e;
+        } finally {
+            ServiceLocator.lookup("profiler", QueryProfiler.class).record(
+                    info, "find", spec.getCollection(), query, projection,
+                    sort, timer.stop());
+        }
+        return cursor;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.mongo.viewer.service.QueryService#scan(org.mongo.viewer.vo.DataBaseInfo
+     * , org.mongo.viewer.vo.QuerySpec, org.mongo.viewer.vo.PageToken, boolean)
+     */
+    @Override
+    public DBCursor scan(DataBaseInfo info, QuerySpec spec, PageToken token,
+            boolean ascending) throws ServiceException {
+        int direction = ascending ? 1 : -1;
+        DBObject query = QueryUtil.seekAfter(
+                QueryUtil.parse(spec.getQuery()), token, direction);
+        log.debug("scan on " + spec.getCollection() + " with " + query);
+        // resuming needs the keyset fields even when they were not selected
+        DBObject projection = QueryUtil.projection(spec.getFields(),
+                QueryUtil.TIMESTAMP);
+        DBObject sort = QueryUtil.keysetSort(direction);
+        DBCursor cursor = getCollection(info, spec.getCollection()).find(
+                query, projection).sort(sort);
+        if (spec.getLimit() > 0) {
+            cursor.limit(spec.getLimit());
+        }
+        cursor.batchSize(batchSize);
+        cursor.setReadPreference(MongoUtil.getReadPreference(info,
+                Workload.SCAN));
+        cursor.setDecoderFactory(RawDBDecoder.FACTORY);
+        QueryContext.apply(cursor);
+        QueryTimer timer = QueryTimer.start("scan", spec.getCollection());
+        try {
+            cursor.hasNext();
+        } catch (MongoException e) {
+            cursor.close();
+            throw e;
+        } finally {
+            ServiceLocator.lookup("profiler", QueryProfiler.class).record(
+                    info, "scan", spec.getCollection(), query, projection,
+                    sort, timer.stop());
+        }
+        return cursor;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.mongo.viewer.service.QueryService#page(org.mongo.viewer.vo.DataBaseInfo
+     * , org.mongo.viewer.vo.QuerySpec, org.mongo.viewer.vo.PageToken, boolean)
+     */
+    @Override
+    public Page page(DataBaseInfo info, QuerySpec spec, PageToken token,
+            boolean ascending) throws ServiceException {
+        int size = spec.getLimit() > 0 ? Math.min(spec.getLimit(),
+                maxPageSize) : pageSize;
+        int direction = ascending ? 1 : -1;
+        DBObject query = QueryUtil.seekAfter(
+                QueryUtil.parse(spec.getQuery()), token, direction);
+        log.debug("page on " + spec.getCollection() + " with " + query);
+        // the token needs the keyset fields even when they were not selected
+        DBObject projection = QueryUtil.projection(spec.getFields(),
+                QueryUtil.TIMESTAMP);
+        // one extra document tells us whether there is a next page
+        DBCursor cursor = getCollection(info, spec.getCollection())
+                .find(query, projection).sort(QueryUtil.keysetSort(direction))
+                .limit(size + 1).batchSize(size + 1);
+        cursor.setReadPreference(MongoUtil.getReadPreference(info,
+                Workload.LOOKUP));
+        cursor.setDecoderFactory(RawDBDecoder.FACTORY);
+        QueryContext.apply(cursor);
+        List<DBObject> documents = new ArrayList<DBObject>(size);
+        boolean more = false;
+        QueryTimer timer = QueryTimer.start("page", spec.getCollection());
+        try {
+            while (cursor.hasNext()) {
+                DBObject document = cursor.next();
+                if (documents.size() == size) {
+                    more = true;
+                    break;
+                }
+                documents.add(document);
+            }
+        } finally {
+            cursor.close();
+            ServiceLocator.lookup("profiler", QueryProfiler.class).record(
+                    info, "page", spec.getCollection(), query, projection,
+                    QueryUtil.keysetSort(direction), timer.stop());
+        }
+        String next = null;
+        if (more) {
+            DBObject last = documents.get(documents.size() - 1);
+            Object timestamp = last.get(QueryUtil.TIMESTAMP);
+            if (!(timestamp instanceof Date)) {
+                throw new ServiceException("Cannot page " + spec.getCollection()
+                        + ", document " + last.get(QueryUtil.ID)
+                        + " has no timestamp");
+            }
+            next = new PageToken((Date) timestamp, last.get(QueryUtil.ID))
+                    .encode();
+        }
+        return new Page(documents, next);
+    }
+
+    /**
+     * Gets the collection.
+     *
+     * @param info
+     *            the connection info
+     * @param collection
+     *            the collection name
+     * @return the collection
+     * @throws ServiceException
+     *             the service exception
+     */
+    protected DBCollection getCollection(DataBaseInfo info, String collection)
+            throws ServiceException {
+        try {
+            return MongoUtil.getDB(info).getCollection(collection);
+        } catch (UnknownHostException e) {
+            throw new ServiceException("Cannot connect to " + info.getHost(),
+                    e);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.mongo.viewer.service.QueryService#getBatchSize()
+     */
+    @Override
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+}
@@ -0,0 +1,307 @@
+package org.mongo.viewer.service.impl;
+
+import java.net.UnknownHostException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mongo.viewer.exception.ServiceException;
+import org.mongo.viewer.service.QueryProfiler;
+import org.mongo.viewer.service.ServiceLocator;
+import org.mongo.viewer.service.TailService;
+import org.mongo.viewer.util.DaemonThreadFactory;
+import org.mongo.viewer.util.MongoUtil;
+import org.mongo.viewer.util.MongoUtil.Workload;
+import org.mongo.viewer.util.PartitionUtil;
+import org.mongo.viewer.util.PropertyLoader;
+import org.mongo.viewer.util.QueryTimer;
+import org.mongo.viewer.util.QueryUtil;
+import org.mongo.viewer.vo.DataBaseInfo;
+import org.mongo.viewer.vo.PageToken;
+import org.mongo.viewer.vo.QueryKey;
+
+import com.mongodb.DB;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+
+/**
+ * The Class TailServiceImpl.
+ *
+ * Each distinct connection, collection and filter has one feed. A feed polls
+ * every <code>tail.interval</code> millis for the documents after its high
+ * water mark in <code>(timestamp, _id)</code> order, which is a seek on the
+ * keyset index, and copies them into the bounded buffer of every subscriber.
+ * A subscriber whose buffer is full is dropped, so a slow watcher never holds
+ * back the others. The feed stops with its last subscriber. Documents
+ * inserted with a timestamp older than the mark are not seen.
+ */
+public class TailServiceImpl implements TailService {
+
+    private static Log log = LogFactory.getLog(TailServiceImpl.class);
+
+    private static Properties config = PropertyLoader.loadProperties("config");
+
+    private long interval = PropertyLoader.getLong(config, "tail.interval",
+            1000);
+
+    private int threads = PropertyLoader.getInt(config, "tail.threads", 2);
+
+    private int batchSize = PropertyLoader.getInt(config, "tail.batchSize",
+            500);
+
+    private int bufferSize = PropertyLoader.getInt(config, "tail.bufferSize",
+            1000);
+
+    /** The feeds by key, guarded by itself. */
+    private final Map<QueryKey, Feed> feeds = new HashMap<QueryKey, Feed>();
+
+    private ScheduledExecutorService executor;
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.mongo.viewer.service.Service#init()
+     */
+    @Override
+    public synchronized void init() {
+        if (null == executor) {
+            executor = new ScheduledThreadPoolExecutor(threads,
+                    new DaemonThreadFactory("tail"));
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.mongo.viewer.service.Service#destroy()
+     */
+    @Override
+    public void destroy() {
+        synchronized (this) {
+            if (null != executor) {
+                executor.shutdownNow();
+                executor = null;
+            }
+        }
+        synchronized (feeds) {
+            for (Feed feed : feeds.values()) {
+                for (Subscriber subscriber : feed.subscribers) {
+                    subscriber.closed = true;
+                }
+            }
+            feeds.clear();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.mongo.viewer.service.TailService#subscribe(org.mongo.viewer.vo.
+     * DataBaseInfo, java.lang.String, java.lang.String)
+     */
+    @Override
+    public Subscription subscribe(DataBaseInfo info, String collection,
+            String query) throws ServiceException {
+        DBObject filter = QueryUtil.parse(query);
+        QueryKey key = new QueryKey(info, collection,
+                QueryUtil.normalize(filter), null, null, "tail");
+        // fails early when the server cannot be reached
+        getDB(info);
+        synchronized (feeds) {
+            Feed feed = feeds.get(key);
+            if (null == feed) {
+                feed = new Feed(key, collection, filter);
+                feed.task = getExecutor().scheduleWithFixedDelay(feed,
+                        interval, interval, TimeUnit.MILLISECONDS);
+                feeds.put(key, feed);
+                log.debug("Started feed " + key);
+            }
+            Subscriber subscriber = new Subscriber(feed);
+            feed.subscribers.add(subscriber);
+            return subscriber;
+        }
+    }
+
+    /**
+     * Gets the number of feeds polling.
+     *
+     * @return the count
+     */
+    public int getFeedCount() {
+        synchronized (feeds) {
+            return feeds.size();
+        }
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        Feed feed = subscriber.feed;
+        synchronized (feeds) {
+            feed.subscribers.remove(subscriber);
+            if (feed.subscribers.isEmpty() && feeds.get(feed.key) == feed) {
+                feed.task.cancel(false);
+                feeds.remove(feed.key);
+                log.debug("Stopped feed " + feed.key);
+            }
+        }
+    }
+
+    private DB getDB(DataBaseInfo info) throws ServiceException {
+        try {
+            return MongoUtil.getDB(info);
+        } catch (UnknownHostException e) {
+            throw new ServiceException("Cannot connect to " + info.getHost(),
+                    e);
+        }
+    }
+
+    private synchronized ScheduledExecutorService getExecutor() {
+        init();
+        return executor;
+    }
+
+    /**
+     * One upstream poll shared by its subscribers.
+     */
+    private class Feed implements Runnable {
+        final QueryKey key;
+        final String collection;
+        final DBObject filter;
+        final List<Subscriber> subscribers = new CopyOnWriteArrayList<Subscriber>();
+        ScheduledFuture<?> task;
+        /** Only touched by the poll, which never runs concurrently. */
+        Date since = new Date();
+        PageToken mark;
+
+        Feed(QueryKey key, String collection, DBObject filter) {
+            this.key = key;
+            this.collection = collection;
+            this.filter = filter;
+        }
+
+        @Override
+        public void run() {
+            try {
+                int read;
+                do {
+                    read = poll();
+                } while (read == batchSize && !subscribers.isEmpty());
+            } catch (UnknownHostException e) {
+                log.warn("Tail of " + key + " cannot connect, retrying", e);
+            } catch (MongoException e) {
+                log.warn("Tail of " + key + " failed, retrying", e);
+            } catch (RuntimeException e) {
+                log.error("Tail of " + key + " failed, retrying", e);
+            }
+        }
+
+        private int poll() throws UnknownHostException {
+            // looked up on every poll, so that the client counts as used and
+            // is not closed as idle under a feed that still runs
+            DB db = MongoUtil.getDB(key.getInfo());
+            // the SysLog partition rolls over with the month
+            String name = (null == collection) ? PartitionUtil
+                    .getCollectionName(new Date()) : collection;
+            DBObject query = (null == mark) ? QueryUtil.withTimeRange(filter,
+                    since, null) : QueryUtil.seekAfter(filter, mark, 1);
+            DBCursor cursor = db.getCollection(name).find(query)
+                    .sort(QueryUtil.keysetSort(1)).limit(batchSize)
+                    .batchSize(batchSize);
+            cursor.setReadPreference(MongoUtil.getReadPreference(
+                    key.getInfo(), Workload.LOOKUP));
+            int read = 0;
+            QueryTimer timer = QueryTimer.start("tail", name);
+            try {
+                while (cursor.hasNext()) {
+                    DBObject document = cursor.next();
+                    read++;
+                    advance(document);
+                    for (Subscriber subscriber : subscribers) {
+                        if (!subscriber.buffer.offer(document)) {
+                            subscriber.dropped = true;
+                            unsubscribe(subscriber);
+                            log.info("Dropped a slow subscriber of " + key);
+                        }
+                    }
+                }
+            } finally {
+                cursor.close();
+                ServiceLocator.lookup("profiler", QueryProfiler.class).record(
+                        key.getInfo(), "tail", name, query, null,
+                        QueryUtil.keysetSort(1), timer.stop());
+            }
+            return read;
+        }
+
+        private void advance(DBObject document) {
+            Object timestamp = document.get(QueryUtil.TIMESTAMP);
+            try {
+                mark = new PageToken((Date) timestamp,
+                        document.get(QueryUtil.ID));
+            } catch (IllegalArgumentException e) {
+                // unusual _id, fall back to the timestamp alone
+                since = new Date(((Date) timestamp).getTime() + 1);
+                mark = null;
+            }
+        }
+    }
+
+    /**
+     * A subscriber and its bounded buffer.
+     */
+    private class Subscriber implements Subscription {
+        final Feed feed;
+        final BlockingQueue<DBObject> buffer = new ArrayBlockingQueue<DBObject>(
+                bufferSize);
+        volatile boolean dropped;
+        volatile boolean closed;
+
+        Subscriber(Feed feed) {
+            this.feed = feed;
+        }
+
+        @Override
+        public DBObject poll(long timeout, TimeUnit unit)
+                throws InterruptedException {
+            if (closed) {
+                return null;
+            }
+            DBObject document = buffer.poll(timeout, unit);
+            if (null == document && dropped) {
+                closed = true;
+            }
+            return document;
+        }
+
+        @Override
+        public boolean isDropped() {
+            return dropped;
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                unsubscribe(this);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,430 @@
+package org.mongo.viewer.servlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * A response whose body goes through gzip or deflate once it is bigger than
+ * the minimum size. Until then the body is held in a buffer of exactly that
+ * size; a response that ends or flushes within it is sent uncompressed, with
+ * its content length. Past it, the buffer and everything after it stream
+ * through the compressor, so nothing else is buffered whatever the size of
+ * the response. Not thread safe, like the response it wraps.
+ */
+public class CompressingResponse extends HttpServletResponseWrapper {
+
+    private static final String CONTENT_ENCODING = "Content-Encoding";
+    private static final String CONTENT_LENGTH = "Content-Length";
+
+    /** Where the body is going. */
+    private enum State {
+        BUFFERING, IDENTITY, COMPRESSING, FINISHED
+    }
+
+    private final String coding;
+    private final int level;
+    private final String[] excludedTypes;
+
+    private final byte[] buffer;
+    private int count;
+    private final byte[] single = new byte[1];
+
+    private State state = State.BUFFERING;
+    private long contentLength = -1;
+
+    private OutputStream raw;
+    private DeflaterOutputStream compressor;
+    private Deflater deflater;
+
+    private ServletOutputStream stream;
+    private PrintWriter writer;
+
+    /**
+     * @param response
+     *            the response
+     * @param coding
+     *            gzip or deflate
+     * @param level
+     *            the compression level, 1 to 9
+     * @param minSize
+     *            the smallest body that is compressed
+     * @param excludedTypes
+     *            the content types, or prefixes of them, never compressed;
+     *            may be null
+     */
+    public CompressingResponse(HttpServletResponse response, String coding,
+            int level, int minSize, String[] excludedTypes) {
+        super(response);
+        this.coding = coding;
+        this.level = level;
+        this.excludedTypes = excludedTypes;
+        this.buffer = new byte[Math.max(1, minSize)];
+    }
+
+    /**
+     * @return true once the body is being compressed
+     */
+    public boolean isCompressing() {
+        return state == State.COMPRESSING;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see javax.servlet.ServletResponseWrapper#getOutputStream()
+     */
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (null == stream) {
+            stream = new ServletOutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    single[0] = (byte) b;
+                    CompressingResponse.this.write(single, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len)
+                        throws IOException {
+                    CompressingResponse.this.write(b, off, len);
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    CompressingResponse.this.flush();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    finish();
+                }
+            };
+        }
+        return stream;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see javax.servlet.ServletResponseWrapper#getWriter()
+     */
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (null == writer) {
+            writer = new PrintWriter(new OutputStreamWriter(getOutputStream(),
+                    getCharacterEncoding()));
+        }
+        return writer;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see javax.servlet.ServletResponseWrapper#setContentLength(int)
+     */
+    @Override
+    public void setContentLength(int length) {
+        setLength(length);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see javax.servlet.http.HttpServletResponseWrapper#setHeader(java.lang
+     * .String, java.lang.String)
+     */
+    @Override
+    public void setHeader(String name, String value) {
+        if (CONTENT_LENGTH.equalsIgnoreCase(name)) {
+            setLength(Long.parseLong(value));
+        } else {
+            super.setHeader(name, value);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see javax.servlet.http.HttpServletResponseWrapper#addHeader(java.lang
+     * .String, java.lang.String)
+     */
+    @Override
+    public void addHeader(String name, String value) {
+        if (CONTENT_LENGTH.equalsIgnoreCase(name)) {
+            setLength(Long.parseLong(value));
+        } else {
+            super.addHeader(name, value);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see javax.servlet.http.HttpServletResponseWrapper#setIntHeader(java.lang
+     * .String, int)
+     */
+    @Override
+    public void setIntHeader(String name, int value) {
+        if (CONTENT_LENGTH.equalsIgnoreCase(name)) {
+            setLength(value);
+        } else {
+            super.setIntHeader(name, value);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see javax.servlet.http.HttpServletResponseWrapper#addIntHeader(java.lang
+     * .String, int)
+     */
+    @Override
+    public void addIntHeader(String name, int value) {
+        if (CONTENT_LENGTH.equalsIgnoreCase(name)) {
+            setLength(value);
+        } else {
+            super.addIntHeader(name, value);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see javax.servlet.ServletResponseWrapper#flushBuffer()
+     */
+    @Override
+    public void flushBuffer() throws IOException {
+        if (null != writer) {
+            writer.flush();
+        }
+        flush();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see javax.servlet.ServletResponseWrapper#resetBuffer()
+     */
+    @Override
+    public void resetBuffer() {
+        super.resetBuffer();
+        if (state == State.BUFFERING) {
+            count = 0;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see javax.servlet.ServletResponseWrapper#reset()
+     */
+    @Override
+    public void reset() {
+        super.reset();
+        if (state == State.BUFFERING) {
+            count = 0;
+            contentLength = -1;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see javax.servlet.http.HttpServletResponseWrapper#sendError(int,
+     * java.lang.String)
+     */
+    @Override
+    public void sendError(int status, String message) throws IOException {
+        discard();
+        super.sendError(status, message);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see javax.servlet.http.HttpServletResponseWrapper#sendError(int)
+     */
+    @Override
+    public void sendError(int status) throws IOException {
+        discard();
+        super.sendError(status);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * javax.servlet.http.HttpServletResponseWrapper#sendRedirect(java.lang.
+     * String)
+     */
+    @Override
+    public void sendRedirect(String location) throws IOException {
+        discard();
+        super.sendRedirect(location);
+    }
+
+    /**
+     * Ends the body: sends a body still in the buffer as it is, or finishes
+     * the compressed stream. Calling it again does nothing.
+     *
+     * @throws IOException
+     *             if writing fails
+     */
+    public void finish() throws IOException {
+        if (state == State.FINISHED) {
+            return;
+        }
+        if (null != writer) {
+            writer.flush();
+        }
+        if (state == State.BUFFERING) {
+            if (contentLength < 0) {
+                contentLength = count;
+            }
+            start(false);
+        }
+        if (state == State.COMPRESSING) {
+            try {
+                compressor.finish();
+            } finally {
+                deflater.end();
+            }
+        }
+        state = State.FINISHED;
+        raw.flush();
+    }
+
+    private void write(byte[] b, int off, int len) throws IOException {
+        switch (state) {
+        case BUFFERING:
+            if (count + len <= buffer.length) {
+                System.arraycopy(b, off, buffer, count, len);
+                count += len;
+                return;
+            }
+            start(isCompressible());
+            write(b, off, len);
+            return;
+        case IDENTITY:
+            raw.write(b, off, len);
+            return;
+        case COMPRESSING:
+            compressor.write(b, off, len);
+            return;
+        default:
+            throw new IOException("The response is finished");
+        }
+    }
+
+    private void flush() throws IOException {
+        switch (state) {
+        case BUFFERING:
+            if (count == 0) {
+                // nothing to decide on yet
+                return;
+            }
+            // the caller wants what it wrote so far sent, small as it is
+            start(false);
+            raw.flush();
+            return;
+        case IDENTITY:
+            raw.flush();
+            return;
+        case COMPRESSING:
+            compressor.flush();
+            raw.flush();
+            return;
+        default:
+            return;
+        }
+    }
+
+    /**
+     * Decides where the body goes and sends what was buffered there.
+     */
+    private void start(boolean compress) throws IOException {
+        if (compress) {
+            super.setHeader(CONTENT_ENCODING, coding);
+            raw = super.getOutputStream();
+            if (CompressionFilter.GZIP.equals(coding)) {
+                GzipStream gzip = new GzipStream(raw, level);
+                deflater = gzip.getDeflater();
+                compressor = gzip;
+            } else {
+                deflater = new Deflater(level);
+                compressor = new DeflaterOutputStream(raw, deflater, 8192);
+            }
+            state = State.COMPRESSING;
+            compressor.write(buffer, 0, count);
+        } else {
+            if (contentLength >= 0) {
+                super.setHeader(CONTENT_LENGTH, Long.toString(contentLength));
+            }
+            raw = super.getOutputStream();
+            state = State.IDENTITY;
+            raw.write(buffer, 0, count);
+        }
+        count = 0;
+    }
+
+    private boolean isCompressible() {
+        if (containsHeader(CONTENT_ENCODING)) {
+            return false;
+        }
+        if (contentLength >= 0 && contentLength < buffer.length) {
+            return false;
+        }
+        String type = getContentType();
+        if (null != type && null != excludedTypes) {
+            type = type.toLowerCase(Locale.ENGLISH);
+            for (String excluded : excludedTypes) {
+                if (type.startsWith(excluded)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void setLength(long length) {
+        if (state == State.IDENTITY) {
+            super.setHeader(CONTENT_LENGTH, Long.toString(length));
+        } else {
+            // sent once it is known whether the body is compressed
+            contentLength = length;
+        }
+    }
+
+    private void discard() {
+        if (state == State.BUFFERING) {
+            count = 0;
+            state = State.FINISHED;
+        }
+    }
+
+    /**
+     * gzip at a chosen level, whose deflater can be released right away.
+     */
+    private static class GzipStream extends GZIPOutputStream {
+
+        GzipStream(OutputStream out, int level) throws IOException {
+            super(out, 8192);
+            def.setLevel(level);
+        }
+
+        Deflater getDeflater() {
+            return def;
+        }
+    }
+
+}
@@ -0,0 +1,162 @@
+package org.mongo.viewer.servlet;
+
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.Locale;
+import java.util.Properties;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.mongo.viewer.util.PropertyLoader;
+import org.mongo.viewer.util.QueryUtil;
+
+/**
+ * Compresses responses with gzip or deflate, whichever the client accepts,
+ * gzip first. The body streams through the compressor: only the first
+ * <code>compression.minSize</code> bytes are held back, and responses that
+ * end before that, or announce a smaller content length, go out as they are.
+ * Responses that already have a Content-Encoding, or a content type listed in
+ * <code>compression.excludedTypes</code>, are never compressed. Event streams
+ * are left alone, they must reach the client as soon as they are flushed.
+ */
+public class CompressionFilter implements Filter {
+
+    /** The gzip content coding. */
+    public static final String GZIP = "gzip";
+
+    /** The deflate (zlib) content coding. */
+    public static final String DEFLATE = "deflate";
+
+    private static Properties config = PropertyLoader.loadProperties("config");
+
+    private int minSize = PropertyLoader.getInt(config, "compression.minSize",
+            1024);
+
+    private int level = PropertyLoader.getInt(config, "compression.level", 6);
+
+    private String[] excludedTypes = QueryUtil.splitFields(config.getProperty(
+            "compression.excludedTypes",
+            "application/gzip,application/x-gzip,application/zip,image/"));
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see javax.servlet.Filter#init(javax.servlet.FilterConfig)
+     */
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        // configured from config.properties
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see javax.servlet.Filter#doFilter(javax.servlet.ServletRequest,
+     * javax.servlet.ServletResponse, javax.servlet.FilterChain)
+     */
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response,
+            FilterChain chain) throws IOException, ServletException {
+        if (!(request instanceof HttpServletRequest)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        HttpServletRequest http = (HttpServletRequest) request;
+        String accept = http.getHeader("Accept");
+        if ("HEAD".equals(http.getMethod())
+                || (null != accept && accept.contains("text/event-stream"))) {
+            chain.doFilter(request, response);
+            return;
+        }
+        StringBuilder acceptEncoding = new StringBuilder();
+        Enumeration<?> headers = http.getHeaders("Accept-Encoding");
+        while (null != headers && headers.hasMoreElements()) {
+            acceptEncoding.append(headers.nextElement()).append(',');
+        }
+        String coding = negotiate(acceptEncoding.toString());
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+        // caches must keep the variants apart, even uncompressed ones
+        httpResponse.addHeader("Vary", "Accept-Encoding");
+        if (null == coding) {
+            chain.doFilter(request, response);
+            return;
+        }
+        CompressingResponse compressing = new CompressingResponse(
+                httpResponse, coding, level, minSize, excludedTypes);
+        boolean done = false;
+        try {
+            chain.doFilter(request, compressing);
+            done = true;
+        } finally {
+            // a failure before anything was sent leaves the error to the
+            // container, an already compressed body is ended cleanly
+            if (done || compressing.isCompressing()) {
+                compressing.finish();
+            }
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see javax.servlet.Filter#destroy()
+     */
+    @Override
+    public void destroy() {
+        // nothing to release
+    }
+
+    /**
+     * Picks the content coding from the Accept-Encoding headers.
+     *
+     * @param acceptEncoding
+     *            the headers, comma separated
+     * @return gzip, deflate or null for none
+     */
+    public static String negotiate(String acceptEncoding) {
+        // -1 until named, * stands for the codings not named
+        double gzip = -1;
+        double deflate = -1;
+        double any = 0;
+        for (String part : acceptEncoding.split(",")) {
+            String[] params = part.split(";");
+            String name = params[0].trim().toLowerCase(Locale.ENGLISH);
+            double q = 1;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        q = Double.parseDouble(param.substring(2));
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            if (GZIP.equals(name) || "x-gzip".equals(name)) {
+                gzip = q;
+            } else if (DEFLATE.equals(name)) {
+                deflate = q;
+            } else if ("*".equals(name)) {
+                any = q;
+            }
+        }
+        if (gzip < 0) {
+            gzip = any;
+        }
+        if (deflate < 0) {
+            deflate = any;
+        }
+        if (gzip > 0 && gzip >= deflate) {
+            return GZIP;
+        }
+        return deflate > 0 ? DEFLATE : null;
+    }
+
+}
@@ -0,0 +1,51 @@
+package org.mongo.viewer.servlet;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mongo.viewer.service.ServiceLocator;
+import org.mongo.viewer.util.MongoUtil;
+import org.mongo.viewer.util.SimpleCache;
+import org.mongo.viewer.util.SingleFlight;
+
+/**
+ * Destroys the services, stops the cache sweeper and the shared load pools
+ * and closes the pooled mongo clients when the web application is stopped or
+ * redeployed, so that sockets and threads do not leak.
+ */
+public class MongoContextListener implements ServletContextListener {
+
+    private static Log log = LogFactory.getLog(MongoContextListener.class);
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * javax.servlet.ServletContextListener#contextInitialized(javax.servlet
+     * .ServletContextEvent)
+     */
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        log.debug("mongoviewer started");
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * javax.servlet.ServletContextListener#contextDestroyed(javax.servlet.
+     * ServletContextEvent)
+     */
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        ServiceLocator.destroyAll();
+        SimpleCache.shutdown();
+        SingleFlight.shutdown();
+        log.info("Shutting down " + MongoUtil.getClientCount()
+                + " mongo client(s)");
+        MongoUtil.shutdown();
+    }
+
+}
@@ -0,0 +1,88 @@
+package org.mongo.viewer.servlet;
+
+import java.io.IOException;
+import java.util.Properties;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mongo.viewer.util.PerfTrack;
+import org.mongo.viewer.util.PropertyLoader;
+
+/**
+ * Builds a {@link PerfTrack} timing tree for every request, so that the
+ * mongo queries it runs show up under it. Requests slower than
+ * <code>profile.requestThreshold</code> millis have their tree logged.
+ */
+public class PerfTrackFilter implements Filter {
+
+    private static Log log = LogFactory.getLog(PerfTrackFilter.class);
+
+    private static Properties config = PropertyLoader.loadProperties("config");
+
+    private long threshold = PropertyLoader.getLong(config,
+            "profile.requestThreshold", 2000);
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see javax.servlet.Filter#init(javax.servlet.FilterConfig)
+     */
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        // configured from config.properties
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see javax.servlet.Filter#doFilter(javax.servlet.ServletRequest,
+     * javax.servlet.ServletResponse, javax.servlet.FilterChain)
+     */
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response,
+            FilterChain chain) throws IOException, ServletException {
+        String name = (request instanceof HttpServletRequest) ? ((HttpServletRequest) request)
+                .getRequestURI() : "request";
+        // a thread may carry a tree left behind by an earlier request
+        PerfTrack.clear();
+        PerfTrack.start(name, name);
+        Throwable failure = null;
+        try {
+            chain.doFilter(request, response);
+        } catch (IOException e) {
+            failure = e;
+            throw e;
+        } catch (ServletException e) {
+            failure = e;
+            throw e;
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            long millis = PerfTrack.stop(name, name, failure);
+            if (millis >= threshold && log.isInfoEnabled()) {
+                log.info("Slow request\n" + PerfTrack.toString(0));
+            }
+            PerfTrack.clear();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see javax.servlet.Filter#destroy()
+     */
+    @Override
+    public void destroy() {
+        // nothing to release
+    }
+
+}
@@ -0,0 +1,150 @@
+package org.mongo.viewer.servlet;
+
+import java.io.IOException;
+import java.util.Properties;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.mongo.viewer.exception.QueryAbortedException;
+import org.mongo.viewer.service.QueryRegistry;
+import org.mongo.viewer.service.ServiceLocator;
+import org.mongo.viewer.util.PropertyLoader;
+import org.mongo.viewer.util.QueryContext;
+import org.mongo.viewer.vo.RunningQuery;
+
+/**
+ * Gives every request a deadline, <code>query.timeout</code> millis unless
+ * the request asks for a shorter or longer one with a <code>timeout</code>
+ * parameter, up to <code>query.maxTimeout</code>. The request is registered
+ * with the {@link QueryRegistry} for as long as it runs, and its id is sent
+ * back in the <code>X-Query-Id</code> header so that it can be cancelled.
+ * Event streams are meant to stay open and get no deadline.
+ *
+ * Exports stream millions of rows and would never finish within a page's
+ * deadline. They get <code>export.idleTimeout</code> millis between batches
+ * instead, and <code>export.timeout</code> millis overall when that is set;
+ * they can still be cancelled by id.
+ */
+public class QueryDeadlineFilter implements Filter {
+
+    /** The response header carrying the query id. */
+    public static final String QUERY_ID_HEADER = "X-Query-Id";
+
+    private static Properties config = PropertyLoader.loadProperties("config");
+
+    private long timeout = PropertyLoader.getLong(config, "query.timeout",
+            30000);
+
+    private long maxTimeout = PropertyLoader.getLong(config,
+            "query.maxTimeout", 600000);
+
+    private long exportIdleTimeout = PropertyLoader.getLong(config,
+            "export.idleTimeout", 60000);
+
+    private long exportTimeout = PropertyLoader.getLong(config,
+            "export.timeout", 0);
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see javax.servlet.Filter#init(javax.servlet.FilterConfig)
+     */
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        // configured from config.properties
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see javax.servlet.Filter#doFilter(javax.servlet.ServletRequest,
+     * javax.servlet.ServletResponse, javax.servlet.FilterChain)
+     */
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response,
+            FilterChain chain) throws IOException, ServletException {
+        if (!(request instanceof HttpServletRequest) || isEventStream(request)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        QueryRegistry registry = ServiceLocator.lookup("queryRegistry",
+                QueryRegistry.class);
+        RunningQuery running;
+        if (isExport(httpRequest)) {
+            running = registry.beginStream(httpRequest.getRequestURI(),
+                    request.getRemoteAddr(), exportIdleTimeout, exportTimeout);
+        } else {
+            long requested;
+            try {
+                requested = getTimeout(httpRequest.getParameter("timeout"));
+            } catch (IllegalArgumentException e) {
+                ((HttpServletResponse) response).sendError(400,
+                        e.getMessage());
+                return;
+            }
+            running = registry.begin(httpRequest.getRequestURI(),
+                    request.getRemoteAddr(), requested);
+        }
+        ((HttpServletResponse) response).setHeader(QUERY_ID_HEADER,
+                running.getId());
+        QueryContext.set(running);
+        try {
+            chain.doFilter(request, response);
+        } catch (QueryAbortedException e) {
+            // thrown while streaming, after the resource returned
+            if (!response.isCommitted()) {
+                ((HttpServletResponse) response).sendError(e.isTimedOut() ? 504
+                        : 409, e.getMessage());
+            }
+        } finally {
+            QueryContext.clear();
+            registry.end(running);
+        }
+    }
+
+    private long getTimeout(String value) {
+        if (null == value || value.trim().length() == 0) {
+            return timeout;
+        }
+        try {
+            long requested = Long.parseLong(value.trim());
+            if (requested <= 0) {
+                throw new IllegalArgumentException(
+                        "timeout must be positive, got " + value);
+            }
+            return Math.min(requested, maxTimeout);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("timeout must be millis, got "
+                    + value);
+        }
+    }
+
+    private static boolean isExport(HttpServletRequest request) {
+        String path = request.getPathInfo();
+        return null != path && path.startsWith("/export/");
+    }
+
+    private static boolean isEventStream(ServletRequest request) {
+        String accept = ((HttpServletRequest) request).getHeader("Accept");
+        return null != accept && accept.contains("text/event-stream");
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see javax.servlet.Filter#destroy()
+     */
+    @Override
+    public void destroy() {
+        // nothing to release
+    }
+
+}
@@ -0,0 +1,104 @@
+/**
+ *
+ */
+package org.mongo.viewer.transport.rs;
+
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mongo.viewer.exception.ServiceException;
+import org.mongo.viewer.service.IndexAdvisor;
+import org.mongo.viewer.service.ServiceLocator;
+import org.mongo.viewer.util.RequestUtil;
+import org.mongo.viewer.vo.IndexAdvice;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.MongoException;
+import com.mongodb.util.JSON;
+
+/**
+ * Exposes the {@link IndexAdvisor}.
+ */
+@Path("/advisor")
+public class AdvisorService {
+
+    private static Log log = LogFactory.getLog(AdvisorService.class);
+
+    @Context
+    private HttpServletRequest request;
+
+    /**
+     * Lists the suggested indexes, most work saved first.
+     *
+     * @return the response
+     */
+    @GET
+    @Path("/indexes")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getAdvice() {
+        try {
+            List<IndexAdvice> advice = ServiceLocator.lookup("indexAdvisor",
+                    IndexAdvisor.class).getAdvice(
+                    RequestUtil.getDataBaseInfo(request));
+            BasicDBList result = new BasicDBList();
+            for (IndexAdvice item : advice) {
+                result.add(new BasicDBObject("collection", item
+                        .getCollection()).append("index", item.getIndex())
+                        .append("shapes", item.getShapes())
+                        .append("count", item.getCount())
+                        .append("totalMillis", item.getTotalMillis())
+                        .append("coverage", item.getCoverage())
+                        .append("score", item.getScore()));
+            }
+            return Response.ok(JSON.serialize(result),
+                    MediaType.APPLICATION_JSON).build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(400).entity(e.getMessage()).build();
+        } catch (ServiceException e) {
+            log.error("Index advice failed", e);
+            return Response.status(503).entity(e.getMessage()).build();
+        } catch (MongoException e) {
+            log.error("Index advice failed", e);
+            return Response.status(500).entity(e.getMessage()).build();
+        }
+    }
+
+    /**
+     * Creates the current month's and the suggested partition indexes on
+     * next month's partition.
+     *
+     * @return the response, the keys of the indexes created
+     */
+    @POST
+    @Path("/indexes/next-month")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response createNextMonthIndexes() {
+        try {
+            List<String> created = ServiceLocator.lookup("indexAdvisor",
+                    IndexAdvisor.class).createNextMonthIndexes(
+                    RequestUtil.getDataBaseInfo(request));
+            return Response.ok(JSON.serialize(created),
+                    MediaType.APPLICATION_JSON).build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(400).entity(e.getMessage()).build();
+        } catch (ServiceException e) {
+            log.error("Creating next month's indexes failed", e);
+            return Response.status(503).entity(e.getMessage()).build();
+        } catch (MongoException e) {
+            log.error("Creating next month's indexes failed", e);
+            return Response.status(500).entity(e.getMessage()).build();
+        }
+    }
+
+}
@@ -0,0 +1,133 @@
+/**
+ *
+ */
+package org.mongo.viewer.transport.rs;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mongo.viewer.exception.ServiceException;
+import org.mongo.viewer.service.AggregationService;
+import org.mongo.viewer.service.QueryCache;
+import org.mongo.viewer.service.ServiceLocator;
+import org.mongo.viewer.util.PartitionUtil;
+import org.mongo.viewer.util.QueryContext;
+import org.mongo.viewer.util.QueryUtil;
+import org.mongo.viewer.util.RequestUtil;
+import org.mongo.viewer.vo.DataBaseInfo;
+import org.mongo.viewer.vo.QueryKey;
+import org.mongo.viewer.vo.TimeBucket;
+
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import com.mongodb.util.JSON;
+
+/**
+ * Aggregates SysLog events on the server for dashboards. Results are small,
+ * so they are cached in the {@link QueryCache} and concurrent identical
+ * requests share one aggregation.
+ */
+@Path("/aggregate")
+public class AggregateService {
+
+    private static Log log = LogFactory.getLog(AggregateService.class);
+
+    private static final SharedQueryFlight<QueryKey, byte[]> flights = new SharedQueryFlight<QueryKey, byte[]>(
+            "/rest/aggregate/counts (shared)", "aggregate-flight");
+
+    @Context
+    private HttpServletRequest request;
+
+    /**
+     * Counts the events in <code>[from, to)</code> per time bucket, and per
+     * value of a field when <code>by</code> is given. Returns a JSON array of
+     * <code>{time, &lt;by&gt;, count}</code>.
+     *
+     * @param from
+     *            the start, epoch millis or yyyy-MM-dd['T'HH:mm[:ss]]
+     * @param to
+     *            the end, exclusive, same formats; the end of the current
+     *            bucket when absent
+     * @param query
+     *            the query
+     * @param by
+     *            type, subtype, hostName or systemId
+     * @param bucket
+     *            minute, hour or day
+     * @return the response
+     */
+    @GET
+    @Path("/counts")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response counts(@QueryParam("from") String from,
+            @QueryParam("to") String to, @QueryParam("q") String query,
+            @QueryParam("by") String by, @QueryParam("bucket") String bucket) {
+        try {
+            final DataBaseInfo info = RequestUtil.getDataBaseInfo(request);
+            final TimeBucket width = TimeBucket.parse(null == bucket ? "hour"
+                    : bucket);
+            final Date start = RequestUtil.parseDate(from);
+            Date parsedEnd = RequestUtil.parseDate(to);
+            // a whole bucket, so that refreshes within it hit the cache
+            final Date end = (null == parsedEnd) ? width.ceiling(new Date())
+                    : parsedEnd;
+            final String groupBy = (null == by || by.length() == 0) ? null
+                    : by;
+            final String q = query;
+            // results are as stable as the month the range ends in
+            String collection = PartitionUtil.getCollectionName(new Date(end
+                    .getTime() - 1));
+            final QueryKey key = new QueryKey(info, collection,
+                    QueryUtil.normalize(QueryUtil.parse(query)), null, null,
+                    "counts|" + groupBy + "|" + width + "|"
+                            + (null == start ? null : start.getTime()) + "|"
+                            + end.getTime());
+            final QueryCache cache = ServiceLocator.lookup("queryCache",
+                    QueryCache.class);
+            byte[] result = cache.get(key);
+            if (null == result) {
+                result = flights.execute(key, new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() throws Exception {
+                        byte[] bytes = cache.get(key);
+                        if (null == bytes) {
+                            List<DBObject> rows = ServiceLocator.lookup(
+                                    "aggregation", AggregationService.class)
+                                    .countEvents(info, q, groupBy, width,
+                                            start, end);
+                            bytes = JSON.serialize(rows).getBytes("UTF-8");
+                            cache.put(key, bytes);
+                        }
+                        return bytes;
+                    }
+                });
+            }
+            return Response.ok(result, MediaType.APPLICATION_JSON).build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(400).entity(e.getMessage()).build();
+        } catch (ServiceException e) {
+            log.error("Counting events failed", e);
+            return Response.status(503).entity(e.getMessage()).build();
+        } catch (MongoException e) {
+            log.error("Counting events failed", e);
+            return Response.status(QueryContext.getStatus(e))
+                    .entity(e.getMessage()).build();
+        } catch (Exception e) {
+            log.error("Counting events failed", e);
+            return Response.status(500).entity(e.getMessage()).build();
+        }
+    }
+
+}
@@ -0,0 +1,101 @@
+/**
+ *
+ */
+package org.mongo.viewer.transport.rs;
+
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.mongo.viewer.util.CacheStats;
+import org.mongo.viewer.util.SimpleCache;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.util.JSON;
+
+/**
+ * Lists the {@link SimpleCache}s with their statistics, to size them from
+ * what they actually do.
+ */
+@Path("/caches")
+public class CacheService {
+
+    /**
+     * Lists every cache, by name.
+     *
+     * @return the response
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getCaches() {
+        BasicDBList caches = new BasicDBList();
+        for (SimpleCache<?, ?> cache : SimpleCache.getCaches().values()) {
+            caches.add(describe(cache));
+        }
+        return Response.ok(JSON.serialize(caches), MediaType.APPLICATION_JSON)
+                .build();
+    }
+
+    /**
+     * Describes a cache.
+     *
+     * @param name
+     *            the name
+     * @return the response, 404 if there is no such cache
+     */
+    @GET
+    @Path("/{name}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getCache(@PathParam("name") String name) {
+        SimpleCache<?, ?> cache = SimpleCache.getCaches().get(name);
+        if (null == cache) {
+            return Response.status(404).build();
+        }
+        return Response.ok(JSON.serialize(describe(cache)),
+                MediaType.APPLICATION_JSON).build();
+    }
+
+    /**
+     * Sets the statistics of a cache back to 0, to measure from now on.
+     *
+     * @param name
+     *            the name
+     * @return the response, 404 if there is no such cache
+     */
+    @DELETE
+    @Path("/{name}/stats")
+    public Response resetStats(@PathParam("name") String name) {
+        SimpleCache<?, ?> cache = SimpleCache.getCaches().get(name);
+        if (null == cache) {
+            return Response.status(404).build();
+        }
+        cache.getStats().reset();
+        return Response.noContent().build();
+    }
+
+    private BasicDBObject describe(SimpleCache<?, ?> cache) {
+        CacheStats stats = cache.getStats();
+        return new BasicDBObject("name", cache.getName())
+                .append("size", cache.size())
+                .append("maxSize", cache.getMaxSize())
+                .append("maxAge", cache.getMaxAge())
+                .append("policy", cache.getPolicy().name())
+                .append("estimatedBytes", cache.getEstimatedBytes())
+                .append("maxWeight", cache.getMaxWeight() == Long.MAX_VALUE ? null
+                        : cache.getMaxWeight())
+                .append("hits", stats.getHits())
+                .append("misses", stats.getMisses())
+                .append("hitRatio", stats.getHitRatio())
+                .append("loads", stats.getLoads())
+                .append("averageLoadMillis", stats.getAverageLoadMillis())
+                .append("sizeEvictions", stats.getSizeEvictions())
+                .append("ageEvictions", stats.getAgeEvictions())
+                .append("rejections", stats.getRejections());
+    }
+
+}
@@ -0,0 +1,130 @@
+/**
+ *
+ */
+package org.mongo.viewer.transport.rs;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mongo.viewer.exception.ServiceException;
+import org.mongo.viewer.service.CountEstimator;
+import org.mongo.viewer.service.ServiceLocator;
+import org.mongo.viewer.util.RequestUtil;
+import org.mongo.viewer.vo.CountEstimate;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.MongoException;
+import com.mongodb.util.JSON;
+
+/**
+ * Exposes the {@link CountEstimator}. Every answer carries the count, how it
+ * was obtained, whether a better one is on its way and the exact count job
+ * with its progress, so the page can show "about 1.2M" and poll.
+ */
+@Path("/count")
+public class CountService {
+
+    private static Log log = LogFactory.getLog(CountService.class);
+
+    @Context
+    private HttpServletRequest request;
+
+    /**
+     * Estimates how many documents match.
+     *
+     * @param collection
+     *            the collection
+     * @param query
+     *            the query, may be blank
+     * @return the response
+     */
+    @GET
+    @Path("/{collection}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response estimate(@PathParam("collection") String collection,
+            @QueryParam("q") String query) {
+        try {
+            return toResponse(ServiceLocator.lookup("countEstimator",
+                    CountEstimator.class).estimate(
+                    RequestUtil.getDataBaseInfo(request), collection, query));
+        } catch (IllegalArgumentException e) {
+            return Response.status(400).entity(e.getMessage()).build();
+        } catch (ServiceException e) {
+            log.error("Count estimate failed", e);
+            return Response.status(503).entity(e.getMessage()).build();
+        } catch (MongoException e) {
+            log.error("Count estimate failed", e);
+            return Response.status(500).entity(e.getMessage()).build();
+        }
+    }
+
+    /**
+     * Starts, or joins, an exact count.
+     *
+     * @param collection
+     *            the collection
+     * @param query
+     *            the query, may be blank
+     * @return the response
+     */
+    @POST
+    @Path("/{collection}/exact")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response countExactly(@PathParam("collection") String collection,
+            @QueryParam("q") String query) {
+        try {
+            return toResponse(ServiceLocator.lookup("countEstimator",
+                    CountEstimator.class).countExactly(
+                    RequestUtil.getDataBaseInfo(request), collection, query));
+        } catch (IllegalArgumentException e) {
+            return Response.status(400).entity(e.getMessage()).build();
+        } catch (ServiceException e) {
+            log.error("Exact count failed", e);
+            return Response.status(503).entity(e.getMessage()).build();
+        } catch (MongoException e) {
+            log.error("Exact count failed", e);
+            return Response.status(500).entity(e.getMessage()).build();
+        }
+    }
+
+    /**
+     * Cancels an exact count.
+     *
+     * @param job
+     *            the job
+     * @return the response, 404 if it is not running
+     */
+    @DELETE
+    @Path("/jobs/{job}")
+    public Response cancel(@PathParam("job") String job) {
+        if (ServiceLocator.lookup("countEstimator", CountEstimator.class)
+                .cancel(job)) {
+            return Response.noContent().build();
+        }
+        return Response.status(404).build();
+    }
+
+    private Response toResponse(CountEstimate estimate) {
+        BasicDBObject result = new BasicDBObject("count", estimate.getCount())
+                .append("method", estimate.getMethod().name())
+                .append("refining", estimate.isRefining());
+        if (null != estimate.getJob()) {
+            result.append("job", estimate.getJob()).append("progress",
+                    estimate.getProgress());
+        }
+        return Response.ok(JSON.serialize(result), MediaType.APPLICATION_JSON)
+                .build();
+    }
+
+}
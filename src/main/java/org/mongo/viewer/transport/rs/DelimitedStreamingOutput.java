@@ -0,0 +1,168 @@
+package org.mongo.viewer.transport.rs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.Date;
+import java.util.zip.GZIPOutputStream;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.bson.BSONObject;
+import org.bson.types.ObjectId;
+import org.mongo.viewer.util.BsonJsonTranscoder;
+import org.mongo.viewer.util.DelimitedWriter;
+import org.mongo.viewer.util.DelimitedWriter.Format;
+import org.mongo.viewer.util.QueryContext;
+import org.mongo.viewer.util.QueryUtil;
+import org.mongo.viewer.vo.PageToken;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+
+/**
+ * Writes a cursor as CSV or TSV, one document per row, straight to the
+ * response. Like {@link NdjsonStreamingOutput} only the current document is
+ * held, the response is flushed after every cursor batch, which reports
+ * progress, and the stream stops when the request's query is cancelled or
+ * past its deadline. The cursor is always closed.
+ *
+ * Columns are top level or dotted field names. The {@link #CURSOR_COLUMN}
+ * column holds the position of each row, which resumes the export right after
+ * that row. Masked fields are written as {@link BsonJsonTranscoder#MASK}.
+ */
+public class DelimitedStreamingOutput implements StreamingOutput {
+
+    /** The pseudo column holding the resume token of each row. */
+    public static final String CURSOR_COLUMN = "_cursor";
+
+    private static Log log = LogFactory.getLog(DelimitedStreamingOutput.class);
+
+    private final DBCursor cursor;
+    private final Format format;
+    private final String[] columns;
+    private final boolean header;
+    private final boolean gzip;
+    private final int flushEvery;
+
+    /** Embedded documents and arrays, transcoded to JSON. */
+    private final ByteArrayOutputStream json = new ByteArrayOutputStream(256);
+    private final BsonJsonTranscoder transcoder = new BsonJsonTranscoder(null);
+
+    /**
+     * @param cursor
+     *            the cursor to drain, in <code>(timestamp, _id)</code> order
+     *            when the cursor column is written
+     * @param format
+     *            the format
+     * @param columns
+     *            the columns
+     * @param header
+     *            true to write the column names first
+     * @param gzip
+     *            true to gzip the whole output
+     * @param flushEvery
+     *            the number of rows between flushes
+     */
+    public DelimitedStreamingOutput(DBCursor cursor, Format format,
+            String[] columns, boolean header, boolean gzip, int flushEvery) {
+        this.cursor = cursor;
+        this.format = format;
+        this.columns = columns;
+        this.header = header;
+        this.gzip = gzip;
+        this.flushEvery = Math.max(1, flushEvery);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see javax.ws.rs.core.StreamingOutput#write(java.io.OutputStream)
+     */
+    @Override
+    public void write(OutputStream output) throws IOException,
+            WebApplicationException {
+        GZIPOutputStream compressed = gzip ? new GZIPOutputStream(output,
+                8192) : null;
+        // the encoder buffers, the rows are formatted in the writer's buffer
+        OutputStreamWriter out = new OutputStreamWriter(
+                gzip ? compressed : output, "UTF-8");
+        DelimitedWriter rows = new DelimitedWriter(out, format);
+        long count = 0;
+        try {
+            if (header) {
+                for (String column : columns) {
+                    rows.value(column);
+                }
+                rows.endRow();
+            }
+            while (cursor.hasNext()) {
+                DBObject document = cursor.next();
+                for (String column : columns) {
+                    rows.value(getValue(document, column));
+                }
+                rows.endRow();
+                if (++count % flushEvery == 0) {
+                    rows.flush();
+                    // a batch keeps the stream alive, a cancel or a stall
+                    // ends it
+                    QueryContext.progress();
+                }
+            }
+            rows.flush();
+            if (gzip) {
+                compressed.finish();
+            }
+        } finally {
+            cursor.close();
+            log.debug("Exported " + count + " rows");
+        }
+    }
+
+    /**
+     * Reads a column of a document.
+     */
+    private Object getValue(DBObject document, String column)
+            throws IOException {
+        if (CURSOR_COLUMN.equals(column)) {
+            Object timestamp = document.get(QueryUtil.TIMESTAMP);
+            Object id = document.get(QueryUtil.ID);
+            boolean resumable = timestamp instanceof Date
+                    && (id instanceof ObjectId || id instanceof String);
+            return resumable ? new PageToken((Date) timestamp, id).encode()
+                    : null;
+        }
+        Object value = document;
+        int start = 0;
+        while (value instanceof BSONObject && start <= column.length()) {
+            int end = column.indexOf('.', start);
+            if (end < 0) {
+                end = column.length();
+            }
+            String name = column.substring(start, end);
+            if (BsonJsonTranscoder.isMasked(name)) {
+                return BsonJsonTranscoder.MASK;
+            }
+            value = ((BSONObject) value).get(name);
+            start = end + 1;
+        }
+        if (start <= column.length()) {
+            // the path goes through a value that is not a document
+            return null;
+        }
+        if (value instanceof BSONObject) {
+            json.reset();
+            JsonGenerator generator = BsonJsonTranscoder.createGenerator(json);
+            transcoder.writeValue(value, generator);
+            generator.close();
+            return json.toString("UTF-8");
+        }
+        return value;
+    }
+
+}
@@ -0,0 +1,205 @@
+/**
+ *
+ */
+package org.mongo.viewer.transport.rs;
+
+import java.util.LinkedHashSet;
+import java.util.Properties;
+import java.util.Set;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Response;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mongo.viewer.exception.ServiceException;
+import org.mongo.viewer.service.QueryService;
+import org.mongo.viewer.service.ServiceLocator;
+import org.mongo.viewer.util.DelimitedWriter.Format;
+import org.mongo.viewer.util.PropertyLoader;
+import org.mongo.viewer.util.QueryContext;
+import org.mongo.viewer.util.QueryUtil;
+import org.mongo.viewer.util.RequestUtil;
+import org.mongo.viewer.vo.DataBaseInfo;
+import org.mongo.viewer.vo.PageToken;
+import org.mongo.viewer.vo.QuerySpec;
+
+import com.mongodb.DBCursor;
+import com.mongodb.MongoException;
+
+/**
+ * Exports query results. The connection is taken from the host, port,
+ * database, user and password request parameters.
+ */
+@Path("/export")
+public class ExportService {
+
+    /** The NDJSON media type. */
+    public static final String NDJSON = "application/x-ndjson";
+
+    /** The media type of gzipped downloads. */
+    public static final String GZIP = "application/gzip";
+
+    private static Log log = LogFactory.getLog(ExportService.class);
+
+    private static Properties config = PropertyLoader.loadProperties("config");
+
+    @Context
+    private HttpServletRequest request;
+
+    /**
+     * Streams the matching documents as newline delimited JSON.
+     *
+     * @param collection
+     *            the collection
+     * @param query
+     *            the query
+     * @param fields
+     *            the comma separated fields to return, all when absent
+     * @param sort
+     *            the sort
+     * @param limit
+     *            the limit
+     * @return the response
+     */
+    @GET
+    @Path("/{collection}")
+    @Produces(NDJSON)
+    public Response exportNdjson(@PathParam("collection") String collection,
+            @QueryParam("q") String query,
+            @QueryParam("fields") String fields,
+            @QueryParam("sort") String sort, @QueryParam("limit") int limit) {
+        DBCursor cursor = null;
+        try {
+            DataBaseInfo info = RequestUtil.getDataBaseInfo(request);
+            QuerySpec spec = new QuerySpec(collection, query);
+            spec.setFields(QueryUtil.splitFields(fields));
+            spec.setSort(sort);
+            spec.setLimit(limit);
+            QueryService service = ServiceLocator.lookup("query",
+                    QueryService.class);
+            cursor = service.find(info, spec);
+            // runs the query, so errors still get a proper status code
+            cursor.hasNext();
+            return Response.ok(
+                    new NdjsonStreamingOutput(cursor, service.getBatchSize(),
+                            spec.getFields()),
+                    NDJSON).build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(400).entity(e.getMessage()).build();
+        } catch (ServiceException e) {
+            log.error("Export of " + collection + " failed", e);
+            return Response.status(503).entity(e.getMessage()).build();
+        } catch (MongoException e) {
+            log.error("Export of " + collection + " failed", e);
+            if (null != cursor) {
+                cursor.close();
+            }
+            return Response.status(QueryContext.getStatus(e))
+                    .entity(e.getMessage()).build();
+        }
+    }
+
+    /**
+     * Streams the matching documents as CSV or TSV rows in
+     * <code>(timestamp, _id)</code> order. An export that broke off resumes
+     * after its last row when the row's
+     * {@link DelimitedStreamingOutput#CURSOR_COLUMN} value is passed back as
+     * the cursor.
+     *
+     * @param collection
+     *            the collection
+     * @param format
+     *            csv or tsv
+     * @param query
+     *            the query
+     * @param columns
+     *            the comma separated top level or dotted fields,
+     *            export.columns when absent
+     * @param cursor
+     *            the cursor column of the last row already read
+     * @param order
+     *            asc for oldest first, anything else for newest first
+     * @param limit
+     *            the limit
+     * @param header
+     *            false to leave out the column names
+     * @param gzip
+     *            true to download the export gzipped
+     * @return the response
+     */
+    @GET
+    @Path("/{collection}/{format: csv|tsv}")
+    public Response exportDelimited(
+            @PathParam("collection") String collection,
+            @PathParam("format") String format, @QueryParam("q") String query,
+            @QueryParam("columns") String columns,
+            @QueryParam("cursor") String cursor,
+            @QueryParam("order") String order, @QueryParam("limit") int limit,
+            @QueryParam("header") @DefaultValue("true") boolean header,
+            @QueryParam("gzip") boolean gzip) {
+        DBCursor results = null;
+        try {
+            DataBaseInfo info = RequestUtil.getDataBaseInfo(request);
+            Format type = Format.parse(format);
+            String[] names = QueryUtil.splitFields(null == columns ? config
+                    .getProperty("export.columns") : columns);
+            if (null == names) {
+                throw new IllegalArgumentException("columns are required");
+            }
+            QuerySpec spec = new QuerySpec(collection, query);
+            spec.setFields(topLevelFields(names));
+            spec.setLimit(limit);
+            PageToken token = (null == cursor || cursor.length() == 0) ? null
+                    : PageToken.decode(cursor);
+            QueryService service = ServiceLocator.lookup("query",
+                    QueryService.class);
+            results = service.scan(info, spec, token,
+                    "asc".equalsIgnoreCase(order));
+            String file = collection + "." + format.toLowerCase()
+                    + (gzip ? ".gz" : "");
+            return Response
+                    .ok(new DelimitedStreamingOutput(results, type, names,
+                            header, gzip, service.getBatchSize()),
+                            gzip ? GZIP : type.getMediaType()
+                                    + "; charset=UTF-8")
+                    .header("Content-Disposition",
+                            "attachment; filename=\"" + file + "\"").build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(400).entity(e.getMessage()).build();
+        } catch (ServiceException e) {
+            log.error("Export of " + collection + " failed", e);
+            return Response.status(503).entity(e.getMessage()).build();
+        } catch (MongoException e) {
+            log.error("Export of " + collection + " failed", e);
+            if (null != results) {
+                results.close();
+            }
+            return Response.status(QueryContext.getStatus(e))
+                    .entity(e.getMessage()).build();
+        }
+    }
+
+    /**
+     * Gets the fields to fetch for columns, the top level field of each.
+     */
+    private static String[] topLevelFields(String[] columns) {
+        Set<String> fields = new LinkedHashSet<String>();
+        for (String column : columns) {
+            if (!DelimitedStreamingOutput.CURSOR_COLUMN.equals(column)) {
+                int dot = column.indexOf('.');
+                fields.add(dot < 0 ? column : column.substring(0, dot));
+            }
+        }
+        fields.add(QueryUtil.ID);
+        return fields.toArray(new String[fields.size()]);
+    }
+
+}
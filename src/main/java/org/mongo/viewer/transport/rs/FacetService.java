@@ -0,0 +1,116 @@
+/**
+ *
+ */
+package org.mongo.viewer.transport.rs;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.mongo.viewer.exception.ServiceException;
+import org.mongo.viewer.service.FacetCatalog;
+import org.mongo.viewer.service.ServiceLocator;
+import org.mongo.viewer.util.PartitionUtil;
+import org.mongo.viewer.util.RequestUtil;
+import org.mongo.viewer.vo.FacetValue;
+import org.mongo.viewer.vo.Facets;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.util.JSON;
+
+/**
+ * Serves the values of the filter dropdowns from the {@link FacetCatalog}.
+ * Answers 202 while the facets of a collection are first computed.
+ */
+@Path("/facets")
+public class FacetService {
+
+    @Context
+    private HttpServletRequest request;
+
+    /**
+     * Gets the facets of the SysLog partition of a month.
+     *
+     * @param at
+     *            a date in the month, epoch millis or yyyy-MM-dd['T'HH:mm[:ss]],
+     *            now when absent
+     * @return the response
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getSysLogFacets(@QueryParam("at") String at) {
+        try {
+            Date date = RequestUtil.parseDate(at);
+            return getFacets(PartitionUtil
+                    .getCollectionName(null == date ? new Date() : date));
+        } catch (IllegalArgumentException e) {
+            return Response.status(400).entity(e.getMessage()).build();
+        } catch (ServiceException e) {
+            return Response.status(503).entity(e.getMessage()).build();
+        }
+    }
+
+    /**
+     * Gets the facets of a collection.
+     *
+     * @param collection
+     *            the collection
+     * @return the response
+     */
+    @GET
+    @Path("/{collection}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getCollectionFacets(
+            @PathParam("collection") String collection) {
+        try {
+            return getFacets(collection);
+        } catch (IllegalArgumentException e) {
+            return Response.status(400).entity(e.getMessage()).build();
+        } catch (ServiceException e) {
+            return Response.status(503).entity(e.getMessage()).build();
+        }
+    }
+
+    private Response getFacets(String collection) throws ServiceException {
+        Facets facets = ServiceLocator.lookup("facetCatalog",
+                FacetCatalog.class).getFacets(
+                RequestUtil.getDataBaseInfo(request), collection);
+        if (null == facets) {
+            return Response
+                    .status(202)
+                    .entity(JSON.serialize(new BasicDBObject("collection",
+                            collection).append("computing", true)))
+                    .type(MediaType.APPLICATION_JSON).build();
+        }
+        BasicDBObject fields = new BasicDBObject();
+        for (Map.Entry<String, List<FacetValue>> entry : facets.getValues()
+                .entrySet()) {
+            BasicDBList values = new BasicDBList();
+            for (FacetValue value : entry.getValue()) {
+                values.add(new BasicDBObject("value", value.getValue())
+                        .append("count", value.getCount()));
+            }
+            fields.append(entry.getKey(), values);
+        }
+        BasicDBObject result = new BasicDBObject("collection",
+                facets.getCollection())
+                .append("computed", facets.getComputed())
+                .append("closed", facets.isClosed())
+                .append("fields", fields)
+                .append("truncated", facets.getTruncated());
+        return Response.ok(JSON.serialize(result), MediaType.APPLICATION_JSON)
+                .build();
+    }
+
+}
@@ -0,0 +1,90 @@
+/**
+ *
+ */
+package org.mongo.viewer.transport.rs;
+
+import java.util.Properties;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Response;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mongo.viewer.exception.ServiceException;
+import org.mongo.viewer.service.ServiceLocator;
+import org.mongo.viewer.service.TailService;
+import org.mongo.viewer.util.PropertyLoader;
+import org.mongo.viewer.util.RequestUtil;
+
+/**
+ * Follows new documents as Server-Sent Events. Watchers of the same
+ * collection and filter share one upstream poll, see {@link TailService}.
+ */
+@Path("/tail")
+public class LiveTailService {
+
+    private static Log log = LogFactory.getLog(LiveTailService.class);
+
+    private static Properties config = PropertyLoader.loadProperties("config");
+
+    private static long heartbeat = PropertyLoader.getLong(config,
+            "tail.heartbeat", 15);
+
+    @Context
+    private HttpServletRequest request;
+
+    /**
+     * Follows the SysLog partition of the current month, rolling over to the
+     * next one with the month.
+     *
+     * @param query
+     *            the filter
+     * @return the response
+     */
+    @GET
+    @Produces(SseStreamingOutput.EVENT_STREAM)
+    public Response tailSysLog(@QueryParam("q") String query) {
+        return tail(null, query);
+    }
+
+    /**
+     * Follows a collection.
+     *
+     * @param collection
+     *            the collection
+     * @param query
+     *            the filter
+     * @return the response
+     */
+    @GET
+    @Path("/{collection}")
+    @Produces(SseStreamingOutput.EVENT_STREAM)
+    public Response tailCollection(@PathParam("collection") String collection,
+            @QueryParam("q") String query) {
+        return tail(collection, query);
+    }
+
+    private Response tail(String collection, String query) {
+        try {
+            TailService.Subscription subscription = ServiceLocator.lookup(
+                    "tail", TailService.class).subscribe(
+                    RequestUtil.getDataBaseInfo(request), collection, query);
+            return Response
+                    .ok(new SseStreamingOutput(subscription, heartbeat),
+                            SseStreamingOutput.EVENT_STREAM)
+                    .header("Cache-Control", "no-cache").build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(400).entity(e.getMessage()).build();
+        } catch (ServiceException e) {
+            log.error("Tail of " + collection + " failed", e);
+            return Response.status(503).entity(e.getMessage()).build();
+        }
+    }
+
+}
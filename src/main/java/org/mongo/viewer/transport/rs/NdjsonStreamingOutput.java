@@ -0,0 +1,89 @@
+package org.mongo.viewer.transport.rs;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mongo.viewer.util.BsonJsonTranscoder;
+import org.mongo.viewer.util.QueryContext;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.mongodb.Cursor;
+
+/**
+ * Writes a cursor as newline delimited JSON, one document per line, straight
+ * to the response. Only the current document is held in memory and the
+ * response is flushed after every cursor batch, so arbitrarily large results
+ * stream in constant memory. Documents are transcoded from their BSON with
+ * {@link BsonJsonTranscoder}, so masked fields never leave the server. Every
+ * batch reports progress to the request's query, and the stream stops when
+ * that query is cancelled or past its deadline. The cursor is always closed.
+ */
+public class NdjsonStreamingOutput implements StreamingOutput {
+
+    private static Log log = LogFactory.getLog(NdjsonStreamingOutput.class);
+
+    private final Cursor cursor;
+    private final int flushEvery;
+    private final String[] fields;
+
+    /**
+     * @param cursor
+     *            the cursor to drain
+     * @param flushEvery
+     *            the number of documents between flushes
+     */
+    public NdjsonStreamingOutput(Cursor cursor, int flushEvery) {
+        this(cursor, flushEvery, null);
+    }
+
+    /**
+     * @param cursor
+     *            the cursor to drain
+     * @param flushEvery
+     *            the number of documents between flushes
+     * @param fields
+     *            the fields to write, as projected, null for all
+     */
+    public NdjsonStreamingOutput(Cursor cursor, int flushEvery,
+            String[] fields) {
+        this.cursor = cursor;
+        this.flushEvery = Math.max(1, flushEvery);
+        this.fields = fields;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see javax.ws.rs.core.StreamingOutput#write(java.io.OutputStream)
+     */
+    @Override
+    public void write(OutputStream output) throws IOException,
+            WebApplicationException {
+        JsonGenerator out = BsonJsonTranscoder.createGenerator(output);
+        BsonJsonTranscoder transcoder = new BsonJsonTranscoder(fields);
+        long count = 0;
+        try {
+            while (cursor.hasNext()) {
+                transcoder.write(cursor.next(), out);
+                out.writeRaw('\n');
+                if (++count % flushEvery == 0) {
+                    out.flush();
+                    // a batch keeps the stream alive, a cancel or a stall
+                    // ends it
+                    QueryContext.progress();
+                }
+            }
+            out.flush();
+        } finally {
+            out.close();
+            cursor.close();
+            log.debug("Streamed " + count + " documents");
+        }
+    }
+
+}
@@ -0,0 +1,157 @@
+/**
+ *
+ */
+package org.mongo.viewer.transport.rs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mongo.viewer.exception.ServiceException;
+import org.mongo.viewer.service.QueryCache;
+import org.mongo.viewer.service.QueryService;
+import org.mongo.viewer.service.ServiceLocator;
+import org.mongo.viewer.util.BsonJsonTranscoder;
+import org.mongo.viewer.util.QueryContext;
+import org.mongo.viewer.util.QueryUtil;
+import org.mongo.viewer.util.RequestUtil;
+import org.mongo.viewer.vo.DataBaseInfo;
+import org.mongo.viewer.vo.Page;
+import org.mongo.viewer.vo.PageToken;
+import org.mongo.viewer.vo.QueryKey;
+import org.mongo.viewer.vo.QuerySpec;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+
+/**
+ * Pages through a collection in <code>(timestamp, _id)</code> order. Each
+ * response carries an opaque <code>next</code> token; passing it back as
+ * <code>cursor</code> resumes right after the last document, so deep pages
+ * cost the same as the first one. Pages are served from the
+ * {@link QueryCache} while they are fresh, and concurrent requests for the
+ * same page share one read.
+ */
+@Path("/page")
+public class PageService {
+
+    private static Log log = LogFactory.getLog(PageService.class);
+
+    /** Identical pages requested at the same time are read once. */
+    private static final SharedQueryFlight<QueryKey, byte[]> flights = new SharedQueryFlight<QueryKey, byte[]>(
+            "/rest/page (shared)", "page-flight");
+
+    @Context
+    private HttpServletRequest request;
+
+    /**
+     * Gets a page.
+     *
+     * @param collection
+     *            the collection
+     * @param query
+     *            the query
+     * @param fields
+     *            the comma separated fields to return, all when absent
+     * @param cursor
+     *            the next token of the previous page
+     * @param size
+     *            the page size
+     * @param order
+     *            asc for oldest first, anything else for newest first
+     * @return the response
+     */
+    @GET
+    @Path("/{collection}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getPage(@PathParam("collection") String collection,
+            @QueryParam("q") String query,
+            @QueryParam("fields") String fields,
+            @QueryParam("cursor") String cursor, @QueryParam("size") int size,
+            @QueryParam("order") String order) {
+        try {
+            DataBaseInfo info = RequestUtil.getDataBaseInfo(request);
+            final QuerySpec spec = new QuerySpec(collection, query);
+            spec.setFields(QueryUtil.splitFields(fields));
+            spec.setLimit(size);
+            final boolean ascending = "asc".equalsIgnoreCase(order);
+            final QueryKey key = new QueryKey(info, collection,
+                    QueryUtil.normalize(QueryUtil.parse(query)),
+                    QueryUtil.normalize(QueryUtil.projection(spec.getFields(),
+                            QueryUtil.TIMESTAMP)), null, cursor + "|" + size
+                            + "|" + ascending);
+            final QueryCache cache = ServiceLocator.lookup("queryCache",
+                    QueryCache.class);
+            byte[] cached = cache.get(key);
+            if (null == cached) {
+                final PageToken token = (null == cursor || cursor.length() == 0) ? null
+                        : PageToken.decode(cursor);
+                cached = flights.execute(key, new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() throws Exception {
+                        // the previous flight may have just filled it
+                        byte[] bytes = cache.get(key);
+                        if (null == bytes) {
+                            bytes = load(key.getInfo(), spec, token, ascending);
+                            cache.put(key, bytes);
+                        }
+                        return bytes;
+                    }
+                });
+            }
+            return Response.ok(cached, MediaType.APPLICATION_JSON).build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(400).entity(e.getMessage()).build();
+        } catch (ServiceException e) {
+            log.error("Paging " + collection + " failed", e);
+            return Response.status(503).entity(e.getMessage()).build();
+        } catch (MongoException e) {
+            log.error("Paging " + collection + " failed", e);
+            return Response.status(QueryContext.getStatus(e))
+                    .entity(e.getMessage()).build();
+        } catch (Exception e) {
+            log.error("Paging " + collection + " failed", e);
+            return Response.status(500).entity(e.getMessage()).build();
+        }
+    }
+
+    /**
+     * Reads a page from mongo and transcodes it, documents straight from
+     * their BSON.
+     *
+     * @return the page as UTF-8 JSON
+     */
+    private byte[] load(DataBaseInfo info, QuerySpec spec, PageToken token,
+            boolean ascending) throws ServiceException, IOException {
+        Page page = ServiceLocator.lookup("query", QueryService.class).page(
+                info, spec, token, ascending);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8192);
+        JsonGenerator out = BsonJsonTranscoder.createGenerator(bytes);
+        BsonJsonTranscoder transcoder = new BsonJsonTranscoder(
+                spec.getFields());
+        out.writeStartObject();
+        out.writeArrayFieldStart("documents");
+        for (DBObject document : page.getDocuments()) {
+            transcoder.write(document, out);
+        }
+        out.writeEndArray();
+        out.writeStringField("next", page.getNext());
+        out.writeEndObject();
+        out.close();
+        return bytes.toByteArray();
+    }
+
+}
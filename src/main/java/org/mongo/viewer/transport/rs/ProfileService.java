@@ -0,0 +1,62 @@
+/**
+ *
+ */
+package org.mongo.viewer.transport.rs;
+
+import java.util.List;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.mongo.viewer.service.QueryProfiler;
+import org.mongo.viewer.service.ServiceLocator;
+import org.mongo.viewer.vo.SlowQuery;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.util.JSON;
+
+/**
+ * Lists what the {@link QueryProfiler} captured.
+ */
+@Path("/profile")
+public class ProfileService {
+
+    /**
+     * Lists the recent slow queries, newest first, with their explain plans.
+     *
+     * @return the response
+     */
+    @GET
+    @Path("/slow")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getSlowQueries() {
+        QueryProfiler profiler = ServiceLocator.lookup("profiler",
+                QueryProfiler.class);
+        List<SlowQuery> slowQueries = profiler.getSlowQueries();
+        BasicDBList queries = new BasicDBList();
+        for (SlowQuery slow : slowQueries) {
+            queries.add(new BasicDBObject("time", slow.getTime())
+                    .append("operation", slow.getOperation())
+                    .append("database", slow.getDatabase())
+                    .append("collection", slow.getCollection())
+                    .append("query", slow.getQuery())
+                    .append("projection", slow.getProjection())
+                    .append("sort", slow.getSort())
+                    .append("millis", slow.getMillis())
+                    .append("plan", slow.getPlan())
+                    .append("index", slow.getIndex())
+                    .append("docsExamined", slow.getDocsExamined())
+                    .append("returned", slow.getReturned())
+                    .append("explainError", slow.getExplainError()));
+        }
+        BasicDBObject result = new BasicDBObject("threshold",
+                profiler.getThreshold()).append("queries", queries);
+        return Response.ok(JSON.serialize(result), MediaType.APPLICATION_JSON)
+                .build();
+    }
+
+}
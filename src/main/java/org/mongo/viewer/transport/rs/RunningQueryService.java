@@ -0,0 +1,68 @@
+/**
+ *
+ */
+package org.mongo.viewer.transport.rs;
+
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.mongo.viewer.service.QueryRegistry;
+import org.mongo.viewer.service.ServiceLocator;
+import org.mongo.viewer.vo.RunningQuery;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.util.JSON;
+
+/**
+ * Lists and cancels the requests running queries. A request learns its own
+ * id from the <code>X-Query-Id</code> response header.
+ */
+@Path("/queries")
+public class RunningQueryService {
+
+    /**
+     * Lists the running queries, oldest first.
+     *
+     * @return the response
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getRunning() {
+        BasicDBList queries = new BasicDBList();
+        for (RunningQuery running : ServiceLocator.lookup("queryRegistry",
+                QueryRegistry.class).getRunning()) {
+            queries.add(new BasicDBObject("id", running.getId())
+                    .append("uri", running.getUri())
+                    .append("client", running.getClient())
+                    .append("started", running.getStarted())
+                    .append("remainingMillis", running.getRemainingMillis())
+                    .append("aborted", running.getAbortReason()));
+        }
+        return Response.ok(JSON.serialize(queries), MediaType.APPLICATION_JSON)
+                .build();
+    }
+
+    /**
+     * Cancels a running query.
+     *
+     * @param id
+     *            the id
+     * @return the response, 404 if it is not running
+     */
+    @DELETE
+    @Path("/{id}")
+    public Response cancel(@PathParam("id") String id) {
+        if (ServiceLocator.lookup("queryRegistry", QueryRegistry.class).cancel(
+                id)) {
+            return Response.noContent().build();
+        }
+        return Response.status(404).build();
+    }
+
+}
@@ -0,0 +1,83 @@
+package org.mongo.viewer.transport.rs;
+
+import java.util.Properties;
+
+import org.mongo.viewer.service.QueryRegistry;
+import org.mongo.viewer.service.ServiceLocator;
+import org.mongo.viewer.util.PropertyLoader;
+import org.mongo.viewer.util.SingleFlight;
+import org.mongo.viewer.vo.RunningQuery;
+
+/**
+ * A {@link SingleFlight} whose shared load is a running query of its own,
+ * listed with the running queries. It gets what is left of the first
+ * caller's deadline, or <code>query.sharedTimeout</code> millis when that
+ * caller has none, and is cancelled once every caller has timed out or been
+ * cancelled.
+ *
+ * @param <K>
+ *            the key type
+ * @param <V>
+ *            the result type
+ */
+public class SharedQueryFlight<K, V> extends SingleFlight<K, V> {
+
+    private static Properties config = PropertyLoader.loadProperties("config");
+
+    private final String uri;
+
+    private long timeout = PropertyLoader.getLong(config,
+            "query.sharedTimeout", 120000);
+
+    /**
+     * @param uri
+     *            the uri the shared loads are listed under
+     * @param name
+     *            the name of the pool threads
+     */
+    public SharedQueryFlight(String uri, String name) {
+        super(name);
+        this.uri = uri;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.mongo.viewer.util.SingleFlight#begin(java.lang.Object,
+     * org.mongo.viewer.vo.RunningQuery)
+     */
+    @Override
+    protected RunningQuery begin(K key, RunningQuery caller) {
+        long remaining = null == caller ? timeout : Math.max(1,
+                caller.getRemainingMillis());
+        return getRegistry().begin(uri, "shared", remaining);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.mongo.viewer.util.SingleFlight#end(org.mongo.viewer.vo.RunningQuery)
+     */
+    @Override
+    protected void end(RunningQuery shared) {
+        getRegistry().end(shared);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.mongo.viewer.util.SingleFlight#abandon(org.mongo.viewer.vo.RunningQuery
+     * )
+     */
+    @Override
+    protected void abandon(RunningQuery shared) {
+        getRegistry().cancel(shared.getId());
+    }
+
+    private QueryRegistry getRegistry() {
+        return ServiceLocator.lookup("queryRegistry", QueryRegistry.class);
+    }
+
+}
@@ -0,0 +1,101 @@
+package org.mongo.viewer.transport.rs;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mongo.viewer.service.TailService.Subscription;
+
+import com.mongodb.DBObject;
+import com.mongodb.util.JSON;
+
+/**
+ * Writes a tail subscription as Server-Sent Events, one <code>data</code>
+ * line of JSON per document. Whatever is buffered is flushed before waiting
+ * for more, and a comment line is sent when nothing happened for
+ * <code>heartbeat</code> seconds, which keeps proxies from timing out and
+ * notices a client that went away. A dropped subscriber gets a
+ * <code>dropped</code> event before the stream ends. The subscription is
+ * always closed.
+ */
+public class SseStreamingOutput implements StreamingOutput {
+
+    /** The SSE media type. */
+    public static final String EVENT_STREAM = "text/event-stream";
+
+    private static Log log = LogFactory.getLog(SseStreamingOutput.class);
+
+    private final Subscription subscription;
+    private final long heartbeat;
+
+    /**
+     * @param subscription
+     *            the subscription to stream
+     * @param heartbeat
+     *            the seconds of silence before a heartbeat
+     */
+    public SseStreamingOutput(Subscription subscription, long heartbeat) {
+        this.subscription = subscription;
+        this.heartbeat = Math.max(1, heartbeat);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see javax.ws.rs.core.StreamingOutput#write(java.io.OutputStream)
+     */
+    @Override
+    public void write(OutputStream output) throws IOException,
+            WebApplicationException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(output, "UTF-8"));
+        StringBuilder event = new StringBuilder(1024);
+        long count = 0;
+        try {
+            // tells the browser how long to wait before reconnecting
+            out.write("retry: 5000\n\n");
+            out.flush();
+            while (true) {
+                DBObject document = subscription.poll(heartbeat,
+                        TimeUnit.SECONDS);
+                if (null == document) {
+                    if (subscription.isDropped()) {
+                        out.write("event: dropped\ndata: too slow, reconnect\n\n");
+                        out.flush();
+                        break;
+                    }
+                    if (subscription.isClosed()) {
+                        break;
+                    }
+                    out.write(": heartbeat\n\n");
+                    out.flush();
+                    continue;
+                }
+                do {
+                    event.setLength(0);
+                    event.append("data: ");
+                    // serialized JSON never contains a raw newline
+                    JSON.serialize(document, event);
+                    event.append("\n\n");
+                    out.append(event);
+                    count++;
+                    document = subscription.poll(0, TimeUnit.SECONDS);
+                } while (null != document);
+                out.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            subscription.close();
+            log.debug("Tailed " + count + " documents");
+        }
+    }
+
+}
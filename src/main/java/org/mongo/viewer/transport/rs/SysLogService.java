@@ -0,0 +1,103 @@
+/**
+ *
+ */
+package org.mongo.viewer.transport.rs;
+
+import java.util.Date;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Response;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mongo.viewer.exception.ServiceException;
+import org.mongo.viewer.service.PartitionQueryService;
+import org.mongo.viewer.service.QueryService;
+import org.mongo.viewer.service.ServiceLocator;
+import org.mongo.viewer.util.QueryContext;
+import org.mongo.viewer.util.QueryUtil;
+import org.mongo.viewer.util.RequestUtil;
+import org.mongo.viewer.vo.DataBaseInfo;
+import org.mongo.viewer.vo.QuerySpec;
+
+import com.mongodb.Cursor;
+import com.mongodb.MongoException;
+
+/**
+ * Queries SysLog events over a time range, across the monthly
+ * <code>SYSLOG_MM_YYYY</code> collections.
+ */
+@Path("/syslog")
+public class SysLogService {
+
+    private static Log log = LogFactory.getLog(SysLogService.class);
+
+    @Context
+    private HttpServletRequest request;
+
+    /**
+     * Streams the events in <code>[from, to)</code> matching the query as
+     * newline delimited JSON, in timestamp order.
+     *
+     * @param from
+     *            the start, epoch millis or yyyy-MM-dd['T'HH:mm[:ss]]
+     * @param to
+     *            the end, exclusive, same formats
+     * @param query
+     *            the query
+     * @param fields
+     *            the comma separated fields to return, all when absent
+     * @param limit
+     *            the limit
+     * @param order
+     *            asc for oldest first, anything else for newest first
+     * @return the response
+     */
+    @GET
+    @Produces(ExportService.NDJSON)
+    public Response find(@QueryParam("from") String from,
+            @QueryParam("to") String to, @QueryParam("q") String query,
+            @QueryParam("fields") String fields,
+            @QueryParam("limit") int limit, @QueryParam("order") String order) {
+        Cursor cursor = null;
+        try {
+            DataBaseInfo info = RequestUtil.getDataBaseInfo(request);
+            Date start = RequestUtil.parseDate(from);
+            Date end = RequestUtil.parseDate(to);
+            if (null == end) {
+                end = new Date();
+            }
+            QuerySpec spec = new QuerySpec(null, query);
+            spec.setFields(QueryUtil.splitFields(fields));
+            spec.setLimit(limit);
+            cursor = ServiceLocator.lookup("partitionQuery",
+                    PartitionQueryService.class).find(info, spec, start, end,
+                    "asc".equalsIgnoreCase(order));
+            // runs the queries, so errors still get a proper status code
+            cursor.hasNext();
+            int flushEvery = ServiceLocator.lookup("query", QueryService.class)
+                    .getBatchSize();
+            return Response.ok(new NdjsonStreamingOutput(cursor, flushEvery,
+                    spec.getFields()),
+                    ExportService.NDJSON).build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(400).entity(e.getMessage()).build();
+        } catch (ServiceException e) {
+            log.error("SysLog query failed", e);
+            return Response.status(503).entity(e.getMessage()).build();
+        } catch (MongoException e) {
+            log.error("SysLog query failed", e);
+            if (null != cursor) {
+                cursor.close();
+            }
+            return Response.status(QueryContext.getStatus(e))
+                    .entity(e.getMessage()).build();
+        }
+    }
+
+}
@@ -0,0 +1,142 @@
+package org.mongo.viewer.util;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+import org.mongo.viewer.vo.TimeBucket;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+
+/**
+ * Compiles event counts into aggregation pipelines, so that only the counts
+ * leave the server.
+ */
+public final class AggregationUtil {
+
+    /** The fields events may be grouped by. */
+    public static final List<String> GROUP_FIELDS = Arrays.asList("type",
+            "subtype", "hostName", "systemId");
+
+    /** The time bucket of a result row. */
+    public static final String TIME = "time";
+
+    /** The count of a result row. */
+    public static final String COUNT = "count";
+
+    private static final String KEY = "key";
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private AggregationUtil() {
+    }
+
+    /**
+     * Builds <code>$match</code> then <code>$group</code> on the time bucket
+     * and, optionally, a field. Each output document has an <code>_id</code>
+     * of date parts plus <code>key</code>, and a <code>count</code>.
+     *
+     * @param match
+     *            the query, including the time range
+     * @param groupBy
+     *            one of {@link #GROUP_FIELDS}, null to count per bucket only
+     * @param bucket
+     *            the bucket width
+     * @return the pipeline
+     * @throws IllegalArgumentException
+     *             if the field cannot be grouped by
+     */
+    public static List<DBObject> countPipeline(DBObject match, String groupBy,
+            TimeBucket bucket) {
+        if (null != groupBy && !GROUP_FIELDS.contains(groupBy)) {
+            throw new IllegalArgumentException("Cannot group by " + groupBy
+                    + ", only by " + GROUP_FIELDS);
+        }
+        String timestamp = "$" + QueryUtil.TIMESTAMP;
+        BasicDBObject id = new BasicDBObject("y", new BasicDBObject("$year",
+                timestamp)).append("m",
+                new BasicDBObject("$month", timestamp)).append("d",
+                new BasicDBObject("$dayOfMonth", timestamp));
+        if (bucket != TimeBucket.DAY) {
+            id.append("h", new BasicDBObject("$hour", timestamp));
+        }
+        if (bucket == TimeBucket.MINUTE) {
+            id.append("i", new BasicDBObject("$minute", timestamp));
+        }
+        if (null != groupBy) {
+            id.append(KEY, "$" + groupBy);
+        }
+        DBObject group = new BasicDBObject("_id", id).append(COUNT,
+                new BasicDBObject("$sum", 1));
+        return Arrays.<DBObject> asList(new BasicDBObject("$match", match),
+                new BasicDBObject("$group", group));
+    }
+
+    /**
+     * Builds <code>$group</code> on a field, then the most frequent values
+     * first. One value more than the limit is kept, so that the caller can
+     * tell whether there were more. Each output document has the value as
+     * <code>_id</code> and a <code>count</code>.
+     *
+     * @param field
+     *            the field
+     * @param limit
+     *            the number of values wanted
+     * @return the pipeline
+     */
+    public static List<DBObject> topValuesPipeline(String field, int limit) {
+        DBObject group = new BasicDBObject("_id", "$" + field).append(COUNT,
+                new BasicDBObject("$sum", 1));
+        return Arrays.<DBObject> asList(new BasicDBObject("$group", group),
+                new BasicDBObject("$sort", new BasicDBObject(COUNT, -1)
+                        .append("_id", 1)), new BasicDBObject("$limit",
+                        limit + 1));
+    }
+
+    /**
+     * Gets the start of the bucket of a <code>$group</code> output document.
+     *
+     * @param result
+     *            the output document
+     * @return the bucket start
+     */
+    public static Date getBucket(DBObject result) {
+        DBObject id = (DBObject) result.get("_id");
+        Calendar cal = Calendar.getInstance(UTC);
+        cal.clear();
+        cal.set(intValue(id, "y"), intValue(id, "m") - 1, intValue(id, "d"),
+                intValue(id, "h"), intValue(id, "i"));
+        return cal.getTime();
+    }
+
+    /**
+     * Gets the group value of a <code>$group</code> output document.
+     *
+     * @param result
+     *            the output document
+     * @return the value, null when not grouped or the field is missing
+     */
+    public static Object getKey(DBObject result) {
+        return ((DBObject) result.get("_id")).get(KEY);
+    }
+
+    /**
+     * Gets the count of a <code>$group</code> output document.
+     *
+     * @param result
+     *            the output document
+     * @return the count
+     */
+    public static long getCount(DBObject result) {
+        return ((Number) result.get(COUNT)).longValue();
+    }
+
+    private static int intValue(DBObject document, String key) {
+        Object value = document.get(key);
+        return (null == value) ? 0 : ((Number) value).intValue();
+    }
+
+}
@@ -0,0 +1,504 @@
+package org.mongo.viewer.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+
+import org.bson.BSONObject;
+import org.bson.BasicBSONEncoder;
+import org.bson.BasicBSONObject;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+/**
+ * Writes BSON documents as JSON tokens straight from their bytes, without
+ * building Java objects for them. The output is the same extended JSON as
+ * <code>com.mongodb.util.JSON.serialize</code>, so <code>{"$date": ...}</code>
+ * and <code>{"$oid": ...}</code> for dates and ids. On the way, top level
+ * fields outside the projection are skipped and the values of fields named
+ * like <code>json.maskedFields</code> are masked at any depth.
+ *
+ * Strings are copied as UTF-8 bytes, and field names are looked up in a
+ * small cache of the names already seen, so a document costs next to no
+ * allocation. An instance keeps that cache and is not thread safe: use one
+ * per response.
+ */
+public class BsonJsonTranscoder {
+
+    /** What masked values are replaced with. */
+    public static final String MASK = "******";
+
+    private static Properties config = PropertyLoader.loadProperties("config");
+
+    /** Field names, in lower case, whose values are masked. */
+    private static final Set<String> MASKED = new HashSet<String>();
+
+    static {
+        String[] names = QueryUtil.splitFields(config.getProperty(
+                "json.maskedFields", "password,passwd,pwd,pin,secret"));
+        if (null != names) {
+            for (String name : names) {
+                MASKED.add(name.toLowerCase(Locale.ENGLISH));
+            }
+        }
+    }
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final JsonFactory factory = new JsonFactory();
+
+    static {
+        factory.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        // callers decide what separates documents
+        factory.setRootValueSeparator(null);
+    }
+
+    private static final SerializableString DATE = new SerializedString(
+            "$date");
+    private static final SerializableString OID = new SerializedString("$oid");
+    private static final SerializableString BINARY = new SerializedString(
+            "$binary");
+    private static final SerializableString TYPE = new SerializedString(
+            "$type");
+    private static final SerializableString REGEX = new SerializedString(
+            "$regex");
+    private static final SerializableString OPTIONS = new SerializedString(
+            "$options");
+    private static final SerializableString CODE = new SerializedString(
+            "$code");
+    private static final SerializableString SCOPE = new SerializedString(
+            "$scope");
+    private static final SerializableString REF = new SerializedString("$ref");
+    private static final SerializableString ID = new SerializedString("$id");
+    private static final SerializableString TS = new SerializedString("$ts");
+    private static final SerializableString INC = new SerializedString("$inc");
+    private static final SerializableString UNDEFINED = new SerializedString(
+            "$undefined");
+    private static final SerializableString MIN_KEY = new SerializedString(
+            "$minKey");
+    private static final SerializableString MAX_KEY = new SerializedString(
+            "$maxKey");
+
+    /** The name {@link #writeValue(Object, JsonGenerator)} wraps values in. */
+    private static final String VALUE = "v";
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final int CACHE_SIZE = 256;
+
+    private final Set<String> fields;
+
+    private final String[] names = new String[CACHE_SIZE];
+    private final byte[][] nameBytes = new byte[CACHE_SIZE][];
+    private final boolean[] nameMasked = new boolean[CACHE_SIZE];
+
+    /** Set by {@link #readName(byte[], int)}. */
+    private String name;
+    private boolean masked;
+
+    private final char[] chars = new char[24];
+
+    /**
+     * @param fields
+     *            the fields to write, null for all; a dotted field keeps its
+     *            top level field, which the server projected down already.
+     *            _id is always written unless projected away on the server
+     */
+    public BsonJsonTranscoder(String[] fields) {
+        if (null == fields) {
+            this.fields = null;
+        } else {
+            this.fields = new HashSet<String>();
+            for (String field : fields) {
+                int dot = field.indexOf('.');
+                this.fields.add(dot < 0 ? field : field.substring(0, dot));
+            }
+            this.fields.add(QueryUtil.ID);
+        }
+    }
+
+    /**
+     * Creates a UTF-8 generator that leaves the stream open when closed and
+     * writes nothing between root values.
+     *
+     * @param out
+     *            the stream
+     * @return the generator
+     * @throws IOException
+     *             if it cannot be created
+     */
+    public static JsonGenerator createGenerator(OutputStream out)
+            throws IOException {
+        return factory.createGenerator(out);
+    }
+
+    /**
+     * Writes a document. A {@link RawDBObject} is transcoded from its bytes,
+     * anything else is encoded to BSON first.
+     *
+     * @param document
+     *            the document
+     * @param out
+     *            the generator
+     * @throws IOException
+     *             if writing fails
+     */
+    public void write(BSONObject document, JsonGenerator out)
+            throws IOException {
+        byte[] bson = (document instanceof RawDBObject) ? ((RawDBObject) document)
+                .getBytes() : new BasicBSONEncoder().encode(document);
+        write(bson, out);
+    }
+
+    /**
+     * Writes a single value, e.g. an embedded document or array read from a
+     * {@link RawDBObject}, with masking applied inside it.
+     *
+     * @param value
+     *            the value
+     * @param out
+     *            the generator
+     * @throws IOException
+     *             if writing fails
+     */
+    public void writeValue(Object value, JsonGenerator out)
+            throws IOException {
+        byte[] bson = new BasicBSONEncoder().encode(new BasicBSONObject(
+                VALUE, value));
+        // the one element: type, name, value
+        int pos = readName(bson, 5);
+        writeValue(bson, pos, bson[4], out);
+    }
+
+    /**
+     * Writes the BSON of one document.
+     *
+     * @param bson
+     *            the BSON
+     * @param out
+     *            the generator
+     * @throws IOException
+     *             if writing fails
+     */
+    public void write(byte[] bson, JsonGenerator out) throws IOException {
+        writeDocument(bson, 0, out, true, false);
+    }
+
+    /**
+     * Writes the document or array at an offset.
+     *
+     * @return the offset after it
+     */
+    private int writeDocument(byte[] b, int start, JsonGenerator out,
+            boolean root, boolean array) throws IOException {
+        int end = start + readInt(b, start);
+        int pos = start + 4;
+        if (array) {
+            out.writeStartArray();
+        } else {
+            out.writeStartObject();
+        }
+        while (pos < end - 1) {
+            byte type = b[pos++];
+            pos = readName(b, pos);
+            boolean skip = !array && root && null != fields
+                    && !fields.contains(name);
+            if (!skip && !array) {
+                out.writeFieldName(name);
+            }
+            if (skip) {
+                pos = skipValue(b, pos, type);
+            } else if (masked) {
+                out.writeString(MASK);
+                pos = skipValue(b, pos, type);
+            } else {
+                pos = writeValue(b, pos, type, out);
+            }
+        }
+        if (array) {
+            out.writeEndArray();
+        } else {
+            out.writeEndObject();
+        }
+        return end;
+    }
+
+    private int writeValue(byte[] b, int pos, byte type, JsonGenerator out)
+            throws IOException {
+        switch (type) {
+        case 0x01:
+            out.writeNumber(Double.longBitsToDouble(readLong(b, pos)));
+            return pos + 8;
+        case 0x02:
+        case 0x0E:
+            return writeString(b, pos, out);
+        case 0x03:
+            return writeDocument(b, pos, out, false, false);
+        case 0x04:
+            return writeDocument(b, pos, out, false, true);
+        case 0x05: {
+            int length = readInt(b, pos);
+            int subtype = b[pos + 4] & 0xFF;
+            int data = pos + 5;
+            int dataLength = length;
+            if (subtype == 0x02) {
+                // the old binary subtype repeats the length
+                data += 4;
+                dataLength -= 4;
+            }
+            out.writeStartObject();
+            out.writeFieldName(BINARY);
+            out.writeBinary(b, data, dataLength);
+            out.writeFieldName(TYPE);
+            out.writeNumber(subtype);
+            out.writeEndObject();
+            return pos + 5 + length;
+        }
+        case 0x06:
+            out.writeStartObject();
+            out.writeFieldName(UNDEFINED);
+            out.writeBoolean(true);
+            out.writeEndObject();
+            return pos;
+        case 0x07:
+            writeObjectId(b, pos, out);
+            return pos + 12;
+        case 0x08:
+            out.writeBoolean(b[pos] != 0);
+            return pos + 1;
+        case 0x09:
+            writeDate(readLong(b, pos), out);
+            return pos + 8;
+        case 0x0A:
+            out.writeNull();
+            return pos;
+        case 0x0B: {
+            out.writeStartObject();
+            out.writeFieldName(REGEX);
+            pos = writeCString(b, pos, out);
+            out.writeFieldName(OPTIONS);
+            pos = writeCString(b, pos, out);
+            out.writeEndObject();
+            return pos;
+        }
+        case 0x0C:
+            out.writeStartObject();
+            out.writeFieldName(REF);
+            pos = writeString(b, pos, out);
+            out.writeFieldName(ID);
+            writeObjectId(b, pos, out);
+            out.writeEndObject();
+            return pos + 12;
+        case 0x0D:
+            out.writeStartObject();
+            out.writeFieldName(CODE);
+            pos = writeString(b, pos, out);
+            out.writeEndObject();
+            return pos;
+        case 0x0F:
+            out.writeStartObject();
+            out.writeFieldName(CODE);
+            pos = writeString(b, pos + 4, out);
+            out.writeFieldName(SCOPE);
+            pos = writeDocument(b, pos, out, false, false);
+            out.writeEndObject();
+            return pos;
+        case 0x10:
+            out.writeNumber(readInt(b, pos));
+            return pos + 4;
+        case 0x11:
+            out.writeStartObject();
+            out.writeFieldName(TS);
+            out.writeNumber(readInt(b, pos + 4));
+            out.writeFieldName(INC);
+            out.writeNumber(readInt(b, pos));
+            out.writeEndObject();
+            return pos + 8;
+        case 0x12:
+            out.writeNumber(readLong(b, pos));
+            return pos + 8;
+        case (byte) 0xFF:
+            out.writeStartObject();
+            out.writeFieldName(MIN_KEY);
+            out.writeNumber(1);
+            out.writeEndObject();
+            return pos;
+        case 0x7F:
+            out.writeStartObject();
+            out.writeFieldName(MAX_KEY);
+            out.writeNumber(1);
+            out.writeEndObject();
+            return pos;
+        default:
+            throw new IOException("Unknown BSON type " + type);
+        }
+    }
+
+    private static int skipValue(byte[] b, int pos, byte type)
+            throws IOException {
+        switch (type) {
+        case 0x01:
+        case 0x09:
+        case 0x11:
+        case 0x12:
+            return pos + 8;
+        case 0x02:
+        case 0x0D:
+        case 0x0E:
+            return pos + 4 + readInt(b, pos);
+        case 0x03:
+        case 0x04:
+        case 0x0F:
+            return pos + readInt(b, pos);
+        case 0x05:
+            return pos + 5 + readInt(b, pos);
+        case 0x06:
+        case 0x0A:
+        case (byte) 0xFF:
+        case 0x7F:
+            return pos;
+        case 0x07:
+            return pos + 12;
+        case 0x08:
+            return pos + 1;
+        case 0x0B:
+            return skipCString(b, skipCString(b, pos));
+        case 0x0C:
+            return pos + 4 + readInt(b, pos) + 12;
+        case 0x10:
+            return pos + 4;
+        default:
+            throw new IOException("Unknown BSON type " + type);
+        }
+    }
+
+    /**
+     * Writes a length prefixed string.
+     *
+     * @return the offset after it
+     */
+    private static int writeString(byte[] b, int pos, JsonGenerator out)
+            throws IOException {
+        int length = readInt(b, pos);
+        // the length counts the trailing NUL
+        out.writeUTF8String(b, pos + 4, length - 1);
+        return pos + 4 + length;
+    }
+
+    /**
+     * Writes a NUL terminated string.
+     *
+     * @return the offset after it
+     */
+    private static int writeCString(byte[] b, int pos, JsonGenerator out)
+            throws IOException {
+        int end = skipCString(b, pos);
+        out.writeUTF8String(b, pos, end - 1 - pos);
+        return end;
+    }
+
+    private static int skipCString(byte[] b, int pos) {
+        while (b[pos] != 0) {
+            pos++;
+        }
+        return pos + 1;
+    }
+
+    /**
+     * Reads a field name into {@link #name} and {@link #masked}, from the
+     * cache when it was seen before.
+     *
+     * @return the offset after it
+     */
+    private int readName(byte[] b, int pos) {
+        int end = pos;
+        int hash = 0;
+        while (b[end] != 0) {
+            hash = 31 * hash + b[end];
+            end++;
+        }
+        int length = end - pos;
+        int slot = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+        byte[] cached = nameBytes[slot];
+        if (null == cached || !matches(cached, b, pos, length)) {
+            cached = new byte[length];
+            System.arraycopy(b, pos, cached, 0, length);
+            String decoded = new String(cached, UTF8);
+            names[slot] = decoded;
+            nameMasked[slot] = isMasked(decoded);
+            nameBytes[slot] = cached;
+        }
+        name = names[slot];
+        masked = nameMasked[slot];
+        return end + 1;
+    }
+
+    private static boolean matches(byte[] cached, byte[] b, int pos,
+            int length) {
+        if (cached.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (cached[i] != b[pos + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tells whether the values of a field are masked.
+     *
+     * @param field
+     *            the field name
+     * @return true if it is a masked name or contains "password"
+     */
+    public static boolean isMasked(String field) {
+        String lower = field.toLowerCase(Locale.ENGLISH);
+        return MASKED.contains(lower) || lower.contains("password");
+    }
+
+    private void writeObjectId(byte[] b, int pos, JsonGenerator out)
+            throws IOException {
+        for (int i = 0; i < 12; i++) {
+            chars[2 * i] = HEX[(b[pos + i] >> 4) & 0x0F];
+            chars[2 * i + 1] = HEX[b[pos + i] & 0x0F];
+        }
+        out.writeStartObject();
+        out.writeFieldName(OID);
+        out.writeString(chars, 0, 24);
+        out.writeEndObject();
+    }
+
+    /**
+     * Writes a date as <code>{"$date": "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'"}</code>.
+     */
+    private void writeDate(long millis, JsonGenerator out) throws IOException {
+        out.writeStartObject();
+        out.writeFieldName(DATE);
+        if (IsoDateFormat.format(millis, chars, 0) == IsoDateFormat.LENGTH) {
+            out.writeString(chars, 0, IsoDateFormat.LENGTH);
+        } else {
+            out.writeString(IsoDateFormat.format(millis));
+        }
+        out.writeEndObject();
+    }
+
+    private static int readInt(byte[] b, int pos) {
+        return (b[pos] & 0xFF) | (b[pos + 1] & 0xFF) << 8
+                | (b[pos + 2] & 0xFF) << 16 | (b[pos + 3] & 0xFF) << 24;
+    }
+
+    private static long readLong(byte[] b, int pos) {
+        return (readInt(b, pos) & 0xFFFFFFFFL)
+                | ((long) readInt(b, pos + 4)) << 32;
+    }
+
+}
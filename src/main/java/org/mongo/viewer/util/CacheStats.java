@@ -0,0 +1,147 @@
+package org.mongo.viewer.util;
+
+/**
+ * What a {@link SimpleCache} has been doing since it was created or its
+ * statistics were last reset: hits and misses, the loads that followed the
+ * misses and how long they took, the entries it dropped on its own, split by
+ * cause, and those it refused. The counters are striped, so recording is
+ * cheap even when every request thread reads the cache; the figures of a
+ * snapshot may be a few updates apart from each other.
+ */
+public class CacheStats {
+
+    private final StripedCounter hits = new StripedCounter();
+    private final StripedCounter misses = new StripedCounter();
+    private final StripedCounter loads = new StripedCounter();
+    private final StripedCounter loadNanos = new StripedCounter();
+    private final StripedCounter sizeEvictions = new StripedCounter();
+    private final StripedCounter ageEvictions = new StripedCounter();
+    private final StripedCounter rejections = new StripedCounter();
+
+    /**
+     * Records a read that found a live entry.
+     */
+    public void recordHit() {
+        hits.increment();
+    }
+
+    /**
+     * Records a read that found no entry, or an expired one.
+     */
+    public void recordMiss() {
+        misses.increment();
+    }
+
+    /**
+     * Records the loading of a value after a miss. The cache does not load
+     * values itself, its callers record their loads here.
+     *
+     * @param nanos
+     *            how long it took, in nanoseconds
+     */
+    public void recordLoad(long nanos) {
+        loads.increment();
+        loadNanos.add(nanos);
+    }
+
+    /**
+     * Records an entry dropped because the cache was full.
+     */
+    public void recordSizeEviction() {
+        sizeEvictions.increment();
+    }
+
+    /**
+     * Records an entry dropped because it outlived its age.
+     */
+    public void recordAgeEviction() {
+        ageEvictions.increment();
+    }
+
+    /**
+     * Records an entry not cached because it was too heavy.
+     */
+    public void recordRejection() {
+        rejections.increment();
+    }
+
+    /**
+     * Sets every counter back to 0.
+     */
+    public void reset() {
+        hits.reset();
+        misses.reset();
+        loads.reset();
+        loadNanos.reset();
+        sizeEvictions.reset();
+        ageEvictions.reset();
+        rejections.reset();
+    }
+
+    /**
+     * @return the reads that found a live entry
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the reads that found nothing
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the share of reads that hit, 0 before any read
+     */
+    public double getHitRatio() {
+        long hit = getHits();
+        long total = hit + getMisses();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    /**
+     * @return the loads recorded
+     */
+    public long getLoads() {
+        return loads.sum();
+    }
+
+    /**
+     * @return the time spent loading, in nanoseconds
+     */
+    public long getLoadNanos() {
+        return loadNanos.sum();
+    }
+
+    /**
+     * @return the average time of a load in milliseconds, 0 before any load
+     */
+    public double getAverageLoadMillis() {
+        long count = getLoads();
+        return count == 0 ? 0 : getLoadNanos() / 1e6 / count;
+    }
+
+    /**
+     * @return the entries dropped because the cache was full
+     */
+    public long getSizeEvictions() {
+        return sizeEvictions.sum();
+    }
+
+    /**
+     * @return the entries dropped because they outlived their age
+     */
+    public long getAgeEvictions() {
+        return ageEvictions.sum();
+    }
+
+    /**
+     * @return the entries not cached because they were too heavy
+     */
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+}
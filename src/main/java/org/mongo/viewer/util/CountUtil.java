@@ -0,0 +1,80 @@
+package org.mongo.viewer.util;
+
+/**
+ * The arithmetic behind count estimates: where the sample windows start, how
+ * a sample scales up and how an exact count is sliced. Times are epoch
+ * millis.
+ */
+public final class CountUtil {
+
+    private CountUtil() {
+
+    }
+
+    /**
+     * Gets the starts of <code>windows</code> sample windows spread evenly
+     * over <code>[min, max]</code>, the first one at <code>min</code>.
+     *
+     * @param min
+     *            the oldest timestamp
+     * @param max
+     *            the newest timestamp
+     * @param windows
+     *            the number of windows
+     * @return the window starts, ascending
+     */
+    public static long[] getWindowStarts(long min, long max, int windows) {
+        long[] starts = new long[Math.max(0, windows)];
+        long span = Math.max(0, max - min);
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = min + span * i / starts.length;
+        }
+        return starts;
+    }
+
+    /**
+     * Scales the matching share of a sample up to the documents it was drawn
+     * from.
+     *
+     * @param total
+     *            the documents the sample was drawn from
+     * @param matched
+     *            the sampled documents that matched
+     * @param sampled
+     *            the sampled documents
+     * @return the estimate, or -1 if nothing was sampled
+     */
+    public static long scale(long total, long matched, long sampled) {
+        if (sampled <= 0) {
+            return -1;
+        }
+        return Math.round((double) total * Math.min(matched, sampled)
+                / sampled);
+    }
+
+    /**
+     * Splits <code>[start, end)</code> into at most <code>chunks</code>
+     * contiguous slices of about the same length, none of them empty.
+     *
+     * @param start
+     *            the start, inclusive
+     * @param end
+     *            the end, exclusive
+     * @param chunks
+     *            the most slices
+     * @return the slice bounds, one more than the slices; slice
+     *         <code>i</code> is <code>[bounds[i], bounds[i + 1])</code>
+     */
+    public static long[] getSliceBounds(long start, long end, int chunks) {
+        if (end <= start) {
+            return new long[] { start };
+        }
+        int slices = (int) Math.max(1, Math.min(chunks, end - start));
+        long[] bounds = new long[slices + 1];
+        for (int i = 0; i <= slices; i++) {
+            bounds[i] = start + (end - start) * i / slices;
+        }
+        return bounds;
+    }
+
+}
@@ -0,0 +1,35 @@
+package org.mongo.viewer.util;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates named daemon threads, so that background pools never keep the
+ * container from shutting down and are easy to spot in a thread dump.
+ */
+public class DaemonThreadFactory implements ThreadFactory {
+
+    private final String name;
+    private final AtomicInteger count = new AtomicInteger();
+
+    /**
+     * @param name
+     *            the thread name prefix
+     */
+    public DaemonThreadFactory(String name) {
+        this.name = name;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+     */
+    @Override
+    public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    }
+
+}
@@ -0,0 +1,226 @@
+package org.mongo.viewer.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Date;
+
+import org.bson.types.ObjectId;
+
+import com.mongodb.util.JSON;
+
+/**
+ * Writes rows of CSV or TSV. Each row is formatted into one reused buffer and
+ * handed to the writer whole, so a row costs next to no allocation whatever
+ * the number of rows.
+ *
+ * CSV follows RFC 4180: values holding the delimiter, a quote or a line
+ * break are quoted, and quotes doubled. TSV values cannot be quoted, so tab,
+ * line breaks and backslash are escaped as <code>\t</code>, <code>\n</code>,
+ * <code>\r</code> and <code>\\</code>. Rows end with CRLF in CSV and LF in
+ * TSV. Dates are written as ISO-8601 in UTC, ids as hex, and embedded
+ * documents and arrays as JSON. Not thread safe.
+ */
+public class DelimitedWriter {
+
+    /** The supported formats. */
+    public enum Format {
+        CSV(',', "text/csv"), TSV('\t', "text/tab-separated-values");
+
+        private final char delimiter;
+        private final String mediaType;
+
+        private Format(char delimiter, String mediaType) {
+            this.delimiter = delimiter;
+            this.mediaType = mediaType;
+        }
+
+        /**
+         * @return the delimiter
+         */
+        public char getDelimiter() {
+            return delimiter;
+        }
+
+        /**
+         * @return the media type
+         */
+        public String getMediaType() {
+            return mediaType;
+        }
+
+        /**
+         * Parses a format name.
+         *
+         * @param name
+         *            csv or tsv, in any case
+         * @return the format
+         * @throws IllegalArgumentException
+         *             if the format is not supported
+         */
+        public static Format parse(String name) {
+            for (Format format : values()) {
+                if (format.name().equalsIgnoreCase(name)) {
+                    return format;
+                }
+            }
+            throw new IllegalArgumentException("Unsupported format " + name
+                    + ", expected csv or tsv");
+        }
+    }
+
+    private final Writer out;
+    private final Format format;
+
+    private char[] row = new char[1024];
+    private int length;
+    private boolean first = true;
+
+    /** The unescaped text of values that are not strings. */
+    private final StringBuilder text = new StringBuilder(64);
+
+    /**
+     * @param out
+     *            where the rows go; the writer does not buffer on top of it
+     * @param format
+     *            the format
+     */
+    public DelimitedWriter(Writer out, Format format) {
+        this.out = out;
+        this.format = format;
+    }
+
+    /**
+     * Adds a value to the current row.
+     *
+     * @param value
+     *            the value, null for an empty field
+     * @return this writer
+     */
+    public DelimitedWriter value(Object value) {
+        if (!first) {
+            append(format.delimiter);
+        }
+        first = false;
+        if (null == value) {
+            return this;
+        }
+        if (value instanceof String) {
+            escape((String) value);
+        } else if (value instanceof Date) {
+            ensure(IsoDateFormat.LENGTH);
+            int written = IsoDateFormat.format(((Date) value).getTime(), row,
+                    length);
+            if (written < 0) {
+                escape(IsoDateFormat.format(((Date) value).getTime()));
+            } else {
+                length += written;
+            }
+        } else if (value instanceof Number || value instanceof Boolean) {
+            // never needs escaping
+            text.setLength(0);
+            text.append(value);
+            ensure(text.length());
+            text.getChars(0, text.length(), row, length);
+            length += text.length();
+        } else if (value instanceof ObjectId) {
+            escape(((ObjectId) value).toHexString());
+        } else {
+            text.setLength(0);
+            JSON.serialize(value, text);
+            escape(text);
+        }
+        return this;
+    }
+
+    /**
+     * Ends the current row and writes it.
+     *
+     * @throws IOException
+     *             if writing fails
+     */
+    public void endRow() throws IOException {
+        if (format == Format.CSV) {
+            append('\r');
+        }
+        append('\n');
+        out.write(row, 0, length);
+        length = 0;
+        first = true;
+    }
+
+    /**
+     * Flushes the underlying writer.
+     *
+     * @throws IOException
+     *             if flushing fails
+     */
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    private void escape(CharSequence value) {
+        int size = value.length();
+        if (format == Format.TSV) {
+            for (int i = 0; i < size; i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                case '\t':
+                    append('\\');
+                    append('t');
+                    break;
+                case '\n':
+                    append('\\');
+                    append('n');
+                    break;
+                case '\r':
+                    append('\\');
+                    append('r');
+                    break;
+                case '\\':
+                    append('\\');
+                    append('\\');
+                    break;
+                default:
+                    append(c);
+                }
+            }
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < size && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == format.delimiter || c == '"' || c == '\n'
+                    || c == '\r';
+        }
+        if (!quote) {
+            ensure(size);
+            for (int i = 0; i < size; i++) {
+                row[length++] = value.charAt(i);
+            }
+            return;
+        }
+        append('"');
+        for (int i = 0; i < size; i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                append('"');
+            }
+            append(c);
+        }
+        append('"');
+    }
+
+    private void append(char c) {
+        ensure(1);
+        row[length++] = c;
+    }
+
+    private void ensure(int extra) {
+        if (length + extra > row.length) {
+            char[] grown = new char[Math.max(row.length * 2, length + extra)];
+            System.arraycopy(row, 0, grown, 0, length);
+            row = grown;
+        }
+    }
+
+}
@@ -0,0 +1,93 @@
+package org.mongo.viewer.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.mongo.viewer.vo.SlowQuery;
+
+import com.mongodb.DBObject;
+
+/**
+ * Reads the interesting parts of an <code>explain</code> result. Servers
+ * before 3.0 answer with a <code>cursor</code> such as
+ * <code>BtreeCursor timestamp_1__id_1</code> and <code>nscannedObjects</code>;
+ * later ones with a <code>queryPlanner.winningPlan</code> stage tree and
+ * <code>executionStats</code>. Both are understood.
+ */
+public final class ExplainUtil {
+
+    private static final String BTREE_CURSOR = "BtreeCursor ";
+
+    private ExplainUtil() {
+    }
+
+    /**
+     * Copies the plan, index, documents examined and returned of an explain
+     * result to a slow query.
+     *
+     * @param explain
+     *            the explain result
+     * @param slow
+     *            the slow query
+     */
+    public static void apply(DBObject explain, SlowQuery slow) {
+        DBObject planner = (DBObject) explain.get("queryPlanner");
+        if (null != planner) {
+            DBObject winning = (DBObject) planner.get("winningPlan");
+            List<String> stages = new ArrayList<String>();
+            List<String> indexes = new ArrayList<String>();
+            walk(winning, stages, indexes);
+            slow.setPlan(join(stages, " < "));
+            slow.setIndex(indexes.isEmpty() ? null : join(indexes, ", "));
+            DBObject stats = (DBObject) explain.get("executionStats");
+            if (null != stats) {
+                slow.setDocsExamined(longValue(stats, "totalDocsExamined"));
+                slow.setReturned(longValue(stats, "nReturned"));
+            }
+            return;
+        }
+        String cursor = (String) explain.get("cursor");
+        slow.setPlan(cursor);
+        if (null != cursor && cursor.startsWith(BTREE_CURSOR)) {
+            // BtreeCursor <index>[ reverse]
+            slow.setIndex(cursor.substring(BTREE_CURSOR.length()).split(" ")[0]);
+        }
+        slow.setDocsExamined(longValue(explain, "nscannedObjects"));
+        slow.setReturned(longValue(explain, "n"));
+    }
+
+    private static void walk(DBObject stage, List<String> stages,
+            List<String> indexes) {
+        if (null == stage) {
+            return;
+        }
+        stages.add(String.valueOf(stage.get("stage")));
+        if (null != stage.get("indexName")) {
+            indexes.add(String.valueOf(stage.get("indexName")));
+        }
+        walk((DBObject) stage.get("inputStage"), stages, indexes);
+        Object inputs = stage.get("inputStages");
+        if (inputs instanceof List) {
+            for (Object input : (List<?>) inputs) {
+                walk((DBObject) input, stages, indexes);
+            }
+        }
+    }
+
+    private static String join(List<String> values, String separator) {
+        StringBuilder result = new StringBuilder();
+        for (String value : values) {
+            if (result.length() > 0) {
+                result.append(separator);
+            }
+            result.append(value);
+        }
+        return result.toString();
+    }
+
+    private static long longValue(DBObject document, String key) {
+        Object value = document.get(key);
+        return (value instanceof Number) ? ((Number) value).longValue() : -1;
+    }
+
+}
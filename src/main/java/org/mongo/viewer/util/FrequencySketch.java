@@ -0,0 +1,117 @@
+package org.mongo.viewer.util;
+
+/**
+ * A count-min sketch of how often keys were seen recently, in 4-bit counters
+ * packed sixteen to a long. A key is counted in four counters and its
+ * frequency is the smallest of them, so collisions can only overestimate it.
+ * Once the sketch has counted ten times as many keys as it has slots, every
+ * counter is halved, so old popularity fades and the counters, which stop at
+ * 15, keep telling recent favourites apart. Not thread safe, callers guard it
+ * with their own lock.
+ */
+public class FrequencySketch {
+
+    private static final long[] SEEDS = { 0xc3a5c85c97cb3127L,
+            0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    /** The most slots, so that a huge cache does not get a huge sketch. */
+    private static final int MAX_SLOTS = 1 << 16;
+
+    private final long[] table;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    /**
+     * @param capacity
+     *            the number of keys it should tell apart, usually the
+     *            maximum size of the cache
+     */
+    public FrequencySketch(int capacity) {
+        int slots = 16;
+        while (slots < capacity && slots < MAX_SLOTS) {
+            slots <<= 1;
+        }
+        this.table = new long[slots];
+        this.mask = slots - 1;
+        this.sampleSize = 10 * slots;
+    }
+
+    /**
+     * Gets the recent frequency of a key.
+     *
+     * @param key
+     *            the key
+     * @return the estimate, 0 to 15
+     */
+    public int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = 15;
+        for (int i = 0; i < SEEDS.length; i++) {
+            long h = hash(hash, i);
+            int count = (int) (table[(int) h & mask] >>> shift(h)) & 15;
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * Counts a key once more.
+     *
+     * @param key
+     *            the key
+     */
+    public void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            long h = hash(hash, i);
+            int index = (int) h & mask;
+            int shift = shift(h);
+            if (((table[index] >>> shift) & 15) != 15) {
+                table[index] += 1L << shift;
+                added = true;
+            }
+        }
+        if (added && ++additions == sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Halves every counter.
+     */
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions /= 2;
+    }
+
+    private static long hash(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        return h + (h >>> 32);
+    }
+
+    /**
+     * The offset of the counter in its long, from the top bits of the hash.
+     */
+    private static int shift(long h) {
+        return (int) (h >>> 60) << 2;
+    }
+
+    /**
+     * Mixes the bits of a hash code, which are often poor in the low bits.
+     */
+    private static int spread(int h) {
+        h ^= (h >>> 17);
+        h *= 0xed5ad4bb;
+        h ^= (h >>> 11);
+        h *= 0xac4c1b51;
+        h ^= (h >>> 15);
+        return h;
+    }
+
+}
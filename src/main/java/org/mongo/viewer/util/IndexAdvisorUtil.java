@@ -0,0 +1,190 @@
+package org.mongo.viewer.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import org.mongo.viewer.vo.QueryShape;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+
+/**
+ * Reduces queries to their {@link QueryShape} and compares shapes with
+ * indexes. Recommended indexes follow the equality, sort, range rule: the
+ * fields tested for equality first, then the sort fields in order, then the
+ * remaining ranges, so the server seeks straight to the matching keys and
+ * reads them already sorted.
+ */
+public final class IndexAdvisorUtil {
+
+    /** Operators that select single values, served like an equality. */
+    private static final Set<String> EQUALITY_OPERATORS = new HashSet<String>(
+            Arrays.asList("$eq", "$in"));
+
+    private IndexAdvisorUtil() {
+    }
+
+    /**
+     * Gets the shape of a query.
+     *
+     * @param query
+     *            the query
+     * @param sort
+     *            the sort, may be null
+     * @return the shape, null when no index can serve the query, e.g. with
+     *         <code>$where</code> or <code>$text</code>
+     */
+    public static QueryShape shape(DBObject query, DBObject sort) {
+        Set<String> equality = new TreeSet<String>();
+        Set<String> range = new TreeSet<String>();
+        if (!collect(query, equality, range)) {
+            return null;
+        }
+        equality.removeAll(range);
+        List<String> sortFields = new ArrayList<String>();
+        if (null != sort) {
+            Integer first = null;
+            for (String field : sort.keySet()) {
+                int direction = ((Number) sort.get(field)).intValue() < 0 ? -1
+                        : 1;
+                if (null == first) {
+                    first = direction;
+                }
+                if (!equality.contains(field)) {
+                    // a direction opposite to the first sort field
+                    sortFields.add(direction == first ? field : "-" + field);
+                }
+                range.remove(field);
+            }
+        }
+        return new QueryShape(new ArrayList<String>(equality), sortFields,
+                new ArrayList<String>(range));
+    }
+
+    /**
+     * Gets the index recommended for a shape.
+     *
+     * @param shape
+     *            the shape
+     * @return the index keys
+     */
+    public static DBObject recommend(QueryShape shape) {
+        BasicDBObject keys = new BasicDBObject();
+        for (String field : shape.getEquality()) {
+            keys.put(field, 1);
+        }
+        for (String field : shape.getSort()) {
+            if (field.startsWith("-")) {
+                keys.put(field.substring(1), -1);
+            } else {
+                keys.put(field, 1);
+            }
+        }
+        for (String field : shape.getRange()) {
+            keys.put(field, 1);
+        }
+        return keys;
+    }
+
+    /**
+     * Gets how much of a shape the best of the indexes serves, as the share
+     * of the recommended index fields it matches in a usable order.
+     *
+     * @param shape
+     *            the shape
+     * @param indexes
+     *            the keys of the existing indexes
+     * @return from 0, no index helps, to 1, fully indexed
+     */
+    public static double coverage(QueryShape shape, List<DBObject> indexes) {
+        int total = shape.getEquality().size() + shape.getSort().size()
+                + shape.getRange().size();
+        if (total == 0) {
+            return 1;
+        }
+        int best = 0;
+        for (DBObject index : indexes) {
+            best = Math.max(best, matched(shape, index));
+        }
+        return (double) best / total;
+    }
+
+    private static int matched(QueryShape shape, DBObject index) {
+        List<String> fields = new ArrayList<String>(index.keySet());
+        Set<String> equality = new HashSet<String>(shape.getEquality());
+        int position = 0;
+        while (position < fields.size() && equality.remove(fields.get(position))) {
+            position++;
+        }
+        if (!equality.isEmpty()) {
+            // a gap before all equalities are matched
+            return position;
+        }
+        for (String sort : shape.getSort()) {
+            String field = sort.startsWith("-") ? sort.substring(1) : sort;
+            if (position == fields.size() || !field.equals(fields.get(position))) {
+                return position;
+            }
+            position++;
+        }
+        Set<String> range = new HashSet<String>(shape.getRange());
+        while (position < fields.size() && range.remove(fields.get(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    private static boolean collect(DBObject query, Set<String> equality,
+            Set<String> range) {
+        for (String key : query.keySet()) {
+            Object value = query.get(key);
+            if ("$and".equals(key)) {
+                for (Object clause : (List<?>) value) {
+                    if (!collect((DBObject) clause, equality, range)) {
+                        return false;
+                    }
+                }
+            } else if ("$or".equals(key) || "$nor".equals(key)) {
+                // each clause may be served by its own index, count the
+                // fields as ranges of one
+                for (Object clause : (List<?>) value) {
+                    Set<String> fields = new TreeSet<String>();
+                    if (!collect((DBObject) clause, fields, fields)) {
+                        return false;
+                    }
+                    range.addAll(fields);
+                }
+            } else if ("$comment".equals(key)) {
+                continue;
+            } else if (key.startsWith("$")) {
+                return false;
+            } else if (isEquality(value)) {
+                equality.add(key);
+            } else {
+                range.add(key);
+            }
+        }
+        return true;
+    }
+
+    private static boolean isEquality(Object value) {
+        if (value instanceof Pattern) {
+            return false;
+        }
+        if (!(value instanceof DBObject) || value instanceof List) {
+            return true;
+        }
+        Set<String> keys = ((DBObject) value).keySet();
+        if (keys.isEmpty() || !keys.iterator().next().startsWith("$")) {
+            // an embedded document matched as a whole
+            return true;
+        }
+        return EQUALITY_OPERATORS.containsAll(keys);
+    }
+
+}
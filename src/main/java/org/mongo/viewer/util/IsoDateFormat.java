@@ -0,0 +1,97 @@
+package org.mongo.viewer.util;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Formats dates as <code>yyyy-MM-dd'T'HH:mm:ss.SSS'Z'</code> in UTC, the way
+ * the driver writes <code>$date</code>, into a caller's buffer. Dates in the
+ * years 0 to 9999 are formatted by hand without allocating.
+ */
+public final class IsoDateFormat {
+
+    /** The formatted length of dates in the years 0 to 9999. */
+    public static final int LENGTH = 24;
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    private IsoDateFormat() {
+    }
+
+    /**
+     * Formats a date.
+     *
+     * @param millis
+     *            the date
+     * @param buffer
+     *            the buffer, with room for {@link #LENGTH} chars after the
+     *            offset
+     * @param offset
+     *            where to write
+     * @return the number of chars written, or -1 when the date is out of the
+     *         range that fits and {@link #format(long)} should be used
+     */
+    public static int format(long millis, char[] buffer, int offset) {
+        long days = millis / MILLIS_PER_DAY;
+        long ofDay = millis % MILLIS_PER_DAY;
+        if (ofDay < 0) {
+            days--;
+            ofDay += MILLIS_PER_DAY;
+        }
+        // days to the civil date, proleptic Gregorian
+        long z = days + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < 0 || year > 9999) {
+            return -1;
+        }
+        digits((int) year, buffer, offset, 4);
+        buffer[offset + 4] = '-';
+        digits(month, buffer, offset + 5, 2);
+        buffer[offset + 7] = '-';
+        digits(day, buffer, offset + 8, 2);
+        buffer[offset + 10] = 'T';
+        digits((int) (ofDay / 3600000), buffer, offset + 11, 2);
+        buffer[offset + 13] = ':';
+        digits((int) (ofDay / 60000 % 60), buffer, offset + 14, 2);
+        buffer[offset + 16] = ':';
+        digits((int) (ofDay / 1000 % 60), buffer, offset + 17, 2);
+        buffer[offset + 19] = '.';
+        digits((int) (ofDay % 1000), buffer, offset + 20, 3);
+        buffer[offset + 23] = 'Z';
+        return LENGTH;
+    }
+
+    /**
+     * Formats any date.
+     *
+     * @param millis
+     *            the date
+     * @return the formatted date
+     */
+    public static String format(long millis) {
+        char[] buffer = new char[LENGTH];
+        if (format(millis, buffer, 0) == LENGTH) {
+            return new String(buffer);
+        }
+        SimpleDateFormat format = new SimpleDateFormat(
+                "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(millis));
+    }
+
+    private static void digits(int value, char[] buffer, int offset, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+}
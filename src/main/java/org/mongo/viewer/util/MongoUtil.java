@@ -1,24 +1,629 @@
 package org.mongo.viewer.util;
 
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.mongo.viewer.vo.DataBaseInfo;
 
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.CommandResult;
 import com.mongodb.DB;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
 import com.mongodb.Mongo;
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientOptions;
+import com.mongodb.MongoCredential;
+import com.mongodb.MongoException;
+import com.mongodb.ReadPreference;
+import com.mongodb.ServerAddress;
 
+/**
+ * The Class MongoUtil.
+ *
+ * Keeps one pooled {@link MongoClient} per {@link DataBaseInfo} for the whole
+ * process, so that repeated viewer requests reuse warm, already authenticated
+ * connections instead of opening a new socket pool every time. The pool is
+ * tuned through the <code>mongo.*</code> keys in config.properties. Clients
+ * that have not been used for <code>mongo.client.maxIdleTime</code> seconds
+ * and have no {@link #track(DBCursor) tracked} cursor open on the server are
+ * closed by a background reaper, and {@link #shutdown()} closes the rest
+ * when the web application stops.
+ *
+ * Reads are routed per query by {@link #getReadPreference(DataBaseInfo, Workload)}:
+ * the read preference of the connection when it has one, otherwise
+ * <code>read.scan</code> for scans and exports and <code>read.lookup</code>
+ * for interactive lookups. Connections that differ only in how they read
+ * share one client.
+ */
 public class MongoUtil {
+
+    /**
+     * The kind of read, so that heavy reads can be kept off the primary.
+     */
+    public enum Workload {
+        /** Small, latency sensitive reads such as a page. */
+        LOOKUP,
+        /** Reads of many documents such as exports and aggregations. */
+        SCAN
+    }
+
+    private static Log log = LogFactory.getLog(MongoUtil.class);
+
+    private static Properties config = PropertyLoader.loadProperties("config");
+
+    /** How long a reaped client is kept open for callers still using it. */
+    private static final long CLOSE_GRACE_SECONDS = 60;
+
+    /** The registered clients. */
+    private static final ConcurrentMap<DataBaseInfo, ClientHolder> clients = new ConcurrentHashMap<DataBaseInfo, ClientHolder>();
+
+    /** The clients being created, one attempt per connection at a time. */
+    private static final ConcurrentMap<DataBaseInfo, FutureTask<ClientHolder>> pending = new ConcurrentHashMap<DataBaseInfo, FutureTask<ClientHolder>>();
+
+    /** How often the replication lag of a replica set is checked, millis. */
+    private static final long LAG_CHECK_INTERVAL = PropertyLoader.getLong(
+            config, "read.lagCheckInterval", 10) * 1000;
+
+    /** The reaper. */
+    private static ScheduledExecutorService reaper = null;
+
+    /**
+     * Gets the DB for the connection, reusing the pooled client for it.
+     *
+     * @param info
+     *            the connection info
+     * @return the db
+     * @throws UnknownHostException
+     *             the unknown host exception
+     */
     public static DB getDB(DataBaseInfo info) throws UnknownHostException {
-        Mongo mongoClient = new Mongo(info.getHost(), info.getPort());
-        DB db = mongoClient.getDB(info.getDatabase());
-        boolean auth = db.authenticate(info.getUser(), info.getPassword()
-                .toCharArray());
-        if (auth) {
-            return db;
+        return getClient(info).getDB(info.getDatabase());
+    }
+
+    /**
+     * Gets the pooled client for the connection, creating and authenticating
+     * it on first use.
+     *
+     * @param info
+     *            the connection info
+     * @return the client
+     * @throws UnknownHostException
+     *             the unknown host exception
+     */
+    public static MongoClient getClient(DataBaseInfo info)
+            throws UnknownHostException {
+        return getHolder(info).client;
+    }
+
+    /**
+     * Gets the read preference for a read on the connection.
+     *
+     * @param info
+     *            the connection info
+     * @param workload
+     *            the kind of read
+     * @return the read preference
+     */
+    public static ReadPreference getReadPreference(DataBaseInfo info,
+            Workload workload) {
+        String name = info.getReadPreference();
+        if (null == name) {
+            name = (workload == Workload.SCAN) ? config.getProperty(
+                    "read.scan", "secondaryPreferred") : config.getProperty(
+                    "read.lookup", "primaryPreferred");
+        }
+        ReadPreference preference = parseReadPreference(name);
+        if (info.getMaxStaleness() > 0
+                && !ReadPreference.primary().equals(preference)) {
+            ClientHolder holder = clients.get(clientKey(info));
+            long lag = (null == holder) ? -1 : getLag(holder,
+                    info.getDatabase());
+            if (lag > info.getMaxStaleness()) {
+                log.debug("A secondary of " + info.getHost() + " lags " + lag
+                        + "s, reading from the primary");
+                return ReadPreference.primaryPreferred();
+            }
+        }
+        return preference;
+    }
+
+    /**
+     * Parses a read preference name.
+     *
+     * @param name
+     *            primary, primaryPreferred, secondary, secondaryPreferred or
+     *            nearest
+     * @return the read preference
+     * @throws IllegalArgumentException
+     *             if the name is unknown
+     */
+    public static ReadPreference parseReadPreference(String name) {
+        try {
+            return ReadPreference.valueOf(name);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Unknown read preference "
+                    + name);
+        }
+    }
+
+    /**
+     * Remembers a cursor of a pooled client, so that the client is not
+     * reaped as idle while the cursor is still open on the server.
+     *
+     * @param cursor
+     *            the cursor
+     */
+    public static void track(DBCursor cursor) {
+        Mongo mongo = cursor.getCollection().getDB().getMongo();
+        for (ClientHolder holder : clients.values()) {
+            if (holder.client == mongo) {
+                synchronized (holder.cursors) {
+                    holder.cursors.put(cursor, Boolean.TRUE);
+                }
+                return;
+            }
+        }
+    }
+
+    private static ClientHolder getHolder(DataBaseInfo info)
+            throws UnknownHostException {
+        // DataBaseInfo is mutable, never key on the caller's copy
+        DataBaseInfo key = clientKey(info);
+        ClientHolder holder = clients.get(key);
+        if (null == holder) {
+            holder = createHolder(key);
+        }
+        holder.lastUsed = System.currentTimeMillis();
+        return holder;
+    }
+
+    /**
+     * Creates the client of a connection, or waits for the caller already
+     * creating it. Connecting happens outside of any lock shared with other
+     * connections, so a slow or unreachable server only holds up its own
+     * callers. A caller that starts only after another one has published
+     * the client takes that one, and a client that still loses a race to
+     * be published is closed, so that no client is left open unpooled.
+     */
+    private static ClientHolder createHolder(final DataBaseInfo key)
+            throws UnknownHostException {
+        FutureTask<ClientHolder> task = new FutureTask<ClientHolder>(
+                new Callable<ClientHolder>() {
+                    @Override
+                    public ClientHolder call() throws Exception {
+                        ClientHolder published = clients.get(key);
+                        if (null != published) {
+                            return published;
+                        }
+                        return publish(key,
+                                new ClientHolder(createClient(key)));
+                    }
+                });
+        FutureTask<ClientHolder> creating = pending.putIfAbsent(key, task);
+        if (null == creating) {
+            creating = task;
+            try {
+                task.run();
+            } finally {
+                // a failed attempt is forgotten, the next caller tries again
+                pending.remove(key, task);
+            }
+        }
+        return getCreated(creating, key);
+    }
+
+    private static ClientHolder publish(DataBaseInfo key, ClientHolder created) {
+        ClientHolder published;
+        synchronized (clients) {
+            published = clients.putIfAbsent(key, created);
+            if (null == published) {
+                startReaper();
+                return created;
+            }
+        }
+        log.debug("Closing a duplicate mongo client for " + key.getHost());
+        created.client.close();
+        return published;
+    }
+
+    private static ClientHolder getCreated(FutureTask<ClientHolder> creating,
+            DataBaseInfo key) throws UnknownHostException {
+        try {
+            return creating.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MongoException("Interrupted while connecting to "
+                    + key.getHost());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UnknownHostException) {
+                throw (UnknownHostException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Gets the key of the client of a connection, a copy without the read
+     * routing.
+     */
+    private static DataBaseInfo clientKey(DataBaseInfo info) {
+        DataBaseInfo key = new DataBaseInfo(info);
+        key.setReadPreference(null);
+        key.setMaxStaleness(0);
+        return key;
+    }
+
+    /**
+     * Gets how far the stalest secondary is behind the primary, checking at
+     * most once per <code>read.lagCheckInterval</code> seconds. The driver
+     * picks among all secondaries, so the bound holds only if every one of
+     * them is within it. The check
+     * needs <code>replSetGetStatus</code>; when it is not allowed or the
+     * server is not a replica set the lag is unknown.
+     *
+     * @return the lag in seconds, -1 if unknown
+     */
+    private static long getLag(ClientHolder holder, String database) {
+        long now = System.currentTimeMillis();
+        if (now - holder.lagCheckedAt < LAG_CHECK_INTERVAL) {
+            return holder.lag;
+        }
+        synchronized (holder) {
+            if (now - holder.lagCheckedAt < LAG_CHECK_INTERVAL) {
+                return holder.lag;
+            }
+            holder.lagCheckedAt = now;
+            try {
+                CommandResult status = holder.client.getDB("admin").command(
+                        "replSetGetStatus");
+                status.throwOnError();
+                Date primary = null;
+                Date stalest = null;
+                for (Object member : (List<?>) status.get("members")) {
+                    DBObject state = (DBObject) member;
+                    Date optime = (Date) state.get("optimeDate");
+                    if ("PRIMARY".equals(state.get("stateStr"))) {
+                        primary = optime;
+                    } else if ("SECONDARY".equals(state.get("stateStr"))
+                            && (null == stalest || stalest.after(optime))) {
+                        stalest = optime;
+                    }
+                }
+                holder.lag = (null == primary || null == stalest) ? -1
+                        : (primary.getTime() - stalest.getTime()) / 1000;
+            } catch (MongoException e) {
+                log.debug("Cannot check the replication lag of " + database, e);
+                holder.lag = -1;
+            }
+            return holder.lag;
+        }
+    }
+
+    /**
+     * Kills the operations tagged with a comment on the server the database
+     * talks to. Tries the <code>currentOp</code> and <code>killOp</code>
+     * commands first and falls back to the pseudo collections older servers
+     * use. Operations running on other replica set members are left to
+     * their <code>maxTimeMS</code>.
+     *
+     * @param db
+     *            the database the operations run on
+     * @param comment
+     *            the comment
+     * @return the number of operations killed
+     */
+    public static int killOps(DB db, String comment) {
+        // a find carries its comment as $comment, a find command as comment
+        BasicDBList tagged = new BasicDBList();
+        tagged.add(new BasicDBObject("query.$comment", comment));
+        tagged.add(new BasicDBObject("query.comment", comment));
+        return killOps(db, new BasicDBObject("$or", tagged), "tagged " + comment);
+    }
+
+    /**
+     * Kills the count commands running a query on a collection, on the
+     * server the database talks to. Counts carry no comment, so they are
+     * told apart by the exact query they were sent.
+     *
+     * @param db
+     *            the database the counts run on
+     * @param collection
+     *            the collection name
+     * @param query
+     *            the query, as sent in the count command
+     * @return the number of operations killed
+     */
+    public static int killCounts(DB db, String collection, DBObject query) {
+        return killOps(db, new BasicDBObject("query.count", collection)
+                .append("query.query", query), "counting " + collection);
+    }
+
+    private static int killOps(DB db, DBObject match, String description) {
+        DB admin = db.getSisterDB("admin");
+        BasicDBObject command = new BasicDBObject("currentOp", 1);
+        command.putAll(match);
+        CommandResult currentOp = admin.command(command);
+        DBObject inprog = currentOp.ok() ? currentOp : admin.getCollection(
+                "$cmd.sys.inprog").findOne(match);
+        int killed = 0;
+        if (null == inprog || !(inprog.get("inprog") instanceof List)) {
+            return killed;
+        }
+        for (Object op : (List<?>) inprog.get("inprog")) {
+            Object opid = ((DBObject) op).get("opid");
+            CommandResult result = admin.command(new BasicDBObject("killOp",
+                    1).append("op", opid));
+            if (!result.ok()) {
+                admin.getCollection("$cmd.sys.killop").findOne(
+                        new BasicDBObject("op", opid));
+            }
+            log.info("Killed operation " + opid + " " + description);
+            killed++;
+        }
+        return killed;
+    }
+
+    /**
+     * Closes and forgets the client of a single connection.
+     *
+     * @param info
+     *            the connection info
+     */
+    public static void close(DataBaseInfo info) {
+        ClientHolder holder = clients.remove(clientKey(info));
+        if (null != holder) {
+            log.info("Closing mongo client for " + info.getHost());
+            holder.client.close();
+        }
+    }
+
+    /**
+     * Closes every pooled client. Called when the web application stops.
+     */
+    public static void shutdown() {
+        synchronized (clients) {
+            if (null != reaper) {
+                reaper.shutdownNow();
+                reaper = null;
+            }
+            for (Map.Entry<DataBaseInfo, ClientHolder> entry : clients
+                    .entrySet()) {
+                log.info("Closing mongo client for "
+                        + entry.getKey().getHost());
+                entry.getValue().client.close();
+            }
+            clients.clear();
+        }
+    }
+
+    /**
+     * Gets the number of pooled clients.
+     *
+     * @return the client count
+     */
+    public static int getClientCount() {
+        return clients.size();
+    }
+
+    /**
+     * Creates the client and verifies the credentials once, so that every
+     * later request can rely on the pooled connections being authenticated.
+     *
+     * @param info
+     *            the connection info
+     * @return the mongo client
+     * @throws UnknownHostException
+     *             the unknown host exception
+     */
+    private static MongoClient createClient(DataBaseInfo info)
+            throws UnknownHostException {
+        List<MongoCredential> credentials = Collections.emptyList();
+        if (null != info.getUser() && info.getUser().length() > 0) {
+            String password = (null == info.getPassword()) ? "" : info
+                    .getPassword();
+            credentials = Arrays.asList(MongoCredential
+                    .createMongoCRCredential(info.getUser(),
+                            info.getDatabase(), password.toCharArray()));
+        }
+        log.info("Creating mongo client for " + info.getHost() + ":"
+                + info.getPort() + "/" + info.getDatabase());
+        MongoClient client;
+        if (null == info.getSeeds()) {
+            client = new MongoClient(new ServerAddress(info.getHost(),
+                    info.getPort()), credentials, getOptions());
         } else {
+            // a seed list discovers the replica set, so reads can be routed
+            client = new MongoClient(parseSeeds(info.getSeeds()),
+                    credentials, getOptions());
+        }
+        try {
+            CommandResult result = client.getDB(info.getDatabase()).command(
+                    "ping");
+            result.throwOnError();
+        } catch (MongoException e) {
+            client.close();
             throw new RuntimeException("Cannot authenticate user "
-                    + info.getUser());
+                    + info.getUser(), e);
+        }
+        return client;
+    }
+
+    /**
+     * Parses a comma separated host[:port] seed list.
+     *
+     * @param seeds
+     *            the seeds
+     * @return the addresses
+     * @throws UnknownHostException
+     *             the unknown host exception
+     */
+    private static List<ServerAddress> parseSeeds(String seeds)
+            throws UnknownHostException {
+        List<ServerAddress> addresses = new ArrayList<ServerAddress>();
+        for (String seed : seeds.split(",")) {
+            seed = seed.trim();
+            if (seed.length() == 0) {
+                continue;
+            }
+            int colon = seed.lastIndexOf(':');
+            if (colon < 0) {
+                addresses.add(new ServerAddress(seed));
+            } else {
+                try {
+                    addresses.add(new ServerAddress(seed.substring(0, colon),
+                            Integer.parseInt(seed.substring(colon + 1))));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid seed " + seed);
+                }
+            }
+        }
+        if (addresses.isEmpty()) {
+            throw new IllegalArgumentException("Empty seed list");
         }
+        return addresses;
+    }
+
+    /**
+     * Gets the client options from config.properties.
+     *
+     * @return the options
+     */
+    private static MongoClientOptions getOptions() {
+        return MongoClientOptions
+                .builder()
+                .connectionsPerHost(
+                        PropertyLoader.getInt(config,
+                                "mongo.connectionsPerHost", 20))
+                .threadsAllowedToBlockForConnectionMultiplier(
+                        PropertyLoader.getInt(config,
+                                "mongo.threadsAllowedToBlockForConnectionMultiplier",
+                                5))
+                .maxWaitTime(
+                        PropertyLoader.getInt(config, "mongo.maxWaitTime",
+                                120000))
+                .maxConnectionIdleTime(
+                        PropertyLoader.getInt(config,
+                                "mongo.maxConnectionIdleTime", 60000))
+                .connectTimeout(
+                        PropertyLoader.getInt(config, "mongo.connectTimeout",
+                                10000))
+                .socketTimeout(
+                        PropertyLoader.getInt(config, "mongo.socketTimeout", 0))
+                .build();
+    }
 
+    /**
+     * Starts the idle client reaper, once.
+     */
+    private static void startReaper() {
+        if (null != reaper) {
+            return;
+        }
+        long period = PropertyLoader.getLong(config,
+                "mongo.client.maxIdleTime", 1800);
+        if (period <= 0) {
+            return;
+        }
+        reaper = Executors
+                .newSingleThreadScheduledExecutor(new DaemonThreadFactory(
+                        "mongo-client-reaper"));
+        final long maxIdle = period * 1000;
+        reaper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                reapIdleClients(maxIdle);
+            }
+        }, period, period, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Removes clients idle for longer than maxIdle, closing them after a grace
+     * period so that a request which fetched the client just before removal
+     * can still finish.
+     *
+     * @param maxIdle
+     *            the max idle time in millis
+     */
+    private static void reapIdleClients(long maxIdle) {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<DataBaseInfo, ClientHolder> entry : clients.entrySet()) {
+            final ClientHolder holder = entry.getValue();
+            if (now - holder.lastUsed > maxIdle && !holder.hasOpenCursors()
+                    && clients.remove(entry.getKey(), holder)) {
+                log.info("Reaping idle mongo client for "
+                        + entry.getKey().getHost());
+                ScheduledExecutorService current = reaper;
+                if (null != current) {
+                    current.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            holder.client.close();
+                        }
+                    }, CLOSE_GRACE_SECONDS, TimeUnit.SECONDS);
+                } else {
+                    holder.client.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * A pooled client along with the last time it was handed out and the
+     * cursors opened on it.
+     */
+    private static class ClientHolder {
+        final MongoClient client;
+        /** Weak, so that a cursor nobody closed does not pin the client. */
+        final Map<DBCursor, Boolean> cursors = new WeakHashMap<DBCursor, Boolean>();
+        volatile long lastUsed = System.currentTimeMillis();
+        volatile long lagCheckedAt = 0;
+        volatile long lag = -1;
+
+        ClientHolder(MongoClient client) {
+            this.client = client;
+        }
+
+        /**
+         * Forgets the cursors that are exhausted or closed, the driver
+         * resets their id, and tells whether any is left.
+         */
+        boolean hasOpenCursors() {
+            synchronized (cursors) {
+                Iterator<DBCursor> it = cursors.keySet().iterator();
+                while (it.hasNext()) {
+                    if (it.next().getCursorId() == 0) {
+                        it.remove();
+                    }
+                }
+                return !cursors.isEmpty();
+            }
+        }
     }
 }
@@ -0,0 +1,95 @@
+package org.mongo.viewer.util;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.mongo.viewer.vo.PartitionInfo;
+
+/**
+ * Picks the partitions a time-range query has to touch. A partition is
+ * pruned when the timestamps it holds cannot overlap the range. The maximum
+ * is only trusted once it is final, read after the month was over; until
+ * then late events may have raised it. The current month's collection is
+ * always a candidate, even before the catalog has seen it.
+ */
+public final class PartitionRouter {
+
+    private PartitionRouter() {
+
+    }
+
+    /**
+     * Routes a query on <code>[from, to)</code>.
+     *
+     * @param partitions
+     *            the known partitions
+     * @param from
+     *            the start, inclusive, null for unbounded
+     * @param to
+     *            the end, exclusive, null for unbounded
+     * @param now
+     *            the current time
+     * @return the names of the partitions to query, in catalog order
+     */
+    public static List<String> route(List<PartitionInfo> partitions,
+            Date from, Date to, Date now) {
+        List<String> names = new ArrayList<String>();
+        String current = PartitionUtil.getCollectionName(now);
+        boolean known = false;
+        for (PartitionInfo partition : partitions) {
+            known |= current.equals(partition.getName());
+            if (overlaps(partition, from, to, now)) {
+                names.add(partition.getName());
+            }
+        }
+        if (!known
+                && overlaps(PartitionUtil.getPartitionStart(current), null,
+                        from, to)) {
+            // created since the catalog was loaded
+            names.add(current);
+        }
+        return names;
+    }
+
+    /**
+     * Checks if the partition may hold events in <code>[from, to)</code>.
+     *
+     * @param partition
+     *            the partition
+     * @param from
+     *            the start, inclusive, null for unbounded
+     * @param to
+     *            the end, exclusive, null for unbounded
+     * @param now
+     *            the current time
+     * @return true, if it has to be queried
+     */
+    public static boolean overlaps(PartitionInfo partition, Date from,
+            Date to, Date now) {
+        boolean finalized = partition.isFinalized();
+        if (partition.isEmpty()) {
+            // an empty month may still receive the events we look for until
+            // it is known to be over
+            return !finalized
+                    && overlaps(partition.getMonthStart(), null, from, to);
+        }
+        Date max = finalized ? partition.getMaxTimestamp() : null;
+        return overlaps(partition.getMinTimestamp(), max, from, to);
+    }
+
+    /**
+     * Checks if <code>[min, max]</code> overlaps <code>[from, to)</code>,
+     * null meaning unbounded.
+     */
+    private static boolean overlaps(Date min, Date max, Date from, Date to) {
+        if (null != to && null != min && !min.before(to)) {
+            return false;
+        }
+        if (null != from && null != max && max.before(from)) {
+            return false;
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,141 @@
+package org.mongo.viewer.util;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * SysLog events are written to one collection per month, named
+ * <code>SYSLOG_MM_YYYY</code> after the month of their timestamp in the
+ * server's time zone. These helpers map between months and collection names.
+ */
+public final class PartitionUtil {
+
+    /** The collection name prefix. */
+    public static final String PREFIX = "SYSLOG_";
+
+    private static final Pattern NAME = Pattern.compile("^" + PREFIX
+            + "(\\d{2})_(\\d{4})$");
+
+    private PartitionUtil() {
+
+    }
+
+    /**
+     * Gets the collection holding the events of the given instant.
+     *
+     * @param date
+     *            the date
+     * @return the collection name
+     */
+    public static String getCollectionName(Date date) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(date);
+        return getCollectionName(cal);
+    }
+
+    /**
+     * Gets the collections that may hold events in <code>[from, to)</code>,
+     * oldest first.
+     *
+     * @param from
+     *            the start, inclusive
+     * @param to
+     *            the end, exclusive
+     * @return the collection names
+     */
+    public static List<String> getCollectionNames(Date from, Date to) {
+        List<String> names = new ArrayList<String>();
+        if (!from.before(to)) {
+            return names;
+        }
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(getMonthStart(from));
+        while (cal.getTime().before(to)) {
+            names.add(getCollectionName(cal));
+            cal.add(Calendar.MONTH, 1);
+        }
+        return names;
+    }
+
+    /**
+     * Checks if a collection is a monthly SysLog partition.
+     *
+     * @param name
+     *            the collection name
+     * @return true, if it is
+     */
+    public static boolean isPartition(String name) {
+        return null != name && NAME.matcher(name).matches();
+    }
+
+    /**
+     * Gets the first instant of the month a partition holds.
+     *
+     * @param name
+     *            the collection name
+     * @return the month start, null if the name is not a partition
+     */
+    public static Date getPartitionStart(String name) {
+        if (null == name) {
+            return null;
+        }
+        Matcher m = NAME.matcher(name);
+        if (!m.matches()) {
+            return null;
+        }
+        int month = Integer.parseInt(m.group(1));
+        if (month < 1 || month > 12) {
+            return null;
+        }
+        Calendar cal = Calendar.getInstance();
+        cal.clear();
+        cal.set(Integer.parseInt(m.group(2)), month - 1, 1);
+        return cal.getTime();
+    }
+
+    /**
+     * Gets the first instant of the month after the one a partition holds.
+     *
+     * @param name
+     *            the collection name
+     * @return the month end, exclusive, null if the name is not a partition
+     */
+    public static Date getPartitionEnd(String name) {
+        Date start = getPartitionStart(name);
+        if (null == start) {
+            return null;
+        }
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(start);
+        cal.add(Calendar.MONTH, 1);
+        return cal.getTime();
+    }
+
+    /**
+     * Gets the first instant of the month of the date.
+     *
+     * @param date
+     *            the date
+     * @return the month start
+     */
+    public static Date getMonthStart(Date date) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(date);
+        int year = cal.get(Calendar.YEAR);
+        int month = cal.get(Calendar.MONTH);
+        cal.clear();
+        cal.set(year, month, 1);
+        return cal.getTime();
+    }
+
+    private static String getCollectionName(Calendar cal) {
+        int month = cal.get(Calendar.MONTH) + 1;
+        return PREFIX + (month < 10 ? "0" : "") + month + "_"
+                + cal.get(Calendar.YEAR);
+    }
+
+}
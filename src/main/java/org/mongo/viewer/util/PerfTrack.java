@@ -226,6 +226,13 @@ public final class PerfTrack {
       threadLocalCurrent.remove();
    }
    
+   /** Tells whether a tree is being built on this thread, so that
+    *  library code can add to it without starting a tree of its own. */
+   public static boolean isTracking() {
+      Item current=threadLocalCurrent.get();
+      return current != null && !current.isDone();
+   }
+
    /** */
    public static boolean isCurrentRootAndComplete() {
       Item current=threadLocalCurrent.get();
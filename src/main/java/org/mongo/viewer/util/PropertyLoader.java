@@ -142,4 +142,56 @@ public class PropertyLoader {
         return loadProperties(name, Thread.currentThread()
                 .getContextClassLoader());
     }
+
+    /**
+     * Reads an int property, falling back to the default when the key is
+     * missing or is not a number.
+     *
+     * @param props
+     *            the properties
+     * @param key
+     *            the key
+     * @param def
+     *            the default value
+     * @return the int value
+     */
+    public static int getInt(Properties props, String key, int def) {
+        String value = props.getProperty(key);
+        if (null == value) {
+            return def;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Invalid value [" + value + "] for " + key
+                    + ", using " + def);
+            return def;
+        }
+    }
+
+    /**
+     * Reads a long property, falling back to the default when the key is
+     * missing or is not a number.
+     *
+     * @param props
+     *            the properties
+     * @param key
+     *            the key
+     * @param def
+     *            the default value
+     * @return the long value
+     */
+    public static long getLong(Properties props, String key, long def) {
+        String value = props.getProperty(key);
+        if (null == value) {
+            return def;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Invalid value [" + value + "] for " + key
+                    + ", using " + def);
+            return def;
+        }
+    }
 } // End of class
\ No newline at end of file
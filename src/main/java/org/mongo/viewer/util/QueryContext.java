@@ -0,0 +1,167 @@
+package org.mongo.viewer.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.mongo.viewer.exception.QueryAbortedException;
+import org.mongo.viewer.vo.RunningQuery;
+
+import com.mongodb.AggregationOptions;
+import com.mongodb.DBCursor;
+import com.mongodb.MongoException;
+import com.mongodb.MongoExecutionTimeoutException;
+
+/**
+ * The {@link RunningQuery} of the current thread, set for the length of a
+ * request. Queries opened on the thread get what is left of its deadline as
+ * their server side <code>maxTimeMS</code>, and are tagged and tracked so
+ * that they can be killed. Threads without a running query, such as
+ * background jobs, are not limited.
+ */
+public final class QueryContext {
+
+    private static final ThreadLocal<RunningQuery> current = new ThreadLocal<RunningQuery>();
+
+    private QueryContext() {
+    }
+
+    /**
+     * Sets the running query of the current thread.
+     *
+     * @param running
+     *            the running query
+     */
+    public static void set(RunningQuery running) {
+        current.set(running);
+    }
+
+    /**
+     * @return the running query of the current thread, null if none
+     */
+    public static RunningQuery get() {
+        return current.get();
+    }
+
+    /**
+     * Forgets the running query of the current thread.
+     */
+    public static void clear() {
+        current.remove();
+    }
+
+    /**
+     * Throws if the running query was aborted or is past its deadline.
+     *
+     * @throws QueryAbortedException
+     *             if it may not go on
+     */
+    public static void check() {
+        RunningQuery running = current.get();
+        if (null == running) {
+            return;
+        }
+        if (running.isAborted()) {
+            throw new QueryAbortedException("Query " + running.getId() + " "
+                    + running.getAbortReason(), !RunningQuery.CANCELLED
+                    .equals(running.getAbortReason()));
+        }
+        if (running.getRemainingMillis() <= 0) {
+            throw new QueryAbortedException("Query " + running.getId()
+                    + " " + RunningQuery.TIMED_OUT, true);
+        }
+    }
+
+    /**
+     * Reports progress, which keeps a stream alive, then throws if the
+     * running query may not go on.
+     *
+     * @throws QueryAbortedException
+     *             if it may not go on
+     */
+    public static void progress() {
+        RunningQuery running = current.get();
+        if (null != running) {
+            running.touch();
+        }
+        check();
+    }
+
+    /**
+     * Limits a cursor to what is left of the deadline, and tracks it. The
+     * server side limit of a stream is its overall limit, if it has one,
+     * since its deadline moves.
+     *
+     * @param cursor
+     *            the cursor, not yet iterated
+     * @return the cursor
+     * @throws QueryAbortedException
+     *             if the query may not go on
+     */
+    public static DBCursor apply(DBCursor cursor) {
+        MongoUtil.track(cursor);
+        RunningQuery running = current.get();
+        if (null == running) {
+            return cursor;
+        }
+        check();
+        long maxTime = getMaxTime(running);
+        if (maxTime != Long.MAX_VALUE) {
+            cursor.maxTime(maxTime, TimeUnit.MILLISECONDS);
+        }
+        cursor.comment(running.getComment());
+        if (!running.track(cursor)) {
+            cursor.close();
+            check();
+        }
+        return cursor;
+    }
+
+    /**
+     * Gets the options of an inline aggregation, limited to what is left of
+     * the deadline.
+     *
+     * @return the options
+     * @throws QueryAbortedException
+     *             if the query may not go on
+     */
+    public static AggregationOptions aggregationOptions() {
+        AggregationOptions.Builder builder = AggregationOptions.builder()
+                .outputMode(AggregationOptions.OutputMode.INLINE);
+        RunningQuery running = current.get();
+        if (null != running) {
+            check();
+            long maxTime = getMaxTime(running);
+            if (maxTime != Long.MAX_VALUE) {
+                builder.maxTime(maxTime, TimeUnit.MILLISECONDS);
+            }
+        }
+        return builder.build();
+    }
+
+    private static long getMaxTime(RunningQuery running) {
+        if (!running.isIdleTimed()) {
+            return running.getRemainingMillis();
+        }
+        long limit = running.getLimit();
+        return limit == Long.MAX_VALUE ? limit : limit
+                - System.currentTimeMillis();
+    }
+
+    /**
+     * Gets the status code of a failed query: 504 when it ran out of time,
+     * 409 when it was cancelled and 500 otherwise.
+     *
+     * @param e
+     *            the failure
+     * @return the status code
+     */
+    public static int getStatus(MongoException e) {
+        if (e instanceof MongoExecutionTimeoutException) {
+            return 504;
+        }
+        if (e instanceof QueryAbortedException) {
+            return ((QueryAbortedException) e).isTimedOut() ? 504 : 409;
+        }
+        return 500;
+    }
+
+}
@@ -0,0 +1,49 @@
+package org.mongo.viewer.util;
+
+/**
+ * Times one mongo query. When the request is being tracked by
+ * {@link PerfTrack} the query also shows up in its timing tree, as
+ * <code>mongo.&lt;operation&gt; &lt;collection&gt;</code>.
+ */
+public final class QueryTimer {
+
+    private final String name;
+    private final boolean tracked;
+    private final long start;
+
+    private QueryTimer(String name) {
+        this.name = name;
+        this.tracked = PerfTrack.isTracking();
+        if (tracked) {
+            PerfTrack.start(name, "mongo");
+        }
+        this.start = System.currentTimeMillis();
+    }
+
+    /**
+     * Starts timing a query.
+     *
+     * @param operation
+     *            what runs the query, e.g. find or page
+     * @param collection
+     *            the collection
+     * @return the timer
+     */
+    public static QueryTimer start(String operation, String collection) {
+        return new QueryTimer("mongo." + operation + " " + collection);
+    }
+
+    /**
+     * Stops the timer.
+     *
+     * @return the elapsed millis
+     */
+    public long stop() {
+        long millis = System.currentTimeMillis() - start;
+        if (tracked) {
+            PerfTrack.stop(name);
+        }
+        return millis;
+    }
+
+}
@@ -0,0 +1,316 @@
+package org.mongo.viewer.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.mongo.viewer.vo.PageToken;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.util.JSON;
+import com.mongodb.util.JSONParseException;
+
+/**
+ * Helpers for turning the JSON the user typed into driver objects.
+ */
+public final class QueryUtil {
+
+    /** The timestamp field of SysLogEvent documents. */
+    public static final String TIMESTAMP = "timestamp";
+
+    /** The id field. */
+    public static final String ID = "_id";
+
+    private QueryUtil() {
+
+    }
+
+    /**
+     * Parses a JSON document. Blank input is an empty document.
+     *
+     * @param json
+     *            the json
+     * @return the DB object
+     * @throws IllegalArgumentException
+     *             if the input is not a JSON document
+     */
+    public static DBObject parse(String json) {
+        if (null == json || json.trim().length() == 0) {
+            return new BasicDBObject();
+        }
+        Object parsed;
+        try {
+            parsed = JSON.parse(json);
+        } catch (JSONParseException e) {
+            throw new IllegalArgumentException("Invalid JSON " + json, e);
+        }
+        if (!(parsed instanceof DBObject)) {
+            throw new IllegalArgumentException("Not a JSON document " + json);
+        }
+        return (DBObject) parsed;
+    }
+
+    /**
+     * Serializes a query or projection to a canonical string, so that
+     * equivalent documents typed differently compare equal. Keys are sorted
+     * at the top level, in operator documents and in the clauses of
+     * <code>$and</code>, <code>$or</code>, <code>$nor</code> and
+     * <code>$elemMatch</code>; embedded documents matched by value keep their
+     * order because it is significant to mongo.
+     *
+     * @param document
+     *            the document, may be null
+     * @return the canonical form, null for null
+     */
+    public static String normalize(DBObject document) {
+        if (null == document) {
+            return null;
+        }
+        return JSON.serialize(canonical(document, true));
+    }
+
+    private static Object canonical(Object value, boolean reorder) {
+        if (value instanceof List) {
+            BasicDBList list = new BasicDBList();
+            for (Object item : (List<?>) value) {
+                list.add(canonical(item, reorder));
+            }
+            return list;
+        }
+        if (!(value instanceof DBObject)) {
+            return value;
+        }
+        DBObject document = (DBObject) value;
+        List<String> keys = new ArrayList<String>(document.keySet());
+        boolean operators = !keys.isEmpty();
+        for (String key : keys) {
+            operators &= key.startsWith("$");
+        }
+        if (reorder || operators) {
+            Collections.sort(keys);
+        }
+        BasicDBObject result = new BasicDBObject();
+        for (String key : keys) {
+            boolean clauses = "$and".equals(key) || "$or".equals(key)
+                    || "$nor".equals(key) || "$elemMatch".equals(key);
+            result.put(key, canonical(document.get(key), clauses));
+        }
+        return result;
+    }
+
+    /**
+     * Splits a comma separated field list, as passed on the query string.
+     *
+     * @param fields
+     *            the fields, may be null
+     * @return the field names, null when none were given
+     */
+    public static String[] splitFields(String fields) {
+        if (null == fields) {
+            return null;
+        }
+        List<String> names = new ArrayList<String>();
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (name.length() > 0) {
+                names.add(name);
+            }
+        }
+        return names.isEmpty() ? null : names.toArray(new String[names.size()]);
+    }
+
+    /**
+     * Builds the projection for a field list, so that only those fields are
+     * sent by the server and decoded by the driver. <code>_id</code> is
+     * always returned by mongo unless it is excluded explicitly.
+     *
+     * @param fields
+     *            the fields, may be null
+     * @param required
+     *            fields the caller needs regardless of the selection, e.g.
+     *            the keyset fields when paging
+     * @return the projection, null when whole documents are wanted
+     */
+    public static DBObject projection(String[] fields, String... required) {
+        if (null == fields || fields.length == 0) {
+            return null;
+        }
+        BasicDBObject projection = new BasicDBObject();
+        for (String field : fields) {
+            projection.put(field, 1);
+        }
+        for (String field : required) {
+            projection.put(field, 1);
+        }
+        return projection;
+    }
+
+    /**
+     * Gets the keyset sort, <code>{timestamp: direction, _id: direction}</code>.
+     *
+     * @param direction
+     *            1 for ascending, -1 for descending
+     * @return the sort
+     */
+    public static DBObject keysetSort(int direction) {
+        return new BasicDBObject(TIMESTAMP, direction).append(ID, direction);
+    }
+
+    /**
+     * Restricts a query to the documents after the token in keyset order. The
+     * predicate is a range on <code>(timestamp, _id)</code> so the server can
+     * seek straight to it on a <code>{timestamp: 1, _id: 1}</code> style
+     * index.
+     *
+     * @param query
+     *            the user query
+     * @param token
+     *            the last document of the previous page, may be null
+     * @param direction
+     *            1 for ascending, -1 for descending
+     * @return the query
+     */
+    public static DBObject seekAfter(DBObject query, PageToken token,
+            int direction) {
+        if (null == token) {
+            return query;
+        }
+        String op = (direction < 0) ? "$lt" : "$gt";
+        DBObject seek = new BasicDBObject("$or", Arrays.asList(
+                new BasicDBObject(TIMESTAMP, new BasicDBObject(op, token
+                        .getTimestamp())),
+                new BasicDBObject(TIMESTAMP, token.getTimestamp()).append(ID,
+                        new BasicDBObject(op, token.getId()))));
+        if (query.keySet().isEmpty()) {
+            return seek;
+        }
+        return new BasicDBObject("$and", Arrays.asList(query, seek));
+    }
+
+    /**
+     * Restricts a query to <code>from &lt;= timestamp &lt; to</code>.
+     *
+     * @param query
+     *            the user query
+     * @param from
+     *            the start, inclusive, may be null
+     * @param to
+     *            the end, exclusive, may be null
+     * @return the query
+     */
+    public static DBObject withTimeRange(DBObject query, Date from, Date to) {
+        if (null == from && null == to) {
+            return query;
+        }
+        BasicDBObject range = new BasicDBObject();
+        if (null != from) {
+            range.put("$gte", from);
+        }
+        if (null != to) {
+            range.put("$lt", to);
+        }
+        DBObject timeRange = new BasicDBObject(TIMESTAMP, range);
+        if (query.keySet().isEmpty()) {
+            return timeRange;
+        }
+        return new BasicDBObject("$and", Arrays.asList(query, timeRange));
+    }
+
+    /**
+     * Gets the <code>timestamp</code> range a query is restricted to, from
+     * its top level conditions and those of a top level <code>$and</code>.
+     * Only date bounds are considered; conditions under <code>$or</code>,
+     * <code>$not</code> and the like widen nothing and are ignored.
+     *
+     * @param query
+     *            the query
+     * @return the start, inclusive, and the end, exclusive, each may be null;
+     *         null if the query has no date bound on the timestamp
+     */
+    public static Date[] getTimeRange(DBObject query) {
+        Date[] range = new Date[2];
+        narrowTimeRange(query, range);
+        return (null == range[0] && null == range[1]) ? null : range;
+    }
+
+    private static void narrowTimeRange(DBObject query, Date[] range) {
+        Object value = query.get(TIMESTAMP);
+        if (value instanceof Date) {
+            narrowFrom(range, (Date) value, 0);
+            narrowTo(range, (Date) value, 1);
+        } else if (value instanceof DBObject) {
+            DBObject ops = (DBObject) value;
+            narrowFrom(range, ops.get("$gte"), 0);
+            narrowFrom(range, ops.get("$gt"), 1);
+            narrowTo(range, ops.get("$lt"), 0);
+            narrowTo(range, ops.get("$lte"), 1);
+        }
+        Object and = query.get("$and");
+        if (and instanceof List) {
+            for (Object clause : (List<?>) and) {
+                if (clause instanceof DBObject) {
+                    narrowTimeRange((DBObject) clause, range);
+                }
+            }
+        }
+    }
+
+    private static void narrowFrom(Date[] range, Object bound, long offset) {
+        if (bound instanceof Date) {
+            Date from = new Date(((Date) bound).getTime() + offset);
+            if (null == range[0] || from.after(range[0])) {
+                range[0] = from;
+            }
+        }
+    }
+
+    private static void narrowTo(Date[] range, Object bound, long offset) {
+        if (bound instanceof Date) {
+            Date to = new Date(((Date) bound).getTime() + offset);
+            if (null == range[1] || to.before(range[1])) {
+                range[1] = to;
+            }
+        }
+    }
+
+    /**
+     * Compares two documents in ascending <code>(timestamp, _id)</code>
+     * order. Missing values sort first.
+     *
+     * @param a
+     *            a document
+     * @param b
+     *            another document
+     * @return the comparison
+     */
+    public static int compareKeyset(DBObject a, DBObject b) {
+        int result = compareValues(a.get(TIMESTAMP), b.get(TIMESTAMP));
+        if (result != 0) {
+            return result;
+        }
+        return compareValues(a.get(ID), b.get(ID));
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static int compareValues(Object a, Object b) {
+        if (a == b) {
+            return 0;
+        }
+        if (null == a) {
+            return -1;
+        }
+        if (null == b) {
+            return 1;
+        }
+        if (a.getClass() == b.getClass() && a instanceof Comparable) {
+            return ((Comparable) a).compareTo(b);
+        }
+        // mixed types, order them consistently by type
+        return a.getClass().getName().compareTo(b.getClass().getName());
+    }
+
+}
@@ -0,0 +1,114 @@
+package org.mongo.viewer.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.bson.BSONCallback;
+import org.bson.BSONObject;
+import org.bson.BasicBSONDecoder;
+import org.bson.io.Bits;
+
+import com.mongodb.DBCallback;
+import com.mongodb.DBCollection;
+import com.mongodb.DBDecoder;
+import com.mongodb.DBDecoderFactory;
+import com.mongodb.DBObject;
+import com.mongodb.LazyDBCallback;
+
+/**
+ * Reads each document off the wire into one byte array and nothing else, as
+ * a {@link RawDBObject}. Set it on a cursor with
+ * <code>cursor.setDecoderFactory(RawDBDecoder.FACTORY)</code>.
+ */
+public class RawDBDecoder implements DBDecoder {
+
+    /** Creates the decoders, one per cursor. */
+    public static final DBDecoderFactory FACTORY = new DBDecoderFactory() {
+        @Override
+        public DBDecoder create() {
+            return new RawDBDecoder();
+        }
+    };
+
+    private final byte[] size = new byte[4];
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see com.mongodb.DBDecoder#decode(java.io.InputStream,
+     * com.mongodb.DBCollection)
+     */
+    @Override
+    public DBObject decode(InputStream in, DBCollection collection)
+            throws IOException {
+        Bits.readFully(in, size);
+        int length = Bits.readInt(size);
+        byte[] bytes = new byte[length];
+        System.arraycopy(size, 0, bytes, 0, size.length);
+        Bits.readFully(in, bytes, size.length, length - size.length);
+        return new RawDBObject(bytes, collection);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see com.mongodb.DBDecoder#decode(byte[], com.mongodb.DBCollection)
+     */
+    @Override
+    public DBObject decode(byte[] b, DBCollection collection) {
+        return new RawDBObject(b, collection);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see com.mongodb.DBDecoder#getDBCallback(com.mongodb.DBCollection)
+     */
+    @Override
+    public DBCallback getDBCallback(DBCollection collection) {
+        return new LazyDBCallback(collection);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.bson.BSONDecoder#readObject(byte[])
+     */
+    @Override
+    public BSONObject readObject(byte[] b) {
+        return decode(b, (DBCollection) null);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.bson.BSONDecoder#readObject(java.io.InputStream)
+     */
+    @Override
+    public BSONObject readObject(InputStream in) throws IOException {
+        return decode(in, (DBCollection) null);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.bson.BSONDecoder#decode(byte[], org.bson.BSONCallback)
+     */
+    @Override
+    public int decode(byte[] b, BSONCallback callback) {
+        return new BasicBSONDecoder().decode(b, callback);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.bson.BSONDecoder#decode(java.io.InputStream,
+     * org.bson.BSONCallback)
+     */
+    @Override
+    public int decode(InputStream in, BSONCallback callback)
+            throws IOException {
+        return new BasicBSONDecoder().decode(in, callback);
+    }
+
+}
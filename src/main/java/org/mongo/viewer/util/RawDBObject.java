@@ -0,0 +1,33 @@
+package org.mongo.viewer.util;
+
+import com.mongodb.DBCollection;
+import com.mongodb.LazyDBCallback;
+import com.mongodb.LazyDBObject;
+
+/**
+ * A document as the server sent it. Fields are only decoded when asked for,
+ * and the raw BSON is available to streaming decoders.
+ */
+public class RawDBObject extends LazyDBObject {
+
+    /**
+     * @param bytes
+     *            the BSON of exactly one document
+     * @param collection
+     *            the collection it was read from, may be null
+     */
+    public RawDBObject(byte[] bytes, DBCollection collection) {
+        super(bytes, new LazyDBCallback(collection));
+    }
+
+    /**
+     * Gets the BSON, not a copy.
+     *
+     * @return the BSON of the document
+     */
+    @Override
+    public byte[] getBytes() {
+        return super.getBytes();
+    }
+
+}
@@ -2,13 +2,40 @@ package org.mongo.viewer.util;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
 
 import javax.servlet.http.HttpServletRequest;
 
 import org.apache.commons.beanutils.BeanUtils;
+import org.mongo.viewer.vo.DataBaseInfo;
 
 public class RequestUtil {
 
+    /** The default mongo port. */
+    public static final int DEFAULT_PORT = 27017;
+
+    /** The header with the user of an ad hoc connection. */
+    public static final String USER_HEADER = "X-Mongo-User";
+
+    /** The header with the password of an ad hoc connection. */
+    public static final String PASSWORD_HEADER = "X-Mongo-Password";
+
+    /** The parameters that say which server a connection goes to. */
+    private static final String[] SERVER_PARAMETERS = { "host", "port",
+            "database", "seeds" };
+
+    /** The stored connections by id. */
+    private static final SimpleCache<Integer, DataBaseInfo> connections = new SimpleCache<Integer, DataBaseInfo>(
+            "connections", 100, 60);
+
+    /** The date formats accepted on the query string, most specific first. */
+    private static final String[] DATE_FORMATS = { "yyyy-MM-dd'T'HH:mm:ss",
+            "yyyy-MM-dd'T'HH:mm", "yyyy-MM-dd" };
+
     public static <T> T reflectToObject(HttpServletRequest request,
             Class<T> type) {
         T instance = null;
@@ -38,4 +65,183 @@ public class RequestUtil {
         return instance;
     }
 
+    /**
+     * Reads the connection of a request. A stored connection is named by the
+     * <code>connection</code> parameter, the id of its DATABASE_INFO row.
+     * Otherwise the host, port and database parameters give the server, and
+     * the credentials come from the {@value #USER_HEADER} and
+     * {@value #PASSWORD_HEADER} headers, or from the body of a POST; never
+     * from the query string, which ends up in access logs and browser
+     * history. The optional seeds parameter lists the replica set members of
+     * an ad hoc connection. A stored connection is only ever sent to the
+     * server it names, its credentials with it, so host, port, database and
+     * seeds are refused alongside it. The optional readPreference and
+     * maxStaleness parameters apply to either.
+     * 
+     * @param request
+     *            the request
+     * @return the data base info
+     * @throws IllegalArgumentException
+     *             if the stored connection is unknown, host or database is
+     *             missing, port is not a number, credentials are on the query
+     *             string or a stored connection is pointed elsewhere
+     */
+    public static DataBaseInfo getDataBaseInfo(HttpServletRequest request) {
+        if (hasQueryParameter(request, "user")
+                || hasQueryParameter(request, "password")) {
+            throw new IllegalArgumentException(
+                    "Credentials are not accepted on the query string, send the "
+                            + USER_HEADER + " and " + PASSWORD_HEADER
+                            + " headers");
+        }
+        String connection = emptyToNull(request.getParameter("connection"));
+        DataBaseInfo info;
+        if (null != connection) {
+            for (String server : SERVER_PARAMETERS) {
+                if (null != request.getParameter(server)) {
+                    throw new IllegalArgumentException("The " + server
+                            + " of a stored connection cannot be changed");
+                }
+            }
+            info = getStoredDataBaseInfo(connection);
+        } else {
+            info = getAdHocDataBaseInfo(request);
+            info.setSeeds(emptyToNull(request.getParameter("seeds")));
+        }
+        String readPreference = emptyToNull(request
+                .getParameter("readPreference"));
+        if (null != readPreference) {
+            // fail here rather than on the first query
+            MongoUtil.parseReadPreference(readPreference);
+            info.setReadPreference(readPreference);
+        }
+        String maxStaleness = emptyToNull(request.getParameter("maxStaleness"));
+        if (null != maxStaleness) {
+            try {
+                info.setMaxStaleness(Long.parseLong(maxStaleness));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid maxStaleness "
+                        + maxStaleness);
+            }
+        }
+        return info;
+    }
+
+    private static DataBaseInfo getAdHocDataBaseInfo(
+            HttpServletRequest request) {
+        String host = request.getParameter("host");
+        String database = request.getParameter("database");
+        if (null == host || null == database) {
+            throw new IllegalArgumentException(
+                    "host and database parameters are required");
+        }
+        String user = request.getHeader(USER_HEADER);
+        String password = request.getHeader(PASSWORD_HEADER);
+        if (null == user && "POST".equals(request.getMethod())) {
+            user = request.getParameter("user");
+            password = request.getParameter("password");
+        }
+        return new DataBaseInfo(host, parsePort(request.getParameter("port")),
+                database, user, password);
+    }
+
+    /**
+     * Gets a connection stored in the DATABASE_INFO table, cached for a
+     * minute.
+     */
+    private static DataBaseInfo getStoredDataBaseInfo(String connection) {
+        int id;
+        try {
+            id = Integer.parseInt(connection);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid connection "
+                    + connection);
+        }
+        DataBaseInfo stored = connections.get(id);
+        if (null == stored) {
+            List<Map<String, String>> rows;
+            try {
+                rows = JDBCUtil.executeQuery("SELECT HOST, DATABASE, USERNAME, "
+                        + "PASSWORD, PORT FROM DATABASE_INFO WHERE ID = " + id);
+            } catch (Exception e) {
+                throw new IllegalStateException("Cannot read connection " + id,
+                        e);
+            }
+            if (rows.isEmpty()) {
+                throw new IllegalArgumentException("Unknown connection " + id);
+            }
+            Map<String, String> row = rows.get(0);
+            stored = new DataBaseInfo(row.get("HOST"),
+                    parsePort(row.get("PORT")), row.get("DATABASE"),
+                    row.get("USERNAME"), row.get("PASSWORD"));
+            connections.put(id, stored);
+        }
+        // callers may change their copy
+        return new DataBaseInfo(stored);
+    }
+
+    private static int parsePort(String value) {
+        if (null == value || value.length() == 0) {
+            return DEFAULT_PORT;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid port " + value);
+        }
+    }
+
+    /**
+     * Tells whether a parameter is on the query string, as opposed to the
+     * body.
+     */
+    private static boolean hasQueryParameter(HttpServletRequest request,
+            String name) {
+        String query = request.getQueryString();
+        if (null == query) {
+            return false;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (name.equals(equals < 0 ? pair : pair.substring(0, equals))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String emptyToNull(String value) {
+        return (null == value || value.trim().length() == 0) ? null : value
+                .trim();
+    }
+
+    /**
+     * Parses a date parameter, either epoch millis or a local
+     * <code>yyyy-MM-dd['T'HH:mm[:ss]]</code> date.
+     * 
+     * @param value
+     *            the value, may be null
+     * @return the date, null when the value is null or empty
+     * @throws IllegalArgumentException
+     *             if the value is not a date
+     */
+    public static Date parseDate(String value) {
+        if (null == value || value.length() == 0) {
+            return null;
+        }
+        if (value.matches("\\d+")) {
+            return new Date(Long.parseLong(value));
+        }
+        for (String format : DATE_FORMATS) {
+            SimpleDateFormat sdf = new SimpleDateFormat(format);
+            sdf.setLenient(false);
+            try {
+                return sdf.parse(value);
+            } catch (ParseException e) {
+                // try the next format
+            }
+        }
+        throw new IllegalArgumentException("Invalid date " + value);
+    }
+
 }
@@ -1,19 +1,36 @@
 /**
- * 
+ *
  */
 package org.mongo.viewer.util;
 
-import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.lang.ref.WeakReference;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 /**
  * The Class Simple Cache.
- * 
- * 
+ *
+ *
  * This is a glorified map with maxAge and maxSize. This is a simple
  * implementation of the cache that can be used within the application for
  * caching any simple objects.<br>
@@ -23,23 +40,55 @@ import org.apache.commons.logging.LogFactory;
  * <li>Ensures objects inside this not live beyond beyond <code>maxAge</code>
  * seconds</li>
  * </ul>
- * 
+ *
+ * The cache is safe for use by any number of threads. Entries live in a
+ * {@link ConcurrentHashMap} and reads take no lock: a read only records the
+ * entry it found in a small per-thread-stripe buffer. Writes, and readers
+ * that find their buffer due for draining, take the eviction lock to replay
+ * those reads onto the least recently used list and drop the eldest entries
+ * beyond <code>maxSize</code>. A full buffer drops reads rather than wait, so
+ * the order of eviction is nearly, not exactly, least recently used. Null
+ * keys and values are not supported.
+ *
+ * An entry is alive while it is at most <code>maxAge</code> whole seconds
+ * old, checked when it is read, so {@link #setMaxAge(int)} applies to the
+ * entries already cached as well. An entry written with
+ * {@link #put(Object, Object, int)} has a time to live of its own and is
+ * alive for at most that many seconds. Entries are also kept on a
+ * {@link TimingWheel}, which a background sweeper advances every
+ * <code>cache.sweepInterval</code> seconds (and writes on their way), so
+ * expired entries are removed in amortized O(1) even when they are never read
+ * again, and memory stays in step with the live entries.
+ *
+ * Every cache has a name and is listed by {@link #getCaches()}, with its
+ * {@link CacheStats} and a rough estimate of the memory its entries hold.
+ *
+ * A cache can also be bounded by weight: a {@link Weigher} gives the weight
+ * of each entry, typically its size in bytes, and the eldest entries are
+ * dropped while the total is over <code>maxWeight</code>. An entry heavier
+ * than <code>cache.maxEntryShare</code> of that budget is not cached at all,
+ * so that one huge entry cannot flush every other one.
+ *
+ * A full cache drops its least recently used entry by default. Under
+ * {@link Policy#TINY_LFU} new entries must also prove themselves used more
+ * often than the entry they would push out, which keeps popular entries
+ * through scans of keys that are used once.
+ *
  * @param <K>
  *            the type of keys maintained by this map
  * @param <V>
  *            the type of mapped values
- * 
+ *
  * @author vvenkatraman
- * 
+ *
  * @since 14.1
  */
-public class SimpleCache<K, V> extends LinkedHashMap<K, V> implements Map<K, V> {
+public class SimpleCache<K, V> extends AbstractMap<K, V> implements Map<K, V> {
 
     /** The Log. */
     private static Log log = LogFactory.getLog(SimpleCache.class);
 
-    /** The load factor. */
-    private static final float LOAD_FACTOR = 0.75f; // Defaulting to 0.75
+    private static Properties config = PropertyLoader.loadProperties("config");
 
     /** The Constant DEFAULT_SIZE. */
     public static final int DEFAULT_SIZE = 100; // defaulting to 100 objects
@@ -47,14 +96,111 @@ public class SimpleCache<K, V> extends LinkedHashMap<K, V> implements Map<K, V>
     /** The Constant DEFAULT_AGE. */
     public static final int DEFAULT_AGE = 30 * 60; // defaulting to 30 minutes
 
+    /** The read buffer stripes, a power of two. */
+    private static final int STRIPES = StripedCounter.STRIPES;
+
+    /** The reads each stripe holds, a power of two. */
+    private static final int BUFFER_SIZE = 64;
+
+    /** Reads into a stripe between two attempts to drain it. */
+    private static final int DRAIN_THRESHOLD = 32;
+
+    /** The largest share of the weight budget a single entry may take. */
+    private static final double MAX_ENTRY_SHARE = Double.parseDouble(config
+            .getProperty("cache.maxEntryShare", "0.1"));
+
+    /** The precision of expiry. */
+    private static final long TICK_MILLIS = 1000;
+
+    /** The caches with entries that expire, swept in the background. */
+    private static final ConcurrentLinkedQueue<WeakReference<SimpleCache<?, ?>>> sweepable = new ConcurrentLinkedQueue<WeakReference<SimpleCache<?, ?>>>();
+
+    private static ScheduledExecutorService sweeper;
+
+    /** The caches by name, the latest of a name wins. */
+    private static final ConcurrentHashMap<String, WeakReference<SimpleCache<?, ?>>> registry = new ConcurrentHashMap<String, WeakReference<SimpleCache<?, ?>>>();
+
+    /** Numbers the caches created without a name. */
+    private static final AtomicInteger unnamed = new AtomicInteger();
+
+    /**
+     * The bytes an entry holds besides its key and value: the entry itself
+     * and its slot in the map.
+     */
+    private static final int ENTRY_OVERHEAD = 112;
+
+    /** The name. */
+    private final String name;
+
+    /** The statistics. */
+    private final CacheStats stats = new CacheStats();
+
+    /** Weighs the entries, null for the estimate of their bytes. */
+    private final Weigher<? super K, ? super V> weigher;
+
+    /** The max total weight. */
+    private volatile long maxWeight = Long.MAX_VALUE;
+
+    /** The total weight of the entries, guarded by the eviction lock. */
+    private volatile long weight;
+
     /** The max size. */
-    private int maxSize = DEFAULT_SIZE;
+    private volatile int maxSize = DEFAULT_SIZE;
 
     /** The max age. */
-    private int maxAge = DEFAULT_AGE;
+    private volatile int maxAge = DEFAULT_AGE;
+
+    /** The entries. */
+    private final ConcurrentHashMap<K, Node<K, V>> map;
 
-    /** The age. This records the age of an object in memory */
-    protected Map<K, Long> ageMap = new HashMap<K, Long>();
+    /** Guards the recency list and the draining of the read buffers. */
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    /** The eviction policy. */
+    private final Policy policy;
+
+    /**
+     * The new entries waiting for admission, guarded by the eviction lock.
+     * Always empty under LRU.
+     */
+    private final Segment<K, V> window = new Segment<K, V>();
+
+    /** The admitted entries, guarded by the eviction lock. */
+    private final Segment<K, V> main = new Segment<K, V>();
+
+    /**
+     * How often keys are used, for admission; guarded by the eviction lock,
+     * null under LRU.
+     */
+    private final FrequencySketch sketch;
+
+    /** The expiry of the entries, guarded by the eviction lock. */
+    private final TimingWheel<Node<K, V>> wheel = new TimingWheel<Node<K, V>>(
+            TICK_MILLIS, System.currentTimeMillis());
+
+    /**
+     * Removes the entries the wheel expires, with the eviction lock held. An
+     * entry whose <code>maxAge</code> grew meanwhile is scheduled again.
+     */
+    private final TimingWheel.Listener<Node<K, V>> expiry = new TimingWheel.Listener<Node<K, V>>() {
+        @Override
+        public void expired(Node<K, V> node) {
+            if (isAlive(node)) {
+                schedule(node);
+            } else if (map.remove(node.key, node)) {
+                unlink(node);
+                weight -= node.weight;
+                stats.recordAgeEviction();
+                entryRemoved(node.key, node.value);
+            }
+        }
+    };
+
+    /** The entries read since the last drain, by stripe. */
+    private final AtomicReferenceArray<Node<K, V>>[] readBuffers;
+
+    /** The reads recorded into each stripe. */
+    private final AtomicLong[] readCounts;
 
     /**
      * Instantiates a new cbeyond cache with default values.
@@ -65,94 +211,675 @@ public class SimpleCache<K, V> extends LinkedHashMap<K, V> implements Map<K, V>
 
     /**
      * Instantiates a new cbeyond cache.
-     * 
+     *
      * @param maxSize
      *            the max number of objects in memory
      * @param maxAge
      *            the max age in seconds
      */
     public SimpleCache(int maxSize, int maxAge) {
-        super(maxSize, LOAD_FACTOR, true);
+        this("cache-" + unnamed.incrementAndGet(), maxSize, maxAge);
+    }
+
+    /**
+     * Instantiates a new cache listed under a name.
+     *
+     * @param name
+     *            the name it is listed under
+     * @param maxSize
+     *            the max number of objects in memory
+     * @param maxAge
+     *            the max age in seconds
+     */
+    public SimpleCache(String name, int maxSize, int maxAge) {
+        this(name, maxSize, maxAge, Long.MAX_VALUE, null);
+    }
+
+    /**
+     * Instantiates a new cache bounded by weight as well as by size.
+     *
+     * @param name
+     *            the name it is listed under
+     * @param maxSize
+     *            the max number of objects in memory
+     * @param maxAge
+     *            the max age in seconds
+     * @param maxWeight
+     *            the max total weight of the objects
+     * @param weigher
+     *            weighs the objects, null to weigh them by a rough estimate
+     *            of their bytes
+     */
+    public SimpleCache(String name, int maxSize, int maxAge, long maxWeight,
+            Weigher<? super K, ? super V> weigher) {
+        this(name, maxSize, maxAge, maxWeight, weigher, Policy.LRU);
+    }
+
+    /**
+     * Instantiates a new cache bounded by weight as well as by size, with an
+     * eviction policy.
+     *
+     * @param name
+     *            the name it is listed under
+     * @param maxSize
+     *            the max number of objects in memory
+     * @param maxAge
+     *            the max age in seconds
+     * @param maxWeight
+     *            the max total weight of the objects
+     * @param weigher
+     *            weighs the objects, null to weigh them by a rough estimate
+     *            of their bytes
+     * @param policy
+     *            the eviction policy
+     */
+    @SuppressWarnings("unchecked")
+    public SimpleCache(String name, int maxSize, int maxAge, long maxWeight,
+            Weigher<? super K, ? super V> weigher, Policy policy) {
+        this.name = name;
+        this.weigher = weigher;
+        this.policy = policy;
+        this.sketch = (policy == Policy.TINY_LFU) ? new FrequencySketch(
+                maxSize) : null;
+        this.maxWeight = maxWeight;
         this.maxAge = maxAge;
         this.maxSize = maxSize;
-        log.debug("Cache with size of " + maxSize + " and age of " + maxAge
-                + " created");
+        this.map = new ConcurrentHashMap<K, Node<K, V>>(Math.min(maxSize,
+                1 << 16));
+        this.readBuffers = new AtomicReferenceArray[STRIPES];
+        this.readCounts = new AtomicLong[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            readBuffers[i] = new AtomicReferenceArray<Node<K, V>>(BUFFER_SIZE);
+            readCounts[i] = new AtomicLong();
+        }
+        registry.put(name, new WeakReference<SimpleCache<?, ?>>(this));
+        startSweeping(this);
+        log.debug("Cache " + name + " with size of " + maxSize
+                + " and age of " + maxAge + " created, evicting by " + policy);
     }
 
     /*
      * (non-Javadoc)
-     * 
-     * @see java.util.LinkedHashMap#removeEldestEntry(java.util.Map.Entry)
+     *
+     * @see java.util.AbstractMap#get(java.lang.Object)
      */
     @Override
-    protected boolean removeEldestEntry(java.util.Map.Entry<K, V> eldest) {
-        // Remove the eldest entry if the size of the cache exceeds the
-        // maximum size
-        return size() > getMaxSize();
+    public V get(Object key) {
+        Node<K, V> node = map.get(key);
+        if (null == node) {
+            stats.recordMiss();
+            return null;
+        }
+        if (!isAlive(node)) {
+            stats.recordMiss();
+            expire(node);
+            return null;
+        }
+        stats.recordHit();
+        recordRead(node);
+        return node.value;
     }
 
     /*
      * (non-Javadoc)
-     * 
-     * @see java.util.HashMap#put(java.lang.Object, java.lang.Object)
+     *
+     * @see java.util.AbstractMap#containsKey(java.lang.Object)
+     */
+    @Override
+    public boolean containsKey(Object key) {
+        Node<K, V> node = map.get(key);
+        if (null == node) {
+            return false;
+        }
+        if (!isAlive(node)) {
+            expire(node);
+            return false;
+        }
+        return true;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.util.AbstractMap#put(java.lang.Object, java.lang.Object)
      */
     @Override
     public V put(K key, V value) {
-        ageMap.put(key, System.currentTimeMillis());
-        return super.put(key, value);
+        return put(key, value, Long.MAX_VALUE);
+    }
+
+    /**
+     * Caches a value for at most <code>ttl</code> seconds, and never longer
+     * than <code>maxAge</code> allows.
+     *
+     * @param key
+     *            the key
+     * @param value
+     *            the value
+     * @param ttl
+     *            the time to live in seconds, 0 or less to only drop the
+     *            value cached for the key
+     * @return the live value it replaced, null if none
+     */
+    public V put(K key, V value, int ttl) {
+        if (null == key || null == value) {
+            throw new NullPointerException();
+        }
+        if (ttl <= 0) {
+            return remove(key);
+        }
+        return put(key, value, System.currentTimeMillis() + ttl * 1000L);
+    }
+
+    private V put(K key, V value, long expiresAt) {
+        if (null == key || null == value) {
+            throw new NullPointerException();
+        }
+        long now = System.currentTimeMillis();
+        long entryWeight = (null == weigher) ? ENTRY_OVERHEAD + estimate(key)
+                + estimate(value) : weigher.weigh(key, value);
+        if (entryWeight > getMaxEntryWeight()) {
+            // too heavy to keep, and the value it replaces is stale
+            stats.recordRejection();
+            log.debug("Not caching " + key + " weighing " + entryWeight
+                    + " in " + name);
+            return remove(key);
+        }
+        Node<K, V> node = new Node<K, V>(key, value, now, expiresAt,
+                entryWeight);
+        Node<K, V> old;
+        evictionLock.lock();
+        try {
+            old = map.put(key, node);
+            if (null != old) {
+                discard(old);
+            }
+            link(null == sketch ? main : window, node);
+            weight += node.weight;
+            if (null != sketch) {
+                sketch.increment(key);
+            }
+            drainReadBuffers();
+            wheel.advance(now, expiry);
+            evict();
+        } finally {
+            evictionLock.unlock();
+        }
+        return (null == old || !isAlive(old)) ? null : old.value;
     }
 
     /*
      * (non-Javadoc)
-     * 
-     * @see java.util.LinkedHashMap#get(java.lang.Object)
+     *
+     * @see java.util.AbstractMap#remove(java.lang.Object)
      */
     @Override
-    public V get(Object key) {
-        if (isAlive(key)) {
-            return super.get(key);
+    public V remove(Object key) {
+        Node<K, V> node;
+        evictionLock.lock();
+        try {
+            node = map.remove(key);
+            if (null != node) {
+                discard(node);
+            }
+        } finally {
+            evictionLock.unlock();
         }
+        return (null == node || !isAlive(node)) ? null : node.value;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.util.AbstractMap#clear()
+     */
+    @Override
+    public void clear() {
+        evictionLock.lock();
+        try {
+            map.clear();
+            window.clear();
+            main.clear();
+            weight = 0;
+            wheel.clear();
+            for (int i = 0; i < STRIPES; i++) {
+                for (int j = 0; j < BUFFER_SIZE; j++) {
+                    readBuffers[i].set(j, null);
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.util.AbstractMap#size()
+     */
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    /**
+     * The entries, least recently used first. The iterator works on a
+     * snapshot and removes from the cache.
+     *
+     * @see java.util.AbstractMap#entrySet()
+     */
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new AbstractSet<Map.Entry<K, V>>() {
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                final Iterator<Map.Entry<K, V>> snapshot = snapshot()
+                        .iterator();
+                return new Iterator<Map.Entry<K, V>>() {
+                    private Map.Entry<K, V> current;
+
+                    @Override
+                    public boolean hasNext() {
+                        return snapshot.hasNext();
+                    }
+
+                    @Override
+                    public Map.Entry<K, V> next() {
+                        current = snapshot.next();
+                        return current;
+                    }
 
-        return null;
+                    @Override
+                    public void remove() {
+                        if (null == current) {
+                            throw new IllegalStateException();
+                        }
+                        SimpleCache.this.remove(current.getKey());
+                        current = null;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return SimpleCache.this.size();
+            }
+        };
     }
 
     /**
-     * Checks if is alive.
-     * 
+     * Called when the cache drops an entry on its own, because it grew beyond
+     * <code>maxSize</code> or outlived <code>maxAge</code>. Subclasses that
+     * keep bookkeeping about their entries can override this. It is called
+     * with the eviction lock held, so it must be quick and must not call back
+     * into the cache.
+     *
      * @param key
      *            the key
+     * @param value
+     *            the value
+     */
+    protected void entryRemoved(Object key, V value) {
+        // nothing by default
+    }
+
+    /**
+     * Removes the expired entries. The background sweeper calls it, and
+     * there is rarely a reason to call it otherwise.
+     */
+    public void sweep() {
+        evictionLock.lock();
+        try {
+            wheel.advance(System.currentTimeMillis(), expiry);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Checks if is alive.
+     *
+     * @param node
+     *            the entry
      * @return true, if is alive
      */
-    private boolean isAlive(Object key) {
-        long seconds = (System.currentTimeMillis() - getAge(key)) / 1000;
-        // if we have cahed an element we will remove it
-        if (seconds > getMaxAge()) {
-            if (super.containsKey(key)) {
-                super.remove(key);
+    private boolean isAlive(Node<K, V> node) {
+        long now = System.currentTimeMillis();
+        return now < node.expiresAt
+                && (now - node.writtenAt) / 1000 <= getMaxAge();
+    }
+
+    /**
+     * Schedules the expiry of an entry for the first millisecond it is no
+     * longer alive. Called with the eviction lock held.
+     */
+    private void schedule(Node<K, V> node) {
+        long age = (getMaxAge() + 1L) * 1000L;
+        long deadline = (age < Long.MAX_VALUE - node.writtenAt) ? Math.min(
+                node.expiresAt, node.writtenAt + age) : node.expiresAt;
+        if (deadline != Long.MAX_VALUE) {
+            wheel.schedule(node, deadline);
+        } else {
+            wheel.cancel(node);
+        }
+    }
+
+    /**
+     * Removes an entry that outlived <code>maxAge</code>, unless it was
+     * replaced or removed meanwhile.
+     */
+    private void expire(Node<K, V> node) {
+        evictionLock.lock();
+        try {
+            if (map.remove(node.key, node)) {
+                discard(node);
+                stats.recordAgeEviction();
+                entryRemoved(node.key, node.value);
             }
-            return false;
+        } finally {
+            evictionLock.unlock();
         }
-        return true;
     }
 
-    @Override
-    public boolean containsKey(Object key) {
-        return (isAlive(key) && super.containsKey(key));
+    /**
+     * Records a read in the stripe of the current thread, and drains the
+     * buffers every so often if nobody else is.
+     */
+    private void recordRead(Node<K, V> node) {
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        long count = readCounts[stripe].getAndIncrement();
+        // an undrained slot is overwritten, losing that read
+        readBuffers[stripe].lazySet((int) count & (BUFFER_SIZE - 1), node);
+        if ((count + 1) % DRAIN_THRESHOLD == 0 && evictionLock.tryLock()) {
+            try {
+                drainReadBuffers();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
     }
 
     /**
-     * Gets the age.
-     * 
-     * @param key
-     *            the key
-     * @return the age
+     * Moves the entries read since the last drain to the most recently used
+     * end of their segment, and counts them for admission. Called with the
+     * eviction lock held.
+     */
+    private void drainReadBuffers() {
+        for (int i = 0; i < STRIPES; i++) {
+            AtomicReferenceArray<Node<K, V>> buffer = readBuffers[i];
+            for (int j = 0; j < BUFFER_SIZE; j++) {
+                Node<K, V> node = buffer.get(j);
+                if (null != node) {
+                    buffer.lazySet(j, null);
+                    // reads of removed entries are stale
+                    Segment<K, V> segment = node.segment;
+                    if (null != segment) {
+                        segment.remove(node);
+                        segment.add(node);
+                        if (null != sketch) {
+                            sketch.increment(node.key);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops entries while there are more than <code>maxSize</code> or they
+     * weigh more than <code>maxWeight</code>. Under LRU the least recently
+     * used goes. Under TinyLFU, when the window is over its share, its eldest
+     * entry is admitted in place of the eldest admitted entry only if it was
+     * used more often, and is dropped otherwise. Called with the eviction
+     * lock held.
+     */
+    private void evict() {
+        while (isOverflowing() && (null != main.head || null != window.head)) {
+            Node<K, V> candidate = (null != sketch && isWindowOverflowing())
+                    ? window.head : null;
+            if (null == candidate) {
+                evict(null != main.head ? main.head : window.head);
+            } else if (null == main.head) {
+                admit(candidate);
+            } else if (sketch.frequency(candidate.key) > sketch
+                    .frequency(main.head.key)) {
+                evict(main.head);
+                admit(candidate);
+            } else {
+                evict(candidate);
+            }
+        }
+        // while there is room the window hands its eldest over unopposed
+        while (null != sketch && isWindowOverflowing()) {
+            admit(window.head);
+        }
+    }
+
+    /** Drops an entry because the cache is full. */
+    private void evict(Node<K, V> node) {
+        discard(node);
+        if (map.remove(node.key, node)) {
+            stats.recordSizeEviction();
+            entryRemoved(node.key, node.value);
+        }
+    }
+
+    /** Moves an entry from the window to the admitted entries. */
+    private void admit(Node<K, V> node) {
+        window.remove(node);
+        main.add(node);
+    }
+
+    private boolean isOverflowing() {
+        return map.size() > getMaxSize() || weight > getMaxWeight();
+    }
+
+    /**
+     * The window holds about one percent of the entries, or of their weight.
+     */
+    private boolean isWindowOverflowing() {
+        long maxWeight = getMaxWeight();
+        return window.size > Math.max(1, getMaxSize() / 100)
+                || (maxWeight != Long.MAX_VALUE && window.weight > maxWeight / 100);
+    }
+
+    /**
+     * Copies the entries, least recently used first, the admitted ones before
+     * the window.
+     */
+    private List<Map.Entry<K, V>> snapshot() {
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+            List<Map.Entry<K, V>> entries = new ArrayList<Map.Entry<K, V>>(
+                    map.size());
+            copy(main, entries);
+            copy(window, entries);
+            return entries;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void copy(Segment<K, V> segment, List<Map.Entry<K, V>> entries) {
+        for (Node<K, V> node = segment.head; null != node; node = node.next) {
+            if (isAlive(node)) {
+                entries.add(new AbstractMap.SimpleImmutableEntry<K, V>(
+                        node.key, node.value));
+            }
+        }
+    }
+
+    /**
+     * Appends a new entry at the most recently used end of a segment, and
+     * schedules its expiry.
+     */
+    private void link(Segment<K, V> segment, Node<K, V> node) {
+        schedule(node);
+        segment.add(node);
+    }
+
+    /**
+     * Takes an entry out of the recency list and the wheel, and its bytes
+     * out of the weight.
+     */
+    private void discard(Node<K, V> node) {
+        if (null != node.segment) {
+            weight -= node.weight;
+        }
+        unlink(node);
+        wheel.cancel(node);
+    }
+
+    /** Takes an entry out of its segment. */
+    private void unlink(Node<K, V> node) {
+        if (null != node.segment) {
+            node.segment.remove(node);
+        }
+    }
+
+    /**
+     * Registers a cache with the background sweeper, starting it the first
+     * time.
+     */
+    private static synchronized void startSweeping(SimpleCache<?, ?> cache) {
+        sweepable.add(new WeakReference<SimpleCache<?, ?>>(cache));
+        if (null != sweeper) {
+            return;
+        }
+        long interval = PropertyLoader.getLong(config, "cache.sweepInterval",
+                1);
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(
+                1, new DaemonThreadFactory("cache-sweeper"));
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                Iterator<WeakReference<SimpleCache<?, ?>>> caches = sweepable
+                        .iterator();
+                while (caches.hasNext()) {
+                    SimpleCache<?, ?> cache = caches.next().get();
+                    if (null == cache) {
+                        caches.remove();
+                    } else {
+                        try {
+                            cache.sweep();
+                        } catch (RuntimeException e) {
+                            log.error("Cache sweep failed", e);
+                        }
+                    }
+                }
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+        sweeper = executor;
+    }
+
+    /**
+     * Stops the background sweeper. Called when the web application stops;
+     * caches created afterwards start it again.
+     */
+    public static synchronized void shutdown() {
+        if (null != sweeper) {
+            sweeper.shutdownNow();
+            sweeper = null;
+        }
+    }
+
+    /**
+     * Lists the caches by name.
+     *
+     * @return the live caches, sorted by name
+     */
+    public static Map<String, SimpleCache<?, ?>> getCaches() {
+        Map<String, SimpleCache<?, ?>> caches = new TreeMap<String, SimpleCache<?, ?>>();
+        for (Map.Entry<String, WeakReference<SimpleCache<?, ?>>> entry : registry
+                .entrySet()) {
+            SimpleCache<?, ?> cache = entry.getValue().get();
+            if (null == cache) {
+                registry.remove(entry.getKey(), entry.getValue());
+            } else {
+                caches.put(entry.getKey(), cache);
+            }
+        }
+        return caches;
+    }
+
+    /**
+     * Guesses the bytes a key or value holds: exactly enough for strings,
+     * byte arrays, numbers and dates, a flat guess for anything else.
+     */
+    private static int estimate(Object value) {
+        if (value instanceof String) {
+            return 40 + 2 * ((String) value).length();
+        }
+        if (value instanceof byte[]) {
+            return 16 + ((byte[]) value).length;
+        }
+        if (value instanceof Number || value instanceof Boolean) {
+            return 16;
+        }
+        if (value instanceof Date) {
+            return 24;
+        }
+        return 64;
+    }
+
+    /**
+     * @return the eviction policy
+     */
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return the name it is listed under
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the statistics
+     */
+    public CacheStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @return a rough estimate of the bytes the entries hold, or their total
+     *         weight when there is a weigher
+     */
+    public long getEstimatedBytes() {
+        return weight;
+    }
+
+    /**
+     * @return the max total weight
      */
-    private long getAge(Object key) {
-        Long value = ageMap.get(key);
-        if (null == value) {
-            return 0;
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * @param maxWeight
+     *            the max total weight to set
+     */
+    public void setMaxWeight(long maxWeight) {
+        this.maxWeight = maxWeight;
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+            evict();
+        } finally {
+            evictionLock.unlock();
         }
-        return value.longValue();
+    }
+
+    /**
+     * @return the weight above which an entry is not cached
+     */
+    public long getMaxEntryWeight() {
+        long max = getMaxWeight();
+        return max == Long.MAX_VALUE ? max : (long) (max * MAX_ENTRY_SHARE);
     }
 
     /**
@@ -168,6 +895,13 @@ public class SimpleCache<K, V> extends LinkedHashMap<K, V> implements Map<K, V>
      */
     public void setMaxSize(int maxSize) {
         this.maxSize = maxSize;
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+            evict();
+        } finally {
+            evictionLock.unlock();
+        }
     }
 
     /**
@@ -179,10 +913,143 @@ public class SimpleCache<K, V> extends LinkedHashMap<K, V> implements Map<K, V>
 
     /**
      * @param maxAge
-     *            the maxAge to set in seconds
+     *            the maxAge to set in seconds, for the entries already
+     *            cached as well
      */
     public void setMaxAge(int maxAge) {
         this.maxAge = maxAge;
+        evictionLock.lock();
+        try {
+            reschedule(window);
+            reschedule(main);
+            wheel.advance(System.currentTimeMillis(), expiry);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void reschedule(Segment<K, V> segment) {
+        for (Node<K, V> node = segment.head; null != node; node = node.next) {
+            schedule(node);
+        }
+    }
+
+    /**
+     * How a full cache picks the entries it drops.
+     */
+    public enum Policy {
+        /** The least recently used entry goes. */
+        LRU,
+        /**
+         * New entries wait in a small LRU window. When it overflows, its
+         * eldest entry takes the place of the least recently used admitted
+         * entry only if a frequency sketch says it was used more often
+         * lately, so a scan of one-off keys cannot flush the popular ones.
+         */
+        TINY_LFU
+    }
+
+    /**
+     * Gives the weight of the entries of a cache bounded by weight.
+     *
+     * @param <K>
+     *            the type of keys
+     * @param <V>
+     *            the type of values
+     */
+    public interface Weigher<K, V> {
+        /**
+         * Weighs an entry. Called once, when the entry is written.
+         *
+         * @param key
+         *            the key
+         * @param value
+         *            the value
+         * @return the weight, 0 or more
+         */
+        long weigh(K key, V value);
+    }
+
+    /**
+     * An entry: its value, when it was written and when its own time to live
+     * ends, and its place in the recency list and the wheel.
+     */
+    private static final class Node<K, V> extends TimingWheel.Timer {
+        final K key;
+        final V value;
+        final long writtenAt;
+        final long expiresAt;
+        final long weight;
+
+        /** Guarded by the eviction lock. */
+        Segment<K, V> segment;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        Node(K key, V value, long writtenAt, long expiresAt, long weight) {
+            this.key = key;
+            this.value = value;
+            this.writtenAt = writtenAt;
+            this.expiresAt = expiresAt;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * A recency list of entries, least recently used first, with their count
+     * and weight. Guarded by the eviction lock.
+     */
+    private static final class Segment<K, V> {
+        Node<K, V> head;
+        Node<K, V> tail;
+        int size;
+        long weight;
+
+        void add(Node<K, V> node) {
+            node.segment = this;
+            node.prev = tail;
+            node.next = null;
+            if (null == tail) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+            size++;
+            weight += node.weight;
+        }
+
+        void remove(Node<K, V> node) {
+            if (null == node.prev) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (null == node.next) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.segment = null;
+            node.prev = null;
+            node.next = null;
+            size--;
+            weight -= node.weight;
+        }
+
+        void clear() {
+            for (Node<K, V> node = head; null != node;) {
+                Node<K, V> next = node.next;
+                node.segment = null;
+                node.prev = null;
+                node.next = null;
+                node = next;
+            }
+            head = null;
+            tail = null;
+            size = 0;
+            weight = 0;
+        }
     }
 
 }
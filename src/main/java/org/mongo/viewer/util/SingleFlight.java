@@ -0,0 +1,311 @@
+package org.mongo.viewer.util;
+
+import java.util.Collections;
+import java.util.Properties;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.mongo.viewer.exception.ServiceException;
+import org.mongo.viewer.vo.RunningQuery;
+
+/**
+ * Coalesces concurrent calls for the same key into a single execution. The
+ * first caller starts the call on a pool thread of its own; callers arriving
+ * while it runs share its result, or its exception. Once the call completes
+ * the key is forgotten, so the next caller runs it again; keeping results
+ * around is the job of a cache in front of this.
+ *
+ * The call runs outside the callers' {@link QueryContext}, under the running
+ * query {@link #begin(Object, RunningQuery)} starts for it from the first
+ * caller's, if any. Each caller waits only as long as its own running query
+ * allows, and a caller that times out or is cancelled fails alone; once the
+ * last of them has given up, the call is handed to
+ * {@link #abandon(RunningQuery)} to be stopped, and the next caller starts it
+ * afresh.
+ *
+ * The calls run on a pool of at most <code>query.sharedThreads</code>
+ * threads; a call that finds them all busy is refused with a
+ * {@link ServiceException} rather than queued.
+ *
+ * @param <K>
+ *            the key type
+ * @param <V>
+ *            the result type
+ */
+public class SingleFlight<K, V> {
+
+    /** How often a waiting caller looks at its own running query. */
+    private static final long CHECK_MILLIS = 100;
+
+    private static Properties config = PropertyLoader.loadProperties("config");
+
+    /** The pools of all single flights, shut down with the application. */
+    private static final Set<ThreadPoolExecutor> pools = Collections
+            .synchronizedSet(Collections
+                    .newSetFromMap(new WeakHashMap<ThreadPoolExecutor, Boolean>()));
+
+    private final ConcurrentMap<K, Flight> flights = new ConcurrentHashMap<K, Flight>();
+
+    private final ThreadPoolExecutor pool;
+
+    /**
+     * Instantiates a new single flight with its own pool.
+     */
+    public SingleFlight() {
+        this("single-flight");
+    }
+
+    /**
+     * Instantiates a new single flight with its own pool of
+     * <code>query.sharedThreads</code> threads.
+     *
+     * @param name
+     *            the name of the pool threads
+     */
+    public SingleFlight(String name) {
+        this(name, PropertyLoader.getInt(config, "query.sharedThreads", 8));
+    }
+
+    /**
+     * Instantiates a new single flight with its own pool.
+     *
+     * @param name
+     *            the name of the pool threads
+     * @param threads
+     *            the most calls running at once
+     */
+    public SingleFlight(String name, int threads) {
+        this.pool = new ThreadPoolExecutor(threads, threads, 60,
+                TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                new DaemonThreadFactory(name));
+        this.pool.allowCoreThreadTimeOut(true);
+        pools.add(pool);
+    }
+
+    /**
+     * Runs the call, or joins the one already running for the key.
+     *
+     * @param key
+     *            the key
+     * @param call
+     *            the call
+     * @return the result
+     * @throws Exception
+     *             whatever the call threw, a
+     *             {@link org.mongo.viewer.exception.QueryAbortedException}
+     *             when the caller's own query ran out of time or was
+     *             cancelled first, or a {@link ServiceException} when the
+     *             pool is busy
+     */
+    public V execute(K key, Callable<V> call) throws Exception {
+        while (true) {
+            Flight flight = flights.get(key);
+            if (null != flight) {
+                if (flight.join()) {
+                    return await(key, flight);
+                }
+                // abandoned by all its callers, it is being stopped
+                flights.remove(key, flight);
+                continue;
+            }
+            flight = new Flight(key, call, begin(key, QueryContext.get()));
+            if (null == flights.putIfAbsent(key, flight)) {
+                try {
+                    pool.execute(flight);
+                } catch (RejectedExecutionException e) {
+                    ServiceException busy = new ServiceException(
+                            "Too many shared loads running, try again later",
+                            e);
+                    // fail whoever joined in the meantime as well
+                    flight.reject(busy);
+                    end(flight.shared);
+                    throw busy;
+                }
+                return await(key, flight);
+            }
+            end(flight.shared);
+        }
+    }
+
+    /**
+     * Starts the running query the shared call runs under, in the first
+     * caller's thread.
+     *
+     * @param key
+     *            the key
+     * @param caller
+     *            the first caller's running query, or <code>null</code>
+     * @return the shared call's running query, or <code>null</code> to run it
+     *         without one
+     */
+    protected RunningQuery begin(K key, RunningQuery caller) {
+        return null;
+    }
+
+    /**
+     * Ends the running query of a shared call, once the call has returned or
+     * was never started.
+     *
+     * @param shared
+     *            the running query, or <code>null</code>
+     */
+    protected void end(RunningQuery shared) {
+
+    }
+
+    /**
+     * Stops a shared call all its callers have given up on.
+     *
+     * @param shared
+     *            the running query, or <code>null</code>
+     */
+    protected void abandon(RunningQuery shared) {
+
+    }
+
+    /**
+     * Stops the pools of all single flights.
+     */
+    public static void shutdown() {
+        synchronized (pools) {
+            for (ThreadPoolExecutor pool : pools) {
+                pool.shutdownNow();
+            }
+            pools.clear();
+        }
+    }
+
+    /**
+     * Gets the number of calls running.
+     *
+     * @return the count
+     */
+    public int getInFlight() {
+        return flights.size();
+    }
+
+    /**
+     * Waits for the shared call within the caller's own deadline, and
+     * abandons it when the caller was the last one waiting.
+     */
+    private V await(K key, Flight flight) throws Exception {
+        try {
+            return unwrap(flight);
+        } finally {
+            if (flight.leave()) {
+                flights.remove(key, flight);
+                abandon(flight.shared);
+            }
+        }
+    }
+
+    private V unwrap(Flight flight) throws Exception {
+        try {
+            RunningQuery running = QueryContext.get();
+            if (null == running) {
+                return flight.get();
+            }
+            while (true) {
+                QueryContext.check();
+                long wait = Math.max(1,
+                        Math.min(running.getRemainingMillis(), CHECK_MILLIS));
+                try {
+                    return flight.get(wait, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    // look at the deadline and cancel again
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * A shared call and the callers waiting for it.
+     */
+    private class Flight extends FutureTask<V> {
+
+        private final K key;
+
+        private final RunningQuery shared;
+
+        private int waiters = 1;
+
+        Flight(final K key, final Callable<V> call, final RunningQuery shared) {
+            super(new Callable<V>() {
+                @Override
+                public V call() throws Exception {
+                    QueryContext.set(shared);
+                    try {
+                        return call.call();
+                    } finally {
+                        QueryContext.clear();
+                        end(shared);
+                    }
+                }
+            });
+            this.key = key;
+            this.shared = shared;
+        }
+
+        /**
+         * Adds a caller, unless all the earlier ones have given up.
+         */
+        synchronized boolean join() {
+            if (0 == waiters) {
+                return false;
+            }
+            waiters++;
+            return true;
+        }
+
+        /**
+         * Removes a caller.
+         *
+         * @return whether it was the last one and the call has not completed
+         */
+        synchronized boolean leave() {
+            return 0 == --waiters && !isDone();
+        }
+
+        // forget the key before the waiters wake up, so none of them can
+        // join this flight again once it has completed
+        @Override
+        protected void set(V value) {
+            flights.remove(key, this);
+            super.set(value);
+        }
+
+        @Override
+        protected void setException(Throwable t) {
+            flights.remove(key, this);
+            super.setException(t);
+        }
+
+        /**
+         * Fails a call the pool refused.
+         */
+        void reject(Throwable t) {
+            setException(t);
+        }
+
+    }
+
+}
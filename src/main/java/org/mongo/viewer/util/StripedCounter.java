@@ -0,0 +1,72 @@
+package org.mongo.viewer.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that many threads can bump without fighting over one cache line.
+ * Each thread adds to the cell of its stripe, and the cells are a cache line
+ * apart; reading sums the cells, so a read racing with updates may miss the
+ * latest of them.
+ */
+public class StripedCounter {
+
+    /** The stripes, a power of two. */
+    static final int STRIPES = stripes();
+
+    /** Longs per cache line, so that two cells never share one. */
+    private static final int PAD = 8;
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PAD);
+
+    /**
+     * Adds one.
+     */
+    public void increment() {
+        add(1);
+    }
+
+    /**
+     * @param delta
+     *            the amount to add
+     */
+    public void add(long delta) {
+        cells.getAndAdd(stripe() * PAD, delta);
+    }
+
+    /**
+     * @return the total
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * PAD);
+        }
+        return sum;
+    }
+
+    /**
+     * Sets the total back to 0.
+     */
+    public void reset() {
+        for (int i = 0; i < STRIPES; i++) {
+            cells.set(i * PAD, 0);
+        }
+    }
+
+    /**
+     * @return the stripe of the current thread
+     */
+    static int stripe() {
+        return (int) Thread.currentThread().getId() & (STRIPES - 1);
+    }
+
+    private static int stripes() {
+        int stripes = 1;
+        int processors = Runtime.getRuntime().availableProcessors();
+        while (stripes < processors && stripes < 64) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+
+}
@@ -0,0 +1,339 @@
+package org.mongo.viewer.util;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.bson.BSONObject;
+import org.mongo.viewer.vo.SysLogEvent;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import de.undercouch.bson4jackson.BsonFactory;
+import de.undercouch.bson4jackson.types.ObjectId;
+
+/**
+ * Decodes SysLog documents straight from BSON into {@link SysLogEvent}, and
+ * reads event columns by name, without reflection. Every field has an
+ * accessor, built once, that sets it from the BSON token stream and reads it
+ * back; fields the event does not have are skipped without being decoded.
+ */
+public final class SysLogEventDecoder {
+
+    /** Thread safe, parsers are created per document. */
+    private static final BsonFactory factory = new BsonFactory();
+
+    /** The accessors by property name, in column order. */
+    private static final Map<String, Accessor> properties = new LinkedHashMap<String, Accessor>();
+
+    /** The accessors by stored field name. */
+    private static final Map<String, Accessor> fields = new HashMap<String, Accessor>();
+
+    static {
+        add("eventId", new Accessor() {
+            void set(SysLogEvent event, Object value) {
+                event.setEventId(toText(value));
+            }
+
+            Object get(SysLogEvent event) {
+                return event.getEventId();
+            }
+        });
+        // jongo stores the @Id property as _id
+        fields.put(QueryUtil.ID, properties.get("eventId"));
+        add("errorId", new Accessor() {
+            void set(SysLogEvent event, Object value) {
+                event.setErrorId(toText(value));
+            }
+
+            Object get(SysLogEvent event) {
+                return event.getErrorId();
+            }
+        });
+        add(QueryUtil.TIMESTAMP, new Accessor() {
+            void set(SysLogEvent event, Object value) {
+                event.setTimestamp(value instanceof Date ? (Date) value : null);
+            }
+
+            Object get(SysLogEvent event) {
+                return event.getTimestamp();
+            }
+        });
+        add("hostName", new Accessor() {
+            void set(SysLogEvent event, Object value) {
+                event.setHostName(toText(value));
+            }
+
+            Object get(SysLogEvent event) {
+                return event.getHostName();
+            }
+        });
+        add("systemId", new Accessor() {
+            void set(SysLogEvent event, Object value) {
+                event.setSystemId(toText(value));
+            }
+
+            Object get(SysLogEvent event) {
+                return event.getSystemId();
+            }
+        });
+        add("version", new Accessor() {
+            void set(SysLogEvent event, Object value) {
+                event.setVersion(toText(value));
+            }
+
+            Object get(SysLogEvent event) {
+                return event.getVersion();
+            }
+        });
+        add("clientIp", new Accessor() {
+            void set(SysLogEvent event, Object value) {
+                event.setClientIp(toText(value));
+            }
+
+            Object get(SysLogEvent event) {
+                return event.getClientIp();
+            }
+        });
+        add("threadName", new Accessor() {
+            void set(SysLogEvent event, Object value) {
+                event.setThreadName(toText(value));
+            }
+
+            Object get(SysLogEvent event) {
+                return event.getThreadName();
+            }
+        });
+        add("sessionId", new Accessor() {
+            void set(SysLogEvent event, Object value) {
+                event.setSessionId(toText(value));
+            }
+
+            Object get(SysLogEvent event) {
+                return event.getSessionId();
+            }
+        });
+        add("transport", new Accessor() {
+            void set(SysLogEvent event, Object value) {
+                event.setTransport(toText(value));
+            }
+
+            Object get(SysLogEvent event) {
+                return event.getTransport();
+            }
+        });
+        add("loginId", new Accessor() {
+            void set(SysLogEvent event, Object value) {
+                event.setLoginId(toText(value));
+            }
+
+            Object get(SysLogEvent event) {
+                return event.getLoginId();
+            }
+        });
+        add("accountNumber", new Accessor() {
+            void set(SysLogEvent event, Object value) {
+                event.setAccountNumber(toText(value));
+            }
+
+            Object get(SysLogEvent event) {
+                return event.getAccountNumber();
+            }
+        });
+        add("type", new Accessor() {
+            void set(SysLogEvent event, Object value) {
+                event.setType(toText(value));
+            }
+
+            Object get(SysLogEvent event) {
+                return event.getType();
+            }
+        });
+        add("subtype", new Accessor() {
+            void set(SysLogEvent event, Object value) {
+                event.setSubtype(toText(value));
+            }
+
+            Object get(SysLogEvent event) {
+                return event.getSubtype();
+            }
+        });
+        add("message", new Accessor() {
+            void set(SysLogEvent event, Object value) {
+                event.setMessage(toText(value));
+            }
+
+            Object get(SysLogEvent event) {
+                return event.getMessage();
+            }
+        });
+        add("execTime", new Accessor() {
+            void set(SysLogEvent event, Object value) {
+                event.setExecTime(value instanceof Number ? ((Number) value)
+                        .longValue() : 0);
+            }
+
+            Object get(SysLogEvent event) {
+                return event.getExecTime();
+            }
+        });
+        add("exceptionStack", new Accessor() {
+            void set(SysLogEvent event, Object value) {
+                event.setExceptionStack(toText(value));
+            }
+
+            Object get(SysLogEvent event) {
+                return event.getExceptionStack();
+            }
+        });
+        add("result", new Accessor() {
+            void set(SysLogEvent event, Object value) {
+                event.setResult(toText(value));
+            }
+
+            Object get(SysLogEvent event) {
+                return event.getResult();
+            }
+        });
+    }
+
+    private SysLogEventDecoder() {
+    }
+
+    private static void add(String name, Accessor accessor) {
+        properties.put(name, accessor);
+        fields.put(name, accessor);
+    }
+
+    /**
+     * @return the names of the columns {@link #get(SysLogEvent, String)}
+     *         reads
+     */
+    public static Set<String> getColumns() {
+        return Collections.unmodifiableSet(properties.keySet());
+    }
+
+    /**
+     * Decodes an event from the BSON of a document.
+     *
+     * @param bson
+     *            the BSON of one document
+     * @return the event
+     * @throws IOException
+     *             if the BSON is malformed
+     */
+    public static SysLogEvent decode(byte[] bson) throws IOException {
+        SysLogEvent event = new SysLogEvent(null, null);
+        JsonParser parser = factory.createParser(bson);
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Not a BSON document");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                Accessor accessor = fields.get(parser.getCurrentName());
+                JsonToken token = parser.nextToken();
+                if (null == accessor) {
+                    parser.skipChildren();
+                } else {
+                    accessor.set(event, readValue(parser, token));
+                }
+            }
+        } finally {
+            parser.close();
+        }
+        return event;
+    }
+
+    /**
+     * Decodes an event from a document, from its BSON when it is a
+     * {@link RawDBObject}.
+     *
+     * @param document
+     *            the document
+     * @return the event
+     * @throws IOException
+     *             if the BSON is malformed
+     */
+    public static SysLogEvent decode(BSONObject document)
+            throws IOException {
+        if (document instanceof RawDBObject) {
+            return decode(((RawDBObject) document).getBytes());
+        }
+        SysLogEvent event = new SysLogEvent(null, null);
+        for (String key : document.keySet()) {
+            Accessor accessor = fields.get(key);
+            if (null != accessor) {
+                accessor.set(event, document.get(key));
+            }
+        }
+        return event;
+    }
+
+    /**
+     * Reads a column of an event.
+     *
+     * @param event
+     *            the event
+     * @param column
+     *            one of {@link #getColumns()}
+     * @return the value
+     * @throws IllegalArgumentException
+     *             if the event has no such column
+     */
+    public static Object get(SysLogEvent event, String column) {
+        Accessor accessor = properties.get(column);
+        if (null == accessor) {
+            throw new IllegalArgumentException("Unknown SysLog column "
+                    + column + ", expected one of " + properties.keySet());
+        }
+        return accessor.get(event);
+    }
+
+    /**
+     * Reads the value the parser is on. Embedded documents and arrays are
+     * skipped, no event field holds one.
+     */
+    private static Object readValue(JsonParser parser, JsonToken token)
+            throws IOException {
+        switch (token) {
+        case VALUE_STRING:
+            return parser.getText();
+        case VALUE_NUMBER_INT:
+        case VALUE_NUMBER_FLOAT:
+            return parser.getNumberValue();
+        case VALUE_TRUE:
+            return Boolean.TRUE;
+        case VALUE_FALSE:
+            return Boolean.FALSE;
+        case VALUE_EMBEDDED_OBJECT:
+            return parser.getEmbeddedObject();
+        default:
+            parser.skipChildren();
+            return null;
+        }
+    }
+
+    private static String toText(Object value) {
+        if (value instanceof ObjectId) {
+            ObjectId id = (ObjectId) value;
+            return org.bson.types.ObjectId.createFromLegacyFormat(
+                    id.getTime(), id.getMachine(), id.getInc()).toHexString();
+        }
+        return (null == value) ? null : value.toString();
+    }
+
+    /**
+     * Sets and gets one field of an event.
+     */
+    private abstract static class Accessor {
+        abstract void set(SysLogEvent event, Object value);
+
+        abstract Object get(SysLogEvent event);
+    }
+
+}
@@ -0,0 +1,233 @@
+package org.mongo.viewer.util;
+
+/**
+ * A hierarchical timing wheel: four wheels of 64 buckets, each bucket of a
+ * wheel spanning one turn of the wheel below it. With one second ticks the
+ * wheels cover a minute, an hour, three days and half a year; anything
+ * further out waits in the last wheel and is placed again when it comes
+ * round. Scheduling and cancelling are O(1), and every timer moves down at
+ * most three times before it fires, so advancing is amortized O(1) per timer.
+ *
+ * Timers are intrusive: the elements extend {@link Timer}, so the wheel
+ * allocates nothing per timer. Not thread safe, callers guard it with their
+ * own lock.
+ *
+ * @param <T>
+ *            the type of timers
+ */
+public class TimingWheel<T extends TimingWheel.Timer> {
+
+    private static final int BITS = 6;
+    private static final int BUCKETS = 1 << BITS;
+    private static final int MASK = BUCKETS - 1;
+    private static final int LEVELS = 4;
+
+    /** The furthest tick the wheels can hold, relative to the current one. */
+    private static final long SPAN = 1L << (BITS * LEVELS);
+
+    /**
+     * An element of the wheel. Its fields belong to the wheel once scheduled.
+     */
+    public static class Timer {
+        private long deadline;
+        private long tick;
+        private int level = -1;
+        private int index;
+        private Timer prev;
+        private Timer next;
+
+        /**
+         * @return the time it fires, in millis
+         */
+        public long getDeadline() {
+            return deadline;
+        }
+
+        /**
+         * @return true while it is scheduled
+         */
+        public boolean isScheduled() {
+            return level >= 0;
+        }
+    }
+
+    /**
+     * Told about timers as they fire.
+     *
+     * @param <T>
+     *            the type of timers
+     */
+    public interface Listener<T> {
+        /**
+         * Called for a timer that fired; it is no longer scheduled.
+         *
+         * @param timer
+         *            the timer
+         */
+        void expired(T timer);
+    }
+
+    private final long tickMillis;
+    private final Timer[][] wheels = new Timer[LEVELS][BUCKETS];
+
+    private long currentTick;
+    private int size;
+
+    /**
+     * @param tickMillis
+     *            the length of a tick, the precision of the wheel
+     * @param now
+     *            the current time in millis
+     */
+    public TimingWheel(long tickMillis, long now) {
+        this.tickMillis = tickMillis;
+        this.currentTick = now / tickMillis;
+    }
+
+    /**
+     * @return the number of scheduled timers
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Schedules a timer, or moves it if it is scheduled already. A deadline
+     * in the past fires on the next tick.
+     *
+     * @param element
+     *            the timer
+     * @param deadline
+     *            when it fires, in millis
+     */
+    public void schedule(T element, long deadline) {
+        cancel(element);
+        Timer timer = element;
+        timer.deadline = deadline;
+        // rounded up, a timer never fires early
+        timer.tick = Math.max(currentTick + 1, deadline / tickMillis
+                + (deadline % tickMillis == 0 ? 0 : 1));
+        place(timer);
+        size++;
+    }
+
+    /**
+     * Cancels a timer. Does nothing if it is not scheduled.
+     *
+     * @param timer
+     *            the timer
+     */
+    public void cancel(T timer) {
+        if (timer.isScheduled()) {
+            unlink(timer);
+            size--;
+        }
+    }
+
+    /**
+     * Drops every timer.
+     */
+    public void clear() {
+        for (Timer[] wheel : wheels) {
+            for (int i = 0; i < BUCKETS; i++) {
+                for (Timer timer = wheel[i]; null != timer;) {
+                    Timer next = timer.next;
+                    timer.prev = null;
+                    timer.next = null;
+                    timer.level = -1;
+                    timer = next;
+                }
+                wheel[i] = null;
+            }
+        }
+        size = 0;
+    }
+
+    /**
+     * Moves the wheels to the current time and fires every timer due.
+     *
+     * @param now
+     *            the current time in millis
+     * @param listener
+     *            told about each timer fired
+     */
+    @SuppressWarnings("unchecked")
+    public void advance(long now, Listener<T> listener) {
+        long target = now / tickMillis;
+        while (currentTick < target) {
+            if (size == 0) {
+                // nothing can fire, skip the idle ticks
+                currentTick = target;
+                return;
+            }
+            currentTick++;
+            // entering a bucket of a higher wheel moves its timers down
+            for (int level = 1; level < LEVELS
+                    && (currentTick & ((1L << (BITS * level)) - 1)) == 0; level++) {
+                cascade(level,
+                        (int) (currentTick >>> (BITS * level)) & MASK);
+            }
+            int index = (int) currentTick & MASK;
+            Timer timer = wheels[0][index];
+            wheels[0][index] = null;
+            while (null != timer) {
+                Timer next = timer.next;
+                timer.prev = null;
+                timer.next = null;
+                timer.level = -1;
+                size--;
+                listener.expired((T) timer);
+                timer = next;
+            }
+        }
+    }
+
+    private void cascade(int level, int index) {
+        Timer timer = wheels[level][index];
+        wheels[level][index] = null;
+        while (null != timer) {
+            Timer next = timer.next;
+            timer.prev = null;
+            timer.next = null;
+            place(timer);
+            timer = next;
+        }
+    }
+
+    /**
+     * Puts a timer in the bucket of the lowest wheel that reaches its tick.
+     */
+    private void place(Timer timer) {
+        long delta = timer.tick - currentTick;
+        long tick = delta < SPAN ? timer.tick : currentTick + SPAN - 1;
+        delta = tick - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= (1L << (BITS * (level + 1)))) {
+            level++;
+        }
+        int index = (int) (tick >>> (BITS * level)) & MASK;
+        timer.level = level;
+        timer.index = index;
+        timer.prev = null;
+        timer.next = wheels[level][index];
+        if (null != timer.next) {
+            timer.next.prev = timer;
+        }
+        wheels[level][index] = timer;
+    }
+
+    private void unlink(Timer timer) {
+        if (null == timer.prev) {
+            wheels[timer.level][timer.index] = timer.next;
+        } else {
+            timer.prev.next = timer.next;
+        }
+        if (null != timer.next) {
+            timer.next.prev = timer.prev;
+        }
+        timer.prev = null;
+        timer.next = null;
+        timer.level = -1;
+    }
+
+}
@@ -0,0 +1,98 @@
+package org.mongo.viewer.vo;
+
+import java.io.Serializable;
+
+/**
+ * How many documents match a query, as far as is known right now.
+ */
+public class CountEstimate implements Serializable {
+
+    /**
+     * How the count was obtained, from the least to the most accurate.
+     */
+    public enum Method {
+        /** The whole collection, an upper bound while sampling runs. */
+        UPPER_BOUND,
+        /** The share of matching documents in samples of the collection. */
+        SAMPLED,
+        /** Counted. */
+        EXACT
+    }
+
+    /**
+     *
+     */
+    private static final long serialVersionUID = -3405286738526318124L;
+    private final long count;
+    private final Method method;
+    private final boolean refining;
+    private final String job;
+    private final double progress;
+
+    /**
+     * @param count
+     *            the count
+     * @param method
+     *            how it was obtained
+     * @param refining
+     *            true if a better count is being worked out
+     * @param job
+     *            the exact count running for the query, null if none
+     * @param progress
+     *            how far that exact count is, 0 to 1
+     */
+    public CountEstimate(long count, Method method, boolean refining,
+            String job, double progress) {
+        this.count = count;
+        this.method = method;
+        this.refining = refining;
+        this.job = job;
+        this.progress = progress;
+    }
+
+    /**
+     * @param count
+     *            the count
+     * @param method
+     *            how it was obtained
+     */
+    public CountEstimate(long count, Method method) {
+        this(count, method, false, null, 0);
+    }
+
+    /**
+     * @return the count
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return how the count was obtained
+     */
+    public Method getMethod() {
+        return method;
+    }
+
+    /**
+     * @return true if a better count is being worked out
+     */
+    public boolean isRefining() {
+        return refining;
+    }
+
+    /**
+     * @return the exact count running for the query, null if none
+     */
+    public String getJob() {
+        return job;
+    }
+
+    /**
+     * @return how far the exact count is, 0 to 1
+     */
+    public double getProgress() {
+        return progress;
+    }
+
+}
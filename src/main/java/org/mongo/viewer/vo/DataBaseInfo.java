@@ -12,6 +12,9 @@ public class DataBaseInfo implements Serializable {
     private String database;
     private String user;
     private String password;
+    private String seeds;
+    private String readPreference;
+    private long maxStaleness;
 
     /**
      * @param host
@@ -29,6 +32,20 @@ public class DataBaseInfo implements Serializable {
         this.password = password;
     }
 
+    /**
+     * Copy constructor.
+     *
+     * @param other
+     *            the info to copy
+     */
+    public DataBaseInfo(DataBaseInfo other) {
+        this(other.host, other.port, other.database, other.user,
+                other.password);
+        this.seeds = other.seeds;
+        this.readPreference = other.readPreference;
+        this.maxStaleness = other.maxStaleness;
+    }
+
     /**
      * @return the host
      */
@@ -104,6 +121,54 @@ public class DataBaseInfo implements Serializable {
         this.password = password;
     }
 
+    /**
+     * @return the comma separated host:port replica set seed list, null to
+     *         connect to host and port alone
+     */
+    public String getSeeds() {
+        return seeds;
+    }
+
+    /**
+     * @param seeds
+     *            the comma separated host:port replica set seed list
+     */
+    public void setSeeds(String seeds) {
+        this.seeds = seeds;
+    }
+
+    /**
+     * @return the read preference, e.g. primary, secondaryPreferred or
+     *         nearest; null to route by workload
+     */
+    public String getReadPreference() {
+        return readPreference;
+    }
+
+    /**
+     * @param readPreference
+     *            the read preference to set
+     */
+    public void setReadPreference(String readPreference) {
+        this.readPreference = readPreference;
+    }
+
+    /**
+     * @return the seconds a secondary may lag behind the primary and still
+     *         be read from, 0 for no bound
+     */
+    public long getMaxStaleness() {
+        return maxStaleness;
+    }
+
+    /**
+     * @param maxStaleness
+     *            the max staleness in seconds to set
+     */
+    public void setMaxStaleness(long maxStaleness) {
+        this.maxStaleness = maxStaleness;
+    }
+
     /* (non-Javadoc)
      * @see java.lang.Object#hashCode()
      */
@@ -117,6 +182,10 @@ public class DataBaseInfo implements Serializable {
         result = prime * result
                 + ((password == null) ? 0 : password.hashCode());
         result = prime * result + port;
+        result = prime * result + (int) (maxStaleness ^ (maxStaleness >>> 32));
+        result = prime * result
+                + ((readPreference == null) ? 0 : readPreference.hashCode());
+        result = prime * result + ((seeds == null) ? 0 : seeds.hashCode());
         result = prime * result + ((user == null) ? 0 : user.hashCode());
         return result;
     }
@@ -150,6 +219,18 @@ public class DataBaseInfo implements Serializable {
             return false;
         if (port != other.port)
             return false;
+        if (maxStaleness != other.maxStaleness)
+            return false;
+        if (readPreference == null) {
+            if (other.readPreference != null)
+                return false;
+        } else if (!readPreference.equals(other.readPreference))
+            return false;
+        if (seeds == null) {
+            if (other.seeds != null)
+                return false;
+        } else if (!seeds.equals(other.seeds))
+            return false;
         if (user == null) {
             if (other.user != null)
                 return false;
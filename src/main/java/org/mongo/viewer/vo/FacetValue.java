@@ -0,0 +1,42 @@
+package org.mongo.viewer.vo;
+
+import java.io.Serializable;
+
+/**
+ * One distinct value of a field and how many documents have it.
+ */
+public class FacetValue implements Serializable {
+
+    /**
+     *
+     */
+    private static final long serialVersionUID = 6032947113350471205L;
+    private final Object value;
+    private final long count;
+
+    /**
+     * @param value
+     *            the value, null for documents without the field
+     * @param count
+     *            the number of documents with it
+     */
+    public FacetValue(Object value, long count) {
+        this.value = value;
+        this.count = count;
+    }
+
+    /**
+     * @return the value, null for documents without the field
+     */
+    public Object getValue() {
+        return value;
+    }
+
+    /**
+     * @return the number of documents with it
+     */
+    public long getCount() {
+        return count;
+    }
+
+}
@@ -0,0 +1,81 @@
+package org.mongo.viewer.vo;
+
+import java.io.Serializable;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The most frequent values of the filter fields of one collection, as of
+ * when they were computed.
+ */
+public class Facets implements Serializable {
+
+    /**
+     *
+     */
+    private static final long serialVersionUID = -1772395581063347709L;
+    private final String collection;
+    private final Date computed;
+    private final boolean closed;
+    private final Map<String, List<FacetValue>> values;
+    private final Set<String> truncated;
+
+    /**
+     * @param collection
+     *            the collection
+     * @param computed
+     *            when the values were computed
+     * @param closed
+     *            true if the collection no longer changes
+     * @param values
+     *            the values by field, most frequent first
+     * @param truncated
+     *            the fields that have more values than listed
+     */
+    public Facets(String collection, Date computed, boolean closed,
+            Map<String, List<FacetValue>> values, Set<String> truncated) {
+        this.collection = collection;
+        this.computed = computed;
+        this.closed = closed;
+        this.values = values;
+        this.truncated = truncated;
+    }
+
+    /**
+     * @return the collection
+     */
+    public String getCollection() {
+        return collection;
+    }
+
+    /**
+     * @return when the values were computed
+     */
+    public Date getComputed() {
+        return computed;
+    }
+
+    /**
+     * @return true if the collection no longer changes
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @return the values by field, most frequent first
+     */
+    public Map<String, List<FacetValue>> getValues() {
+        return values;
+    }
+
+    /**
+     * @return the fields that have more values than listed
+     */
+    public Set<String> getTruncated() {
+        return truncated;
+    }
+
+}
@@ -0,0 +1,100 @@
+package org.mongo.viewer.vo;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * A suggested index, with the query shapes it would serve and an estimate of
+ * the work it would save.
+ */
+public class IndexAdvice implements Serializable {
+    /**
+     *
+     */
+    private static final long serialVersionUID = 6121867630283904453L;
+    private final String collection;
+    private final String index;
+    private final List<String> shapes;
+    private final long count;
+    private final long totalMillis;
+    private final double coverage;
+    private final double score;
+
+    /**
+     * @param collection
+     *            the collection, or <code>SYSLOG_*</code> for the monthly
+     *            partitions
+     * @param index
+     *            the index keys, as JSON
+     * @param shapes
+     *            the query shapes it serves
+     * @param count
+     *            how many queries of those shapes ran
+     * @param totalMillis
+     *            how long they took altogether
+     * @param coverage
+     *            how much of the shapes the existing indexes serve, 0 to 1
+     * @param score
+     *            the estimated millis the index would save
+     */
+    public IndexAdvice(String collection, String index, List<String> shapes,
+            long count, long totalMillis, double coverage, double score) {
+        this.collection = collection;
+        this.index = index;
+        this.shapes = shapes;
+        this.count = count;
+        this.totalMillis = totalMillis;
+        this.coverage = coverage;
+        this.score = score;
+    }
+
+    /**
+     * @return the collection
+     */
+    public String getCollection() {
+        return collection;
+    }
+
+    /**
+     * @return the index keys, as JSON
+     */
+    public String getIndex() {
+        return index;
+    }
+
+    /**
+     * @return the query shapes the index serves
+     */
+    public List<String> getShapes() {
+        return shapes;
+    }
+
+    /**
+     * @return how many queries of those shapes ran
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return how long those queries took altogether, in millis
+     */
+    public long getTotalMillis() {
+        return totalMillis;
+    }
+
+    /**
+     * @return how much of the shapes the existing indexes serve, 0 to 1
+     */
+    public double getCoverage() {
+        return coverage;
+    }
+
+    /**
+     * @return the estimated millis the index would save
+     */
+    public double getScore() {
+        return score;
+    }
+
+}
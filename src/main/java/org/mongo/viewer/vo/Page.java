@@ -0,0 +1,46 @@
+package org.mongo.viewer.vo;
+
+import java.util.List;
+
+import com.mongodb.DBObject;
+
+/**
+ * One page of a keyset paged query.
+ */
+public class Page {
+    private final List<DBObject> documents;
+    private final String next;
+
+    /**
+     * @param documents
+     *            the documents of this page
+     * @param next
+     *            the token of the next page, null on the last page
+     */
+    public Page(List<DBObject> documents, String next) {
+        this.documents = documents;
+        this.next = next;
+    }
+
+    /**
+     * @return the documents
+     */
+    public List<DBObject> getDocuments() {
+        return documents;
+    }
+
+    /**
+     * @return the token of the next page, null on the last page
+     */
+    public String getNext() {
+        return next;
+    }
+
+    /**
+     * @return true, if there is a next page
+     */
+    public boolean hasNext() {
+        return null != next;
+    }
+
+}
@@ -0,0 +1,131 @@
+package org.mongo.viewer.vo;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Date;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.bson.types.ObjectId;
+
+/**
+ * The position of the last document of a page, <code>(timestamp, _id)</code>.
+ * It is handed to clients as an opaque url safe string and turned back into a
+ * range predicate for the next page, so every page costs the same no matter
+ * how deep it is.
+ */
+public class PageToken {
+
+    private static final String UTF_8 = "UTF-8";
+    private static final char SEPARATOR = '|';
+    private static final char OBJECT_ID = 'o';
+    private static final char STRING_ID = 's';
+
+    private final Date timestamp;
+    private final Object id;
+
+    /**
+     * @param timestamp
+     *            the timestamp of the last document
+     * @param id
+     *            the _id of the last document, an ObjectId or a String
+     */
+    public PageToken(Date timestamp, Object id) {
+        if (null == timestamp || null == id) {
+            throw new IllegalArgumentException(
+                    "timestamp and _id are required for a page token");
+        }
+        if (!(id instanceof ObjectId) && !(id instanceof String)) {
+            throw new IllegalArgumentException("Unsupported _id type "
+                    + id.getClass().getName());
+        }
+        this.timestamp = timestamp;
+        this.id = id;
+    }
+
+    /**
+     * @return the timestamp
+     */
+    public Date getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return the id
+     */
+    public Object getId() {
+        return id;
+    }
+
+    /**
+     * Encodes the token.
+     *
+     * @return the opaque token
+     */
+    public String encode() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(timestamp.getTime()).append(SEPARATOR);
+        if (id instanceof ObjectId) {
+            sb.append(OBJECT_ID).append(((ObjectId) id).toHexString());
+        } else {
+            sb.append(STRING_ID).append(id);
+        }
+        try {
+            String base64 = DatatypeConverter.printBase64Binary(sb.toString()
+                    .getBytes(UTF_8));
+            return base64.replace('+', '-').replace('/', '_')
+                    .replace("=", "");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Decodes a token produced by {@link #encode()}.
+     *
+     * @param token
+     *            the token
+     * @return the page token
+     * @throws IllegalArgumentException
+     *             if the token is not valid
+     */
+    public static PageToken decode(String token) {
+        try {
+            String base64 = token.replace('-', '+').replace('_', '/');
+            while (base64.length() % 4 != 0) {
+                base64 = base64 + "=";
+            }
+            String value = new String(
+                    DatatypeConverter.parseBase64Binary(base64), UTF_8);
+            int separator = value.indexOf(SEPARATOR);
+            if (separator < 0 || separator + 1 >= value.length()) {
+                throw new IllegalArgumentException("Invalid page token "
+                        + token);
+            }
+            Date timestamp = new Date(Long.parseLong(value.substring(0,
+                    separator)));
+            char type = value.charAt(separator + 1);
+            String id = value.substring(separator + 2);
+            if (type == OBJECT_ID) {
+                return new PageToken(timestamp, new ObjectId(id));
+            } else if (type == STRING_ID) {
+                return new PageToken(timestamp, id);
+            }
+            throw new IllegalArgumentException("Invalid page token " + token);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid page token " + token, e);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "PageToken[" + timestamp.getTime() + ", " + id + "]";
+    }
+
+}
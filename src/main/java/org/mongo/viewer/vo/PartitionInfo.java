@@ -0,0 +1,141 @@
+package org.mongo.viewer.vo;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * What the catalog knows about one monthly <code>SYSLOG_MM_YYYY</code>
+ * collection: the month it is named after and the timestamps it actually
+ * holds.
+ */
+public class PartitionInfo implements Serializable {
+    /**
+     *
+     */
+    private static final long serialVersionUID = -6433520374628712279L;
+    private final String name;
+    private final Date monthStart;
+    private final Date monthEnd;
+    private final Date minTimestamp;
+    private final Date maxTimestamp;
+    private final boolean finalized;
+
+    /**
+     * @param name
+     *            the collection name
+     * @param monthStart
+     *            the first instant of the month
+     * @param monthEnd
+     *            the first instant of the next month
+     * @param minTimestamp
+     *            the oldest timestamp, null if the collection is empty
+     * @param maxTimestamp
+     *            the newest timestamp, null if the collection is empty
+     */
+    public PartitionInfo(String name, Date monthStart, Date monthEnd,
+            Date minTimestamp, Date maxTimestamp) {
+        this(name, monthStart, monthEnd, minTimestamp, maxTimestamp, false);
+    }
+
+    /**
+     * @param name
+     *            the collection name
+     * @param monthStart
+     *            the first instant of the month
+     * @param monthEnd
+     *            the first instant of the next month
+     * @param minTimestamp
+     *            the oldest timestamp, null if the collection is empty
+     * @param maxTimestamp
+     *            the newest timestamp, null if the collection is empty
+     * @param finalized
+     *            true if the bounds were read after the month was over
+     */
+    public PartitionInfo(String name, Date monthStart, Date monthEnd,
+            Date minTimestamp, Date maxTimestamp, boolean finalized) {
+        this.name = name;
+        this.monthStart = monthStart;
+        this.monthEnd = monthEnd;
+        this.minTimestamp = minTimestamp;
+        this.maxTimestamp = maxTimestamp;
+        this.finalized = finalized;
+    }
+
+    /**
+     * @return the collection name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the first instant of the month
+     */
+    public Date getMonthStart() {
+        return monthStart;
+    }
+
+    /**
+     * @return the first instant of the next month
+     */
+    public Date getMonthEnd() {
+        return monthEnd;
+    }
+
+    /**
+     * @return the oldest timestamp, null if the collection is empty
+     */
+    public Date getMinTimestamp() {
+        return minTimestamp;
+    }
+
+    /**
+     * @return the newest timestamp, null if the collection is empty
+     */
+    public Date getMaxTimestamp() {
+        return maxTimestamp;
+    }
+
+    /**
+     * Checks if the collection is empty.
+     *
+     * @return true, if no timestamps were found
+     */
+    public boolean isEmpty() {
+        return null == minTimestamp;
+    }
+
+    /**
+     * A partition is closed once its month is over; no more events are
+     * written to it and its bounds never change again.
+     *
+     * @param now
+     *            the current time
+     * @return true, if closed
+     */
+    public boolean isClosed(Date now) {
+        return !now.before(monthEnd);
+    }
+
+    /**
+     * Checks if the bounds are final: read after the month was over, so no
+     * event can have been written after them.
+     *
+     * @return true, if final
+     */
+    public boolean isFinalized() {
+        return finalized;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "PartitionInfo[" + name + ", " + minTimestamp + " - "
+                + maxTimestamp + "]";
+    }
+
+}
@@ -0,0 +1,168 @@
+package org.mongo.viewer.vo;
+
+import java.io.Serializable;
+
+/**
+ * Identifies a cached query result. Two requests share a result when they
+ * run against the same connection and collection with the same normalized
+ * query, projection, sort and page.
+ */
+public class QueryKey implements Serializable {
+    /**
+     *
+     */
+    private static final long serialVersionUID = 8031402418733591367L;
+    private final DataBaseInfo info;
+    private final String collection;
+    private final String query;
+    private final String projection;
+    private final String sort;
+    private final String page;
+
+    /**
+     * @param info
+     *            the connection
+     * @param collection
+     *            the collection
+     * @param query
+     *            the normalized query
+     * @param projection
+     *            the normalized projection
+     * @param sort
+     *            the sort
+     * @param page
+     *            whatever identifies the page, e.g. token, size and order
+     */
+    public QueryKey(DataBaseInfo info, String collection, String query,
+            String projection, String sort, String page) {
+        // the connection is mutable, keep our own copy
+        this.info = new DataBaseInfo(info);
+        this.collection = collection;
+        this.query = query;
+        this.projection = projection;
+        this.sort = sort;
+        this.page = page;
+    }
+
+    /**
+     * @return the connection
+     */
+    public DataBaseInfo getInfo() {
+        return info;
+    }
+
+    /**
+     * @return the collection
+     */
+    public String getCollection() {
+        return collection;
+    }
+
+    /**
+     * @return the normalized query
+     */
+    public String getQuery() {
+        return query;
+    }
+
+    /**
+     * @return the normalized projection
+     */
+    public String getProjection() {
+        return projection;
+    }
+
+    /**
+     * @return the sort
+     */
+    public String getSort() {
+        return sort;
+    }
+
+    /**
+     * @return the page
+     */
+    public String getPage() {
+        return page;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result
+                + ((collection == null) ? 0 : collection.hashCode());
+        result = prime * result + ((info == null) ? 0 : info.hashCode());
+        result = prime * result + ((page == null) ? 0 : page.hashCode());
+        result = prime * result
+                + ((projection == null) ? 0 : projection.hashCode());
+        result = prime * result + ((query == null) ? 0 : query.hashCode());
+        result = prime * result + ((sort == null) ? 0 : sort.hashCode());
+        return result;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        QueryKey other = (QueryKey) obj;
+        if (collection == null) {
+            if (other.collection != null)
+                return false;
+        } else if (!collection.equals(other.collection))
+            return false;
+        if (info == null) {
+            if (other.info != null)
+                return false;
+        } else if (!info.equals(other.info))
+            return false;
+        if (page == null) {
+            if (other.page != null)
+                return false;
+        } else if (!page.equals(other.page))
+            return false;
+        if (projection == null) {
+            if (other.projection != null)
+                return false;
+        } else if (!projection.equals(other.projection))
+            return false;
+        if (query == null) {
+            if (other.query != null)
+                return false;
+        } else if (!query.equals(other.query))
+            return false;
+        if (sort == null) {
+            if (other.sort != null)
+                return false;
+        } else if (!sort.equals(other.sort))
+            return false;
+        return true;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        // never print the connection, it holds the password
+        return "QueryKey[" + collection + ", " + query + ", " + projection
+                + ", " + sort + ", " + page + "]";
+    }
+
+}
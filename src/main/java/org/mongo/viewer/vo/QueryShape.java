@@ -0,0 +1,102 @@
+package org.mongo.viewer.vo;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The shape of a query: which fields it tests for equality, which it sorts
+ * on and which it ranges over, without the values. Queries of one shape are
+ * served by the same index.
+ */
+public class QueryShape implements Serializable {
+    /**
+     *
+     */
+    private static final long serialVersionUID = -4109727318466313740L;
+    private final List<String> equality;
+    private final List<String> sort;
+    private final List<String> range;
+    private final String key;
+
+    /**
+     * @param equality
+     *            the fields tested for equality, sorted
+     * @param sort
+     *            the sort fields, in order
+     * @param range
+     *            the fields ranged over that are not sorted on, sorted
+     */
+    public QueryShape(List<String> equality, List<String> sort,
+            List<String> range) {
+        this.equality = Collections.unmodifiableList(equality);
+        this.sort = Collections.unmodifiableList(sort);
+        this.range = Collections.unmodifiableList(range);
+        this.key = "eq" + equality + " sort" + sort + " range" + range;
+    }
+
+    /**
+     * @return the fields tested for equality
+     */
+    public List<String> getEquality() {
+        return equality;
+    }
+
+    /**
+     * @return the sort fields
+     */
+    public List<String> getSort() {
+        return sort;
+    }
+
+    /**
+     * @return the fields ranged over that are not sorted on
+     */
+    public List<String> getRange() {
+        return range;
+    }
+
+    /**
+     * @return true if the shape filters and sorts on nothing
+     */
+    public boolean isEmpty() {
+        return equality.isEmpty() && sort.isEmpty() && range.isEmpty();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        return key.hashCode();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        return key.equals(((QueryShape) obj).key);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return key;
+    }
+
+}
@@ -0,0 +1,105 @@
+package org.mongo.viewer.vo;
+
+import java.io.Serializable;
+
+/**
+ * A query against a single collection, as the viewer receives it from the
+ * user. The query and sort are kept as the JSON strings the user typed (the
+ * same relaxed syntax Jongo accepts) and parsed by the query layer.
+ */
+public class QuerySpec implements Serializable {
+    /**
+     *
+     */
+    private static final long serialVersionUID = 3329581650913385641L;
+    private String collection;
+    private String query;
+    private String sort;
+    private int limit;
+    private String[] fields;
+
+    /**
+     * @param collection
+     * @param query
+     */
+    public QuerySpec(String collection, String query) {
+        this.collection = collection;
+        this.query = query;
+    }
+
+    /**
+     * @return the collection
+     */
+    public String getCollection() {
+        return collection;
+    }
+
+    /**
+     * @param collection
+     *            the collection to set
+     */
+    public void setCollection(String collection) {
+        this.collection = collection;
+    }
+
+    /**
+     * @return the query
+     */
+    public String getQuery() {
+        return query;
+    }
+
+    /**
+     * @param query
+     *            the query to set
+     */
+    public void setQuery(String query) {
+        this.query = query;
+    }
+
+    /**
+     * @return the sort
+     */
+    public String getSort() {
+        return sort;
+    }
+
+    /**
+     * @param sort
+     *            the sort to set
+     */
+    public void setSort(String sort) {
+        this.sort = sort;
+    }
+
+    /**
+     * @return the limit, 0 means no limit
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @param limit
+     *            the limit to set, 0 means no limit
+     */
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * @return the fields to return, null or empty for whole documents
+     */
+    public String[] getFields() {
+        return fields;
+    }
+
+    /**
+     * @param fields
+     *            the fields to return, null or empty for whole documents
+     */
+    public void setFields(String[] fields) {
+        this.fields = fields;
+    }
+
+}
@@ -0,0 +1,205 @@
+package org.mongo.viewer.vo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import com.mongodb.DBCursor;
+
+/**
+ * A request that is running queries, with the deadline they share and the
+ * cursors they opened so far. Once aborted it stays aborted.
+ *
+ * A stream, such as an export, has an idle timeout instead: its deadline
+ * moves forward every time it reports progress, up to an optional overall
+ * limit, so it may run as long as it keeps moving.
+ */
+public class RunningQuery {
+
+    /** The comment prefix that tags our operations on the server. */
+    public static final String COMMENT_PREFIX = "mongoviewer ";
+
+    /** The abort reason of a query someone cancelled. */
+    public static final String CANCELLED = "cancelled";
+
+    /** The abort reason of a query past its deadline. */
+    public static final String TIMED_OUT = "timed out";
+
+    private final String id;
+    private final String uri;
+    private final String client;
+    private final Date started;
+    private final long limit;
+    private final long idleTimeout;
+    private volatile long deadline;
+    private final List<DBCursor> cursors = new ArrayList<DBCursor>();
+    private volatile String abortReason;
+
+    /**
+     * @param id
+     *            the id
+     * @param uri
+     *            the request uri
+     * @param client
+     *            the client address
+     * @param started
+     *            when the request started
+     * @param deadline
+     *            the time, in epoch millis, by which it must be done
+     */
+    public RunningQuery(String id, String uri, String client, Date started,
+            long deadline) {
+        this(id, uri, client, started, deadline, 0);
+    }
+
+    /**
+     * @param id
+     *            the id
+     * @param uri
+     *            the request uri
+     * @param client
+     *            the client address
+     * @param started
+     *            when the request started
+     * @param limit
+     *            the time, in epoch millis, by which it must be done,
+     *            Long.MAX_VALUE for none
+     * @param idleTimeout
+     *            the millis it may go without progress, 0 for a fixed
+     *            deadline
+     */
+    public RunningQuery(String id, String uri, String client, Date started,
+            long limit, long idleTimeout) {
+        this.id = id;
+        this.uri = uri;
+        this.client = client;
+        this.started = started;
+        this.limit = limit;
+        this.idleTimeout = idleTimeout;
+        this.deadline = idleTimeout > 0 ? Math.min(limit, started.getTime()
+                + idleTimeout) : limit;
+    }
+
+    /**
+     * @return the id
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return the request uri
+     */
+    public String getUri() {
+        return uri;
+    }
+
+    /**
+     * @return the client address
+     */
+    public String getClient() {
+        return client;
+    }
+
+    /**
+     * @return when the request started
+     */
+    public Date getStarted() {
+        return started;
+    }
+
+    /**
+     * @return the time, in epoch millis, by which it must be done
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * @return the time, in epoch millis, by which it must be done whatever
+     *         its progress, Long.MAX_VALUE for none
+     */
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return true if its deadline moves with its progress
+     */
+    public boolean isIdleTimed() {
+        return idleTimeout > 0;
+    }
+
+    /**
+     * Reports progress, which moves the deadline of a stream forward.
+     */
+    public void touch() {
+        if (idleTimeout > 0) {
+            deadline = Math.min(limit, System.currentTimeMillis()
+                    + idleTimeout);
+        }
+    }
+
+    /**
+     * @return the millis left before the deadline, negative once past it
+     */
+    public long getRemainingMillis() {
+        return deadline - System.currentTimeMillis();
+    }
+
+    /**
+     * @return the comment its queries carry on the server
+     */
+    public String getComment() {
+        return COMMENT_PREFIX + id;
+    }
+
+    /**
+     * @return why it was aborted, null while it may run
+     */
+    public String getAbortReason() {
+        return abortReason;
+    }
+
+    /**
+     * @return true if it was aborted
+     */
+    public boolean isAborted() {
+        return null != abortReason;
+    }
+
+    /**
+     * Remembers a cursor, so that it can be closed on abort. A cursor opened
+     * after the abort is returned to be closed right away.
+     *
+     * @param cursor
+     *            the cursor
+     * @return true if it was tracked, false if the query is already aborted
+     */
+    public synchronized boolean track(DBCursor cursor) {
+        if (isAborted()) {
+            return false;
+        }
+        cursors.add(cursor);
+        return true;
+    }
+
+    /**
+     * Aborts, the first time only.
+     *
+     * @param reason
+     *            why
+     * @return the cursors to close, empty if it was already aborted
+     */
+    public synchronized List<DBCursor> abort(String reason) {
+        if (isAborted()) {
+            return Collections.emptyList();
+        }
+        abortReason = reason;
+        List<DBCursor> open = new ArrayList<DBCursor>(cursors);
+        cursors.clear();
+        return open;
+    }
+
+}
@@ -0,0 +1,193 @@
+package org.mongo.viewer.vo;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * A viewer query that took longer than the slow query threshold, and what
+ * <code>explain</code> said about it. The plan fields stay empty until the
+ * explain has run, and for good if it was skipped.
+ */
+public class SlowQuery implements Serializable {
+    /**
+     *
+     */
+    private static final long serialVersionUID = 2395013772604420837L;
+    private final Date time;
+    private final String operation;
+    private final String database;
+    private final String collection;
+    private final String query;
+    private final String projection;
+    private final String sort;
+    private final long millis;
+    private volatile String plan;
+    private volatile String index;
+    private volatile long docsExamined = -1;
+    private volatile long returned = -1;
+    private volatile String explainError;
+
+    /**
+     * @param time
+     *            when the query ran
+     * @param operation
+     *            what ran it, e.g. find, page or aggregate
+     * @param database
+     *            the database
+     * @param collection
+     *            the collection
+     * @param query
+     *            the query
+     * @param projection
+     *            the projection, may be null
+     * @param sort
+     *            the sort, may be null
+     * @param millis
+     *            how long it took
+     */
+    public SlowQuery(Date time, String operation, String database,
+            String collection, String query, String projection, String sort,
+            long millis) {
+        this.time = time;
+        this.operation = operation;
+        this.database = database;
+        this.collection = collection;
+        this.query = query;
+        this.projection = projection;
+        this.sort = sort;
+        this.millis = millis;
+    }
+
+    /**
+     * @return when the query ran
+     */
+    public Date getTime() {
+        return time;
+    }
+
+    /**
+     * @return what ran the query
+     */
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return the database
+     */
+    public String getDatabase() {
+        return database;
+    }
+
+    /**
+     * @return the collection
+     */
+    public String getCollection() {
+        return collection;
+    }
+
+    /**
+     * @return the query
+     */
+    public String getQuery() {
+        return query;
+    }
+
+    /**
+     * @return the projection
+     */
+    public String getProjection() {
+        return projection;
+    }
+
+    /**
+     * @return the sort
+     */
+    public String getSort() {
+        return sort;
+    }
+
+    /**
+     * @return how long the query took, in millis
+     */
+    public long getMillis() {
+        return millis;
+    }
+
+    /**
+     * @return the winning plan, null until explained
+     */
+    public String getPlan() {
+        return plan;
+    }
+
+    /**
+     * @param plan
+     *            the winning plan to set
+     */
+    public void setPlan(String plan) {
+        this.plan = plan;
+    }
+
+    /**
+     * @return the index used, null for a collection scan or until explained
+     */
+    public String getIndex() {
+        return index;
+    }
+
+    /**
+     * @param index
+     *            the index to set
+     */
+    public void setIndex(String index) {
+        this.index = index;
+    }
+
+    /**
+     * @return the documents examined, -1 until explained
+     */
+    public long getDocsExamined() {
+        return docsExamined;
+    }
+
+    /**
+     * @param docsExamined
+     *            the documents examined to set
+     */
+    public void setDocsExamined(long docsExamined) {
+        this.docsExamined = docsExamined;
+    }
+
+    /**
+     * @return the documents returned, -1 until explained
+     */
+    public long getReturned() {
+        return returned;
+    }
+
+    /**
+     * @param returned
+     *            the documents returned to set
+     */
+    public void setReturned(long returned) {
+        this.returned = returned;
+    }
+
+    /**
+     * @return why the query was not explained, null if it was or still will
+     *         be
+     */
+    public String getExplainError() {
+        return explainError;
+    }
+
+    /**
+     * @param explainError
+     *            why the query was not explained
+     */
+    public void setExplainError(String explainError) {
+        this.explainError = explainError;
+    }
+
+}
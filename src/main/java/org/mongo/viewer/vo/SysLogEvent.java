@@ -102,6 +102,15 @@ public class SysLogEvent {
         eventId = UUID.randomUUID().toString();
     }
 
+    /**
+     * An event read back from the store, so the id and timestamp come from
+     * the stored document and are not generated.
+     */
+    public SysLogEvent(String eventId, Date timestamp) {
+        this.eventId = eventId;
+        this.timestamp = timestamp;
+    }
+
     public String debugString() {
         return DebugUtils.debugString(this);
     }
@@ -0,0 +1,64 @@
+package org.mongo.viewer.vo;
+
+import java.util.Date;
+
+/**
+ * The width of the time buckets events are counted in. Buckets are aligned
+ * on UTC, as mongo computes them.
+ */
+public enum TimeBucket {
+
+    /** One bucket per minute. */
+    MINUTE(60 * 1000L),
+    /** One bucket per hour. */
+    HOUR(60 * 60 * 1000L),
+    /** One bucket per day. */
+    DAY(24 * 60 * 60 * 1000L);
+
+    private final long millis;
+
+    private TimeBucket(long millis) {
+        this.millis = millis;
+    }
+
+    /**
+     * Gets the width of a bucket.
+     *
+     * @return the width in millis
+     */
+    public long getMillis() {
+        return millis;
+    }
+
+    /**
+     * Gets the end of the bucket a time falls in.
+     *
+     * @param time
+     *            the time
+     * @return the end of its bucket, exclusive
+     */
+    public Date ceiling(Date time) {
+        return new Date((time.getTime() / millis + 1) * millis);
+    }
+
+    /**
+     * Parses a bucket name, case insensitive.
+     *
+     * @param name
+     *            minute, hour or day
+     * @return the bucket
+     * @throws IllegalArgumentException
+     *             if the name is unknown
+     */
+    public static TimeBucket parse(String name) {
+        if (null == name) {
+            throw new IllegalArgumentException("A time bucket is required");
+        }
+        try {
+            return valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown time bucket " + name);
+        }
+    }
+
+}
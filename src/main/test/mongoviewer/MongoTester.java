@@ -12,6 +12,7 @@ import org.jongo.MongoCollection;
 import org.junit.Test;
 import org.mongo.viewer.util.LoggingUtils;
 import org.mongo.viewer.util.MongoUtil;
+import org.mongo.viewer.util.QueryUtil;
 import org.mongo.viewer.vo.DataBaseInfo;
 
 import com.mongodb.DB;
@@ -38,6 +39,7 @@ public class MongoTester {
             MongoCollection sysLog = jongo.getCollection("SYSLOG_06_2014");
             Iterable<Object> all = sysLog
                     .find("{ $or : [ {type:'REPLOGIN.user'}, {type:'REPLOGIN.account'}]}")
+                    .projection(QueryUtil.projection(fields).toString())
                     .as(Object.class);
             Iterator<Object> itr = all.iterator();
             for (String field : fields) {
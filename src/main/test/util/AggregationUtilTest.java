@@ -0,0 +1,62 @@
+package util;
+
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mongo.viewer.util.AggregationUtil;
+import org.mongo.viewer.vo.TimeBucket;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+
+public class AggregationUtilTest {
+
+    @Test
+    public void testHourlyCountsByType() {
+        List<DBObject> pipeline = AggregationUtil.countPipeline(
+                new BasicDBObject("level", "ERROR"), "type", TimeBucket.HOUR);
+        Assert.assertEquals(2, pipeline.size());
+        Assert.assertEquals(new BasicDBObject("level", "ERROR"), pipeline
+                .get(0).get("$match"));
+        DBObject id = (DBObject) ((DBObject) pipeline.get(1).get("$group"))
+                .get("_id");
+        Assert.assertTrue(id.containsField("h"));
+        Assert.assertFalse(id.containsField("i"));
+        Assert.assertEquals("$type", id.get("key"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownGroupField() {
+        AggregationUtil.countPipeline(new BasicDBObject(), "message",
+                TimeBucket.DAY);
+    }
+
+    @Test
+    public void testResultRow() {
+        DBObject result = new BasicDBObject("_id", new BasicDBObject("y",
+                2014).append("m", 6).append("d", 15).append("h", 13)
+                .append("key", "SESSION")).append("count", 42);
+        Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        cal.clear();
+        cal.set(2014, Calendar.JUNE, 15, 13, 0);
+        Assert.assertEquals(cal.getTime(), AggregationUtil.getBucket(result));
+        Assert.assertEquals("SESSION", AggregationUtil.getKey(result));
+        Assert.assertEquals(42, AggregationUtil.getCount(result));
+    }
+
+    @Test
+    public void testTopValuesKeepOneMoreThanTheLimit() {
+        List<DBObject> pipeline = AggregationUtil.topValuesPipeline(
+                "hostName", 10);
+        Assert.assertEquals(3, pipeline.size());
+        Assert.assertEquals("$hostName", ((DBObject) pipeline.get(0).get(
+                "$group")).get("_id"));
+        Assert.assertEquals(-1, ((DBObject) pipeline.get(1).get("$sort"))
+                .get("count"));
+        Assert.assertEquals(11, pipeline.get(2).get("$limit"));
+    }
+
+}
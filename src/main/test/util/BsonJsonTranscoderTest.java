@@ -0,0 +1,116 @@
+package util;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.regex.Pattern;
+
+import org.bson.BasicBSONEncoder;
+import org.bson.types.BSONTimestamp;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mongo.viewer.util.BsonJsonTranscoder;
+import org.mongo.viewer.util.RawDBObject;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.util.JSON;
+
+public class BsonJsonTranscoderTest {
+
+    private static String transcode(DBObject document, String... fields)
+            throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        JsonGenerator out = BsonJsonTranscoder.createGenerator(bytes);
+        new BsonJsonTranscoder(fields.length == 0 ? null : fields).write(
+                new RawDBObject(new BasicBSONEncoder().encode(document), null),
+                out);
+        out.close();
+        return bytes.toString("UTF-8");
+    }
+
+    @Test
+    public void testMatchesTheDriverSerialization() throws Exception {
+        DBObject document = new BasicDBObject("_id", new ObjectId())
+                .append("timestamp", new Date(1402840800123L))
+                .append("old", new Date(-86400001L))
+                .append("type", "REPLOGIN.\u00fcser \"quoted\"\n")
+                .append("execTime", 42).append("big", 1L << 40)
+                .append("ratio", 0.25).append("ok", true)
+                .append("missing", null)
+                .append("tags", Arrays.asList("a", "b"))
+                .append("extra", new BasicDBObject("nested", 1))
+                .append("pattern",
+                        Pattern.compile("^web", Pattern.CASE_INSENSITIVE))
+                .append("ts", new BSONTimestamp(1402840800, 7));
+        String json = transcode(document);
+        Assert.assertEquals(JSON.parse(JSON.serialize(document)),
+                JSON.parse(json));
+    }
+
+    @Test
+    public void testWritesBinaryAsBase64() throws Exception {
+        DBObject json = (DBObject) JSON.parse(transcode(new BasicDBObject(
+                "data", new byte[] { 1, 2, 3 })));
+        // the driver parses it back, it does not write it
+        Binary data = (Binary) json.get("data");
+        Assert.assertEquals(0, data.getType());
+        Assert.assertArrayEquals(new byte[] { 1, 2, 3 }, data.getData());
+    }
+
+    @Test
+    public void testMasksPasswordsAtAnyDepth() throws Exception {
+        DBObject document = new BasicDBObject("loginId", "fela.smith")
+                .append("password", "hunter2").append(
+                        "request",
+                        new BasicDBObject("newPassword", "hunter3").append(
+                                "PIN", 1234));
+        DBObject json = (DBObject) JSON.parse(transcode(document));
+        Assert.assertEquals("fela.smith", json.get("loginId"));
+        Assert.assertEquals(BsonJsonTranscoder.MASK, json.get("password"));
+        DBObject request = (DBObject) json.get("request");
+        Assert.assertEquals(BsonJsonTranscoder.MASK, request.get("newPassword"));
+        Assert.assertEquals(BsonJsonTranscoder.MASK, request.get("PIN"));
+    }
+
+    @Test
+    public void testProjectsTopLevelFields() throws Exception {
+        DBObject document = new BasicDBObject("_id", "e-1")
+                .append("timestamp", new Date()).append("type", "SESSION")
+                .append("extra", new BasicDBObject("type", "inner"));
+        DBObject json = (DBObject) JSON.parse(transcode(document, "type",
+                "extra"));
+        Assert.assertEquals(Arrays.asList("_id", "type", "extra"),
+                Arrays.asList(json.keySet().toArray()));
+        Assert.assertEquals("inner", ((DBObject) json.get("extra")).get("type"));
+    }
+
+    @Test
+    public void testKeepsTheTopLevelFieldOfDottedFields() throws Exception {
+        // as the server returns {request: {loginId}} for request.loginId
+        DBObject document = new BasicDBObject("_id", "e1").append("request",
+                new BasicDBObject("loginId", "fela.smith"));
+        DBObject json = (DBObject) JSON.parse(transcode(document,
+                "request.loginId"));
+        Assert.assertEquals(Arrays.asList("_id", "request"),
+                Arrays.asList(json.keySet().toArray()));
+        Assert.assertEquals("fela.smith",
+                ((DBObject) json.get("request")).get("loginId"));
+    }
+
+    @Test
+    public void testWritesDocumentsBackToBack() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        JsonGenerator out = BsonJsonTranscoder.createGenerator(bytes);
+        BsonJsonTranscoder transcoder = new BsonJsonTranscoder(null);
+        transcoder.write(new BasicDBObject("n", 1), out);
+        out.writeRaw('\n');
+        transcoder.write(new BasicDBObject("n", 2), out);
+        out.close();
+        Assert.assertEquals("{\"n\":1}\n{\"n\":2}", bytes.toString("UTF-8"));
+    }
+
+}
@@ -0,0 +1,230 @@
+package util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mongo.viewer.servlet.CompressingResponse;
+import org.mongo.viewer.servlet.CompressionFilter;
+
+public class CompressingResponseTest {
+
+    private static final int MIN_SIZE = 1024;
+
+    private static final String[] EXCLUDED = { "image/", "application/zip" };
+
+    /**
+     * What reached the container: headers, status and body. Like a
+     * container, it is committed once the body was written to.
+     */
+    private static class Sent {
+        final Map<String, String> headers = new HashMap<String, String>();
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        String contentType;
+        int status = 200;
+
+        boolean isCommitted() {
+            return body.size() > 0;
+        }
+    }
+
+    private static HttpServletResponse stub(final Sent sent) {
+        final ServletOutputStream out = new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                sent.body.write(b);
+            }
+        };
+        return (HttpServletResponse) Proxy.newProxyInstance(
+                CompressingResponseTest.class.getClassLoader(),
+                new Class<?>[] { HttpServletResponse.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method,
+                            Object[] args) {
+                        String name = method.getName();
+                        if ("setHeader".equals(name)
+                                || "addHeader".equals(name)) {
+                            sent.headers.put((String) args[0],
+                                    (String) args[1]);
+                        } else if ("containsHeader".equals(name)) {
+                            return sent.headers.containsKey(args[0]);
+                        } else if ("getOutputStream".equals(name)) {
+                            return out;
+                        } else if ("setContentType".equals(name)) {
+                            sent.contentType = (String) args[0];
+                        } else if ("getContentType".equals(name)) {
+                            return sent.contentType;
+                        } else if ("getCharacterEncoding".equals(name)) {
+                            return "UTF-8";
+                        } else if ("isCommitted".equals(name)) {
+                            return sent.isCommitted();
+                        } else if ("sendError".equals(name)) {
+                            if (sent.isCommitted()) {
+                                throw new IllegalStateException("committed");
+                            }
+                            sent.status = (Integer) args[0];
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    private static byte[] body(int size) {
+        // compressible, but not trivially so
+        byte[] body = new byte[size];
+        Random random = new Random(42);
+        for (int i = 0; i < size; i++) {
+            body[i] = (byte) ('a' + random.nextInt(8));
+        }
+        return body;
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[4096];
+        int read;
+        while ((read = in.read(chunk)) > 0) {
+            out.write(chunk, 0, read);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testSmallBodyGoesOutAsItIs() throws Exception {
+        Sent sent = new Sent();
+        CompressingResponse response = new CompressingResponse(stub(sent),
+                CompressionFilter.GZIP, 6, MIN_SIZE, EXCLUDED);
+        byte[] body = body(MIN_SIZE - 24);
+        response.setContentType("application/json");
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+        response.finish();
+        Assert.assertFalse(response.isCompressing());
+        Assert.assertNull(sent.headers.get("Content-Encoding"));
+        Assert.assertEquals(Integer.toString(body.length),
+                sent.headers.get("Content-Length"));
+        Assert.assertArrayEquals(body, sent.body.toByteArray());
+    }
+
+    @Test
+    public void testLargeBodyIsGzipped() throws Exception {
+        Sent sent = new Sent();
+        CompressingResponse response = new CompressingResponse(stub(sent),
+                CompressionFilter.GZIP, 6, MIN_SIZE, EXCLUDED);
+        byte[] body = body(MIN_SIZE * 50);
+        response.setContentType("application/json");
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+        Assert.assertTrue(response.isCompressing());
+        response.finish();
+        Assert.assertEquals("gzip", sent.headers.get("Content-Encoding"));
+        Assert.assertNull(sent.headers.get("Content-Length"));
+        Assert.assertTrue(sent.body.size() < body.length);
+        Assert.assertArrayEquals(body, read(new GZIPInputStream(
+                new ByteArrayInputStream(sent.body.toByteArray()))));
+    }
+
+    @Test
+    public void testLargeBodyIsDeflated() throws Exception {
+        Sent sent = new Sent();
+        CompressingResponse response = new CompressingResponse(stub(sent),
+                CompressionFilter.DEFLATE, 6, MIN_SIZE, EXCLUDED);
+        byte[] body = body(MIN_SIZE * 50);
+        response.setHeader("Content-Length", Integer.toString(body.length));
+        // written in pieces that straddle the buffer
+        for (int off = 0; off < body.length; off += 700) {
+            response.getOutputStream().write(body, off,
+                    Math.min(700, body.length - off));
+        }
+        response.finish();
+        Assert.assertEquals("deflate", sent.headers.get("Content-Encoding"));
+        Assert.assertNull(sent.headers.get("Content-Length"));
+        Assert.assertArrayEquals(body, read(new InflaterInputStream(
+                new ByteArrayInputStream(sent.body.toByteArray()))));
+    }
+
+    @Test
+    public void testExcludedTypeIsNotCompressed() throws Exception {
+        Sent sent = new Sent();
+        CompressingResponse response = new CompressingResponse(stub(sent),
+                CompressionFilter.GZIP, 6, MIN_SIZE, EXCLUDED);
+        byte[] body = body(MIN_SIZE * 4);
+        response.setContentType("image/png");
+        response.getOutputStream().write(body);
+        response.finish();
+        Assert.assertFalse(response.isCompressing());
+        Assert.assertNull(sent.headers.get("Content-Encoding"));
+        Assert.assertArrayEquals(body, sent.body.toByteArray());
+    }
+
+    @Test
+    public void testEarlyFlushSendsTheBodyUncompressed() throws Exception {
+        Sent sent = new Sent();
+        CompressingResponse response = new CompressingResponse(stub(sent),
+                CompressionFilter.GZIP, 6, MIN_SIZE, EXCLUDED);
+        byte[] body = body(MIN_SIZE * 4);
+        ServletOutputStream out = response.getOutputStream();
+        out.write(body, 0, 100);
+        out.flush();
+        // what was flushed has reached the client already
+        Assert.assertEquals(100, sent.body.size());
+        out.write(body, 100, body.length - 100);
+        response.finish();
+        Assert.assertFalse(response.isCompressing());
+        Assert.assertNull(sent.headers.get("Content-Encoding"));
+        Assert.assertArrayEquals(body, sent.body.toByteArray());
+    }
+
+    @Test
+    public void testSendErrorDiscardsABufferedBody() throws Exception {
+        Sent sent = new Sent();
+        CompressingResponse response = new CompressingResponse(stub(sent),
+                CompressionFilter.GZIP, 6, MIN_SIZE, EXCLUDED);
+        response.getOutputStream().write(body(100));
+        response.sendError(503);
+        response.finish();
+        Assert.assertEquals(503, sent.status);
+        Assert.assertEquals(0, sent.body.size());
+    }
+
+    @Test
+    public void testSendErrorAfterCompressionStarted() throws Exception {
+        Sent sent = new Sent();
+        CompressingResponse response = new CompressingResponse(stub(sent),
+                CompressionFilter.GZIP, 6, MIN_SIZE, EXCLUDED);
+        byte[] body = body(MIN_SIZE * 50);
+        response.getOutputStream().write(body);
+        Assert.assertTrue(response.isCompressing());
+        try {
+            response.sendError(500);
+            Assert.fail("the response is committed");
+        } catch (IllegalStateException e) {
+            // as the container does
+        }
+        Assert.assertEquals(200, sent.status);
+        // the filter still ends the compressed body cleanly
+        response.finish();
+        Assert.assertEquals("gzip", sent.headers.get("Content-Encoding"));
+        byte[] received = read(new GZIPInputStream(new ByteArrayInputStream(
+                sent.body.toByteArray())));
+        Assert.assertTrue(Arrays.equals(body, received));
+    }
+
+}
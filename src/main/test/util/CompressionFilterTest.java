@@ -0,0 +1,32 @@
+package util;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mongo.viewer.servlet.CompressionFilter;
+
+public class CompressionFilterTest {
+
+    @Test
+    public void testPrefersGzip() {
+        Assert.assertEquals("gzip", CompressionFilter.negotiate("gzip, deflate"));
+        Assert.assertEquals("gzip", CompressionFilter.negotiate("x-gzip"));
+        Assert.assertEquals("gzip", CompressionFilter.negotiate("*"));
+    }
+
+    @Test
+    public void testHonoursQualityValues() {
+        Assert.assertEquals("deflate",
+                CompressionFilter.negotiate("gzip;q=0.5, deflate"));
+        Assert.assertEquals("deflate",
+                CompressionFilter.negotiate("gzip;q=0, *"));
+        Assert.assertNull(CompressionFilter.negotiate("gzip;q=0"));
+    }
+
+    @Test
+    public void testNoCompressionWithoutAcceptEncoding() {
+        Assert.assertNull(CompressionFilter.negotiate(""));
+        Assert.assertNull(CompressionFilter.negotiate("identity"));
+        Assert.assertNull(CompressionFilter.negotiate("br, *;q=0"));
+    }
+
+}
@@ -0,0 +1,54 @@
+package util;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mongo.viewer.util.CountUtil;
+
+public class CountUtilTest {
+
+    @Test
+    public void testWindowsSpreadOverTheRange() {
+        Assert.assertArrayEquals(new long[] { 1000, 1250, 1500, 1750 },
+                CountUtil.getWindowStarts(1000, 2000, 4));
+    }
+
+    @Test
+    public void testWindowsOfASingleInstant() {
+        Assert.assertArrayEquals(new long[] { 5, 5 },
+                CountUtil.getWindowStarts(5, 5, 2));
+    }
+
+    @Test
+    public void testScalesTheMatchingShare() {
+        Assert.assertEquals(2500, CountUtil.scale(10000, 100, 400));
+        Assert.assertEquals(0, CountUtil.scale(10000, 0, 400));
+        Assert.assertEquals(10000, CountUtil.scale(10000, 400, 400));
+    }
+
+    @Test
+    public void testScalesNothingWithoutASample() {
+        Assert.assertEquals(-1, CountUtil.scale(10000, 0, 0));
+    }
+
+    @Test
+    public void testSlicesCoverTheRange() {
+        long[] bounds = CountUtil.getSliceBounds(100, 200, 4);
+        Assert.assertArrayEquals(new long[] { 100, 125, 150, 175, 200 },
+                bounds);
+    }
+
+    @Test
+    public void testSlicesAreNeverEmpty() {
+        long[] bounds = CountUtil.getSliceBounds(100, 103, 32);
+        Assert.assertArrayEquals(new long[] { 100, 101, 102, 103 }, bounds);
+        for (int i = 0; i < bounds.length - 1; i++) {
+            Assert.assertTrue(bounds[i] < bounds[i + 1]);
+        }
+    }
+
+    @Test
+    public void testNoSlicesOfAnEmptyRange() {
+        Assert.assertEquals(1, CountUtil.getSliceBounds(100, 100, 4).length);
+    }
+
+}
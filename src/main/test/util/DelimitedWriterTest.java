@@ -0,0 +1,67 @@
+package util;
+
+import java.io.StringWriter;
+import java.util.Date;
+
+import org.bson.types.ObjectId;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mongo.viewer.util.DelimitedWriter;
+import org.mongo.viewer.util.DelimitedWriter.Format;
+
+import com.mongodb.BasicDBObject;
+
+public class DelimitedWriterTest {
+
+    @Test
+    public void testQuotesCsvOnlyWhenNeeded() throws Exception {
+        StringWriter out = new StringWriter();
+        DelimitedWriter rows = new DelimitedWriter(out, Format.CSV);
+        rows.value("plain").value("a,b").value("say \"hi\"")
+                .value("two\nlines").value(null).value(42);
+        rows.endRow();
+        Assert.assertEquals(
+                "plain,\"a,b\",\"say \"\"hi\"\"\",\"two\nlines\",,42\r\n",
+                out.toString());
+    }
+
+    @Test
+    public void testEscapesTsv() throws Exception {
+        StringWriter out = new StringWriter();
+        DelimitedWriter rows = new DelimitedWriter(out, Format.TSV);
+        rows.value("a\tb").value("c\\d\r\n").value("e,\"f\"");
+        rows.endRow();
+        Assert.assertEquals("a\\tb\tc\\\\d\\r\\n\te,\"f\"\n", out.toString());
+    }
+
+    @Test
+    public void testFormatsValues() throws Exception {
+        StringWriter out = new StringWriter();
+        DelimitedWriter rows = new DelimitedWriter(out, Format.CSV);
+        ObjectId id = new ObjectId();
+        rows.value(new Date(1402840800123L)).value(id).value(true)
+                .value(new BasicDBObject("n", 1));
+        rows.endRow();
+        Assert.assertEquals("2014-06-15T14:00:00.123Z," + id.toHexString()
+                + ",true,\"{ \"\"n\"\" : 1}\"\r\n", out.toString());
+    }
+
+    @Test
+    public void testReusesTheRowBuffer() throws Exception {
+        StringWriter out = new StringWriter();
+        DelimitedWriter rows = new DelimitedWriter(out, Format.TSV);
+        StringBuilder longValue = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            longValue.append("xyz");
+        }
+        rows.value(longValue.toString()).endRow();
+        rows.value("short").endRow();
+        Assert.assertEquals(longValue + "\nshort\n", out.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownFormat() {
+        Format.parse("xls");
+    }
+
+}
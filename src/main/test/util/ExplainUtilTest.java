@@ -0,0 +1,51 @@
+package util;
+
+import java.util.Date;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mongo.viewer.util.ExplainUtil;
+import org.mongo.viewer.util.QueryUtil;
+import org.mongo.viewer.vo.SlowQuery;
+
+public class ExplainUtilTest {
+
+    private static SlowQuery slow() {
+        return new SlowQuery(new Date(), "find", "logs", "SYSLOG_06_2014",
+                "{ }", null, null, 5000);
+    }
+
+    @Test
+    public void testLegacyExplain() {
+        SlowQuery slow = slow();
+        ExplainUtil.apply(QueryUtil.parse("{cursor: 'BtreeCursor timestamp_1__id_1 reverse',"
+                + " n: 50, nscannedObjects: 120000}"), slow);
+        Assert.assertEquals("timestamp_1__id_1", slow.getIndex());
+        Assert.assertEquals(120000, slow.getDocsExamined());
+        Assert.assertEquals(50, slow.getReturned());
+    }
+
+    @Test
+    public void testCollectionScan() {
+        SlowQuery slow = slow();
+        ExplainUtil.apply(QueryUtil.parse("{cursor: 'BasicCursor', n: 3,"
+                + " nscannedObjects: 900000}"), slow);
+        Assert.assertEquals("BasicCursor", slow.getPlan());
+        Assert.assertNull(slow.getIndex());
+    }
+
+    @Test
+    public void testQueryPlannerExplain() {
+        SlowQuery slow = slow();
+        ExplainUtil.apply(QueryUtil.parse("{queryPlanner: {winningPlan:"
+                + " {stage: 'FETCH', inputStage: {stage: 'IXSCAN',"
+                + " indexName: 'type_1_timestamp_1'}}},"
+                + " executionStats: {nReturned: 10, totalDocsExamined: 10}}"),
+                slow);
+        Assert.assertEquals("FETCH < IXSCAN", slow.getPlan());
+        Assert.assertEquals("type_1_timestamp_1", slow.getIndex());
+        Assert.assertEquals(10, slow.getDocsExamined());
+        Assert.assertEquals(10, slow.getReturned());
+    }
+
+}
@@ -0,0 +1,59 @@
+package util;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mongo.viewer.util.FrequencySketch;
+
+public class FrequencySketchTest {
+
+    @Test
+    public void testCountsUpToFifteen() {
+        FrequencySketch sketch = new FrequencySketch(64);
+        Assert.assertEquals(0, sketch.frequency("a"));
+        for (int i = 0; i < 5; i++) {
+            sketch.increment("a");
+        }
+        Assert.assertEquals(5, sketch.frequency("a"));
+        for (int i = 0; i < 20; i++) {
+            sketch.increment("a");
+        }
+        Assert.assertEquals(15, sketch.frequency("a"));
+    }
+
+    @Test
+    public void testTellsPopularKeysFromOneOffs() {
+        FrequencySketch sketch = new FrequencySketch(1000);
+        for (int i = 0; i < 1000; i++) {
+            sketch.increment("once" + i);
+        }
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j < 10; j++) {
+                sketch.increment("popular" + j);
+            }
+        }
+        for (int j = 0; j < 10; j++) {
+            Assert.assertTrue(sketch.frequency("popular" + j) >= 10);
+        }
+        int overestimated = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (sketch.frequency("once" + i) > 2) {
+                overestimated++;
+            }
+        }
+        Assert.assertTrue(overestimated < 10);
+    }
+
+    @Test
+    public void testAgesOldCounts() {
+        FrequencySketch sketch = new FrequencySketch(1024);
+        for (int i = 0; i < 15; i++) {
+            sketch.increment("old");
+        }
+        // 1024 slots are halved after 10240 additions
+        for (int i = 0; i < 10240; i++) {
+            sketch.increment("new" + i);
+        }
+        Assert.assertTrue(sketch.frequency("old") <= 10);
+    }
+
+}
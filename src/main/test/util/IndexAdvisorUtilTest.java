@@ -0,0 +1,60 @@
+package util;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mongo.viewer.util.IndexAdvisorUtil;
+import org.mongo.viewer.util.QueryUtil;
+import org.mongo.viewer.vo.QueryShape;
+
+import com.mongodb.DBObject;
+
+public class IndexAdvisorUtilTest {
+
+    private static QueryShape shape(String query, String sort) {
+        return IndexAdvisorUtil.shape(QueryUtil.parse(query),
+                null == sort ? null : QueryUtil.parse(sort));
+    }
+
+    @Test
+    public void testEqualitySortRange() {
+        QueryShape shape = shape("{hostName: 'web1', type: {$in: ['A', 'B']},"
+                + " loginId: {$regex: '^fela'}}", "{timestamp: -1, _id: -1}");
+        Assert.assertEquals(Arrays.asList("hostName", "type"),
+                shape.getEquality());
+        Assert.assertEquals(Arrays.asList("timestamp", "_id"), shape.getSort());
+        Assert.assertEquals(Arrays.asList("loginId"), shape.getRange());
+        Assert.assertEquals(QueryUtil.parse("{hostName: 1, type: 1,"
+                + " timestamp: 1, _id: 1, loginId: 1}"),
+                IndexAdvisorUtil.recommend(shape));
+    }
+
+    @Test
+    public void testKeysetSeekIsServedBySort() {
+        QueryShape shape = shape("{$and: [{type: 'SESSION'}, {$or: ["
+                + "{timestamp: {$lt: 5}}, {timestamp: 5, _id: {$lt: 'x'}}]}]}",
+                "{timestamp: -1, _id: -1}");
+        Assert.assertEquals("eq[type] sort[timestamp, _id] range[]",
+                shape.toString());
+    }
+
+    @Test
+    public void testUnindexable() {
+        Assert.assertNull(shape("{$where: 'this.a > 1'}", null));
+    }
+
+    @Test
+    public void testCoverage() {
+        QueryShape shape = shape("{type: 'A', timestamp: {$gte: 1}}", null);
+        Assert.assertEquals(0, IndexAdvisorUtil.coverage(shape,
+                Collections.<DBObject> singletonList(QueryUtil
+                        .parse("{_id: 1}"))), 0);
+        Assert.assertEquals(0.5, IndexAdvisorUtil.coverage(shape, Arrays
+                .asList(QueryUtil.parse("{type: 1, hostName: 1}"))), 0);
+        Assert.assertEquals(1, IndexAdvisorUtil.coverage(shape, Arrays
+                .asList(QueryUtil.parse("{type: 1, timestamp: 1}"))), 0);
+    }
+
+}
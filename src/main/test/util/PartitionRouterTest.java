@@ -0,0 +1,101 @@
+package util;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mongo.viewer.util.PartitionRouter;
+import org.mongo.viewer.util.PartitionUtil;
+import org.mongo.viewer.vo.PartitionInfo;
+
+public class PartitionRouterTest {
+
+    private static Date date(int year, int month, int day, int hour) {
+        Calendar cal = Calendar.getInstance();
+        cal.clear();
+        cal.set(year, month - 1, day, hour, 0);
+        return cal.getTime();
+    }
+
+    private static final Date NOW = date(2014, 6, 15, 12);
+
+    /** A partition whose bounds were read at NOW. */
+    private static PartitionInfo partition(String name, Date min, Date max) {
+        Date end = PartitionUtil.getPartitionEnd(name);
+        return new PartitionInfo(name, PartitionUtil.getPartitionStart(name),
+                end, min, max, !NOW.before(end));
+    }
+
+    private final Date now = NOW;
+
+    private final List<PartitionInfo> partitions = Arrays.asList(
+            partition("SYSLOG_04_2014", date(2014, 4, 1, 0),
+                    date(2014, 4, 30, 23)),
+            partition("SYSLOG_05_2014", date(2014, 5, 1, 0),
+                    date(2014, 5, 31, 23)),
+            // open month, its max is stale by the time we route
+            partition("SYSLOG_06_2014", date(2014, 6, 1, 0),
+                    date(2014, 6, 15, 9)));
+
+    @Test
+    public void testLastTwoHoursHitsOnePartition() {
+        Assert.assertEquals(Arrays.asList("SYSLOG_06_2014"),
+                PartitionRouter.route(partitions, date(2014, 6, 15, 10),
+                        now, now));
+    }
+
+    @Test
+    public void testQuarter() {
+        Assert.assertEquals(Arrays.asList("SYSLOG_04_2014",
+                "SYSLOG_05_2014", "SYSLOG_06_2014"), PartitionRouter.route(
+                partitions, date(2014, 4, 1, 0), now, now));
+    }
+
+    @Test
+    public void testGapInClosedMonth() {
+        // May's events stop at the 31st 23:00, nothing after that is in it
+        Assert.assertEquals(Arrays.asList("SYSLOG_06_2014"),
+                PartitionRouter.route(partitions, date(2014, 5, 31, 23, 30),
+                        date(2014, 6, 2, 0), now));
+    }
+
+    @Test
+    public void testEmptyPartitions() {
+        List<PartitionInfo> empty = Arrays.asList(
+                partition("SYSLOG_05_2014", null, null),
+                partition("SYSLOG_06_2014", null, null));
+        Assert.assertEquals(Arrays.asList("SYSLOG_06_2014"),
+                PartitionRouter.route(empty, date(2014, 5, 1, 0), now, now));
+    }
+
+    @Test
+    public void testBoundsReadBeforeMonthEndAreNotTrusted() {
+        // read on May 31st 23:55, events kept coming until midnight
+        PartitionInfo may = new PartitionInfo("SYSLOG_05_2014",
+                date(2014, 5, 1, 0), date(2014, 6, 1, 0), date(2014, 5, 1, 0),
+                date(2014, 5, 31, 23, 55), false);
+        Assert.assertEquals(Arrays.asList("SYSLOG_05_2014"),
+                PartitionRouter.route(Arrays.asList(may),
+                        date(2014, 5, 31, 23, 57), date(2014, 6, 1, 0),
+                        date(2014, 6, 1, 0, 2)));
+    }
+
+    @Test
+    public void testCurrentMonthIsRoutedBeforeTheCatalogSeesIt() {
+        Date july = date(2014, 7, 1, 0, 5);
+        Assert.assertEquals(Arrays.asList("SYSLOG_06_2014", "SYSLOG_07_2014"),
+                PartitionRouter.route(partitions, date(2014, 6, 30, 23), july,
+                        july));
+    }
+
+    private static Date date(int year, int month, int day, int hour,
+            int minute) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(date(year, month, day, hour));
+        cal.set(Calendar.MINUTE, minute);
+        return cal.getTime();
+    }
+}
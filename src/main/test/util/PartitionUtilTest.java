@@ -0,0 +1,54 @@
+package util;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mongo.viewer.util.PartitionUtil;
+
+public class PartitionUtilTest {
+
+    private static Date date(int year, int month, int day) {
+        Calendar cal = Calendar.getInstance();
+        cal.clear();
+        cal.set(year, month - 1, day);
+        return cal.getTime();
+    }
+
+    @Test
+    public void testCollectionName() {
+        Assert.assertEquals("SYSLOG_06_2014",
+                PartitionUtil.getCollectionName(date(2014, 6, 15)));
+        Assert.assertEquals("SYSLOG_12_2014",
+                PartitionUtil.getCollectionName(date(2014, 12, 31)));
+    }
+
+    @Test
+    public void testCollectionNamesForQuarter() {
+        Assert.assertEquals(
+                Arrays.asList("SYSLOG_11_2013", "SYSLOG_12_2013",
+                        "SYSLOG_01_2014"),
+                PartitionUtil.getCollectionNames(date(2013, 11, 20),
+                        date(2014, 1, 10)));
+        // the end is exclusive
+        Assert.assertEquals(Arrays.asList("SYSLOG_06_2014"),
+                PartitionUtil.getCollectionNames(date(2014, 6, 1),
+                        date(2014, 7, 1)));
+        Assert.assertTrue(PartitionUtil.getCollectionNames(date(2014, 7, 1),
+                date(2014, 6, 1)).isEmpty());
+    }
+
+    @Test
+    public void testPartitionBounds() {
+        Assert.assertTrue(PartitionUtil.isPartition("SYSLOG_06_2014"));
+        Assert.assertFalse(PartitionUtil.isPartition("SYSLOG_6_2014"));
+        Assert.assertFalse(PartitionUtil.isPartition("system.indexes"));
+        Assert.assertEquals(date(2014, 6, 1),
+                PartitionUtil.getPartitionStart("SYSLOG_06_2014"));
+        Assert.assertEquals(date(2015, 1, 1),
+                PartitionUtil.getPartitionEnd("SYSLOG_12_2014"));
+        Assert.assertNull(PartitionUtil.getPartitionStart("SYSLOG_13_2014"));
+    }
+}
@@ -0,0 +1,122 @@
+package util;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mongo.viewer.exception.QueryAbortedException;
+import org.mongo.viewer.util.QueryContext;
+import org.mongo.viewer.vo.RunningQuery;
+
+import com.mongodb.MongoException;
+
+public class QueryContextTest {
+
+    @After
+    public void clear() {
+        QueryContext.clear();
+    }
+
+    private static RunningQuery running(long remaining) {
+        return new RunningQuery("q1", "/rest/page/c", "127.0.0.1", new Date(),
+                System.currentTimeMillis() + remaining);
+    }
+
+    @Test
+    public void testNoRunningQueryIsNotLimited() {
+        QueryContext.check();
+        Assert.assertEquals(0, QueryContext.aggregationOptions().getMaxTime(
+                TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testCheckPassesBeforeTheDeadline() {
+        QueryContext.set(running(60000));
+        QueryContext.check();
+    }
+
+    @Test
+    public void testCheckFailsPastTheDeadline() {
+        QueryContext.set(running(-1));
+        try {
+            QueryContext.check();
+            Assert.fail("past the deadline");
+        } catch (QueryAbortedException e) {
+            Assert.assertTrue(e.isTimedOut());
+            Assert.assertEquals(504, QueryContext.getStatus(e));
+        }
+    }
+
+    @Test
+    public void testCheckFailsOnceCancelled() {
+        RunningQuery running = running(60000);
+        QueryContext.set(running);
+        Assert.assertTrue(running.abort(RunningQuery.CANCELLED).isEmpty());
+        try {
+            QueryContext.check();
+            Assert.fail("cancelled");
+        } catch (QueryAbortedException e) {
+            Assert.assertFalse(e.isTimedOut());
+            Assert.assertEquals(409, QueryContext.getStatus(e));
+        }
+    }
+
+    @Test
+    public void testAbortKeepsTheFirstReason() {
+        RunningQuery running = running(60000);
+        running.abort(RunningQuery.CANCELLED);
+        running.abort(RunningQuery.TIMED_OUT);
+        Assert.assertEquals(RunningQuery.CANCELLED, running.getAbortReason());
+    }
+
+    @Test
+    public void testAggregationGetsTheRemainingTime() {
+        QueryContext.set(running(60000));
+        long maxTime = QueryContext.aggregationOptions().getMaxTime(
+                TimeUnit.MILLISECONDS);
+        Assert.assertTrue(maxTime > 0 && maxTime <= 60000);
+    }
+
+    @Test
+    public void testOtherFailuresAreServerErrors() {
+        Assert.assertEquals(500,
+                QueryContext.getStatus(new MongoException("boom")));
+    }
+
+    @Test
+    public void testStreamsLiveAsLongAsTheyProgress() throws Exception {
+        long started = System.currentTimeMillis() - 10000;
+        RunningQuery running = new RunningQuery("q2", "/rest/export/c",
+                "127.0.0.1", new Date(started), Long.MAX_VALUE, 200);
+        QueryContext.set(running);
+        Assert.assertTrue(running.getRemainingMillis() <= 0);
+        QueryContext.progress();
+        Assert.assertTrue(running.getRemainingMillis() > 0);
+        // no overall limit, so no server side limit either
+        Assert.assertEquals(0, QueryContext.aggregationOptions().getMaxTime(
+                TimeUnit.MILLISECONDS));
+        Thread.sleep(300);
+        try {
+            QueryContext.check();
+            Assert.fail("stalled");
+        } catch (QueryAbortedException e) {
+            Assert.assertTrue(e.isTimedOut());
+        }
+    }
+
+    @Test
+    public void testStreamsStopAtTheirLimit() {
+        long now = System.currentTimeMillis();
+        RunningQuery running = new RunningQuery("q3", "/rest/export/c",
+                "127.0.0.1", new Date(now), now + 100, 60000);
+        running.touch();
+        Assert.assertTrue(running.getDeadline() <= now + 100);
+        QueryContext.set(running);
+        long maxTime = QueryContext.aggregationOptions().getMaxTime(
+                TimeUnit.MILLISECONDS);
+        Assert.assertTrue(maxTime <= 100);
+    }
+
+}
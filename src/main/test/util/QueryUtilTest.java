@@ -0,0 +1,73 @@
+package util;
+
+import java.util.Date;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mongo.viewer.util.QueryUtil;
+
+public class QueryUtilTest {
+
+    private static String normalize(String json) {
+        return QueryUtil.normalize(QueryUtil.parse(json));
+    }
+
+    @Test
+    public void testNormalizeSortsFieldsAndOperators() {
+        Assert.assertEquals(
+                normalize("{level: 'ERROR', timestamp: {$gte: 1, $lt: 2}}"),
+                normalize("{timestamp: {$lt: 2, $gte: 1}, level: 'ERROR'}"));
+    }
+
+    @Test
+    public void testNormalizeSortsClauses() {
+        Assert.assertEquals(normalize("{$or: [{a: 1, b: 2}, {c: 3}]}"),
+                normalize("{$or: [{b: 2, a: 1}, {c: 3}]}"));
+    }
+
+    @Test
+    public void testNormalizeKeepsEmbeddedDocumentOrder() {
+        Assert.assertFalse(normalize("{host: {name: 'a', port: 1}}").equals(
+                normalize("{host: {port: 1, name: 'a'}}")));
+    }
+
+    @Test
+    public void testNormalizeBlank() {
+        Assert.assertEquals("{ }", normalize(""));
+    }
+
+    @Test
+    public void testTimeRangeOfTheLastHours() {
+        Date[] range = QueryUtil.getTimeRange(QueryUtil
+                .parse("{level: 'ERROR', timestamp: {$gte: {$date: 1000}}}"));
+        Assert.assertEquals(new Date(1000), range[0]);
+        Assert.assertNull(range[1]);
+    }
+
+    @Test
+    public void testTimeRangeBoundsAreHalfOpen() {
+        Date[] range = QueryUtil.getTimeRange(QueryUtil
+                .parse("{timestamp: {$gt: {$date: 1000}, $lte: {$date: 2000}}}"));
+        Assert.assertEquals(new Date(1001), range[0]);
+        Assert.assertEquals(new Date(2001), range[1]);
+    }
+
+    @Test
+    public void testTimeRangeIntersectsAndClauses() {
+        Date[] range = QueryUtil.getTimeRange(QueryUtil
+                .parse("{timestamp: {$lt: {$date: 5000}}, $and: ["
+                        + "{timestamp: {$gte: {$date: 1000}}},"
+                        + "{timestamp: {$gte: {$date: 2000}, $lt: {$date: 9000}}}]}"));
+        Assert.assertEquals(new Date(2000), range[0]);
+        Assert.assertEquals(new Date(5000), range[1]);
+    }
+
+    @Test
+    public void testNoTimeRangeUnderOr() {
+        Assert.assertNull(QueryUtil.getTimeRange(QueryUtil
+                .parse("{$or: [{timestamp: {$gte: {$date: 1000}}}, {a: 1}]}")));
+        Assert.assertNull(QueryUtil.getTimeRange(QueryUtil
+                .parse("{timestamp: {$gte: 1000}}")));
+    }
+
+}
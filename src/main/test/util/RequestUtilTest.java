@@ -0,0 +1,121 @@
+package util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mongo.viewer.util.JDBCUtil;
+import org.mongo.viewer.util.RequestUtil;
+import org.mongo.viewer.vo.DataBaseInfo;
+
+public class RequestUtilTest {
+
+    private static final int STORED = 4242;
+
+    @BeforeClass
+    public static void storeConnection() throws Exception {
+        JDBCUtil.executeUpdate("DELETE FROM DATABASE_INFO WHERE ID = "
+                + STORED);
+        JDBCUtil.executeUpdate("INSERT INTO DATABASE_INFO(HOST,DATABASE,USERNAME,PASSWORD,PORT,ID) VALUES "
+                + "('stored.example', 'syslog', 'syslogadmin', 'secret', 27018, "
+                + STORED + ")");
+    }
+
+    @AfterClass
+    public static void dropConnection() throws Exception {
+        JDBCUtil.executeUpdate("DELETE FROM DATABASE_INFO WHERE ID = "
+                + STORED);
+    }
+
+    /**
+     * A GET request with the given query string.
+     */
+    private static HttpServletRequest get(final String query,
+            final Map<String, String> headers) {
+        final Map<String, String> parameters = new HashMap<String, String>();
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            parameters.put(pair.substring(0, equals),
+                    pair.substring(equals + 1));
+        }
+        return (HttpServletRequest) Proxy.newProxyInstance(
+                RequestUtilTest.class.getClassLoader(),
+                new Class<?>[] { HttpServletRequest.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method,
+                            Object[] args) {
+                        String name = method.getName();
+                        if ("getParameter".equals(name)) {
+                            return parameters.get(args[0]);
+                        }
+                        if ("getHeader".equals(name)) {
+                            return headers.get(args[0]);
+                        }
+                        if ("getQueryString".equals(name)) {
+                            return query;
+                        }
+                        if ("getMethod".equals(name)) {
+                            return "GET";
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    private static HttpServletRequest get(String query) {
+        return get(query, new HashMap<String, String>());
+    }
+
+    @Test
+    public void testStoredConnection() {
+        DataBaseInfo info = RequestUtil.getDataBaseInfo(get("connection="
+                + STORED + "&readPreference=secondary"));
+        Assert.assertEquals("stored.example", info.getHost());
+        Assert.assertEquals(27018, info.getPort());
+        Assert.assertEquals("secret", info.getPassword());
+        Assert.assertNull(info.getSeeds());
+        Assert.assertEquals("secondary", info.getReadPreference());
+    }
+
+    @Test
+    public void testStoredConnectionCannotBePointedElsewhere() {
+        String[] redirects = { "seeds=evil.example:27017",
+                "host=evil.example", "port=27019", "database=other" };
+        for (String redirect : redirects) {
+            try {
+                RequestUtil.getDataBaseInfo(get("connection=" + STORED + "&"
+                        + redirect));
+                Assert.fail(redirect);
+            } catch (IllegalArgumentException e) {
+                // refused before the credentials go anywhere
+            }
+        }
+    }
+
+    @Test
+    public void testAdHocCredentialsFromHeaders() {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put(RequestUtil.USER_HEADER, "viewer");
+        headers.put(RequestUtil.PASSWORD_HEADER, "pw");
+        DataBaseInfo info = RequestUtil.getDataBaseInfo(get(
+                "host=h&database=d&seeds=a:1,b:2", headers));
+        Assert.assertEquals("viewer", info.getUser());
+        Assert.assertEquals("pw", info.getPassword());
+        Assert.assertEquals("a:1,b:2", info.getSeeds());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoCredentialsOnTheQueryString() {
+        RequestUtil.getDataBaseInfo(get("host=h&database=d&password=pw"));
+    }
+
+}
@@ -0,0 +1,263 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mongo.viewer.util.CacheStats;
+import org.mongo.viewer.util.SimpleCache;
+
+public class SimpleCacheTest {
+
+    @Test
+    public void testEvictsTheLeastRecentlyUsed() {
+        final List<Object> removed = new ArrayList<Object>();
+        SimpleCache<String, Integer> cache = new SimpleCache<String, Integer>(
+                3, 60) {
+            @Override
+            protected void entryRemoved(Object key, Integer value) {
+                removed.add(key);
+            }
+        };
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("c", 3);
+        Assert.assertEquals(Integer.valueOf(1), cache.get("a"));
+        cache.put("d", 4);
+        Assert.assertEquals(3, cache.size());
+        Assert.assertNull(cache.get("b"));
+        Assert.assertEquals(Integer.valueOf(1), cache.get("a"));
+        Assert.assertEquals(1, removed.size());
+        Assert.assertEquals("b", removed.get(0));
+    }
+
+    @Test
+    public void testIteratesEldestFirst() {
+        SimpleCache<String, Integer> cache = new SimpleCache<String, Integer>(
+                10, 60);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("c", 3);
+        cache.get("a");
+        Iterator<Map.Entry<String, Integer>> eldest = cache.entrySet()
+                .iterator();
+        Assert.assertEquals("b", eldest.next().getKey());
+        eldest.remove();
+        Assert.assertEquals("c", eldest.next().getKey());
+        Assert.assertEquals("a", eldest.next().getKey());
+        Assert.assertFalse(cache.containsKey("b"));
+        Assert.assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testExpiresOldEntries() throws Exception {
+        final AtomicInteger removed = new AtomicInteger();
+        SimpleCache<String, Integer> cache = new SimpleCache<String, Integer>(
+                10, 0) {
+            @Override
+            protected void entryRemoved(Object key, Integer value) {
+                removed.incrementAndGet();
+            }
+        };
+        cache.put("a", 1);
+        Assert.assertEquals(Integer.valueOf(1), cache.get("a"));
+        Thread.sleep(1100);
+        Assert.assertFalse(cache.containsKey("a"));
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(1, removed.get());
+    }
+
+    @Test
+    public void testSweepsEntriesThatAreNeverRead() throws Exception {
+        final AtomicInteger removed = new AtomicInteger();
+        SimpleCache<String, Integer> cache = new SimpleCache<String, Integer>(
+                10, 0) {
+            @Override
+            protected void entryRemoved(Object key, Integer value) {
+                removed.incrementAndGet();
+            }
+        };
+        cache.put("unread", 1);
+        // the wheel fires on the second boundary after the deadline
+        Thread.sleep(2100);
+        cache.sweep();
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(1, removed.get());
+    }
+
+    @Test
+    public void testMaxAgeAppliesToCachedEntries() throws Exception {
+        SimpleCache<String, Integer> cache = new SimpleCache<String, Integer>(
+                10, 0);
+        cache.put("a", 1);
+        cache.setMaxAge(60);
+        Thread.sleep(2100);
+        cache.sweep();
+        Assert.assertEquals(Integer.valueOf(1), cache.get("a"));
+        cache.setMaxAge(0);
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testExpiresEntriesAfterTheirOwnTtl() throws Exception {
+        SimpleCache<String, Integer> cache = new SimpleCache<String, Integer>(
+                10, 60);
+        cache.put("short", 1, 1);
+        cache.put("long", 2, 60);
+        cache.put("default", 3);
+        Assert.assertEquals(Integer.valueOf(1), cache.get("short"));
+        Thread.sleep(1100);
+        Assert.assertNull(cache.get("short"));
+        Assert.assertEquals(Integer.valueOf(2), cache.get("long"));
+        Assert.assertEquals(Integer.valueOf(3), cache.get("default"));
+        Assert.assertEquals(1, cache.getStats().getMisses());
+        // a ttl of 0 only drops the cached value
+        Assert.assertEquals(Integer.valueOf(2), cache.put("long", 4, 0));
+        Assert.assertFalse(cache.containsKey("long"));
+    }
+
+    @Test
+    public void testSweepsEntriesPastTheirTtl() throws Exception {
+        SimpleCache<String, Integer> cache = new SimpleCache<String, Integer>(
+                10, 60);
+        cache.put("unread", 1, 1);
+        Thread.sleep(2100);
+        cache.sweep();
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(1, cache.getStats().getAgeEvictions());
+    }
+
+    @Test
+    public void testStaysBoundedUnderConcurrentLoad() throws Exception {
+        final SimpleCache<Integer, Integer> cache = new SimpleCache<Integer, Integer>(
+                100, 60);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final CountDownLatch done = new CountDownLatch(8);
+        for (int t = 0; t < 8; t++) {
+            final int seed = t;
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 20000; i++) {
+                            int key = (i * 31 + seed) % 500;
+                            Integer value = cache.get(key);
+                            if (null == value) {
+                                cache.put(key, key);
+                            } else if (value.intValue() != key) {
+                                throw new AssertionError(key + " -> " + value);
+                            }
+                            if (i % 1000 == 0) {
+                                cache.remove(key);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.set(e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        done.await();
+        Assert.assertNull(failure.get());
+        Assert.assertTrue(cache.size() <= 100);
+        int entries = 0;
+        for (Map.Entry<Integer, Integer> entry : cache.entrySet()) {
+            Assert.assertEquals(entry.getKey(), entry.getValue());
+            entries++;
+        }
+        Assert.assertEquals(cache.size(), entries);
+    }
+
+    @Test
+    public void testRecordsStatistics() {
+        SimpleCache<String, String> cache = new SimpleCache<String, String>(
+                "statsTest", 2, 60);
+        Assert.assertSame(cache, SimpleCache.getCaches().get("statsTest"));
+        cache.put("a", "1");
+        cache.put("b", "2");
+        long bytes = cache.getEstimatedBytes();
+        Assert.assertTrue(bytes > 0);
+        cache.get("a");
+        cache.get("a");
+        cache.get("x");
+        cache.put("c", "3");
+        cache.getStats().recordLoad(2000000);
+        CacheStats stats = cache.getStats();
+        Assert.assertEquals(2, stats.getHits());
+        Assert.assertEquals(1, stats.getMisses());
+        Assert.assertEquals(2.0 / 3, stats.getHitRatio(), 1e-9);
+        Assert.assertEquals(1, stats.getSizeEvictions());
+        Assert.assertEquals(0, stats.getAgeEvictions());
+        Assert.assertEquals(2.0, stats.getAverageLoadMillis(), 1e-9);
+        Assert.assertEquals(bytes, cache.getEstimatedBytes());
+        cache.remove("a");
+        cache.remove("c");
+        Assert.assertEquals(0, cache.getEstimatedBytes());
+        stats.reset();
+        Assert.assertEquals(0, stats.getHits());
+    }
+
+    @Test
+    public void testBoundsTheTotalWeight() {
+        SimpleCache<String, byte[]> cache = new SimpleCache<String, byte[]>(
+                "weightTest", 1000, 60, 1000,
+                new SimpleCache.Weigher<String, byte[]>() {
+                    @Override
+                    public long weigh(String key, byte[] value) {
+                        return value.length;
+                    }
+                });
+        for (int i = 0; i < 20; i++) {
+            cache.put("k" + i, new byte[100]);
+        }
+        Assert.assertEquals(10, cache.size());
+        Assert.assertEquals(1000, cache.getEstimatedBytes());
+        Assert.assertNull(cache.get("k9"));
+        Assert.assertNotNull(cache.get("k10"));
+        Assert.assertEquals(10, cache.getStats().getSizeEvictions());
+        // more than a tenth of the budget is refused, and drops the old value
+        cache.put("k10", new byte[101]);
+        Assert.assertNull(cache.get("k10"));
+        Assert.assertEquals(9, cache.size());
+        Assert.assertEquals(1, cache.getStats().getRejections());
+        cache.setMaxWeight(500);
+        Assert.assertEquals(5, cache.size());
+        Assert.assertEquals(500, cache.getEstimatedBytes());
+    }
+
+    @Test
+    public void testTinyLfuKeepsPopularEntriesThroughAScan() {
+        SimpleCache<String, Integer> cache = new SimpleCache<String, Integer>(
+                "tinyLfuTest", 100, 60, Long.MAX_VALUE, null,
+                SimpleCache.Policy.TINY_LFU);
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 50; i++) {
+                if (null == cache.get("hot" + i)) {
+                    cache.put("hot" + i, i);
+                }
+            }
+        }
+        for (int i = 0; i < 1000; i++) {
+            cache.put("scan" + i, i);
+        }
+        Assert.assertEquals(100, cache.size());
+        int kept = 0;
+        for (int i = 0; i < 50; i++) {
+            if (cache.containsKey("hot" + i)) {
+                kept++;
+            }
+        }
+        Assert.assertEquals(50, kept);
+    }
+
+}
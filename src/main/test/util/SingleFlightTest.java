@@ -0,0 +1,266 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mongo.viewer.exception.QueryAbortedException;
+import org.mongo.viewer.exception.ServiceException;
+import org.mongo.viewer.util.QueryContext;
+import org.mongo.viewer.util.SingleFlight;
+import org.mongo.viewer.vo.RunningQuery;
+
+public class SingleFlightTest {
+
+    @Test
+    public void testConcurrentCallsShareOneExecution() throws Exception {
+        final SingleFlight<String, Integer> flight = new SingleFlight<String, Integer>();
+        final AtomicInteger executions = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final Callable<Integer> call = new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                release.await();
+                return executions.incrementAndGet();
+            }
+        };
+        ExecutorService pool = Executors.newFixedThreadPool(5);
+        try {
+            List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (int i = 0; i < 5; i++) {
+                results.add(pool.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        return flight.execute("q", call);
+                    }
+                }));
+            }
+            while (flight.getInFlight() == 0) {
+                Thread.sleep(1);
+            }
+            Thread.sleep(50);
+            release.countDown();
+            for (Future<Integer> result : results) {
+                Assert.assertEquals(Integer.valueOf(1),
+                        result.get(5, TimeUnit.SECONDS));
+            }
+            Assert.assertEquals(1, executions.get());
+            Assert.assertEquals(0, flight.getInFlight());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testExceptionIsRethrownAndKeyForgotten() throws Exception {
+        SingleFlight<String, Integer> flight = new SingleFlight<String, Integer>();
+        try {
+            flight.execute("q", new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    throw new IllegalStateException("boom");
+                }
+            });
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("boom", e.getMessage());
+        }
+        Assert.assertEquals(Integer.valueOf(2),
+                flight.execute("q", new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        return 2;
+                    }
+                }));
+    }
+
+    @Test
+    public void testCallersStopWaitingAloneOnTheirOwnDeadline()
+            throws Exception {
+        final SingleFlight<String, Integer> flight = new SingleFlight<String, Integer>();
+        final CountDownLatch release = new CountDownLatch(1);
+        final Callable<Integer> call = new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                // the shared call runs outside any caller's query
+                Assert.assertNull(QueryContext.get());
+                release.await();
+                return 7;
+            }
+        };
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<Integer> impatient = pool.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    QueryContext.set(new RunningQuery("q1", "/rest/page/c",
+                            "127.0.0.1", new Date(), System
+                                    .currentTimeMillis() + 100));
+                    try {
+                        return flight.execute("q", call);
+                    } finally {
+                        QueryContext.clear();
+                    }
+                }
+            });
+            while (flight.getInFlight() == 0) {
+                Thread.sleep(1);
+            }
+            Future<Integer> patient = pool.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    return flight.execute("q", call);
+                }
+            });
+            try {
+                impatient.get(5, TimeUnit.SECONDS);
+                Assert.fail("past its deadline");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(((QueryAbortedException) e.getCause())
+                        .isTimedOut());
+            }
+            // the shared call went on for the caller still waiting
+            Assert.assertEquals(1, flight.getInFlight());
+            release.countDown();
+            Assert.assertEquals(Integer.valueOf(7),
+                    patient.get(5, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCallAbandonedOnceTheLastCallerGivesUp() throws Exception {
+        final List<RunningQuery> begun = new ArrayList<RunningQuery>();
+        final List<RunningQuery> abandoned = new ArrayList<RunningQuery>();
+        final SingleFlight<String, Integer> flight = new SingleFlight<String, Integer>() {
+            @Override
+            protected RunningQuery begin(String key, RunningQuery caller) {
+                RunningQuery shared = new RunningQuery("shared",
+                        caller.getUri(), "shared", new Date(),
+                        caller.getDeadline());
+                begun.add(shared);
+                return shared;
+            }
+
+            @Override
+            protected void abandon(RunningQuery shared) {
+                abandoned.add(shared);
+                shared.abort(RunningQuery.CANCELLED);
+            }
+        };
+        final long deadline = System.currentTimeMillis() + 60000;
+        final CountDownLatch release = new CountDownLatch(1);
+        final Callable<Integer> call = new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                // under the first caller's deadline, stopped once abandoned
+                Assert.assertEquals(deadline, QueryContext.get().getDeadline());
+                while (!release.await(10, TimeUnit.MILLISECONDS)) {
+                    QueryContext.check();
+                }
+                return 7;
+            }
+        };
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            final RunningQuery first = new RunningQuery("q1", "/rest/page/c",
+                    "127.0.0.1", new Date(), deadline);
+            final RunningQuery second = new RunningQuery("q2",
+                    "/rest/page/c", "127.0.0.1", new Date(), deadline);
+            List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (final RunningQuery running : new RunningQuery[] { first,
+                    second }) {
+                results.add(pool.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        QueryContext.set(running);
+                        try {
+                            return flight.execute("q", call);
+                        } finally {
+                            QueryContext.clear();
+                        }
+                    }
+                }));
+                while (flight.getInFlight() == 0) {
+                    Thread.sleep(1);
+                }
+            }
+            Thread.sleep(50);
+            first.abort(RunningQuery.CANCELLED);
+            try {
+                results.get(0).get(5, TimeUnit.SECONDS);
+                Assert.fail("cancelled");
+            } catch (ExecutionException e) {
+                Assert.assertFalse(((QueryAbortedException) e.getCause())
+                        .isTimedOut());
+            }
+            Assert.assertTrue(abandoned.isEmpty());
+            second.abort(RunningQuery.CANCELLED);
+            try {
+                results.get(1).get(5, TimeUnit.SECONDS);
+                Assert.fail("cancelled");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof QueryAbortedException);
+            }
+            Assert.assertEquals(1, begun.size());
+            Assert.assertEquals(begun, abandoned);
+            Assert.assertTrue(begun.get(0).isAborted());
+            Assert.assertEquals(0, flight.getInFlight());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testBusyPoolRefusesNewCalls() throws Exception {
+        final SingleFlight<String, Integer> flight = new SingleFlight<String, Integer>(
+                "busy-flight", 1);
+        final CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(1);
+        try {
+            Future<Integer> running = pool.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    return flight.execute("a", new Callable<Integer>() {
+                        @Override
+                        public Integer call() throws Exception {
+                            release.await();
+                            return 1;
+                        }
+                    });
+                }
+            });
+            while (flight.getInFlight() == 0) {
+                Thread.sleep(1);
+            }
+            try {
+                flight.execute("b", new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        return 2;
+                    }
+                });
+                Assert.fail("no thread left");
+            } catch (ServiceException e) {
+                Assert.assertEquals(1, flight.getInFlight());
+            }
+            release.countDown();
+            Assert.assertEquals(Integer.valueOf(1),
+                    running.get(5, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,79 @@
+package util;
+
+import java.io.ByteArrayInputStream;
+import java.util.Date;
+
+import org.bson.BasicBSONEncoder;
+import org.bson.types.ObjectId;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mongo.viewer.util.RawDBDecoder;
+import org.mongo.viewer.util.RawDBObject;
+import org.mongo.viewer.util.SysLogEventDecoder;
+import org.mongo.viewer.vo.SysLogEvent;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+
+public class SysLogEventDecoderTest {
+
+    private static final Date WHEN = new Date(1402840800000L);
+
+    private static byte[] bson(DBObject document) {
+        return new BasicBSONEncoder().encode(document);
+    }
+
+    @Test
+    public void testDecodesTheStoredFields() throws Exception {
+        byte[] bytes = bson(new BasicDBObject("_id", "e-1")
+                .append("timestamp", WHEN).append("type", "REPLOGIN.user")
+                .append("hostName", "web01").append("execTime", 42)
+                .append("extra", new BasicDBObject("nested", 1))
+                .append("message", "logged in"));
+        SysLogEvent event = SysLogEventDecoder.decode(bytes);
+        Assert.assertEquals("e-1", event.getEventId());
+        Assert.assertEquals(WHEN, event.getTimestamp());
+        Assert.assertEquals("REPLOGIN.user", event.getType());
+        Assert.assertEquals("web01", event.getHostName());
+        Assert.assertEquals(42, event.getExecTime());
+        // the unknown document before it was skipped whole
+        Assert.assertEquals("logged in", event.getMessage());
+        Assert.assertNull(event.getLoginId());
+    }
+
+    @Test
+    public void testObjectIdsBecomeHex() throws Exception {
+        ObjectId id = new ObjectId();
+        SysLogEvent event = SysLogEventDecoder.decode(bson(new BasicDBObject(
+                "_id", id)));
+        Assert.assertEquals(id.toHexString(), event.getEventId());
+    }
+
+    @Test
+    public void testRawDocumentsComeOffTheStream() throws Exception {
+        DBObject document = new BasicDBObject("type", "SESSION").append(
+                "timestamp", WHEN);
+        DBObject raw = new RawDBDecoder().decode(new ByteArrayInputStream(
+                bson(document)), (DBCollection) null);
+        Assert.assertTrue(raw instanceof RawDBObject);
+        Assert.assertEquals("SESSION", raw.get("type"));
+        SysLogEvent event = SysLogEventDecoder.decode(raw);
+        Assert.assertEquals("SESSION", SysLogEventDecoder.get(event, "type"));
+        Assert.assertEquals(WHEN, SysLogEventDecoder.get(event, "timestamp"));
+    }
+
+    @Test
+    public void testDecodesPlainDocuments() throws Exception {
+        SysLogEvent event = SysLogEventDecoder.decode(new BasicDBObject(
+                "loginId", "fela.smith").append("version", "11.0a"));
+        Assert.assertEquals("fela.smith", event.getLoginId());
+        Assert.assertEquals("11.0a", event.getVersion());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownColumn() {
+        SysLogEventDecoder.get(new SysLogEvent(null, null), "password");
+    }
+
+}
@@ -0,0 +1,94 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mongo.viewer.util.TimingWheel;
+
+public class TimingWheelTest {
+
+    private static final long SECOND = 1000;
+    private static final long DAY = 24 * 60 * 60 * SECOND;
+
+    private static class Named extends TimingWheel.Timer {
+        final String name;
+
+        Named(String name) {
+            this.name = name;
+        }
+    }
+
+    private final List<Named> fired = new ArrayList<Named>();
+
+    private final TimingWheel.Listener<Named> listener = new TimingWheel.Listener<Named>() {
+        @Override
+        public void expired(Named timer) {
+            fired.add(timer);
+        }
+    };
+
+    @Test
+    public void testFiresEveryTimerOnTimeAtEveryLevel() {
+        long start = 1402840800000L;
+        TimingWheel<Named> wheel = new TimingWheel<Named>(SECOND, start);
+        long[] delays = { 500, SECOND, 59 * SECOND, 65 * SECOND,
+                3 * 60 * 60 * SECOND, 2 * DAY, 5 * DAY, 400 * DAY };
+        List<Named> timers = new ArrayList<Named>();
+        for (long delay : delays) {
+            Named timer = new Named("+" + delay);
+            wheel.schedule(timer, start + delay);
+            timers.add(timer);
+        }
+        Assert.assertEquals(delays.length, wheel.size());
+        // a minute at a time, then check nothing fired early or late
+        for (long now = start; now <= start + 401 * DAY; now += 60 * SECOND) {
+            wheel.advance(now, listener);
+            for (Named timer : fired) {
+                Assert.assertTrue(timer.name + " fired early",
+                        timer.getDeadline() <= now);
+                Assert.assertTrue(timer.name + " fired late",
+                        timer.getDeadline() > now - 62 * SECOND);
+            }
+            fired.clear();
+        }
+        Assert.assertEquals(0, wheel.size());
+        for (Named timer : timers) {
+            Assert.assertFalse(timer.isScheduled());
+        }
+    }
+
+    @Test
+    public void testFiresOnTheTickAfterTheDeadline() {
+        TimingWheel<Named> wheel = new TimingWheel<Named>(SECOND, 0);
+        Named timer = new Named("t");
+        wheel.schedule(timer, 1500);
+        wheel.advance(1999, listener);
+        Assert.assertTrue(fired.isEmpty());
+        wheel.advance(2000, listener);
+        Assert.assertEquals(1, fired.size());
+    }
+
+    @Test
+    public void testCancelledAndMovedTimers() {
+        TimingWheel<Named> wheel = new TimingWheel<Named>(SECOND, 0);
+        Named cancelled = new Named("cancelled");
+        Named moved = new Named("moved");
+        Named kept = new Named("kept");
+        wheel.schedule(cancelled, 5 * SECOND);
+        wheel.schedule(moved, 5 * SECOND);
+        wheel.schedule(kept, 5 * SECOND);
+        wheel.cancel(cancelled);
+        wheel.schedule(moved, 90 * SECOND);
+        wheel.advance(10 * SECOND, listener);
+        Assert.assertEquals(1, fired.size());
+        Assert.assertSame(kept, fired.get(0));
+        Assert.assertFalse(cancelled.isScheduled());
+        wheel.advance(90 * SECOND, listener);
+        Assert.assertEquals(2, fired.size());
+        Assert.assertSame(moved, fired.get(1));
+        Assert.assertEquals(0, wheel.size());
+    }
+
+}
@@ -0,0 +1,36 @@
+package vo;
+
+import java.util.Date;
+
+import org.bson.types.ObjectId;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mongo.viewer.vo.PageToken;
+
+public class PageTokenTest {
+
+    @Test
+    public void testObjectIdRoundTrip() {
+        Date now = new Date();
+        ObjectId id = new ObjectId();
+        String encoded = new PageToken(now, id).encode();
+        Assert.assertFalse("Token must be url safe", encoded.matches(".*[+/=].*"));
+        PageToken decoded = PageToken.decode(encoded);
+        Assert.assertEquals(now, decoded.getTimestamp());
+        Assert.assertEquals(id, decoded.getId());
+    }
+
+    @Test
+    public void testStringIdRoundTrip() {
+        Date now = new Date();
+        String id = "0f8fad5b-d9cb-469f-a165-70867728950e|with separator";
+        PageToken decoded = PageToken.decode(new PageToken(now, id).encode());
+        Assert.assertEquals(now, decoded.getTimestamp());
+        Assert.assertEquals(id, decoded.getId());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidToken() {
+        PageToken.decode("bm90IGEgdG9rZW4");
+    }
+}